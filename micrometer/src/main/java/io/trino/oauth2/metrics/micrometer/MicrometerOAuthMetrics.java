@@ -0,0 +1,125 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package io.trino.oauth2.metrics.micrometer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.trino.oauth2.metrics.OAuthMetrics;
+import io.trino.oauth2.metrics.TokenOperation;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports token metrics to a Micrometer {@link MeterRegistry}:
+ * <ul>
+ *     <li>{@code oauth2.token.cache} counter, tagged {@code flow} and {@code result} (hit or miss)</li>
+ *     <li>{@code oauth2.token.time.to.expiry} distribution in seconds, tagged {@code flow}</li>
+ *     <li>{@code oauth2.token.operation} timer, tagged {@code operation} and {@code flow}</li>
+ *     <li>{@code oauth2.token.failures} counter, tagged {@code operation}, {@code flow} and {@code cause}</li>
+ *     <li>{@code oauth2.token.refresh.fallbacks} counter, tagged {@code flow}</li>
+ * </ul>
+ * Meters are looked up once per tag combination and then reused.
+ * Install with {@code Metrics.setMetrics(new MicrometerOAuthMetrics(registry))}.
+ */
+public final class MicrometerOAuthMetrics implements OAuthMetrics {
+    private static final String NO_FLOW = "none";
+
+    private final MeterRegistry registry;
+    private final Map<String, Counter> cacheHits = new ConcurrentHashMap<>();
+    private final Map<String, Counter> cacheMisses = new ConcurrentHashMap<>();
+    private final Map<String, Counter> refreshFallbacks = new ConcurrentHashMap<>();
+    private final Map<String, Counter> failures = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> timesToExpiry = new ConcurrentHashMap<>();
+    private final Map<String, Timer> latencies = new ConcurrentHashMap<>();
+
+    public MicrometerOAuthMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void cacheHit(String flow) {
+        cacheHits.computeIfAbsent(tag(flow), f -> cacheCounter(f, "hit")).increment();
+    }
+
+    @Override
+    public void cacheMiss(String flow) {
+        cacheMisses.computeIfAbsent(tag(flow), f -> cacheCounter(f, "miss")).increment();
+    }
+
+    @Override
+    public void timeToExpiry(String flow, long seconds) {
+        timesToExpiry.computeIfAbsent(tag(flow), f -> DistributionSummary.builder("oauth2.token.time.to.expiry")
+                .description("Remaining lifetime of tokens served from the token store")
+                .baseUnit("seconds")
+                .tag("flow", f)
+                .register(registry)
+        ).record(seconds);
+    }
+
+    @Override
+    public void latency(TokenOperation operation, String flow, long nanos) {
+        String operationTag = tag(operation);
+        String flowTag = tag(flow);
+        latencies.computeIfAbsent(operationTag + '/' + flowTag, key -> Timer.builder("oauth2.token.operation")
+                .description("Latency of token operations")
+                .tag("operation", operationTag)
+                .tag("flow", flowTag)
+                .publishPercentileHistogram()
+                .register(registry)
+        ).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void failure(TokenOperation operation, String flow, String cause) {
+        String operationTag = tag(operation);
+        String flowTag = tag(flow);
+        failures.computeIfAbsent(operationTag + '/' + flowTag + '/' + cause, key -> Counter.builder("oauth2.token.failures")
+                .description("Failed token operations")
+                .tag("operation", operationTag)
+                .tag("flow", flowTag)
+                .tag("cause", cause)
+                .register(registry)
+        ).increment();
+    }
+
+    @Override
+    public void refreshFallback(String flow) {
+        refreshFallbacks.computeIfAbsent(tag(flow), f -> Counter.builder("oauth2.token.refresh.fallbacks")
+                .description("Failed refreshes that fell back to a new login")
+                .tag("flow", f)
+                .register(registry)
+        ).increment();
+    }
+
+    private Counter cacheCounter(String flow, String result) {
+        return Counter.builder("oauth2.token.cache")
+                .description("Token requests by whether the token store could serve them")
+                .tag("flow", flow)
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private static String tag(String flow) {
+        return flow == null ? NO_FLOW : flow;
+    }
+
+    private static String tag(TokenOperation operation) {
+        return operation.name().toLowerCase(Locale.ROOT);
+    }
+}
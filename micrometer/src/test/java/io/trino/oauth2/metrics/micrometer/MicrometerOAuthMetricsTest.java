@@ -0,0 +1,99 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.metrics.micrometer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.trino.oauth2.metrics.TokenOperation;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicrometerOAuthMetricsTest {
+    private static final String FLOW = "ClientCredentialsConfig";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MicrometerOAuthMetrics metrics = new MicrometerOAuthMetrics(registry);
+
+    @Test
+    void testCacheCountersAreTaggedByResult() {
+        metrics.cacheHit(FLOW);
+        metrics.cacheHit(FLOW);
+        metrics.cacheMiss(FLOW);
+
+        assertEquals(2, cacheCounter("hit").count());
+        assertEquals(1, cacheCounter("miss").count());
+    }
+
+    @Test
+    void testTimeToExpiry() {
+        metrics.timeToExpiry(FLOW, 300);
+        metrics.timeToExpiry(FLOW, 100);
+
+        DistributionSummary summary = registry.get("oauth2.token.time.to.expiry").tag("flow", FLOW).summary();
+        assertEquals(2, summary.count());
+        assertEquals(400, summary.totalAmount());
+        assertEquals("seconds", summary.getId().getBaseUnit());
+    }
+
+    @Test
+    void testLatencyIsTaggedByOperationAndFlow() {
+        metrics.latency(TokenOperation.REFRESH, FLOW, TimeUnit.MILLISECONDS.toNanos(250));
+
+        Timer timer = registry.get("oauth2.token.operation")
+                .tag("operation", "refresh")
+                .tag("flow", FLOW)
+                .timer();
+        assertEquals(1, timer.count());
+        assertEquals(250, timer.totalTime(TimeUnit.MILLISECONDS), 0.001);
+    }
+
+    @Test
+    void testFailuresAreTaggedByCause() {
+        metrics.failure(TokenOperation.REFRESH, FLOW, "http_400");
+        metrics.failure(TokenOperation.REFRESH, FLOW, "http_400");
+        metrics.failure(TokenOperation.REFRESH, FLOW, "SocketTimeoutException");
+
+        assertEquals(2, failureCounter("http_400").count());
+        assertEquals(1, failureCounter("SocketTimeoutException").count());
+    }
+
+    @Test
+    void testMissingFlowIsTaggedNone() {
+        metrics.failure(TokenOperation.DISCOVERY, null, "http_500");
+        metrics.refreshFallback(FLOW);
+
+        assertEquals(1, registry.get("oauth2.token.failures")
+                .tag("operation", "discovery")
+                .tag("flow", "none")
+                .counter()
+                .count());
+        assertEquals(1, registry.get("oauth2.token.refresh.fallbacks").tag("flow", FLOW).counter().count());
+    }
+
+    private Counter cacheCounter(String result) {
+        return registry.get("oauth2.token.cache").tag("flow", FLOW).tag("result", result).counter();
+    }
+
+    private Counter failureCounter(String cause) {
+        return registry.get("oauth2.token.failures")
+                .tag("operation", "refresh")
+                .tag("flow", FLOW)
+                .tag("cause", cause)
+                .counter();
+    }
+}
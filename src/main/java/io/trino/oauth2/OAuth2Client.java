@@ -14,15 +14,34 @@ package io.trino.oauth2;
 
 import io.trino.oauth2.configs.Constants;
 import io.trino.oauth2.flows.AuthorizationCodeOauth;
+import io.trino.oauth2.flows.AuthorizationRequest;
 import io.trino.oauth2.flows.ClientCredentialsOauth;
+import io.trino.oauth2.flows.DeviceAuthorization;
 import io.trino.oauth2.flows.DeviceCodeOauth;
+import io.trino.oauth2.flows.TokenExchangeOauth;
+import io.trino.oauth2.flows.TokenRequests;
+import io.trino.oauth2.jfr.TokenCacheMissEvent;
+import io.trino.oauth2.metrics.ClientStats;
+import io.trino.oauth2.metrics.Metrics;
+import io.trino.oauth2.metrics.OAuthMetrics;
+import io.trino.oauth2.metrics.TokenOperation;
 import io.trino.oauth2.models.AuthorizationCodeConfig;
 import io.trino.oauth2.models.ClientCredentialsConfig;
 import io.trino.oauth2.models.DeviceCodeConfig;
 import io.trino.oauth2.models.OAuth2Config;
+import io.trino.oauth2.models.TokenExchangeConfig;
+import io.trino.oauth2.utils.HostRefreshCoordinator;
 import io.trino.oauth2.utils.OAuthTokenStore;
+import io.trino.oauth2.utils.TokenPair;
+import io.trino.oauth2.utils.TokenStoreBackend;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The OAuth2Client is the main entry point for the OAuth2 library. It is
@@ -32,6 +51,13 @@ import java.io.IOException;
  * 1. Client Credentials Flow: For machine-to-machine communication.
  * 2. Device Code Flow: For devices with limited input capabilities.
  * 3. Authorization Code Flow: For standard user authentication.
+ * <p>
+ * A client credentials config with
+ * {@link ClientCredentialsConfig#isTokenPerAudience()} set holds one token per
+ * audience, read with {@link #token(String)}.
+ * <p>
+ * A {@link TokenExchangeConfig} exchanges callers' tokens instead of holding
+ * one of its own, read with {@link #exchange(String)}.
  */
 public class OAuth2Client {
     private final OAuth2Config config;
@@ -39,10 +65,22 @@ public class OAuth2Client {
     private final int validMinDurationThreshold;
     private final Object oauthFlowClient;
 
+    /**
+     * The client ID the config's tokens are stored under.
+     */
+    private final String storageClientId;
+
+    /**
+     * Storage client IDs by audience, or null unless a token is kept per audience.
+     */
+    private final Map<String, String> audienceClientIds;
+
+    private final ClientStats stats = new ClientStats();
+
     /**
      * Creates a new OAuth2Client with the specified configuration.
      *
-     * @param config                      The OAuth2 configuration (ClientCredentialsConfig, DeviceCodeConfig, or AuthorizationCodeConfig)
+     * @param config                      The OAuth2 configuration (ClientCredentialsConfig, DeviceCodeConfig, AuthorizationCodeConfig, or TokenExchangeConfig)
      * @param validMinDurationThreshold   The minimum duration (in seconds) that a token must be valid for before it's considered expired
      * @param proxyUrl                    Optional HTTP proxy URL
      */
@@ -54,7 +92,9 @@ public class OAuth2Client {
         this.config = config;
         this.proxyUrl = proxyUrl;
         this.validMinDurationThreshold = validMinDurationThreshold;
+        this.storageClientId = OAuthTokenStore.getStorageClientId(config);
         this.oauthFlowClient = initiateOAuthFlowClient();
+        this.audienceClientIds = initiateAudienceClientIds();
     }
 
     /**
@@ -76,6 +116,136 @@ public class OAuth2Client {
         this(config, validMinDurationThreshold, null);
     }
 
+    public OAuth2Config getConfig() {
+        return config;
+    }
+
+    /**
+     * The client ID under which this client's tokens are stored, unique to
+     * the config's client ID, issuer, scopes and audiences.
+     */
+    public String getStorageClientId() {
+        return storageClientId;
+    }
+
+    /**
+     * The minimum duration (in seconds) that a cached token must remain valid to be returned.
+     */
+    public int getValidMinDurationThreshold() {
+        return validMinDurationThreshold;
+    }
+
+    /**
+     * Statistics of this client's token requests, as exposed through JMX by
+     * {@link io.trino.oauth2.jmx.OAuth2ClientManagement}.
+     */
+    public ClientStats getStats() {
+        return stats;
+    }
+
+    /**
+     * How long the stored access token remains valid, the shortest of them for
+     * a token per audience.
+     *
+     * @return The remaining lifetime, negative once expired, or null if a token
+     * is missing, its expiry is unknown, or the config exchanges tokens
+     */
+    public Duration getRemainingLifetime() {
+        String mode = config.getClass().getSimpleName();
+        Duration shortest = null;
+        for (String clientId : getStorageClientIds()) {
+            Duration remaining = OAuthTokenStore.getRemainingLifetime(clientId, mode);
+            if (remaining == null) {
+                return null;
+            }
+            if (shortest == null || remaining.compareTo(shortest) < 0) {
+                shortest = remaining;
+            }
+        }
+        return shortest;
+    }
+
+    /**
+     * The number of access tokens this client holds that have not expired:
+     * at most one, one per audience, or the cached exchanged tokens.
+     */
+    public int getActiveTokenCount() {
+        if (oauthFlowClient instanceof TokenExchangeOauth) {
+            return ((TokenExchangeOauth) oauthFlowClient).getCachedTokenCount();
+        }
+        String mode = config.getClass().getSimpleName();
+        int count = 0;
+        for (String clientId : getStorageClientIds()) {
+            if (OAuthTokenStore.getActiveAccessToken(clientId, mode, 0) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Discards this client's access tokens, keeping refresh tokens, and
+     * acquires new client credentials tokens right away. User flows refresh
+     * their token on the next {@link #token()} call instead, since a failed
+     * refresh falls back to a login that needs the user. Token exchange
+     * configs drop their cached exchanged tokens. With a backend whose tokens
+     * are acquired elsewhere, such as a token broker, the owner replaces the
+     * token right away.
+     *
+     * @throws IOException If a new client credentials token cannot be acquired
+     */
+    public void forceRefresh() throws IOException {
+        if (oauthFlowClient instanceof TokenExchangeOauth) {
+            ((TokenExchangeOauth) oauthFlowClient).purgeCache();
+            return;
+        }
+        String mode = config.getClass().getSimpleName();
+        TokenStoreBackend backend = OAuthTokenStore.getBackend();
+        boolean acquiredElsewhere = false;
+        for (String clientId : getStorageClientIds()) {
+            String key = OAuthTokenStore.getTokenKey(clientId, mode);
+            acquiredElsewhere |= backend.acquire(key, validMinDurationThreshold, true);
+        }
+        if (acquiredElsewhere) {
+            return;
+        }
+        for (String clientId : getStorageClientIds()) {
+            OAuthTokenStore.discardAccessToken(clientId, mode);
+        }
+        if (audienceClientIds != null) {
+            tokens();
+        } else if (oauthFlowClient instanceof ClientCredentialsOauth) {
+            // Skip broader-scope reuse so this client's own token is replaced
+            token(storageClientId, ((ClientCredentialsOauth) oauthFlowClient)::requestAccessToken);
+        }
+    }
+
+    /**
+     * Removes this client's access and refresh tokens from the store, so the
+     * next {@link #token()} call starts a new grant. Token exchange configs
+     * drop their cached exchanged tokens.
+     */
+    public void purge() {
+        if (oauthFlowClient instanceof TokenExchangeOauth) {
+            ((TokenExchangeOauth) oauthFlowClient).purgeCache();
+            return;
+        }
+        String mode = config.getClass().getSimpleName();
+        for (String clientId : getStorageClientIds()) {
+            OAuthTokenStore.purgeTokens(clientId, mode);
+        }
+    }
+
+    private Collection<String> getStorageClientIds() {
+        if (audienceClientIds != null) {
+            return audienceClientIds.values();
+        }
+        if (oauthFlowClient instanceof TokenExchangeOauth) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(storageClientId);
+    }
+
     private Object initiateOAuthFlowClient() {
         if (config instanceof ClientCredentialsConfig) {
             return new ClientCredentialsOauth((ClientCredentialsConfig) config, proxyUrl);
@@ -83,10 +253,23 @@ public class OAuth2Client {
             return new DeviceCodeOauth((DeviceCodeConfig) config, proxyUrl);
         } else if (config instanceof AuthorizationCodeConfig) {
             return new AuthorizationCodeOauth((AuthorizationCodeConfig) config, proxyUrl);
+        } else if (config instanceof TokenExchangeConfig) {
+            return new TokenExchangeOauth((TokenExchangeConfig) config, proxyUrl, validMinDurationThreshold);
         }
         throw new IllegalArgumentException("Invalid OAuth mode: " + config.getClass().getSimpleName());
     }
 
+    private Map<String, String> initiateAudienceClientIds() {
+        if (!(config instanceof ClientCredentialsConfig) || !((ClientCredentialsConfig) config).isTokenPerAudience()) {
+            return null;
+        }
+        Map<String, String> clientIds = new LinkedHashMap<>();
+        for (String audience : ((ClientCredentialsConfig) config).getAudience()) {
+            clientIds.put(audience, OAuthTokenStore.getAudienceClientId(storageClientId, audience));
+        }
+        return Collections.unmodifiableMap(clientIds);
+    }
+
     /**
      * Gets an access token, either from cache or by generating a new one.
      *
@@ -94,24 +277,287 @@ public class OAuth2Client {
      * @throws IOException If there's an error obtaining the token
      */
     public String token() throws IOException {
+        if (audienceClientIds != null) {
+            throw new IllegalStateException("Config acquires a token per audience, use token(audience)");
+        }
+        if (oauthFlowClient instanceof TokenExchangeOauth) {
+            throw new IllegalStateException("Config exchanges subject tokens, use exchange(subjectToken)");
+        }
+        if (oauthFlowClient instanceof ClientCredentialsOauth) {
+            String accessToken = ((ClientCredentialsOauth) oauthFlowClient).findBroaderToken(validMinDurationThreshold);
+            if (accessToken != null) {
+                Metrics.getMetrics().cacheHit(config.getClass().getSimpleName());
+                stats.cacheHit();
+                return accessToken;
+            }
+        }
+        return token(storageClientId, this::acquireToken);
+    }
+
+    /**
+     * Gets the access token for one audience of a config with
+     * {@link ClientCredentialsConfig#isTokenPerAudience()} set. A cached token
+     * is returned without contacting the token endpoint.
+     *
+     * @param audience One of the config's audiences
+     * @return The access token
+     * @throws IOException If there's an error obtaining the token
+     */
+    public String token(String audience) throws IOException {
+        String storageClientId = audienceClientIds == null ? null : audienceClientIds.get(audience);
+        if (storageClientId == null) {
+            throw new IllegalArgumentException("Audience '" + audience + "' is not configured for a token per audience");
+        }
+        return token(storageClientId, () -> ((ClientCredentialsOauth) oauthFlowClient).generateOrRefreshToken(audience));
+    }
+
+    /**
+     * Gets the access tokens for every audience of a config with
+     * {@link ClientCredentialsConfig#isTokenPerAudience()} set. Missing tokens
+     * are requested concurrently; with host coordination enabled they are
+     * acquired one at a time under the host lock instead.
+     *
+     * @return Access tokens by audience, in config order
+     * @throws IOException If there's an error obtaining any of the tokens
+     */
+    public Map<String, String> tokens() throws IOException {
+        if (audienceClientIds == null) {
+            throw new IllegalStateException("Config does not acquire a token per audience");
+        }
+        String mode = config.getClass().getSimpleName();
+        boolean coordinated = OAuthTokenStore.getHostCoordinator() != null;
+        ClientCredentialsOauth flow = (ClientCredentialsOauth) oauthFlowClient;
+
+        Map<String, String> tokens = new LinkedHashMap<>();
+        Map<String, CompletableFuture<String>> pending = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : audienceClientIds.entrySet()) {
+            String accessToken = OAuthTokenStore.getActiveAccessToken(entry.getValue(), mode, validMinDurationThreshold);
+            if (accessToken != null) {
+                recordCacheHit(entry.getValue(), mode);
+                tokens.put(entry.getKey(), accessToken);
+            } else if (coordinated) {
+                tokens.put(entry.getKey(), token(entry.getKey()));
+            } else {
+                Metrics.getMetrics().cacheMiss(mode);
+                stats.cacheMiss();
+                tokens.put(entry.getKey(), null);
+                pending.put(entry.getKey(), flow.fetchAudienceToken(entry.getKey()));
+            }
+        }
+        for (Map.Entry<String, CompletableFuture<String>> entry : pending.entrySet()) {
+            tokens.put(entry.getKey(), TokenRequests.await(entry.getValue()));
+        }
+        return tokens;
+    }
+
+    /**
+     * Exchanges a subject token for a token with the audience and scope of a
+     * {@link TokenExchangeConfig}. Exchanged tokens are cached in memory until
+     * they come within the validity threshold of expiring.
+     *
+     * @param subjectToken The token to exchange
+     * @return The exchanged access token
+     * @throws IOException If there's an error exchanging the token
+     */
+    public String exchange(String subjectToken) throws IOException {
+        return getTokenExchange().exchange(subjectToken);
+    }
+
+    /**
+     * Exchanges a subject token for a token with the given audience and scope.
+     *
+     * @param subjectToken The token to exchange
+     * @param audience     The audience of the exchanged token, or null for none
+     * @param scope        The scope of the exchanged token, or null for none
+     * @return The exchanged access token
+     * @throws IOException If there's an error exchanging the token
+     */
+    public String exchange(String subjectToken, String audience, String scope) throws IOException {
+        return getTokenExchange().exchange(subjectToken, audience, scope);
+    }
+
+    /**
+     * Starts a device authorization for a {@link DeviceCodeConfig} without
+     * waiting for the user to approve it. The token is polled for in the
+     * background and stored once issued, after which {@link #token()} returns it.
+     *
+     * @return The pending authorization, with the user code and verification URI to show
+     * @throws IOException If the device authorization request fails
+     */
+    public DeviceAuthorization startDeviceAuthorization() throws IOException {
+        if (!(oauthFlowClient instanceof DeviceCodeOauth)) {
+            throw new IllegalStateException("Config is not a device code config");
+        }
+        return ((DeviceCodeOauth) oauthFlowClient).startAuthorization();
+    }
+
+    /**
+     * Starts a login for one user of an {@link AuthorizationCodeConfig}
+     * without waiting for it, for applications that log in many users.
+     *
+     * @return The authorization URL to send the user to, and the login's state
+     * @throws IOException If the authorization endpoint cannot be discovered
+     */
+    public AuthorizationRequest beginLogin() throws IOException {
+        return getAuthorizationCode().beginLogin();
+    }
+
+    /**
+     * Completes a login started with {@link #beginLogin()} with the state and
+     * code of its callback. The tokens are returned, not stored, as they
+     * belong to the user who logged in.
+     *
+     * @param state The {@code state} parameter of the callback
+     * @param code  The {@code code} parameter of the callback
+     * @return The tokens issued for the login
+     * @throws IOException If there's an error exchanging the code
+     */
+    public TokenPair completeLogin(String state, String code) throws IOException {
+        return getAuthorizationCode().completeLogin(state, code);
+    }
+
+    /**
+     * Creates a DPoP proof for sending an access token acquired by this
+     * client to a resource server, for configs with DPoP enabled.
+     *
+     * @param method      The HTTP method of the request
+     * @param url         The request URL
+     * @param accessToken The access token sent with the request
+     * @return The proof, to send in the {@code DPoP} request header
+     */
+    public String dpopProof(String method, String url, String accessToken) {
+        if (!isDpop()) {
+            throw new IllegalStateException("Config does not use DPoP");
+        }
+        return OAuthTokenStore.getDpopProofGenerator(storageClientId, config.getClass().getSimpleName())
+                .createProof(method, url, accessToken);
+    }
+
+    private boolean isDpop() {
+        if (config instanceof ClientCredentialsConfig) {
+            return ((ClientCredentialsConfig) config).isDpop();
+        } else if (config instanceof DeviceCodeConfig) {
+            return ((DeviceCodeConfig) config).isDpop();
+        } else if (config instanceof AuthorizationCodeConfig) {
+            return ((AuthorizationCodeConfig) config).isDpop();
+        }
+        return false;
+    }
+
+    private AuthorizationCodeOauth getAuthorizationCode() {
+        if (!(oauthFlowClient instanceof AuthorizationCodeOauth)) {
+            throw new IllegalStateException("Config is not an authorization code config");
+        }
+        return (AuthorizationCodeOauth) oauthFlowClient;
+    }
+
+    private TokenExchangeOauth getTokenExchange() {
+        if (!(oauthFlowClient instanceof TokenExchangeOauth)) {
+            throw new IllegalStateException("Config is not a token exchange config");
+        }
+        return (TokenExchangeOauth) oauthFlowClient;
+    }
+
+    private String token(String storageClientId, TokenAcquisition acquisition) throws IOException {
+        String mode = config.getClass().getSimpleName();
         String accessToken = OAuthTokenStore.getActiveAccessToken(
-                config.getClientId(),
-                config.getClass().getSimpleName(),
+                storageClientId,
+                mode,
                 validMinDurationThreshold
         );
 
         if (accessToken != null) {
+            recordCacheHit(storageClientId, mode);
             return accessToken;
         }
 
+        OAuthMetrics metrics = Metrics.getMetrics();
+        metrics.cacheMiss(mode);
+        stats.cacheMiss();
+        // Always timed for the client's own statistics; the request dwarfs reading the clock
+        long start = System.nanoTime();
+        TokenCacheMissEvent event = new TokenCacheMissEvent();
+        event.begin();
+        String outcome = "success";
+        try {
+            return acquireUncached(storageClientId, mode, acquisition);
+        } catch (IOException | RuntimeException e) {
+            outcome = Metrics.causeOf(e);
+            metrics.failure(TokenOperation.ACQUIRE, mode, outcome);
+            stats.failure(outcome, OAuthTokenStore.getTimeSource().now());
+            throw e;
+        } finally {
+            stats.acquisition(System.nanoTime() - start);
+            Metrics.recordLatency(metrics, TokenOperation.ACQUIRE, mode, start);
+            if (event.finish()) {
+                event.commit(storageClientId, mode, null, outcome);
+            }
+        }
+    }
+
+    private void recordCacheHit(String storageClientId, String mode) {
+        stats.cacheHit();
+        OAuthMetrics metrics = Metrics.getMetrics();
+        metrics.cacheHit(mode);
+        if (metrics != OAuthMetrics.NOOP) {
+            Duration remaining = OAuthTokenStore.getRemainingLifetime(storageClientId, mode);
+            if (remaining != null) {
+                metrics.timeToExpiry(mode, remaining.getSeconds());
+            }
+        }
+    }
+
+    private String acquireUncached(String storageClientId, String mode, TokenAcquisition acquisition)
+            throws IOException {
+        String key = OAuthTokenStore.getTokenKey(storageClientId, mode);
+        if (OAuthTokenStore.getBackend().acquire(key, validMinDurationThreshold, false)) {
+            String accessToken = OAuthTokenStore.getActiveAccessToken(storageClientId, mode, validMinDurationThreshold);
+            if (accessToken == null) {
+                throw new IOException("No access token valid for " + validMinDurationThreshold +
+                        " seconds after acquiring one; the identity provider issues shorter-lived tokens");
+            }
+            return accessToken;
+        }
+
+        HostRefreshCoordinator coordinator = OAuthTokenStore.getHostCoordinator();
+        if (coordinator == null) {
+            return acquisition.acquire();
+        }
+
+        try (HostRefreshCoordinator.Lock lock = coordinator.lock(OAuthTokenStore.getLockKey(storageClientId, mode))) {
+            // Another process may have acquired the token while we waited for the lock
+            OAuthTokenStore.sync();
+            String accessToken = OAuthTokenStore.getActiveAccessToken(
+                    storageClientId,
+                    mode,
+                    validMinDurationThreshold
+            );
+            if (accessToken != null) {
+                return accessToken;
+            }
+
+            accessToken = acquisition.acquire();
+            if (lock.isHeld()) {
+                // Make the token visible to waiting processes before releasing the lock
+                OAuthTokenStore.flush();
+            }
+            return accessToken;
+        }
+    }
+
+    private String acquireToken() throws IOException {
         if (oauthFlowClient instanceof ClientCredentialsOauth) {
             return ((ClientCredentialsOauth) oauthFlowClient).generateOrRefreshToken();
         } else if (oauthFlowClient instanceof DeviceCodeOauth) {
-            return ((DeviceCodeOauth) oauthFlowClient).generateOrRefreshToken();
+            return ((DeviceCodeOauth) oauthFlowClient).generateOrRefreshToken(validMinDurationThreshold);
         } else if (oauthFlowClient instanceof AuthorizationCodeOauth) {
-            return ((AuthorizationCodeOauth) oauthFlowClient).generateOrRefreshToken();
+            return ((AuthorizationCodeOauth) oauthFlowClient).generateOrRefreshToken(validMinDurationThreshold);
         }
 
         throw new IllegalStateException("Unknown OAuth flow client type");
     }
+
+    private interface TokenAcquisition {
+        String acquire() throws IOException;
+    }
 }
@@ -0,0 +1,67 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.broker;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format shared by {@link TokenBroker} and {@link BrokerTokenBackend}.
+ * <p>
+ * A request is an opcode byte followed by its string arguments. A response is
+ * a status byte followed by one string: the value for {@link #STATUS_OK} or
+ * the error message for {@link #STATUS_ERROR}. Strings are a 4-byte length
+ * followed by UTF-8 bytes, with length -1 for null. {@link #OP_ACQUIRE}
+ * takes a key, a 4-byte minimum validity in seconds and a force byte.
+ */
+final class BrokerProtocol {
+    static final byte OP_GET = 1;
+    // 2 and 3 were writes, which the broker no longer accepts
+    static final byte OP_FLUSH = 4;
+    static final byte OP_SYNC = 5;
+    static final byte OP_ACQUIRE = 6;
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+
+    private static final int MAX_STRING_BYTES = 1 << 20;
+
+    private BrokerProtocol() {
+        // Utility class
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,153 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.broker;
+
+import io.trino.oauth2.utils.TokenStoreBackend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * Token storage that delegates to a {@link TokenBroker} over a Unix domain socket.
+ * <p>
+ * Install it with {@code OAuthTokenStore.setBackend(new BrokerTokenBackend(path))}
+ * and use {@code OAuth2Client} as usual. Only the token records of clients
+ * registered with the broker can be read, without their refresh tokens;
+ * other keys read as absent. Whenever an {@code OAuth2Client} would run its
+ * flow, including {@code forceRefresh()}, it has the broker acquire the token
+ * through {@link #acquire(String, int, boolean)} instead. Tokens are written
+ * only by the broker, so writes, such as {@code purge()} or creating a DPoP
+ * key, fail with {@link UnsupportedOperationException}. The connection is
+ * kept open and re-established once if it breaks.
+ */
+public class BrokerTokenBackend implements TokenStoreBackend, AutoCloseable {
+    private final Path socketPath;
+    private SocketChannel channel;
+    private DataInputStream in;
+    private DataOutputStream out;
+
+    public BrokerTokenBackend(Path socketPath) {
+        if (socketPath == null) {
+            throw new IllegalArgumentException("socketPath is required");
+        }
+        this.socketPath = socketPath;
+    }
+
+    @Override
+    public String get(String key) {
+        return call(BrokerProtocol.OP_GET, out -> BrokerProtocol.writeString(out, key));
+    }
+
+    @Override
+    public void put(String key, String value) {
+        throw new UnsupportedOperationException(
+                "Tokens are acquired, refreshed and stored by the token broker process, cannot write " + key);
+    }
+
+    @Override
+    public void remove(String key) {
+        throw new UnsupportedOperationException(
+                "Tokens are acquired, refreshed and stored by the token broker process, cannot remove " + key);
+    }
+
+    @Override
+    public void flush() {
+        call(BrokerProtocol.OP_FLUSH, null);
+    }
+
+    @Override
+    public void sync() {
+        call(BrokerProtocol.OP_SYNC, null);
+    }
+
+    /**
+     * Has the broker acquire the token of a registered client.
+     *
+     * @throws IllegalStateException If the key is not that of a registered client or the acquisition failed
+     */
+    @Override
+    public boolean acquire(String key, int minValidSeconds, boolean force) {
+        call(BrokerProtocol.OP_ACQUIRE, out -> {
+            BrokerProtocol.writeString(out, key);
+            out.writeInt(minValidSeconds);
+            out.writeBoolean(force);
+        });
+        return true;
+    }
+
+    @Override
+    public synchronized void close() {
+        disconnect();
+    }
+
+    private synchronized String call(byte op, Arguments arguments) {
+        try {
+            return send(op, arguments);
+        } catch (IOException e) {
+            // The broker may have restarted, retry once on a new connection
+            disconnect();
+            try {
+                return send(op, arguments);
+            } catch (IOException retryException) {
+                disconnect();
+                throw new UncheckedIOException("Token broker request failed on " + socketPath, retryException);
+            }
+        }
+    }
+
+    private String send(byte op, Arguments arguments) throws IOException {
+        if (channel == null) {
+            channel = UnixSockets.connect(socketPath);
+            in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        }
+
+        out.writeByte(op);
+        if (arguments != null) {
+            arguments.write(out);
+        }
+        out.flush();
+
+        byte status = in.readByte();
+        String result = BrokerProtocol.readString(in);
+        if (status != BrokerProtocol.STATUS_OK) {
+            // The request reached the broker, so this is not retried
+            throw new IllegalStateException("Token broker error: " + result);
+        }
+        return result;
+    }
+
+    private void disconnect() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing to recover
+            }
+        }
+        channel = null;
+        in = null;
+        out = null;
+    }
+
+    private interface Arguments {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,287 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.broker;
+
+import io.trino.oauth2.OAuth2Client;
+import io.trino.oauth2.models.OAuth2Config;
+import io.trino.oauth2.utils.OAuthTokenStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A long-lived process that owns OAuth2 sessions for a host and serves tokens
+ * to other processes over a Unix domain socket.
+ * <p>
+ * Clients registered with {@link #register(OAuth2Client)} are driven by the
+ * broker: a request for their token record first makes sure it holds an
+ * active access token, running the client's flow at most once at a time per
+ * client. Only these records are served, without their refresh tokens; other
+ * keys, such as DPoP keys, read as absent, and peers cannot write tokens.
+ * Peers whose own {@code OAuth2Client} needs a fresher token, or is forced
+ * to refresh, ask the broker to acquire it.
+ * <p>
+ * Where POSIX permissions are supported, the socket is bound in a new
+ * owner-only directory and restricted to the owner before it is moved to
+ * its path, so other users cannot connect at any point. A request that
+ * cannot be parsed closes its connection. Requires Java 16 or higher at
+ * runtime.
+ */
+public class TokenBroker implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TokenBroker.class);
+
+    private final Path socketPath;
+    private final Map<String, OAuth2Client> clients = new ConcurrentHashMap<>();
+    private final ExecutorService connectionExecutor;
+    private ServerSocketChannel serverChannel;
+    private Thread acceptThread;
+    private volatile boolean running;
+
+    public TokenBroker(Path socketPath) {
+        if (socketPath == null) {
+            throw new IllegalArgumentException("socketPath is required");
+        }
+        this.socketPath = socketPath;
+        this.connectionExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "oauth2-token-broker-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Registers a client whose tokens the broker acquires and refreshes.
+     */
+    public void register(OAuth2Client client) {
+        OAuth2Config config = client.getConfig();
+        String key = OAuthTokenStore.getTokenKey(client.getStorageClientId(), config.getClass().getSimpleName());
+        clients.put(key, client);
+    }
+
+    /**
+     * Binds the socket and starts serving requests.
+     *
+     * @throws IOException If the socket cannot be bound
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            throw new IllegalStateException("Token broker is already running");
+        }
+
+        // A socket file left by a previous broker prevents moving the new one into place
+        Files.deleteIfExists(socketPath);
+        serverChannel = bindOwnerOnly(socketPath);
+
+        running = true;
+        acceptThread = new Thread(this::acceptConnections, "oauth2-token-broker");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        logger.info("Token broker listening on {}", socketPath);
+    }
+
+    public Path getSocketPath() {
+        return socketPath;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        running = false;
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+        connectionExecutor.shutdownNow();
+        Files.deleteIfExists(socketPath);
+    }
+
+    /**
+     * Binds the socket in a new owner-only directory and moves it to its path
+     * once restricted to the owner, so no other user can connect in between.
+     */
+    private static ServerSocketChannel bindOwnerOnly(Path socketPath) throws IOException {
+        Path parent = socketPath.toAbsolutePath().getParent();
+        if (!parent.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            logger.debug("POSIX permissions not supported for {}", socketPath);
+            return UnixSockets.openServer(socketPath);
+        }
+
+        Path directory = Files.createTempDirectory(
+                parent,
+                ".oauth2-broker-",
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------"))
+        );
+        Path boundPath = directory.resolve("s");
+        try {
+            ServerSocketChannel channel = UnixSockets.openServer(boundPath);
+            try {
+                Files.setPosixFilePermissions(boundPath, PosixFilePermissions.fromString("rw-------"));
+                Files.move(boundPath, socketPath, StandardCopyOption.ATOMIC_MOVE);
+                return channel;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        } finally {
+            Files.deleteIfExists(boundPath);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private void acceptConnections() {
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                connectionExecutor.execute(() -> serve(channel));
+            } catch (AsynchronousCloseException e) {
+                return;
+            } catch (IOException e) {
+                if (running) {
+                    logger.warn("Token broker failed to accept connection", e);
+                }
+            }
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        try (channel) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+            while (running) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                handle(op, in, out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            logger.debug("Token broker connection closed", e);
+        }
+    }
+
+    /**
+     * Reads a request's arguments and answers it. Failing to read the request
+     * leaves the stream out of step, so that closes the connection; only
+     * failures of the request itself are reported to the peer.
+     */
+    private void handle(byte op, DataInputStream in, DataOutputStream out) throws IOException {
+        String key = null;
+        int minValidSeconds = 0;
+        boolean force = false;
+        switch (op) {
+            case BrokerProtocol.OP_GET:
+                key = BrokerProtocol.readString(in);
+                break;
+            case BrokerProtocol.OP_ACQUIRE:
+                key = BrokerProtocol.readString(in);
+                minValidSeconds = in.readInt();
+                force = in.readBoolean();
+                break;
+            case BrokerProtocol.OP_FLUSH:
+            case BrokerProtocol.OP_SYNC:
+                break;
+            default:
+                throw new IOException("Unknown token broker operation: " + op);
+        }
+
+        try {
+            String result = null;
+            if (op == BrokerProtocol.OP_GET) {
+                result = get(key);
+            } else if (op == BrokerProtocol.OP_ACQUIRE) {
+                acquire(key, minValidSeconds, force);
+            } else if (op == BrokerProtocol.OP_FLUSH) {
+                OAuthTokenStore.getBackend().flush();
+            } else {
+                OAuthTokenStore.getBackend().sync();
+            }
+            out.writeByte(BrokerProtocol.STATUS_OK);
+            BrokerProtocol.writeString(out, result);
+        } catch (IOException e) {
+            // The token acquisition failed, the connection is still in step
+            out.writeByte(BrokerProtocol.STATUS_ERROR);
+            BrokerProtocol.writeString(out, String.valueOf(e.getMessage()));
+        } catch (RuntimeException e) {
+            logger.warn("Token broker request failed", e);
+            out.writeByte(BrokerProtocol.STATUS_ERROR);
+            BrokerProtocol.writeString(out, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private String get(String key) throws IOException {
+        OAuth2Client client = key == null ? null : clients.get(key);
+        if (client == null) {
+            return null;
+        }
+
+        OAuth2Config config = client.getConfig();
+        String mode = config.getClass().getSimpleName();
+        String accessToken = OAuthTokenStore.getActiveAccessToken(
+                client.getStorageClientId(),
+                mode,
+                client.getValidMinDurationThreshold()
+        );
+        if (accessToken == null) {
+            // One acquisition per client at a time; waiters pick up the stored result
+            synchronized (client) {
+                client.token();
+            }
+        }
+        return OAuthTokenStore.getAccessTokenRecord(client.getStorageClientId(), mode);
+    }
+
+    /**
+     * Acquires a token for a peer that needs one valid for longer than the
+     * stored one, or that forces a refresh.
+     */
+    private void acquire(String key, int minValidSeconds, boolean force) throws IOException {
+        OAuth2Client client = key == null ? null : clients.get(key);
+        if (client == null) {
+            throw new IllegalArgumentException("Not the token record of a registered client: " + key);
+        }
+
+        String storageClientId = client.getStorageClientId();
+        String mode = client.getConfig().getClass().getSimpleName();
+        int threshold = Math.max(minValidSeconds, client.getValidMinDurationThreshold());
+        synchronized (client) {
+            if (force) {
+                client.forceRefresh();
+            }
+            if (OAuthTokenStore.getActiveAccessToken(storageClientId, mode, threshold) == null) {
+                // Still valid by the client's own threshold, so token() would return it
+                OAuthTokenStore.discardAccessToken(storageClientId, mode);
+                client.token();
+            }
+        }
+    }
+}
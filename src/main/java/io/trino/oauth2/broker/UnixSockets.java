@@ -0,0 +1,105 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.broker;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * Opens Unix domain socket channels.
+ * <p>
+ * The library targets Java 11, so the Java 16 Unix domain socket API is
+ * looked up reflectively and unsupported runtimes fail with
+ * {@link UnsupportedOperationException}.
+ */
+final class UnixSockets {
+    private UnixSockets() {
+        // Utility class
+    }
+
+    static boolean isSupported() {
+        try {
+            Class.forName("java.net.UnixDomainSocketAddress");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    static ServerSocketChannel openServer(Path socketPath) throws IOException {
+        ServerSocketChannel channel = (ServerSocketChannel) invokeOpen(ServerSocketChannel.class);
+        try {
+            channel.bind(address(socketPath));
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static SocketChannel connect(Path socketPath) throws IOException {
+        SocketChannel channel = (SocketChannel) invokeOpen(SocketChannel.class);
+        try {
+            channel.connect(address(socketPath));
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static Object invokeOpen(Class<?> channelType) throws IOException {
+        try {
+            ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+            Method open = channelType.getMethod("open", ProtocolFamily.class);
+            return open.invoke(null, unix);
+        } catch (IllegalArgumentException | NoSuchMethodException | IllegalAccessException e) {
+            throw unsupported(e);
+        } catch (InvocationTargetException e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static SocketAddress address(Path socketPath) throws IOException {
+        try {
+            Class<?> addressType = Class.forName("java.net.UnixDomainSocketAddress");
+            return (SocketAddress) addressType.getMethod("of", Path.class).invoke(null, socketPath);
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+            throw unsupported(e);
+        } catch (InvocationTargetException e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static UnsupportedOperationException unsupported(Exception cause) {
+        return new UnsupportedOperationException("Unix domain sockets require Java 16 or higher", cause);
+    }
+
+    private static IOException rethrow(InvocationTargetException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        return new IOException(cause);
+    }
+}
@@ -31,4 +31,59 @@ public final class Constants {
      * LOCALHOST_REDIRECT_URI must not be changed as credential configs depend on it
      */
     public static final String LOCALHOST_REDIRECT_URI = "http://localhost:61234/auth/token.callback";
+
+    /**
+     * Default maximum number of exchanged tokens cached per token exchange client
+     */
+    public static final int TOKEN_EXCHANGE_CACHE_SIZE = 10_000;
+
+    /**
+     * RFC 8693 token type identifier of an OAuth 2.0 access token
+     */
+    public static final String ACCESS_TOKEN_TYPE = "urn:ietf:params:oauth:token-type:access_token";
+
+    /**
+     * RFC 7523 client assertion type of a JWT used for client authentication
+     */
+    public static final String JWT_BEARER_ASSERTION_TYPE = "urn:ietf:params:oauth:client-assertion-type:jwt-bearer";
+
+    /**
+     * Default lifetime of a signed client assertion (seconds)
+     */
+    public static final int CLIENT_ASSERTION_LIFETIME = 300;
+
+    /**
+     * Default duration a signed client assertion is reused for (seconds)
+     */
+    public static final int CLIENT_ASSERTION_REUSE_WINDOW = 60;
+
+    /**
+     * Device code polling interval when the server does not specify one (seconds)
+     */
+    public static final int DEVICE_CODE_POLL_INTERVAL = 5;
+
+    /**
+     * Increase of the device code polling interval on a slow_down error (seconds)
+     */
+    public static final int DEVICE_CODE_SLOW_DOWN_INCREMENT = 5;
+
+    /**
+     * Device code lifetime assumed when the server does not report one (seconds)
+     */
+    public static final int DEVICE_CODE_EXPIRES_IN = 600;
+
+    /**
+     * Time to wait for the browser to be redirected to a loopback redirect URI (seconds)
+     */
+    public static final int LOOPBACK_REDIRECT_TIMEOUT = 300;
+
+    /**
+     * Time a server-side login may take between its start and its callback (seconds)
+     */
+    public static final int PENDING_LOGIN_TIMEOUT = 600;
+
+    /**
+     * Maximum number of server-side logins awaiting their callback per client
+     */
+    public static final int PENDING_LOGIN_CAPACITY = 100_000;
 }
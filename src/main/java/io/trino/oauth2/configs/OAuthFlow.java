@@ -15,7 +15,8 @@ package io.trino.oauth2.configs;
 public enum OAuthFlow {
     CLIENT_CREDENTIALS("client_credentials"),
     DEVICE_CODE("urn:ietf:params:oauth:grant-type:device_code"),
-    AUTH_CODE_PKCE("authorization_code");
+    AUTH_CODE_PKCE("authorization_code"),
+    TOKEN_EXCHANGE("urn:ietf:params:oauth:grant-type:token-exchange");
 
     private final String grantType;
 
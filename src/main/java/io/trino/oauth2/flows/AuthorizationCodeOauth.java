@@ -16,11 +16,18 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.trino.oauth2.configs.Constants;
 import io.trino.oauth2.configs.OAuthFlow;
+import io.trino.oauth2.jfr.TokenRequestInterceptor;
 import io.trino.oauth2.models.AuthorizationCodeConfig;
 import io.trino.oauth2.models.ManualUrlsConfig;
 import io.trino.oauth2.models.OidcConfig;
+import io.trino.oauth2.utils.ClockSkewInterceptor;
+import io.trino.oauth2.utils.DpopInterceptor;
+import io.trino.oauth2.utils.MutualTlsHelper;
 import io.trino.oauth2.utils.OAuthTokenStore;
 import io.trino.oauth2.utils.ProxyHelper;
+import io.trino.oauth2.utils.TokenMetadata;
+import io.trino.oauth2.utils.TokenPair;
+import io.trino.oauth2.utils.TokenResponseHelper;
 import io.trino.oauth2.utils.UrlHelpers;
 import okhttp3.*;
 import org.slf4j.Logger;
@@ -36,28 +43,56 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Base64;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * This class contains functions related to authorization code flow.
+ * <p>
+ * Besides the interactive flow behind {@link #generateOrRefreshToken()}, an
+ * instance can serve logins for many users at once, such as from a web
+ * application: {@link #beginLogin()} creates the authorization URL for one
+ * login and {@link #completeLogin(String, String)} exchanges the code from
+ * its callback. The state and PKCE verifier of each pending login are kept
+ * in a bounded map until the callback or until they expire.
  */
 public class AuthorizationCodeOauth {
     private static final Logger logger = LoggerFactory.getLogger(AuthorizationCodeOauth.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
-    private static final SecureRandom secureRandom = new SecureRandom();
+
+    // A generator per thread, so concurrent logins do not contend on one instance's lock
+    private static final ThreadLocal<SecureRandom> secureRandom = ThreadLocal.withInitial(() -> {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    });
 
     private final AuthorizationCodeConfig config;
     private final String proxyUrl;
+    private final String storageClientId;
     private final OkHttpClient httpClient;
     private final String state;
-    private String codeVerifier;
+    private final Map<String, PendingLogin> pendingLogins = new ConcurrentHashMap<>();
+    /**
+     * Pending logins in start order, which is expiry order as all share one timeout.
+     * Completed logins stay queued until they expire.
+     */
+    private final Queue<PendingLogin> pendingLoginOrder = new ConcurrentLinkedQueue<>();
 
     public AuthorizationCodeOauth(AuthorizationCodeConfig config, String proxyUrl) {
         this.config = config;
         this.proxyUrl = proxyUrl;
+        this.storageClientId = OAuthTokenStore.getStorageClientId(config);
         this.state = config.getState() != null ? config.getState() : generateSecureToken(16);
 
         if (!(config.getUrlConfig() instanceof OidcConfig) &&
@@ -70,15 +105,24 @@ public class AuthorizationCodeOauth {
 
         OkHttpClient.Builder builder = new OkHttpClient.Builder()
                 .connectTimeout(Constants.REQUEST_TIMEOUT, TimeUnit.SECONDS)
-                .readTimeout(Constants.REQUEST_TIMEOUT, TimeUnit.SECONDS);
+                .readTimeout(Constants.REQUEST_TIMEOUT, TimeUnit.SECONDS)
+                .addInterceptor(new TokenRequestInterceptor(storageClientId, config.getClass().getSimpleName()))
+                .addInterceptor(ClockSkewInterceptor.INSTANCE);
 
         ProxyHelper.configureProxy(builder, proxyUrl);
+        MutualTlsHelper.configureMutualTls(builder, config.getMutualTls());
+        if (config.isDpop()) {
+            builder.addInterceptor(new DpopInterceptor(
+                    storageClientId,
+                    config.getClass().getSimpleName()
+            ));
+        }
         this.httpClient = builder.build();
     }
 
     private static String generateSecureToken(int length) {
         byte[] bytes = new byte[length];
-        secureRandom.nextBytes(bytes);
+        secureRandom.get().nextBytes(bytes);
         return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
     }
 
@@ -110,44 +154,24 @@ public class AuthorizationCodeOauth {
     }
 
     public String generateOrRefreshToken() throws IOException {
-        try {
-            return RefreshToken.refresh(
-                    config,
-                    getTokenEndpoint(),
-                    proxyUrl
-            );
-        } catch (Exception e) {
-            logger.debug(
-                    "Failed to update the access token. " +
-                            "A new access token must be obtained before API calls can succeed. " +
-                            "Error: {}", e.getMessage()
-            );
-            OAuthTokenStore.purgeTokens(config.getClientId(), config.getClass().getSimpleName());
-            return fetchAndStoreAccessToken();
-        }
+        return generateOrRefreshToken(Constants.VALID_MIN_DURATION_THRESHOLD);
     }
 
-    private String fetchAndStoreAccessToken() throws IOException {
-        String accessToken = OAuthTokenStore.getActiveAccessToken(
-                config.getClientId(),
-                config.getClass().getSimpleName()
+    /**
+     * Returns the stored access token if it is valid for long enough, and
+     * otherwise refreshes it or, without a usable refresh token, logs in.
+     *
+     * @param validMinDurationThreshold How long a stored access token must remain valid to be used (seconds)
+     */
+    public String generateOrRefreshToken(int validMinDurationThreshold) throws IOException {
+        return UserTokenAcquisition.acquire(
+                config,
+                validMinDurationThreshold,
+                proxyUrl,
+                storageClientId,
+                this::getTokenEndpoint,
+                this::startAuthorizationFlow
         );
-        if (accessToken != null) {
-            logger.debug("Skipping auth. Using token in local storage.");
-            return accessToken;
-        }
-
-        startAuthorizationFlow();
-
-        accessToken = OAuthTokenStore.getActiveAccessToken(
-                config.getClientId(),
-                config.getClass().getSimpleName()
-        );
-        if (accessToken == null) {
-            throw new RuntimeException("Failed to retrieve access token");
-        }
-
-        return accessToken;
     }
 
     private PkceChallenge generatePkceChallenge() {
@@ -162,14 +186,89 @@ public class AuthorizationCodeOauth {
         }
     }
 
-    private void startAuthorizationFlow() throws IOException {
+    /**
+     * Starts a login for one user, without waiting for it to complete. The
+     * caller sends the user to the returned authorization URL and passes the
+     * state and code of the callback to {@link #completeLogin(String, String)}.
+     * Each login has its own state and PKCE verifier; a state configured on
+     * the config is not used here.
+     *
+     * @return The authorization URL and the login's state
+     * @throws IOException If the authorization endpoint cannot be discovered
+     */
+    public AuthorizationRequest beginLogin() throws IOException {
+        String loginState = generateSecureToken(32);
+        PkceChallenge pkce = config.isUsePkce() ? generatePkceChallenge() : null;
+        String authorizationUrl = buildAuthorizationUrl(loginState, pkce);
+
+        long expiresAtNanos = OAuthTokenStore.getTimeSource().nanoTime() +
+                TimeUnit.SECONDS.toNanos(Constants.PENDING_LOGIN_TIMEOUT);
+        PendingLogin login = new PendingLogin(loginState, pkce == null ? null : pkce.verifier, expiresAtNanos);
+        pendingLogins.put(loginState, login);
+        pendingLoginOrder.add(login);
+        removeStaleLogins();
+        return new AuthorizationRequest(authorizationUrl, loginState);
+    }
+
+    /**
+     * Completes a login started with {@link #beginLogin()} by exchanging the
+     * code from its callback. Each state can be completed once. The tokens
+     * belong to the user who logged in and are returned rather than stored.
+     *
+     * @param loginState The {@code state} parameter of the callback
+     * @param code       The {@code code} parameter of the callback
+     * @return The tokens issued for the login
+     * @throws IllegalArgumentException If the state is unknown, already used or expired
+     * @throws IOException              If the token endpoint cannot be reached
+     */
+    public TokenPair completeLogin(String loginState, String code) throws IOException {
+        PendingLogin login = loginState == null ? null : pendingLogins.remove(loginState);
+        if (login == null || login.expiresAtNanos - OAuthTokenStore.getTimeSource().nanoTime() <= 0) {
+            throw new IllegalArgumentException("Unknown or expired login state");
+        }
+        if (code == null || code.isEmpty()) {
+            throw new IllegalArgumentException("code is required");
+        }
+
+        TokenPair tokens = requestToken(code, login.codeVerifier);
+        if (tokens == null) {
+            throw new RuntimeException("No token data was received via authorization flow.");
+        }
+        return tokens;
+    }
+
+    /**
+     * The number of logins started and neither completed nor evicted.
+     */
+    public int getPendingLoginCount() {
+        removeStaleLogins();
+        return pendingLogins.size();
+    }
+
+    /**
+     * Drops expired logins, then the oldest ones while more than
+     * {@link Constants#PENDING_LOGIN_CAPACITY} are pending.
+     */
+    private void removeStaleLogins() {
+        long now = OAuthTokenStore.getTimeSource().nanoTime();
+        PendingLogin oldest;
+        while ((oldest = pendingLoginOrder.peek()) != null &&
+                (oldest.expiresAtNanos - now <= 0 || pendingLogins.size() > Constants.PENDING_LOGIN_CAPACITY)) {
+            // Only the thread that dequeues the login drops it
+            if (pendingLoginOrder.remove(oldest)) {
+                pendingLogins.remove(oldest.state, oldest);
+            }
+        }
+    }
+
+    private String buildAuthorizationUrl(String loginState, PkceChallenge pkce) throws IOException {
         String authEndpoint = getAuthorizationEndpoint();
 
         StringBuilder params = new StringBuilder();
         params.append("client_id=").append(URLEncoder.encode(config.getClientId(), StandardCharsets.UTF_8));
         params.append("&response_type=code");
         params.append("&redirect_uri=").append(URLEncoder.encode(config.getRedirectUri(), StandardCharsets.UTF_8));
-        params.append("&state=").append(URLEncoder.encode(state, StandardCharsets.UTF_8));
+        params.append("&state=").append(URLEncoder.encode(loginState, StandardCharsets.UTF_8));
 
         if (config.getScope() != null) {
             params.append("&scope=").append(URLEncoder.encode(config.getScope(), StandardCharsets.UTF_8));
@@ -181,44 +280,105 @@ public class AuthorizationCodeOauth {
             }
         }
 
-        if (config.isUsePkce()) {
-            PkceChallenge pkce = generatePkceChallenge();
-            this.codeVerifier = pkce.verifier;
+        if (pkce != null) {
             params.append("&code_challenge=").append(URLEncoder.encode(pkce.challenge, StandardCharsets.UTF_8));
             params.append("&code_challenge_method=S256");
         }
 
-        String authorizationUrl = authEndpoint + "?" + params;
+        return authEndpoint + "?" + params;
+    }
+
+    private void startAuthorizationFlow() throws IOException {
+        PkceChallenge pkce = config.isUsePkce() ? generatePkceChallenge() : null;
+        String authorizationUrl = buildAuthorizationUrl(state, pkce);
 
         String authCode;
         if (config.getAutomationCallback() != null) {
             String finalRedirectUrl = config.getAutomationCallback().apply(authorizationUrl);
             authCode = extractCodeFromInput(finalRedirectUrl);
         } else {
-            openLoginWindow(authorizationUrl);
-
-            String promptMsg = "\nStandard Authorization Code Flow:\n" +
-                    "1. The browser should have opened to the login page.\n" +
-                    "2. Please log in and authorize the application.\n" +
-                    "3. You will be redirected to a URL containing a 'code' parameter.\n" +
-                    "4. Copy the value of the 'code' parameter (or the full URL) " +
-                    "and paste it below.\n\n" +
-                    "Enter Authorization Code: ";
-
-            try {
-                BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
-                System.out.print(promptMsg);
-                String userInput = reader.readLine();
-                authCode = extractCodeFromInput(userInput);
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to read user input", e);
+            authCode = receiveRedirect(authorizationUrl);
+            if (authCode == null) {
+                authCode = promptForCode(authorizationUrl);
             }
         }
 
-        boolean tokenStored = exchangeCodeForToken(authCode);
-        if (!tokenStored) {
+        TokenPair tokens = requestToken(authCode, pkce == null ? null : pkce.verifier);
+        if (tokens == null) {
             throw new RuntimeException("No token data was received via authorization flow.");
         }
+        OAuthTokenStore.setAccessAndRefreshTokens(
+                storageClientId,
+                config.getClass().getSimpleName(),
+                tokens.getAccessToken(),
+                tokens.getRefreshToken(),
+                tokens.getMetadata(),
+                false
+        );
+    }
+
+    private String promptForCode(String authorizationUrl) {
+        openLoginWindow(authorizationUrl);
+
+        String promptMsg = "\nStandard Authorization Code Flow:\n" +
+                "1. The browser should have opened to the login page. If it did not, open this URL:\n" +
+                "   " + authorizationUrl + "\n" +
+                "2. Please log in and authorize the application.\n" +
+                "3. You will be redirected to a URL containing a 'code' parameter.\n" +
+                "4. Copy the value of the 'code' parameter (or the full URL) " +
+                "and paste it below.\n\n" +
+                "Enter Authorization Code: ";
+
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+            System.out.print(promptMsg);
+            String userInput = reader.readLine();
+            return extractCodeFromInput(userInput);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read user input", e);
+        }
+    }
+
+    /**
+     * Opens the login page and receives the redirect on a loopback redirect
+     * URI, so the code is exchanged as soon as the user has logged in.
+     *
+     * @return The authorization code, or null if the redirect URI is not a
+     * loopback URI, there is no desktop browser to send the redirect to it,
+     * its port cannot be bound or no redirect arrived in time, in which case
+     * the user pastes the code
+     */
+    private String receiveRedirect(String authorizationUrl) throws IOException {
+        if (!LoopbackRedirectListener.isLoopback(config.getRedirectUri())) {
+            return null;
+        }
+        if (!isBrowserAvailable()) {
+            // Headless or remote session: a browser elsewhere cannot reach the listener
+            return null;
+        }
+
+        LoopbackRedirectListener listener;
+        try {
+            listener = LoopbackRedirectListener.start(config.getRedirectUri(), state);
+        } catch (IOException e) {
+            logger.warn("Cannot listen on {}, the authorization code must be entered manually: {}",
+                    config.getRedirectUri(), e.getMessage());
+            return null;
+        }
+
+        try (listener) {
+            openLoginWindow(authorizationUrl);
+            System.out.println("\nStandard Authorization Code Flow:\n" +
+                    "The browser should have opened to the login page. If it did not, open this URL:\n" +
+                    authorizationUrl + "\n" +
+                    "Waiting for the authorization to complete...");
+            String code = listener.awaitCode(Duration.ofSeconds(Constants.LOOPBACK_REDIRECT_TIMEOUT));
+            if (code == null) {
+                logger.warn("No redirect reached {}, the authorization code must be entered manually",
+                        config.getRedirectUri());
+            }
+            return code;
+        }
     }
 
     private String extractCodeFromInput(String userInput) {
@@ -234,7 +394,7 @@ public class AuthorizationCodeOauth {
 
     private void openLoginWindow(String url) {
         try {
-            if (Desktop.isDesktopSupported() && Desktop.getDesktop().isSupported(Desktop.Action.BROWSE)) {
+            if (isBrowserAvailable()) {
                 Desktop.getDesktop().browse(URI.create(url));
             }
         } catch (Exception e) {
@@ -242,7 +402,20 @@ public class AuthorizationCodeOauth {
         }
     }
 
-    private boolean exchangeCodeForToken(String code) throws IOException {
+    private static boolean isBrowserAvailable() {
+        try {
+            return Desktop.isDesktopSupported() && Desktop.getDesktop().isSupported(Desktop.Action.BROWSE);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Exchanges an authorization code for tokens.
+     *
+     * @return The tokens, or null if the response held no access token
+     */
+    private TokenPair requestToken(String code, String codeVerifier) throws IOException {
         String getTokenUrl = getTokenEndpoint();
 
         FormBody.Builder formBuilder = new FormBody.Builder()
@@ -251,9 +424,13 @@ public class AuthorizationCodeOauth {
                 .add("code", code)
                 .add("redirect_uri", config.getRedirectUri());
 
-        if (config.getClientSecret() != null) {
-            formBuilder.add("client_secret", config.getClientSecret());
-        }
+        ClientAuthentication.addCredentials(
+                formBuilder,
+                config.getClientId(),
+                config.getClientSecret(),
+                config.getPrivateKeyJwt(),
+                getTokenUrl
+        );
 
         if (codeVerifier != null) {
             formBuilder.add("code_verifier", codeVerifier);
@@ -265,6 +442,7 @@ public class AuthorizationCodeOauth {
                 .header("Content-Type", "application/x-www-form-urlencoded")
                 .build();
 
+        Instant requestSentAt = OAuthTokenStore.getTimeSource().now();
         try (Response response = httpClient.newCall(request).execute()) {
             if (!response.isSuccessful()) {
                 String errorBody = response.body().string();
@@ -282,17 +460,29 @@ public class AuthorizationCodeOauth {
                 String refreshToken = responseJson.has("refresh_token") ?
                         responseJson.get("refresh_token").asText() : null;
 
-                OAuthTokenStore.setAccessAndRefreshTokens(
-                        config.getClientId(),
-                        config.getClass().getSimpleName(),
-                        accessToken,
-                        refreshToken
+                TokenMetadata metadata = TokenResponseHelper.getMetadata(
+                        responseJson,
+                        response.request().url().host(),
+                        requestSentAt,
+                        config.getScope()
                 );
 
-                return true;
+                return new TokenPair(accessToken, refreshToken, metadata, 0);
             }
 
-            return false;
+            return null;
+        }
+    }
+
+    private static final class PendingLogin {
+        final String state;
+        final String codeVerifier;
+        final long expiresAtNanos;
+
+        PendingLogin(String state, String codeVerifier, long expiresAtNanos) {
+            this.state = state;
+            this.codeVerifier = codeVerifier;
+            this.expiresAtNanos = expiresAtNanos;
         }
     }
 
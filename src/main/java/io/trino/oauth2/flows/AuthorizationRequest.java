@@ -0,0 +1,39 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.flows;
+
+/**
+ * A login started on the server side: where to send the user, and the state
+ * that identifies the login when its callback arrives.
+ */
+public class AuthorizationRequest {
+    private final String authorizationUrl;
+    private final String state;
+
+    AuthorizationRequest(String authorizationUrl, String state) {
+        this.authorizationUrl = authorizationUrl;
+        this.state = state;
+    }
+
+    public String getAuthorizationUrl() {
+        return authorizationUrl;
+    }
+
+    /**
+     * The state sent with the authorization request. Binding it to the
+     * user's session lets the callback be checked against that session.
+     */
+    public String getState() {
+        return state;
+    }
+}
@@ -0,0 +1,51 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.flows;
+
+import io.trino.oauth2.configs.Constants;
+import io.trino.oauth2.models.PrivateKeyJwtConfig;
+import io.trino.oauth2.utils.ClientAssertionProvider;
+import okhttp3.FormBody;
+
+/**
+ * Adds the client's credentials to requests made to the authorization server.
+ */
+final class ClientAuthentication {
+    private ClientAuthentication() {
+        // Utility class
+    }
+
+    /**
+     * Adds a signed client assertion if {@code privateKeyJwt} is set, or the
+     * client secret if there is one. The caller adds {@code client_id}.
+     *
+     * @param endpoint The URL the request is sent to, used as the assertion audience
+     */
+    static void addCredentials(
+            FormBody.Builder formBuilder,
+            String clientId,
+            String clientSecret,
+            PrivateKeyJwtConfig privateKeyJwt,
+            String endpoint
+    ) {
+        if (privateKeyJwt != null) {
+            formBuilder.add("client_assertion_type", Constants.JWT_BEARER_ASSERTION_TYPE);
+            formBuilder.add(
+                    "client_assertion",
+                    ClientAssertionProvider.forConfig(privateKeyJwt).getAssertion(clientId, endpoint)
+            );
+        } else if (clientSecret != null) {
+            formBuilder.add("client_secret", clientSecret);
+        }
+    }
+}
@@ -16,15 +16,28 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.trino.oauth2.configs.Constants;
 import io.trino.oauth2.configs.OAuthFlow;
+import io.trino.oauth2.jfr.TokenRequestInterceptor;
 import io.trino.oauth2.models.ClientCredentialsConfig;
 import io.trino.oauth2.models.ManualUrlsConfig;
 import io.trino.oauth2.models.OidcConfig;
+import io.trino.oauth2.utils.ClockSkewInterceptor;
+import io.trino.oauth2.utils.DpopInterceptor;
+import io.trino.oauth2.utils.MutualTlsHelper;
 import io.trino.oauth2.utils.OAuthTokenStore;
 import io.trino.oauth2.utils.ProxyHelper;
+import io.trino.oauth2.utils.TokenMetadata;
+import io.trino.oauth2.utils.TokenPair;
+import io.trino.oauth2.utils.TokenResponseHelper;
 import io.trino.oauth2.utils.UrlHelpers;
 import okhttp3.*;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -36,11 +49,16 @@ public class ClientCredentialsOauth {
 
     private final ClientCredentialsConfig config;
     private final String proxyUrl;
+    private final String storageClientId;
+    private final String scopeFamilyId;
     private final OkHttpClient httpClient;
+    private final Map<String, CompletableFuture<String>> audienceRequests = new ConcurrentHashMap<>();
 
     public ClientCredentialsOauth(ClientCredentialsConfig config, String proxyUrl) {
         this.config = config;
         this.proxyUrl = proxyUrl;
+        this.storageClientId = OAuthTokenStore.getStorageClientId(config);
+        this.scopeFamilyId = config.isReuseBroaderScopes() ? OAuthTokenStore.getScopeFamilyId(config) : null;
 
         if (!(config.getUrlConfig() instanceof OidcConfig) &&
                 !(config.getUrlConfig() instanceof ManualUrlsConfig)) {
@@ -52,16 +70,110 @@ public class ClientCredentialsOauth {
 
         OkHttpClient.Builder builder = new OkHttpClient.Builder()
                 .connectTimeout(Constants.REQUEST_TIMEOUT, TimeUnit.SECONDS)
-                .readTimeout(Constants.REQUEST_TIMEOUT, TimeUnit.SECONDS);
+                .readTimeout(Constants.REQUEST_TIMEOUT, TimeUnit.SECONDS)
+                .addInterceptor(new TokenRequestInterceptor(storageClientId, config.getClass().getSimpleName()))
+                .addInterceptor(ClockSkewInterceptor.INSTANCE);
 
         ProxyHelper.configureProxy(builder, proxyUrl);
+        MutualTlsHelper.configureMutualTls(builder, config.getMutualTls());
+        if (config.isDpop()) {
+            builder.addInterceptor(new DpopInterceptor(
+                    storageClientId,
+                    config.getClass().getSimpleName()
+            ));
+        }
         this.httpClient = builder.build();
+
+        if (config.isTokenPerAudience()) {
+            // Let every audience's request run at once against the token endpoint
+            Dispatcher dispatcher = httpClient.dispatcher();
+            dispatcher.setMaxRequestsPerHost(Math.max(dispatcher.getMaxRequestsPerHost(), config.getAudience().size()));
+        }
     }
 
     public String generateOrRefreshToken() throws IOException {
         return fetchAndStoreAccessToken();
     }
 
+    /**
+     * For configs with {@link ClientCredentialsConfig#isReuseBroaderScopes()}
+     * set, finds the live token covering this config's scopes with the
+     * longest remaining lifetime, which may be this config's own.
+     *
+     * @return The access token, or null if none qualifies or the config does not reuse tokens
+     */
+    public String findBroaderToken(int validMinDurationThreshold) {
+        if (scopeFamilyId == null) {
+            return null;
+        }
+        return OAuthTokenStore.getScopeTokenIndex().find(
+                scopeFamilyId,
+                config.getClass().getSimpleName(),
+                config.getScope(),
+                validMinDurationThreshold
+        );
+    }
+
+    /**
+     * Gets a token for one audience of a config with
+     * {@link ClientCredentialsConfig#isTokenPerAudience()} set, from cache or
+     * from the token endpoint. Concurrent requests for the same audience share
+     * one token request.
+     */
+    public String generateOrRefreshToken(String audience) throws IOException {
+        String accessToken = OAuthTokenStore.getActiveAccessToken(
+                OAuthTokenStore.getAudienceClientId(storageClientId, audience),
+                config.getClass().getSimpleName()
+        );
+        if (accessToken != null) {
+            return accessToken;
+        }
+        return TokenRequests.await(fetchAudienceToken(audience));
+    }
+
+    /**
+     * Requests a token for one audience without blocking. The request runs on
+     * the shared HTTP client, so requests for several audiences proceed
+     * concurrently over its connection pool.
+     *
+     * @return A future completed with the stored access token
+     */
+    public CompletableFuture<String> fetchAudienceToken(String audience) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> inFlight = audienceRequests.putIfAbsent(audience, future);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        future.whenComplete((token, e) -> audienceRequests.remove(audience, future));
+
+        Request request;
+        try {
+            request = buildTokenRequest(Collections.singletonList(audience), config.getScope());
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        String audienceClientId = OAuthTokenStore.getAudienceClientId(storageClientId, audience);
+        Instant requestSentAt = OAuthTokenStore.getTimeSource().now();
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    future.complete(storeTokenResponse(response, requestSentAt, audienceClientId));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
     private String getTokenEndpoint() throws IOException {
         if (config.getUrlConfig() instanceof OidcConfig) {
             OidcConfig oidcConfig = (OidcConfig) config.getUrlConfig();
@@ -74,55 +186,200 @@ public class ClientCredentialsOauth {
     }
 
     private String fetchAndStoreAccessToken() throws IOException {
-        String accessToken = OAuthTokenStore.getActiveAccessToken(
-                config.getClientId(),
+        String accessToken = findBroaderToken(Constants.VALID_MIN_DURATION_THRESHOLD);
+        if (accessToken != null) {
+            return accessToken;
+        }
+        accessToken = OAuthTokenStore.getActiveAccessToken(
+                storageClientId,
                 config.getClass().getSimpleName()
         );
         if (accessToken != null) {
+            // Stored by an earlier process, so not yet indexed
+            indexStoredToken();
             return accessToken;
         }
+        return requestAccessToken();
+    }
+
+    /**
+     * Requests a new token from the token endpoint and stores it, without
+     * looking for a stored or broader-scope token first.
+     *
+     * @return The new access token
+     */
+    public String requestAccessToken() throws IOException {
+        if (config.getScopeBatchWindow() != null) {
+            return TokenRequests.await(ScopeRequestBatcher.getShared().submit(this));
+        }
+
+        Request request = buildTokenRequest(config.getAudience(), config.getScope());
+
+        Instant requestSentAt = OAuthTokenStore.getTimeSource().now();
+        try (Response response = httpClient.newCall(request).execute()) {
+            return storeTokenResponse(response, requestSentAt, storageClientId);
+        }
+    }
 
+    private Request buildTokenRequest(List<String> audiences, String scope) throws IOException {
         String serverModeUrl = getTokenEndpoint();
         FormBody.Builder formBuilder = new FormBody.Builder()
                 .add("client_id", config.getClientId())
-                .add("client_secret", config.getClientSecret())
                 .add("grant_type", OAuthFlow.CLIENT_CREDENTIALS.getGrantType());
 
-        if (config.getScope() != null) {
-            formBuilder.add("scope", config.getScope());
+        ClientAuthentication.addCredentials(
+                formBuilder,
+                config.getClientId(),
+                config.getClientSecret(),
+                config.getPrivateKeyJwt(),
+                serverModeUrl
+        );
+
+        if (scope != null) {
+            formBuilder.add("scope", scope);
         }
 
-        if (config.getAudience() != null) {
-            for (String aud : config.getAudience()) {
+        if (audiences != null) {
+            for (String aud : audiences) {
                 formBuilder.add("audience", aud);
             }
         }
 
         RequestBody formBody = formBuilder.build();
 
-        Request request = new Request.Builder()
+        return new Request.Builder()
                 .url(serverModeUrl)
                 .post(formBody)
                 .build();
+    }
 
-        try (Response response = httpClient.newCall(request).execute()) {
-            String responseBody = response.body().string();
-            JsonNode responseJson = objectMapper.readTree(responseBody);
+    /**
+     * Requests a token for a scope other than the config's without blocking,
+     * for {@link ScopeRequestBatcher}. The token is not stored.
+     *
+     * @return A future completed with the successful token response
+     */
+    CompletableFuture<ScopedTokenResponse> requestScopedToken(String scope) {
+        CompletableFuture<ScopedTokenResponse> future = new CompletableFuture<>();
+        Request request;
+        try {
+            request = buildTokenRequest(config.getAudience(), scope);
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        Instant requestSentAt = OAuthTokenStore.getTimeSource().now();
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
+            }
 
-            if (responseJson.has("error")) {
-                throw new RuntimeException(
-                        "Failed to generate server mode access token: " + responseJson.toString()
-                );
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    future.complete(new ScopedTokenResponse(
+                            parseTokenResponse(response), response.request().url().host(), requestSentAt, scope));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
             }
+        });
+        return future;
+    }
+
+    /**
+     * Stores a token from {@link #requestScopedToken(String)} as this config's token.
+     *
+     * @return The access token
+     */
+    String storeScopedToken(ScopedTokenResponse response) {
+        return storeToken(response.json, response.serverHost, response.requestSentAt, response.requestedScope, storageClientId);
+    }
+
+    ClientCredentialsConfig getConfig() {
+        return config;
+    }
+
+    String getScopeFamilyId() {
+        return scopeFamilyId;
+    }
+
+    private String storeTokenResponse(Response response, Instant requestSentAt, String storageClientId)
+            throws IOException {
+        return storeToken(
+                parseTokenResponse(response), response.request().url().host(), requestSentAt, config.getScope(), storageClientId);
+    }
+
+    private static JsonNode parseTokenResponse(Response response) throws IOException {
+        String responseBody = response.body().string();
+        JsonNode responseJson = objectMapper.readTree(responseBody);
 
-            accessToken = responseJson.get("access_token").asText();
-            OAuthTokenStore.setAccessToken(
-                    config.getClientId(),
-                    config.getClass().getSimpleName(),
-                    accessToken
+        if (responseJson.has("error")) {
+            throw new RuntimeException(
+                    "Failed to generate server mode access token: " + responseJson.toString()
             );
+        }
+        return responseJson;
+    }
 
-            return accessToken;
+    private String storeToken(
+            JsonNode responseJson, String serverHost, Instant requestSentAt, String requestedScope, String storageClientId) {
+        String accessToken = responseJson.get("access_token").asText();
+        TokenMetadata metadata = TokenResponseHelper.getMetadata(responseJson, serverHost, requestSentAt, requestedScope);
+
+        OAuthTokenStore.setAccessToken(
+                storageClientId,
+                config.getClass().getSimpleName(),
+                accessToken,
+                metadata,
+                false
+        );
+        if (scopeFamilyId != null) {
+            OAuthTokenStore.getScopeTokenIndex().add(scopeFamilyId, storageClientId, metadata.getScope());
+        }
+
+        return accessToken;
+    }
+
+    private void indexStoredToken() {
+        if (scopeFamilyId == null) {
+            return;
+        }
+        TokenPair pair = OAuthTokenStore.getTokenPair(storageClientId, config.getClass().getSimpleName());
+        if (pair != null) {
+            String grantedScope = pair.getMetadata().getScope();
+            OAuthTokenStore.getScopeTokenIndex().add(
+                    scopeFamilyId,
+                    storageClientId,
+                    grantedScope != null ? grantedScope : config.getScope()
+            );
+        }
+    }
+
+    /**
+     * A successful token response together with what was asked for.
+     */
+    static final class ScopedTokenResponse {
+        private final JsonNode json;
+        private final String serverHost;
+        private final Instant requestSentAt;
+        private final String requestedScope;
+
+        private ScopedTokenResponse(JsonNode json, String serverHost, Instant requestSentAt, String requestedScope) {
+            this.json = json;
+            this.serverHost = serverHost;
+            this.requestSentAt = requestSentAt;
+            this.requestedScope = requestedScope;
+        }
+
+        /**
+         * The granted scopes: those of the response, or the requested ones if it has none.
+         */
+        String getGrantedScope() {
+            JsonNode scope = json.get("scope");
+            return scope != null && scope.isTextual() ? scope.asText() : requestedScope;
         }
     }
 }
@@ -0,0 +1,76 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.flows;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A pending device authorization: what to show the user, and the access
+ * token once they have approved it.
+ */
+public class DeviceAuthorization {
+    private final String userCode;
+    private final String verificationUri;
+    private final String verificationUriComplete;
+    private final int expiresIn;
+    private final CompletableFuture<String> token;
+
+    DeviceAuthorization(
+            String userCode,
+            String verificationUri,
+            String verificationUriComplete,
+            int expiresIn,
+            CompletableFuture<String> token
+    ) {
+        this.userCode = userCode;
+        this.verificationUri = verificationUri;
+        this.verificationUriComplete = verificationUriComplete;
+        this.expiresIn = expiresIn;
+        this.token = token;
+    }
+
+    /**
+     * The code the user confirms on the verification page.
+     */
+    public String getUserCode() {
+        return userCode;
+    }
+
+    public String getVerificationUri() {
+        return verificationUri;
+    }
+
+    /**
+     * The verification URI with the user code included, or the plain
+     * verification URI if the server does not provide one.
+     */
+    public String getVerificationUriComplete() {
+        return verificationUriComplete;
+    }
+
+    /**
+     * The lifetime of the device code (seconds).
+     */
+    public int getExpiresIn() {
+        return expiresIn;
+    }
+
+    /**
+     * Completed with the access token, already stored, once the user approves;
+     * completed exceptionally if the authorization is denied or expires.
+     * Cancelling it stops polling.
+     */
+    public CompletableFuture<String> getToken() {
+        return token;
+    }
+}
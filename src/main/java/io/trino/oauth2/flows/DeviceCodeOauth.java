@@ -16,11 +16,17 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.trino.oauth2.configs.Constants;
 import io.trino.oauth2.configs.OAuthFlow;
+import io.trino.oauth2.jfr.TokenRequestInterceptor;
 import io.trino.oauth2.models.DeviceCodeConfig;
 import io.trino.oauth2.models.ManualUrlsConfig;
 import io.trino.oauth2.models.OidcConfig;
+import io.trino.oauth2.utils.ClockSkewInterceptor;
+import io.trino.oauth2.utils.DpopInterceptor;
+import io.trino.oauth2.utils.MutualTlsHelper;
 import io.trino.oauth2.utils.OAuthTokenStore;
 import io.trino.oauth2.utils.ProxyHelper;
+import io.trino.oauth2.utils.TokenMetadata;
+import io.trino.oauth2.utils.TokenResponseHelper;
 import io.trino.oauth2.utils.UrlHelpers;
 import okhttp3.*;
 import org.slf4j.Logger;
@@ -31,6 +37,9 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -42,11 +51,13 @@ public class DeviceCodeOauth {
 
     private final DeviceCodeConfig config;
     private final String proxyUrl;
+    private final String storageClientId;
     private final OkHttpClient httpClient;
 
     public DeviceCodeOauth(DeviceCodeConfig config, String proxyUrl) {
         this.config = config;
         this.proxyUrl = proxyUrl;
+        this.storageClientId = OAuthTokenStore.getStorageClientId(config);
 
         if (!(config.getUrlConfig() instanceof OidcConfig) &&
                 !(config.getUrlConfig() instanceof ManualUrlsConfig)) {
@@ -58,9 +69,18 @@ public class DeviceCodeOauth {
 
         OkHttpClient.Builder builder = new OkHttpClient.Builder()
                 .connectTimeout(Constants.REQUEST_TIMEOUT, TimeUnit.SECONDS)
-                .readTimeout(Constants.REQUEST_TIMEOUT, TimeUnit.SECONDS);
+                .readTimeout(Constants.REQUEST_TIMEOUT, TimeUnit.SECONDS)
+                .addInterceptor(new TokenRequestInterceptor(storageClientId, config.getClass().getSimpleName()))
+                .addInterceptor(ClockSkewInterceptor.INSTANCE);
 
         ProxyHelper.configureProxy(builder, proxyUrl);
+        MutualTlsHelper.configureMutualTls(builder, config.getMutualTls());
+        if (config.isDpop()) {
+            builder.addInterceptor(new DpopInterceptor(
+                    storageClientId,
+                    config.getClass().getSimpleName()
+            ));
+        }
         this.httpClient = builder.build();
     }
 
@@ -92,48 +112,52 @@ public class DeviceCodeOauth {
     }
 
     public String generateOrRefreshToken() throws IOException {
-        try {
-            return RefreshToken.refresh(
-                    config,
-                    getTokenEndpoint(),
-                    proxyUrl
-            );
-        } catch (Exception e) {
-            logger.debug(
-                    "Failed to update the access token. " +
-                            "A new access token must be obtained before API calls can succeed. " +
-                            "Error: {}", e.getMessage()
-            );
-            OAuthTokenStore.purgeTokens(config.getClientId(), config.getClass().getSimpleName());
-            return fetchAndStoreAccessToken();
-        }
+        return generateOrRefreshToken(Constants.VALID_MIN_DURATION_THRESHOLD);
     }
 
-    private String fetchAndStoreAccessToken() throws IOException {
-        String accessToken = OAuthTokenStore.getActiveAccessToken(
-                config.getClientId(),
-                config.getClass().getSimpleName()
+    /**
+     * Returns the stored access token if it is valid for long enough, and
+     * otherwise refreshes it or, without a usable refresh token, logs in.
+     *
+     * @param validMinDurationThreshold How long a stored access token must remain valid to be used (seconds)
+     */
+    public String generateOrRefreshToken(int validMinDurationThreshold) throws IOException {
+        return UserTokenAcquisition.acquire(
+                config,
+                validMinDurationThreshold,
+                proxyUrl,
+                storageClientId,
+                this::getTokenEndpoint,
+                this::startDeviceCodeAuth
         );
-        if (accessToken != null) {
-            logger.debug("Skipping auth. Using token in local storage.");
-            return accessToken;
-        }
+    }
 
+    private void startDeviceCodeAuth() throws IOException {
         if (config.isPollForToken()) {
             startDeviceCodeAuthPoll();
         } else {
             startDeviceCodeAuthNoPoll();
         }
+    }
 
-        accessToken = OAuthTokenStore.getActiveAccessToken(
-                config.getClientId(),
-                config.getClass().getSimpleName()
+    /**
+     * Starts a device authorization without waiting for the user. The token
+     * is polled for on the shared {@link DeviceCodePoller}, so pending
+     * authorizations do not hold a thread each; the caller shows the user
+     * code and verification URI and waits on {@link DeviceAuthorization#getToken()}.
+     *
+     * @return The pending authorization
+     * @throws IOException If the device authorization request fails
+     */
+    public DeviceAuthorization startAuthorization() throws IOException {
+        DeviceFlowResponse deviceFlow = startDeviceFlow();
+        return new DeviceAuthorization(
+                deviceFlow.userCode,
+                deviceFlow.verificationUri,
+                deviceFlow.verificationUriComplete,
+                deviceFlow.expiresIn,
+                pollForDeviceFlowToken(deviceFlow)
         );
-        if (accessToken == null) {
-            throw new RuntimeException("Failed to retrieve access token");
-        }
-
-        return accessToken;
     }
 
     private void startDeviceCodeAuthNoPoll() throws IOException {
@@ -177,7 +201,8 @@ public class DeviceCodeOauth {
             System.out.println(msg);
         }
 
-        pollForDeviceFlowToken(deviceFlow);
+        TokenRequests.await(pollForDeviceFlowToken(deviceFlow));
+        logger.info("Authentication has completed, the token has been retrieved.");
     }
 
     private DeviceFlowResponse startDeviceFlow() throws IOException {
@@ -186,9 +211,13 @@ public class DeviceCodeOauth {
         FormBody.Builder formBuilder = new FormBody.Builder()
                 .add("client_id", config.getClientId());
 
-        if (config.getClientSecret() != null) {
-            formBuilder.add("client_secret", config.getClientSecret());
-        }
+        ClientAuthentication.addCredentials(
+                formBuilder,
+                config.getClientId(),
+                config.getClientSecret(),
+                config.getPrivateKeyJwt(),
+                deviceFlowAuthUrl
+        );
 
         if (config.getScope() != null) {
             formBuilder.add("scope", config.getScope());
@@ -209,20 +238,23 @@ public class DeviceCodeOauth {
             if (!response.isSuccessful()) {
                 String errorBody = response.body().string();
                 JsonNode errorJson = objectMapper.readTree(errorBody);
-                String error = errorJson.get("error_description").asText();
+                String error = errorJson.has("error_description") ?
+                        errorJson.get("error_description").asText() : errorJson.path("error").asText(errorBody);
                 throw new RuntimeException(error);
             }
 
             String responseBody = response.body().string();
             JsonNode responseJson = objectMapper.readTree(responseBody);
 
+            // interval and verification_uri_complete are optional (RFC 8628 section 3.2)
+            String verificationUri = responseJson.get("verification_uri").asText();
             return new DeviceFlowResponse(
-                    responseJson.get("verification_uri_complete").asText(),
+                    responseJson.path("verification_uri_complete").asText(verificationUri),
                     responseJson.get("user_code").asText(),
                     responseJson.get("device_code").asText(),
-                    responseJson.get("interval").asInt(),
-                    responseJson.get("verification_uri").asText(),
-                    responseJson.get("expires_in").asInt()
+                    responseJson.path("interval").asInt(Constants.DEVICE_CODE_POLL_INTERVAL),
+                    verificationUri,
+                    responseJson.path("expires_in").asInt(Constants.DEVICE_CODE_EXPIRES_IN)
             );
         }
     }
@@ -237,63 +269,28 @@ public class DeviceCodeOauth {
         }
     }
 
-    private void pollForDeviceFlowToken(DeviceFlowResponse deviceFlow) {
-        int maxAttempts = deviceFlow.expiresIn / deviceFlow.interval;
-        for (int i = 0; i < maxAttempts; i++) {
-            if (i % deviceFlow.interval == 0) {
-                logger.info("Polling for token...");
-            }
-
-            try {
-                Thread.sleep(deviceFlow.interval * 1000L);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException("Polling interrupted", e);
-            }
-
-            boolean tokenStored = fetchAndStoreDeviceFlowToken(deviceFlow.deviceCode);
-            if (tokenStored) {
-                logger.info("Authentication has completed, the token has been retrieved.");
-                return;
-            }
-        }
-
-        logger.warn("\nDevice code has expired, polling has stopped.\n");
+    private CompletableFuture<String> pollForDeviceFlowToken(DeviceFlowResponse deviceFlow) {
+        logger.info("Polling for token...");
+        return DeviceCodePoller.getShared().poll(
+                httpClient,
+                () -> buildTokenRequest(deviceFlow.deviceCode),
+                this::storeTokenResponse,
+                Duration.ofSeconds(deviceFlow.interval),
+                Duration.ofSeconds(deviceFlow.expiresIn)
+        );
     }
 
     private boolean fetchAndStoreDeviceFlowToken(String deviceCode) {
         try {
-            String getTokenUrl = getTokenEndpoint();
-
-            FormBody.Builder formBuilder = new FormBody.Builder()
-                    .add("client_id", config.getClientId())
-                    .add("device_code", deviceCode)
-                    .add("grant_type", OAuthFlow.DEVICE_CODE.getGrantType());
-
-            if (config.getClientSecret() != null) {
-                formBuilder.add("client_secret", config.getClientSecret());
-            }
-
-            Request request = new Request.Builder()
-                    .url(getTokenUrl)
-                    .post(formBuilder.build())
-                    .build();
+            Request request = buildTokenRequest(deviceCode);
 
+            Instant requestSentAt = OAuthTokenStore.getTimeSource().now();
             try (Response response = httpClient.newCall(request).execute()) {
                 String responseBody = response.body().string();
                 JsonNode responseJson = objectMapper.readTree(responseBody);
 
                 if (responseJson.has("access_token")) {
-                    String accessToken = responseJson.get("access_token").asText();
-                    String refreshToken = responseJson.has("refresh_token") ?
-                            responseJson.get("refresh_token").asText() : null;
-
-                    OAuthTokenStore.setAccessAndRefreshTokens(
-                            config.getClientId(),
-                            config.getClass().getSimpleName(),
-                            accessToken,
-                            refreshToken
-                    );
+                    storeTokenResponse(responseJson, requestSentAt);
                     return true;
                 }
             }
@@ -304,6 +301,51 @@ public class DeviceCodeOauth {
         return false;
     }
 
+    private Request buildTokenRequest(String deviceCode) throws IOException {
+        String getTokenUrl = getTokenEndpoint();
+
+        FormBody.Builder formBuilder = new FormBody.Builder()
+                .add("client_id", config.getClientId())
+                .add("device_code", deviceCode)
+                .add("grant_type", OAuthFlow.DEVICE_CODE.getGrantType());
+
+        ClientAuthentication.addCredentials(
+                formBuilder,
+                config.getClientId(),
+                config.getClientSecret(),
+                config.getPrivateKeyJwt(),
+                getTokenUrl
+        );
+
+        return new Request.Builder()
+                .url(getTokenUrl)
+                .post(formBuilder.build())
+                .build();
+    }
+
+    private String storeTokenResponse(JsonNode responseJson, Instant requestSentAt) throws IOException {
+        String accessToken = responseJson.get("access_token").asText();
+        String refreshToken = responseJson.has("refresh_token") ?
+                responseJson.get("refresh_token").asText() : null;
+
+        TokenMetadata metadata = TokenResponseHelper.getMetadata(
+                responseJson,
+                UrlHelpers.getHost(getTokenEndpoint()),
+                requestSentAt,
+                config.getScope()
+        );
+
+        OAuthTokenStore.setAccessAndRefreshTokens(
+                storageClientId,
+                config.getClass().getSimpleName(),
+                accessToken,
+                refreshToken,
+                metadata,
+                false
+        );
+        return accessToken;
+    }
+
     private static class DeviceFlowResponse {
         final String verificationUriComplete;
         final String userCode;
@@ -0,0 +1,230 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.flows;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.trino.oauth2.configs.Constants;
+import io.trino.oauth2.utils.OAuthTokenStore;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls token endpoints for pending device authorizations (RFC 8628).
+ * <p>
+ * A single scheduler thread times the polls of every pending authorization
+ * and token requests run asynchronously on the HTTP client, so waiting for
+ * users does not hold a thread per authorization. Each poll follows the
+ * RFC: the first poll waits one interval, {@code authorization_pending}
+ * polls again after the interval, {@code slow_down} increases the interval
+ * for all later polls, a failed connection doubles it, and any other error
+ * or the expiry of the device code ends the authorization.
+ */
+public final class DeviceCodePoller {
+    private static final Logger logger = LoggerFactory.getLogger(DeviceCodePoller.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final DeviceCodePoller SHARED = new DeviceCodePoller(
+            Duration.ofSeconds(Constants.DEVICE_CODE_POLL_INTERVAL),
+            Duration.ofSeconds(Constants.DEVICE_CODE_SLOW_DOWN_INCREMENT)
+    );
+
+    private final ScheduledExecutorService scheduler;
+    private final long defaultIntervalNanos;
+    private final long slowDownNanos;
+
+    /**
+     * Creates a poller with its own scheduler thread.
+     *
+     * @param defaultInterval   The interval used when the server does not specify one
+     * @param slowDownIncrement The increase of the interval on each {@code slow_down} error
+     */
+    public DeviceCodePoller(Duration defaultInterval, Duration slowDownIncrement) {
+        if (defaultInterval.isNegative() || defaultInterval.isZero()) {
+            throw new IllegalArgumentException("defaultInterval must be positive");
+        }
+        if (slowDownIncrement.isNegative()) {
+            throw new IllegalArgumentException("slowDownIncrement must not be negative");
+        }
+        this.defaultIntervalNanos = defaultInterval.toNanos();
+        this.slowDownNanos = slowDownIncrement.toNanos();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oauth2-device-code-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the poller shared by device code flows, with the RFC 8628 default
+     * interval and slow-down increment of five seconds.
+     */
+    public static DeviceCodePoller getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Starts polling for one device authorization.
+     *
+     * @param httpClient     The client that sends the token requests
+     * @param requestFactory Builds each token request
+     * @param handler        Handles the successful token response
+     * @param interval       The interval from the device authorization response, or null
+     * @param expiresIn      The lifetime of the device code
+     * @return A future completed with the handler's result, or exceptionally when
+     * the authorization is denied or expires. Cancelling it stops polling.
+     */
+    public <T> CompletableFuture<T> poll(
+            OkHttpClient httpClient,
+            RequestFactory requestFactory,
+            TokenResponseHandler<T> handler,
+            Duration interval,
+            Duration expiresIn
+    ) {
+        long intervalNanos = interval == null || interval.isNegative() || interval.isZero() ?
+                defaultIntervalNanos : interval.toNanos();
+        PollTask<T> task = new PollTask<>(
+                httpClient,
+                requestFactory,
+                handler,
+                intervalNanos,
+                System.nanoTime() + expiresIn.toNanos()
+        );
+        task.scheduleNext();
+        return task.future;
+    }
+
+    /**
+     * Builds a token request; called for every poll so credentials can be fresh.
+     */
+    public interface RequestFactory {
+        Request create() throws IOException;
+    }
+
+    /**
+     * Handles the token response that ends a successful authorization.
+     */
+    public interface TokenResponseHandler<T> {
+        /**
+         * @param response      The token response
+         * @param requestSentAt When the request that received it was sent
+         */
+        T handle(JsonNode response, Instant requestSentAt) throws IOException;
+    }
+
+    private final class PollTask<T> implements Callback {
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final OkHttpClient httpClient;
+        private final RequestFactory requestFactory;
+        private final TokenResponseHandler<T> handler;
+        private final long deadlineNanos;
+
+        // Only touched by the scheduler thread or the callback of the one call in flight
+        private long intervalNanos;
+        private Instant requestSentAt;
+        private volatile Call call;
+
+        private PollTask(
+                OkHttpClient httpClient,
+                RequestFactory requestFactory,
+                TokenResponseHandler<T> handler,
+                long intervalNanos,
+                long deadlineNanos
+        ) {
+            this.httpClient = httpClient;
+            this.requestFactory = requestFactory;
+            this.handler = handler;
+            this.intervalNanos = intervalNanos;
+            this.deadlineNanos = deadlineNanos;
+
+            future.whenComplete((result, e) -> {
+                Call inFlight = call;
+                if (future.isCancelled() && inFlight != null) {
+                    inFlight.cancel();
+                }
+            });
+        }
+
+        private void scheduleNext() {
+            if (future.isDone()) {
+                return;
+            }
+            if (System.nanoTime() + intervalNanos > deadlineNanos) {
+                future.completeExceptionally(new RuntimeException("Device code has expired, polling has stopped"));
+                return;
+            }
+            scheduler.schedule(this::send, intervalNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void send() {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                Request request = requestFactory.create();
+                requestSentAt = OAuthTokenStore.getTimeSource().now();
+                call = httpClient.newCall(request);
+                call.enqueue(this);
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void onFailure(Call failedCall, IOException e) {
+            if (future.isDone()) {
+                return;
+            }
+            // RFC 8628 section 3.5: back off exponentially on connection failures
+            logger.debug("Device code token request failed, backing off", e);
+            intervalNanos *= 2;
+            scheduleNext();
+        }
+
+        @Override
+        public void onResponse(Call completedCall, Response response) {
+            try (response) {
+                JsonNode json = objectMapper.readTree(response.body().string());
+                if (json.has("access_token")) {
+                    future.complete(handler.handle(json, requestSentAt));
+                    return;
+                }
+
+                String error = json.path("error").asText("");
+                if ("authorization_pending".equals(error)) {
+                    scheduleNext();
+                } else if ("slow_down".equals(error)) {
+                    intervalNanos += slowDownNanos;
+                    scheduleNext();
+                } else {
+                    future.completeExceptionally(new RuntimeException("Device authorization failed: " + json));
+                }
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.flows;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Receives the authorization code redirect on a loopback redirect URI
+ * (RFC 8252 section 7.3).
+ * <p>
+ * The listener is started just before the browser is opened and serves only
+ * the redirect URI's path on the loopback interface. A redirect with the
+ * expected {@code state} completes it; redirects with another state are
+ * answered with an error and ignored, so a stray request cannot end or
+ * hijack the login. It is closed as soon as the code has been received.
+ */
+final class LoopbackRedirectListener implements AutoCloseable {
+    private static final String SUCCESS_PAGE = "<html><body>Authentication complete. " +
+            "You may close this window.</body></html>";
+    private static final String FAILURE_PAGE = "<html><body>Authentication failed. " +
+            "You may close this window.</body></html>";
+
+    private final HttpServer server;
+    private final byte[] expectedState;
+    private final CompletableFuture<String> code = new CompletableFuture<>();
+
+    private LoopbackRedirectListener(HttpServer server, String path, String expectedState) {
+        this.server = server;
+        this.expectedState = expectedState.getBytes(StandardCharsets.UTF_8);
+        server.createContext(path, this::handle);
+    }
+
+    /**
+     * Returns whether the redirect URI points at this machine over plain HTTP,
+     * so the redirect can be received by a listener.
+     */
+    static boolean isLoopback(String redirectUri) {
+        try {
+            URI uri = URI.create(redirectUri);
+            return "http".equalsIgnoreCase(uri.getScheme()) && uri.getPort() >= 0 && getBindAddress(uri) != null;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts listening on the port and path of a loopback redirect URI.
+     *
+     * @param redirectUri   The redirect URI, for which {@link #isLoopback(String)} holds
+     * @param expectedState The state sent in the authorization request
+     * @throws IOException If the port cannot be bound
+     */
+    static LoopbackRedirectListener start(String redirectUri, String expectedState) throws IOException {
+        URI uri = URI.create(redirectUri);
+        HttpServer server = HttpServer.create(new InetSocketAddress(getBindAddress(uri), uri.getPort()), 0);
+        String path = uri.getPath() == null || uri.getPath().isEmpty() ? "/" : uri.getPath();
+        LoopbackRedirectListener listener = new LoopbackRedirectListener(server, path, expectedState);
+        server.start();
+        return listener;
+    }
+
+    /**
+     * The bound port, which differs from the redirect URI's only when it asks for any port.
+     */
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Waits for the redirect and returns the authorization code.
+     *
+     * @return The code, or null if no redirect arrived in time, for example
+     * because the browser runs on another machine than the listener
+     * @throws IOException If the wait is interrupted
+     * @throws RuntimeException If the server reported an error
+     */
+    String awaitCode(Duration timeout) throws IOException {
+        try {
+            return code.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the authorization redirect");
+        } catch (TimeoutException e) {
+            return null;
+        } catch (ExecutionException e) {
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        // HttpExchange is only AutoCloseable from Java 14
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, FAILURE_PAGE);
+                return;
+            }
+
+            Map<String, String> params;
+            try {
+                params = parseQuery(exchange.getRequestURI().getRawQuery());
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, FAILURE_PAGE);
+                return;
+            }
+            String state = params.get("state");
+            if (state == null || !MessageDigest.isEqual(expectedState, state.getBytes(StandardCharsets.UTF_8))) {
+                respond(exchange, 400, FAILURE_PAGE);
+                return;
+            }
+
+            String error = params.get("error");
+            if (error != null) {
+                String description = params.get("error_description");
+                code.completeExceptionally(new RuntimeException(
+                        "Authorization failed: " + (description != null ? error + " - " + description : error)
+                ));
+                respond(exchange, 200, FAILURE_PAGE);
+                return;
+            }
+
+            String authCode = params.get("code");
+            if (authCode == null || authCode.isEmpty()) {
+                respond(exchange, 400, FAILURE_PAGE);
+                return;
+            }
+            code.complete(authCode);
+            respond(exchange, 200, SUCCESS_PAGE);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String page) throws IOException {
+        byte[] body = page.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                params.putIfAbsent(
+                        URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8)
+                );
+            }
+        }
+        return params;
+    }
+
+    private static InetAddress getBindAddress(URI uri) {
+        String host = uri.getHost();
+        if (host == null) {
+            return null;
+        }
+        if ("localhost".equalsIgnoreCase(host)) {
+            return InetAddress.getLoopbackAddress();
+        }
+        if (host.equals("127.0.0.1") || host.equals("[::1]")) {
+            try {
+                return InetAddress.getByName(host);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -14,14 +14,27 @@ package io.trino.oauth2.flows;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.trino.oauth2.jfr.TokenRefreshEvent;
+import io.trino.oauth2.metrics.Metrics;
+import io.trino.oauth2.metrics.OAuthMetrics;
+import io.trino.oauth2.metrics.TokenOperation;
 import io.trino.oauth2.models.AuthorizationCodeConfig;
 import io.trino.oauth2.models.DeviceCodeConfig;
+import io.trino.oauth2.models.MutualTlsConfig;
 import io.trino.oauth2.models.OAuth2Config;
+import io.trino.oauth2.models.PrivateKeyJwtConfig;
+import io.trino.oauth2.utils.ClockSkewInterceptor;
+import io.trino.oauth2.utils.DpopInterceptor;
+import io.trino.oauth2.utils.MutualTlsHelper;
 import io.trino.oauth2.utils.OAuthTokenStore;
 import io.trino.oauth2.utils.ProxyHelper;
+import io.trino.oauth2.utils.TokenMetadata;
+import io.trino.oauth2.utils.TokenPair;
+import io.trino.oauth2.utils.TokenResponseHelper;
 import okhttp3.*;
 
 import java.io.IOException;
+import java.time.Instant;
 
 /**
  * Utility class for refreshing OAuth2 tokens.
@@ -33,23 +46,111 @@ public final class RefreshToken {
         // Utility class
     }
 
+    /**
+     * Refreshes the stored tokens of a config.
+     *
+     * @return The new access token
+     * @throws IllegalArgumentException If no refresh token is stored
+     * @throws IOException              If the refresh fails or is rejected
+     */
     public static String refresh(OAuth2Config config, String refreshUrl, String proxyUrl) throws IOException {
+        // Read the pair as one record so a concurrent write cannot hand us a rotated refresh token
+        String storageClientId = OAuthTokenStore.getStorageClientId(config);
+        TokenPair storedTokens = OAuthTokenStore.getTokenPair(storageClientId, config.getClass().getSimpleName());
+        if (!hasRefreshToken(storedTokens)) {
+            throw new IllegalArgumentException("Invalid empty refresh token");
+        }
+
+        Result result = tryRefresh(config, storageClientId, storedTokens, refreshUrl, proxyUrl);
+        if (!result.isRefreshed()) {
+            throw new IOException("Failed to refresh token: " + result.getFailure());
+        }
+        return result.getAccessToken();
+    }
+
+    static boolean hasRefreshToken(TokenPair storedTokens) {
+        return storedTokens != null && storedTokens.getRefreshToken() != null && !storedTokens.getRefreshToken().isEmpty();
+    }
+
+    /**
+     * Refreshes the given stored tokens. A rejection by the server is a
+     * result rather than an exception, as it only means a new login is needed.
+     *
+     * @param storageClientId The client ID the config's tokens are stored under
+     * @param storedTokens    The stored pair, which must hold a refresh token
+     * @throws IOException If the token endpoint cannot be reached
+     */
+    static Result tryRefresh(
+            OAuth2Config config,
+            String storageClientId,
+            TokenPair storedTokens,
+            String refreshUrl,
+            String proxyUrl
+    ) throws IOException {
+        String mode = config.getClass().getSimpleName();
+        OAuthMetrics metrics = Metrics.getMetrics();
+        long start = Metrics.startTimer(metrics);
+        TokenRefreshEvent event = new TokenRefreshEvent();
+        event.begin();
+        String outcome = "success";
+        try {
+            Result result = requestRefresh(config, storageClientId, storedTokens, refreshUrl, proxyUrl);
+            if (!result.isRefreshed()) {
+                outcome = result.getCause();
+                metrics.failure(TokenOperation.REFRESH, mode, outcome);
+            }
+            return result;
+        } catch (IOException | RuntimeException e) {
+            outcome = Metrics.causeOf(e);
+            metrics.failure(TokenOperation.REFRESH, mode, outcome);
+            throw e;
+        } finally {
+            Metrics.recordLatency(metrics, TokenOperation.REFRESH, mode, start);
+            if (event.finish()) {
+                event.commit(storageClientId, mode, refreshUrl, outcome);
+            }
+        }
+    }
+
+    private static Result requestRefresh(
+            OAuth2Config config,
+            String storageClientId,
+            TokenPair storedTokens,
+            String refreshUrl,
+            String proxyUrl
+    ) throws IOException {
         String clientId = config.getClientId();
         String clientSecret = null;
+        PrivateKeyJwtConfig privateKeyJwt = null;
+        boolean dpop = false;
+        MutualTlsConfig mutualTls = null;
 
         if (config instanceof DeviceCodeConfig) {
             clientSecret = ((DeviceCodeConfig) config).getClientSecret();
+            privateKeyJwt = ((DeviceCodeConfig) config).getPrivateKeyJwt();
+            dpop = ((DeviceCodeConfig) config).isDpop();
+            mutualTls = ((DeviceCodeConfig) config).getMutualTls();
         } else if (config instanceof AuthorizationCodeConfig) {
             clientSecret = ((AuthorizationCodeConfig) config).getClientSecret();
+            privateKeyJwt = ((AuthorizationCodeConfig) config).getPrivateKeyJwt();
+            dpop = ((AuthorizationCodeConfig) config).isDpop();
+            mutualTls = ((AuthorizationCodeConfig) config).getMutualTls();
         }
 
-        String refreshToken = OAuthTokenStore.getRefreshToken(clientId, config.getClass().getSimpleName());
-        if (refreshToken == null || refreshToken.isEmpty()) {
-            throw new IllegalArgumentException("Invalid empty refresh token");
-        }
+        String refreshToken = storedTokens.getRefreshToken();
 
-        OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder();
+        OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder()
+                .addInterceptor(ClockSkewInterceptor.INSTANCE);
         ProxyHelper.configureProxy(clientBuilder, proxyUrl);
+        // Shares the TLS session cache of earlier requests, so a refresh resumes the session
+        MutualTlsHelper.configureMutualTls(clientBuilder, mutualTls);
+        if (dpop) {
+            // The refreshed token is bound to the same key as the one it replaces
+            clientBuilder.addInterceptor(new DpopInterceptor(
+                    storageClientId,
+                    config.getClass().getSimpleName()
+            ));
+        }
         OkHttpClient httpClient = clientBuilder.build();
 
         FormBody.Builder formBuilder = new FormBody.Builder()
@@ -57,44 +158,101 @@ public final class RefreshToken {
                 .add("refresh_token", refreshToken)
                 .add("client_id", clientId);
 
-        if (clientSecret != null) {
-            formBuilder.add("client_secret", clientSecret);
-        }
+        ClientAuthentication.addCredentials(formBuilder, clientId, clientSecret, privateKeyJwt, refreshUrl);
 
         Request request = new Request.Builder()
                 .url(refreshUrl)
                 .post(formBuilder.build())
                 .build();
 
+        Instant requestSentAt = OAuthTokenStore.getTimeSource().now();
         try (Response response = httpClient.newCall(request).execute()) {
             if (!response.isSuccessful()) {
-                throw new IOException("Failed to refresh token: " + response.code());
+                return Result.failed("http_" + response.code(), "HTTP " + response.code());
             }
 
             String responseBody = response.body().string();
             JsonNode tokenData = objectMapper.readTree(responseBody);
+            if (!tokenData.has("access_token")) {
+                return Result.failed("no_access_token", "no access token in response");
+            }
 
             String newAccessToken = tokenData.get("access_token").asText();
             String newRefreshToken = tokenData.has("refresh_token") ?
                     tokenData.get("refresh_token").asText() : refreshToken;
 
+            TokenMetadata metadata = TokenResponseHelper.getMetadata(
+                    tokenData,
+                    response.request().url().host(),
+                    requestSentAt,
+                    storedTokens.getMetadata().getScope()
+            );
+
             OAuthTokenStore.setAccessAndRefreshTokens(
-                    clientId,
+                    storageClientId,
                     config.getClass().getSimpleName(),
                     newAccessToken,
-                    newRefreshToken
+                    newRefreshToken,
+                    metadata,
+                    false
             );
 
             String accessToken = OAuthTokenStore.getActiveAccessToken(
-                    clientId,
+                    storageClientId,
                     config.getClass().getSimpleName()
             );
 
             if (accessToken == null) {
-                throw new RuntimeException("Failed to retrieve access token");
+                return Result.failed("expiring", "refreshed access token is already expiring");
             }
 
+            return Result.refreshed(accessToken);
+        }
+    }
+
+    /**
+     * The outcome of a refresh that reached the server.
+     */
+    static final class Result {
+        private final String accessToken;
+        private final String cause;
+        private final String failure;
+
+        private Result(String accessToken, String cause, String failure) {
+            this.accessToken = accessToken;
+            this.cause = cause;
+            this.failure = failure;
+        }
+
+        static Result refreshed(String accessToken) {
+            return new Result(accessToken, null, null);
+        }
+
+        /**
+         * @param cause   A short, low-cardinality reason for metrics
+         * @param failure A description for logs and exceptions
+         */
+        static Result failed(String cause, String failure) {
+            return new Result(null, cause, failure);
+        }
+
+        boolean isRefreshed() {
+            return accessToken != null;
+        }
+
+        String getAccessToken() {
             return accessToken;
         }
+
+        /**
+         * Why the refresh did not produce a token, or null if it did.
+         */
+        String getFailure() {
+            return failure;
+        }
+
+        String getCause() {
+            return cause;
+        }
     }
 }
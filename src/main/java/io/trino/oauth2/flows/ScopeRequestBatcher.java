@@ -0,0 +1,154 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.flows;
+
+import io.trino.oauth2.utils.ScopeTokenIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges concurrent client credentials token requests of one scope family
+ * (see {@link io.trino.oauth2.utils.OAuthTokenStore#getScopeFamilyId}) into
+ * a single request for the union of their scopes.
+ * <p>
+ * The first request opens a batch for its config's
+ * {@link io.trino.oauth2.models.ClientCredentialsConfig#getScopeBatchWindow() window};
+ * requests arriving meanwhile join it. When the window closes one token is
+ * requested for all scopes of the batch and stored for every request whose
+ * scopes it was granted. If the server rejects the union or grants less,
+ * the requests it does not cover fall back to a request of their own; if
+ * the request fails in transport, every request of the batch fails with it.
+ */
+final class ScopeRequestBatcher {
+    private static final Logger logger = LoggerFactory.getLogger(ScopeRequestBatcher.class);
+    private static final ScopeRequestBatcher SHARED = new ScopeRequestBatcher();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "oauth2-scope-batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Batches still accepting requests, by scope family. Guarded by this.
+     */
+    private final Map<String, List<Waiter>> openBatches = new HashMap<>();
+
+    static ScopeRequestBatcher getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Adds a token request of the flow to its family's open batch, opening one if needed.
+     *
+     * @return A future completed with the flow's stored access token
+     */
+    CompletableFuture<String> submit(ClientCredentialsOauth flow) {
+        Waiter waiter = new Waiter(flow);
+        String familyId = flow.getScopeFamilyId();
+        synchronized (this) {
+            List<Waiter> batch = openBatches.get(familyId);
+            if (batch == null) {
+                List<Waiter> newBatch = new ArrayList<>();
+                openBatches.put(familyId, newBatch);
+                scheduler.schedule(
+                        () -> send(familyId, newBatch),
+                        flow.getConfig().getScopeBatchWindow().toNanos(),
+                        TimeUnit.NANOSECONDS
+                );
+                batch = newBatch;
+            }
+            batch.add(waiter);
+        }
+        return waiter.future;
+    }
+
+    private void send(String familyId, List<Waiter> batch) {
+        synchronized (this) {
+            openBatches.remove(familyId, batch);
+        }
+
+        SortedSet<String> union = new TreeSet<>();
+        for (Waiter waiter : batch) {
+            union.addAll(waiter.scopes);
+        }
+        logger.debug("Requesting one token for {} batched requests of {}", batch.size(), familyId);
+
+        ClientCredentialsOauth leader = batch.get(0).flow;
+        leader.requestScopedToken(String.join(" ", union)).whenComplete((response, e) -> {
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause instanceof IOException) {
+                // The server is unreachable for the whole family; retrying per request would only multiply the calls
+                for (Waiter waiter : batch) {
+                    waiter.future.completeExceptionally(cause);
+                }
+                return;
+            }
+
+            Set<String> granted = response == null ? null : ScopeTokenIndex.parseScopes(response.getGrantedScope());
+            for (Waiter waiter : batch) {
+                if (granted != null && granted.containsAll(waiter.scopes)) {
+                    waiter.complete(response);
+                } else if (waiter.scopes.equals(union)) {
+                    // Asked for exactly the union, so a request of its own would get the same answer
+                    if (cause != null) {
+                        waiter.future.completeExceptionally(cause);
+                    } else {
+                        waiter.complete(response);
+                    }
+                } else {
+                    waiter.flow.requestScopedToken(waiter.flow.getConfig().getScope()).whenComplete((own, ownError) -> {
+                        if (ownError != null) {
+                            waiter.future.completeExceptionally(ownError);
+                        } else {
+                            waiter.complete(own);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private static final class Waiter {
+        private final ClientCredentialsOauth flow;
+        private final SortedSet<String> scopes;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+
+        private Waiter(ClientCredentialsOauth flow) {
+            this.flow = flow;
+            this.scopes = ScopeTokenIndex.parseScopes(flow.getConfig().getScope());
+        }
+
+        private void complete(ClientCredentialsOauth.ScopedTokenResponse response) {
+            try {
+                future.complete(flow.storeScopedToken(response));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
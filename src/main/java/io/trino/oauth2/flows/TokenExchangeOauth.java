@@ -0,0 +1,243 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.flows;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.trino.oauth2.configs.Constants;
+import io.trino.oauth2.configs.OAuthFlow;
+import io.trino.oauth2.jfr.TokenRequestInterceptor;
+import io.trino.oauth2.models.ManualUrlsConfig;
+import io.trino.oauth2.models.OidcConfig;
+import io.trino.oauth2.models.TokenExchangeConfig;
+import io.trino.oauth2.utils.ClockSkewInterceptor;
+import io.trino.oauth2.utils.ExpiringLruCache;
+import io.trino.oauth2.utils.JwtClaimScanner;
+import io.trino.oauth2.utils.OAuthTokenStore;
+import io.trino.oauth2.utils.ProxyHelper;
+import io.trino.oauth2.utils.TokenResponseHelper;
+import io.trino.oauth2.utils.UrlHelpers;
+import okhttp3.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class contains functions related to the token exchange flow (RFC 8693).
+ * <p>
+ * Exchanged tokens are kept in memory only, keyed by a hash of the subject
+ * token together with the audience and scope. They are dropped when they
+ * come within the validity threshold of expiring or when the cache is full
+ * and they are the least recently used. Concurrent exchanges of the same
+ * subject token for the same audience and scope share one request.
+ */
+public class TokenExchangeOauth {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final TokenExchangeConfig config;
+    private final String proxyUrl;
+    private final int validMinDurationThreshold;
+    private final OkHttpClient httpClient;
+    private final ExpiringLruCache<String, String> cache;
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    public TokenExchangeOauth(TokenExchangeConfig config, String proxyUrl) {
+        this(config, proxyUrl, Constants.VALID_MIN_DURATION_THRESHOLD);
+    }
+
+    public TokenExchangeOauth(TokenExchangeConfig config, String proxyUrl, int validMinDurationThreshold) {
+        this.config = config;
+        this.proxyUrl = proxyUrl;
+        this.validMinDurationThreshold = validMinDurationThreshold;
+
+        if (!(config.getUrlConfig() instanceof OidcConfig) &&
+                !(config.getUrlConfig() instanceof ManualUrlsConfig)) {
+            throw new RuntimeException(
+                    "url_config class '" + config.getUrlConfig().getClass().getSimpleName() +
+                            "' is not allowed."
+            );
+        }
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectTimeout(Constants.REQUEST_TIMEOUT, TimeUnit.SECONDS)
+                .readTimeout(Constants.REQUEST_TIMEOUT, TimeUnit.SECONDS)
+                .addInterceptor(new TokenRequestInterceptor(
+                        OAuthTokenStore.getStorageClientId(config),
+                        config.getClass().getSimpleName()
+                ))
+                .addInterceptor(ClockSkewInterceptor.INSTANCE);
+
+        ProxyHelper.configureProxy(builder, proxyUrl);
+        this.httpClient = builder.build();
+        this.cache = new ExpiringLruCache<>(config.getCacheSize());
+    }
+
+    /**
+     * Exchanges the subject token for a token with the config's audience and scope.
+     */
+    public String exchange(String subjectToken) throws IOException {
+        return exchange(subjectToken, config.getAudience(), config.getScope());
+    }
+
+    /**
+     * Exchanges the subject token for a token with the given audience and
+     * scope, returning a cached token if one is valid for long enough.
+     *
+     * @param subjectToken The token to exchange
+     * @param audience     The audience of the exchanged token, or null for none
+     * @param scope        The scope of the exchanged token, or null for none
+     * @return The exchanged access token
+     * @throws IOException If the token endpoint cannot be reached
+     */
+    public String exchange(String subjectToken, String audience, String scope) throws IOException {
+        if (subjectToken == null || subjectToken.isEmpty()) {
+            throw new IllegalArgumentException("subjectToken is required");
+        }
+
+        String key = cacheKey(subjectToken, audience, scope);
+        long minRemainingNanos = TimeUnit.SECONDS.toNanos(validMinDurationThreshold);
+        String accessToken = cache.get(key, minRemainingNanos);
+        if (accessToken != null) {
+            return accessToken;
+        }
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return TokenRequests.await(existing);
+        }
+        try {
+            // An exchange may have finished between the cache read and claiming the request
+            accessToken = cache.get(key, minRemainingNanos);
+            if (accessToken == null) {
+                accessToken = requestExchange(subjectToken, audience, scope, key);
+            }
+            future.complete(accessToken);
+            return accessToken;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Drops every cached exchanged token.
+     */
+    public void purgeCache() {
+        cache.clear();
+    }
+
+    public int getCachedTokenCount() {
+        return cache.size();
+    }
+
+    private String getTokenEndpoint() throws IOException {
+        if (config.getUrlConfig() instanceof OidcConfig) {
+            OidcConfig oidcConfig = (OidcConfig) config.getUrlConfig();
+            return UrlHelpers.getTokenEndpointFromOidc(oidcConfig.getOidcDiscoveryUrl());
+        } else if (config.getUrlConfig() instanceof ManualUrlsConfig) {
+            ManualUrlsConfig manualConfig = (ManualUrlsConfig) config.getUrlConfig();
+            return manualConfig.getTokenEndpoint();
+        }
+        throw new IllegalStateException("Invalid URL config type");
+    }
+
+    private String requestExchange(String subjectToken, String audience, String scope, String key)
+            throws IOException {
+        FormBody.Builder formBuilder = new FormBody.Builder()
+                .add("grant_type", OAuthFlow.TOKEN_EXCHANGE.getGrantType())
+                .add("subject_token", subjectToken)
+                .add("subject_token_type", config.getSubjectTokenType())
+                .add("client_id", config.getClientId());
+
+        if (config.getClientSecret() != null) {
+            formBuilder.add("client_secret", config.getClientSecret());
+        }
+        if (audience != null) {
+            formBuilder.add("audience", audience);
+        }
+        if (scope != null) {
+            formBuilder.add("scope", scope);
+        }
+        if (config.getRequestedTokenType() != null) {
+            formBuilder.add("requested_token_type", config.getRequestedTokenType());
+        }
+
+        Request request = new Request.Builder()
+                .url(getTokenEndpoint())
+                .post(formBuilder.build())
+                .build();
+
+        Instant requestSentAt = OAuthTokenStore.getTimeSource().now();
+        try (Response response = httpClient.newCall(request).execute()) {
+            String responseBody = response.body().string();
+            JsonNode responseJson = objectMapper.readTree(responseBody);
+
+            if (responseJson.has("error") || !responseJson.has("access_token")) {
+                throw new RuntimeException("Failed to exchange token: " + responseJson.toString());
+            }
+
+            String accessToken = responseJson.get("access_token").asText();
+            String serverHost = response.request().url().host();
+            Instant expiresAt = getExpiresAt(accessToken, responseJson, serverHost, requestSentAt);
+            if (expiresAt != null) {
+                cache.put(key, accessToken, OAuthTokenStore.toDeadlineNanos(serverHost, expiresAt));
+            }
+            return accessToken;
+        }
+    }
+
+    /**
+     * The exchanged token's expiry on the identity provider's clock, from its
+     * own claims if it is a JWT or from {@code expires_in} otherwise.
+     */
+    private static Instant getExpiresAt(String accessToken, JsonNode responseJson, String serverHost, Instant requestSentAt) {
+        long expiresAt = JwtClaimScanner.getExpiresAt(accessToken);
+        if (expiresAt != JwtClaimScanner.NO_VALUE) {
+            return Instant.ofEpochSecond(expiresAt);
+        }
+        return TokenResponseHelper.getExpiresAt(
+                responseJson,
+                OAuthTokenStore.toServerTime(serverHost, requestSentAt).toEpochMilli()
+        );
+    }
+
+    /**
+     * Keys the cache by a hash of the subject token so raw caller tokens are
+     * not retained as map keys.
+     */
+    private static String cacheKey(String subjectToken, String audience, String scope) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(subjectToken.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(96);
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16));
+                key.append(Character.forDigit(b & 0xf, 16));
+            }
+            key.append('\n').append(audience == null ? "" : audience);
+            key.append('\n').append(scope == null ? "" : scope);
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not available", e);
+        }
+    }
+}
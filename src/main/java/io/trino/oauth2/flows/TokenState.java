@@ -0,0 +1,63 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.flows;
+
+import io.trino.oauth2.utils.OAuthTokenStore;
+import io.trino.oauth2.utils.TokenPair;
+
+/**
+ * The states a device code or authorization code client passes through
+ * while acquiring an access token. The starting state follows from the
+ * stored tokens alone; the others follow from the refresh result.
+ * <pre>
+ * CACHED                                   return the stored access token
+ * REFRESHABLE       -- refreshed -->       return the new access token
+ *                   -- rejected or failed --> REFRESH_FAILED
+ * REFRESH_FAILED    -- tokens purged -->   NEEDS_INTERACTIVE
+ * NEEDS_INTERACTIVE -- user logs in -->    return the new access token
+ * </pre>
+ */
+public enum TokenState {
+    /**
+     * The stored access token is valid for long enough.
+     */
+    CACHED,
+
+    /**
+     * The access token is missing or expiring, and a refresh token is stored.
+     */
+    REFRESHABLE,
+
+    /**
+     * The refresh was rejected or could not be sent, so the stored tokens are dropped.
+     */
+    REFRESH_FAILED,
+
+    /**
+     * No usable tokens are stored, so the user must log in.
+     */
+    NEEDS_INTERACTIVE;
+
+    /**
+     * Returns the state the stored tokens of a client start from.
+     *
+     * @param validMinDurationThreshold How long the access token must remain valid to be used (seconds)
+     */
+    public static TokenState of(String clientId, String mode, int validMinDurationThreshold) {
+        if (OAuthTokenStore.getActiveAccessToken(clientId, mode, validMinDurationThreshold) != null) {
+            return CACHED;
+        }
+        TokenPair storedTokens = OAuthTokenStore.getTokenPair(clientId, mode);
+        return RefreshToken.hasRefreshToken(storedTokens) ? REFRESHABLE : NEEDS_INTERACTIVE;
+    }
+}
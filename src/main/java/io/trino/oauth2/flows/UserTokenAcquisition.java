@@ -0,0 +1,117 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.flows;
+
+import io.trino.oauth2.metrics.Metrics;
+import io.trino.oauth2.models.OAuth2Config;
+import io.trino.oauth2.utils.OAuthTokenStore;
+import io.trino.oauth2.utils.TokenPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Utility class that acquires user tokens by walking the {@link TokenState}
+ * machine, for the device code and authorization code flows. Only failures
+ * surface as exceptions: a missing or rejected refresh token moves to the
+ * interactive login without one being thrown.
+ */
+final class UserTokenAcquisition {
+    private static final Logger logger = LoggerFactory.getLogger(UserTokenAcquisition.class);
+
+    private UserTokenAcquisition() {
+        // Utility class
+    }
+
+    /**
+     * Returns a stored, refreshed or newly issued access token.
+     *
+     * @param validMinDurationThreshold How long a stored access token must remain valid to be used (seconds)
+     * @param storageClientId           The client ID the config's tokens are stored under
+     * @param tokenEndpoint             Resolves the token endpoint, only when a refresh is needed
+     * @param login                     Runs the interactive login, which stores the new tokens
+     */
+    static String acquire(
+            OAuth2Config config,
+            int validMinDurationThreshold,
+            String proxyUrl,
+            String storageClientId,
+            TokenEndpoint tokenEndpoint,
+            InteractiveLogin login
+    ) throws IOException {
+        String mode = config.getClass().getSimpleName();
+
+        TokenState state = TokenState.of(storageClientId, mode, validMinDurationThreshold);
+        while (true) {
+            logger.debug("Acquiring {} token for {}: {}", mode, storageClientId, state);
+            switch (state) {
+                case CACHED: {
+                    String accessToken = OAuthTokenStore.getActiveAccessToken(storageClientId, mode, validMinDurationThreshold);
+                    if (accessToken != null) {
+                        return accessToken;
+                    }
+                    // Replaced or purged since the state was read
+                    state = TokenState.of(storageClientId, mode, validMinDurationThreshold);
+                    break;
+                }
+                case REFRESHABLE: {
+                    TokenPair storedTokens = OAuthTokenStore.getTokenPair(storageClientId, mode);
+                    if (!RefreshToken.hasRefreshToken(storedTokens)) {
+                        state = TokenState.NEEDS_INTERACTIVE;
+                        break;
+                    }
+                    RefreshToken.Result result;
+                    try {
+                        result = RefreshToken.tryRefresh(config, storageClientId, storedTokens, tokenEndpoint.get(), proxyUrl);
+                    } catch (IOException e) {
+                        result = RefreshToken.Result.failed(Metrics.causeOf(e), e.getMessage());
+                    }
+                    if (result.isRefreshed()) {
+                        return result.getAccessToken();
+                    }
+                    logger.debug(
+                            "Failed to update the access token. " +
+                                    "A new access token must be obtained before API calls can succeed. " +
+                                    "Error: {}", result.getFailure()
+                    );
+                    state = TokenState.REFRESH_FAILED;
+                    break;
+                }
+                case REFRESH_FAILED:
+                    Metrics.getMetrics().refreshFallback(mode);
+                    OAuthTokenStore.purgeTokens(storageClientId, mode);
+                    state = TokenState.NEEDS_INTERACTIVE;
+                    break;
+                case NEEDS_INTERACTIVE: {
+                    login.run();
+                    String accessToken = OAuthTokenStore.getActiveAccessToken(storageClientId, mode);
+                    if (accessToken == null) {
+                        throw new RuntimeException("Failed to retrieve access token");
+                    }
+                    return accessToken;
+                }
+                default:
+                    throw new IllegalStateException("Unknown token state " + state);
+            }
+        }
+    }
+
+    interface TokenEndpoint {
+        String get() throws IOException;
+    }
+
+    interface InteractiveLogin {
+        void run() throws IOException;
+    }
+}
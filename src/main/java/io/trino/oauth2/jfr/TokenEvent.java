@@ -0,0 +1,94 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package io.trino.oauth2.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Base of the library's Java Flight Recorder events. Callers time the
+ * operation with {@link #begin()}, then fill in and commit the fields only
+ * when the event will be recorded:
+ * <pre>{@code
+ * if (event.finish()) {
+ *     event.commit(storageClientId, mode, endpoint, outcome);
+ * }
+ * }</pre>
+ * With recording off, {@code begin()} and {@code finish()} reduce to a
+ * check of a flag, and nothing is hashed or formatted.
+ */
+@Category({"Trino", "OAuth2"})
+@StackTrace(false)
+public abstract class TokenEvent extends Event {
+    @Label("Client ID Hash")
+    @Description("First 64 bits of the SHA-256 hash of the storage client ID, so events can be correlated without recording the client ID")
+    String clientIdHash;
+
+    @Label("Mode")
+    @Description("The flow, as the simple name of its config class")
+    String mode;
+
+    @Label("Endpoint")
+    @Description("The URL requested, or the token store backend for store events")
+    String endpoint;
+
+    @Label("Outcome")
+    @Description("success, or the reason the operation failed")
+    String outcome;
+
+    /**
+     * Ends the event.
+     *
+     * @return Whether the event will be recorded and its fields should be set
+     */
+    public final boolean finish() {
+        end();
+        return shouldCommit();
+    }
+
+    /**
+     * Sets the fields and records the event.
+     *
+     * @param storageClientId The client ID tokens are stored under, or null
+     * @param mode            The flow, or null
+     */
+    public final void commit(String storageClientId, String mode, String endpoint, String outcome) {
+        this.clientIdHash = storageClientId == null ? null : hash(storageClientId);
+        this.mode = mode;
+        this.endpoint = endpoint;
+        this.outcome = outcome;
+        commit();
+    }
+
+    private static String hash(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) {
+                hex.append(Character.forDigit((hash[i] >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(hash[i] & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not available", e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package io.trino.oauth2.jfr;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+/**
+ * Records a {@link TokenRequestEvent} for every request of a flow's HTTP client.
+ */
+public final class TokenRequestInterceptor implements Interceptor {
+    private final String storageClientId;
+    private final String mode;
+
+    public TokenRequestInterceptor(String storageClientId, String mode) {
+        this.storageClientId = storageClientId;
+        this.mode = mode;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        TokenRequestEvent event = new TokenRequestEvent();
+        event.begin();
+        try {
+            Response response = chain.proceed(request);
+            if (event.finish()) {
+                event.commit(storageClientId, mode, getEndpoint(request.url()), getOutcome(response.code()));
+            }
+            return response;
+        } catch (IOException | RuntimeException e) {
+            if (event.finish()) {
+                event.commit(storageClientId, mode, getEndpoint(request.url()), e.getClass().getSimpleName());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The URL without its query, which may carry codes or state.
+     */
+    public static String getEndpoint(HttpUrl url) {
+        return url.scheme() + "://" + url.host() + ':' + url.port() + url.encodedPath();
+    }
+
+    public static String getOutcome(int statusCode) {
+        return statusCode >= 200 && statusCode < 300 ? "success" : "http_" + statusCode;
+    }
+}
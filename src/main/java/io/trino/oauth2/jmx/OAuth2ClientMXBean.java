@@ -0,0 +1,80 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package io.trino.oauth2.jmx;
+
+import java.io.IOException;
+
+/**
+ * Management interface of one {@link io.trino.oauth2.OAuth2Client}, registered
+ * with {@link OAuth2ClientManagement#register(io.trino.oauth2.OAuth2Client)}.
+ * Latencies are in milliseconds over all acquisitions since the statistics
+ * were last reset.
+ */
+public interface OAuth2ClientMXBean {
+    String getMode();
+
+    String getClientId();
+
+    String getStorageClientId();
+
+    /**
+     * The number of unexpired access tokens the client holds.
+     */
+    int getActiveTokenCount();
+
+    /**
+     * Seconds until the client's access token expires, the shortest for a
+     * token per audience, or -1 if a token is missing or its expiry unknown.
+     */
+    long getRemainingLifetimeSeconds();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getAcquisitionCount();
+
+    long getAcquisitionFailures();
+
+    /**
+     * The cause of the last failed acquisition, such as {@code IOException}, or null.
+     */
+    String getLastFailureCause();
+
+    /**
+     * When the last acquisition failed, in ISO-8601, or null.
+     */
+    String getLastFailureTime();
+
+    double getAcquisitionLatencyP50Millis();
+
+    double getAcquisitionLatencyP90Millis();
+
+    double getAcquisitionLatencyP99Millis();
+
+    double getAcquisitionLatencyMaxMillis();
+
+    /**
+     * Discards the client's access tokens and, for client credentials,
+     * acquires new ones. See {@link io.trino.oauth2.OAuth2Client#forceRefresh()}.
+     */
+    void forceRefresh() throws IOException;
+
+    /**
+     * Removes the client's access and refresh tokens from the store.
+     */
+    void purge();
+
+    void resetStatistics();
+}
@@ -0,0 +1,199 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package io.trino.oauth2.jmx;
+
+import io.trino.oauth2.OAuth2Client;
+import io.trino.oauth2.metrics.Histogram;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposes an {@link OAuth2Client}'s token state, latency statistics and
+ * management operations as a platform MXBean, so operators can inspect and
+ * reset a client without restarting the application.
+ * <p>
+ * Clients are not registered on their own; register each one to manage:
+ * <pre>{@code
+ * ObjectName name = OAuth2ClientManagement.register(client);
+ * ...
+ * OAuth2ClientManagement.unregister(name);
+ * }</pre>
+ */
+public final class OAuth2ClientManagement implements OAuth2ClientMXBean {
+    public static final String DOMAIN = "io.trino.oauth2";
+
+    private final OAuth2Client client;
+
+    public OAuth2ClientManagement(OAuth2Client client) {
+        this.client = client;
+    }
+
+    /**
+     * Registers the client with the platform MBean server under
+     * {@code io.trino.oauth2:type=OAuth2Client,name="<storage client ID>"}.
+     *
+     * @return The name it was registered under
+     * @throws IllegalStateException If a client with the same storage client ID is registered
+     */
+    public static ObjectName register(OAuth2Client client) {
+        return register(client, client.getStorageClientId());
+    }
+
+    /**
+     * Registers the client with the platform MBean server under
+     * {@code io.trino.oauth2:type=OAuth2Client,name="<name>"}, for
+     * applications that hold several clients with the same config.
+     *
+     * @return The name it was registered under
+     * @throws IllegalStateException If a client is registered under the name
+     */
+    public static ObjectName register(OAuth2Client client, String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = getObjectName(name);
+            server.registerMBean(new OAuth2ClientManagement(client), objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register OAuth2 client MBean '" + name + "'", e);
+        }
+    }
+
+    /**
+     * Unregisters a client registered with {@link #register(OAuth2Client)};
+     * does nothing if it is no longer registered.
+     */
+    public static void unregister(ObjectName objectName) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to unregister OAuth2 client MBean " + objectName, e);
+        }
+    }
+
+    public static ObjectName getObjectName(String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=OAuth2Client,name=" + ObjectName.quote(name));
+    }
+
+    @Override
+    public String getMode() {
+        return client.getConfig().getClass().getSimpleName();
+    }
+
+    @Override
+    public String getClientId() {
+        return client.getConfig().getClientId();
+    }
+
+    @Override
+    public String getStorageClientId() {
+        return client.getStorageClientId();
+    }
+
+    @Override
+    public int getActiveTokenCount() {
+        return client.getActiveTokenCount();
+    }
+
+    @Override
+    public long getRemainingLifetimeSeconds() {
+        Duration remaining = client.getRemainingLifetime();
+        return remaining == null ? -1 : Math.max(0, remaining.getSeconds());
+    }
+
+    @Override
+    public long getCacheHits() {
+        return client.getStats().getCacheHits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return client.getStats().getCacheMisses();
+    }
+
+    @Override
+    public long getAcquisitionCount() {
+        return client.getStats().getAcquisitionLatency().getCount();
+    }
+
+    @Override
+    public long getAcquisitionFailures() {
+        return client.getStats().getFailures();
+    }
+
+    @Override
+    public String getLastFailureCause() {
+        return client.getStats().getLastFailureCause();
+    }
+
+    @Override
+    public String getLastFailureTime() {
+        Instant time = client.getStats().getLastFailureTime();
+        return time == null ? null : time.toString();
+    }
+
+    @Override
+    public double getAcquisitionLatencyP50Millis() {
+        return latencyMillis(0.5);
+    }
+
+    @Override
+    public double getAcquisitionLatencyP90Millis() {
+        return latencyMillis(0.9);
+    }
+
+    @Override
+    public double getAcquisitionLatencyP99Millis() {
+        return latencyMillis(0.99);
+    }
+
+    @Override
+    public double getAcquisitionLatencyMaxMillis() {
+        return toMillis(client.getStats().getAcquisitionLatency().getMax());
+    }
+
+    @Override
+    public void forceRefresh() throws IOException {
+        client.forceRefresh();
+    }
+
+    @Override
+    public void purge() {
+        client.purge();
+    }
+
+    @Override
+    public void resetStatistics() {
+        client.getStats().reset();
+    }
+
+    private double latencyMillis(double quantile) {
+        Histogram latency = client.getStats().getAcquisitionLatency();
+        return toMillis(latency.getValueAtQuantile(quantile));
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,110 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package io.trino.oauth2.metrics;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token statistics of one {@link io.trino.oauth2.OAuth2Client}. Unlike the
+ * installed {@link OAuthMetrics}, which aggregates by flow, they are always
+ * kept, so a single client can be diagnosed without enabling metrics.
+ * Latencies are in nanoseconds.
+ */
+public final class ClientStats {
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile Histogram acquisitionLatency = new Histogram();
+    private volatile Failure lastFailure;
+
+    public void cacheHit() {
+        cacheHits.increment();
+    }
+
+    public void cacheMiss() {
+        cacheMisses.increment();
+    }
+
+    /**
+     * Records the latency of an acquisition after a cache miss, successful or not.
+     */
+    public void acquisition(long nanos) {
+        acquisitionLatency.record(nanos);
+    }
+
+    /**
+     * Records a failed acquisition.
+     *
+     * @param cause A low-cardinality cause, as returned by {@link Metrics#causeOf(Throwable)}
+     * @param time  When the acquisition failed
+     */
+    public void failure(String cause, Instant time) {
+        failures.increment();
+        lastFailure = new Failure(cause, time);
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public Histogram getAcquisitionLatency() {
+        return acquisitionLatency;
+    }
+
+    /**
+     * The cause of the last failed acquisition, or null if none failed.
+     */
+    public String getLastFailureCause() {
+        Failure failure = lastFailure;
+        return failure == null ? null : failure.cause;
+    }
+
+    /**
+     * When the last acquisition failed, or null if none failed.
+     */
+    public Instant getLastFailureTime() {
+        Failure failure = lastFailure;
+        return failure == null ? null : failure.time;
+    }
+
+    /**
+     * Clears all statistics. Measurements recorded concurrently may be kept or lost.
+     */
+    public void reset() {
+        cacheHits.reset();
+        cacheMisses.reset();
+        failures.reset();
+        acquisitionLatency = new Histogram();
+        lastFailure = null;
+    }
+
+    private static final class Failure {
+        private final String cause;
+        private final Instant time;
+
+        private Failure(String cause, Instant time) {
+            this.cause = cause;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package io.trino.oauth2.metrics;
+
+/**
+ * Holds the process-wide {@link OAuthMetrics} the library reports to.
+ */
+public final class Metrics {
+    private static volatile OAuthMetrics metrics = OAuthMetrics.NOOP;
+
+    private Metrics() {
+        // Utility class
+    }
+
+    /**
+     * Replaces the metrics implementation, or restores the no-op default when null.
+     */
+    public static void setMetrics(OAuthMetrics newMetrics) {
+        metrics = newMetrics == null ? OAuthMetrics.NOOP : newMetrics;
+    }
+
+    public static OAuthMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Starts timing an operation of the given metrics.
+     *
+     * @return The start time, or 0 when nothing is recorded so no clock is read
+     */
+    public static long startTimer(OAuthMetrics metrics) {
+        return metrics == OAuthMetrics.NOOP ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Records the latency of an operation timed with {@link #startTimer(OAuthMetrics)}.
+     */
+    public static void recordLatency(OAuthMetrics metrics, TokenOperation operation, String flow, long startNanos) {
+        if (metrics != OAuthMetrics.NOOP) {
+            metrics.latency(operation, flow, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * A low-cardinality failure cause for an exception: its class name.
+     */
+    public static String causeOf(Throwable e) {
+        return e.getClass().getSimpleName();
+    }
+}
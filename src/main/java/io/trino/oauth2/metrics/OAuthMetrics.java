@@ -0,0 +1,71 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package io.trino.oauth2.metrics;
+
+/**
+ * Receives measurements of token operations. Implementations adapt them to a
+ * metrics system and must be thread-safe and fast, as they are called on the
+ * hot path of every {@code token()} call. Every method does nothing by
+ * default, so implementations override only what they record.
+ * <p>
+ * {@code flow} is the simple name of the config class, e.g.
+ * {@code ClientCredentialsConfig}, or null for operations not tied to a flow.
+ *
+ * @see Metrics#setMetrics(OAuthMetrics)
+ */
+public interface OAuthMetrics {
+    /**
+     * Records nothing; the default.
+     */
+    OAuthMetrics NOOP = new OAuthMetrics() {
+    };
+
+    /**
+     * A token request was served from the token store.
+     */
+    default void cacheHit(String flow) {
+    }
+
+    /**
+     * A token request found no usable token in the token store.
+     */
+    default void cacheMiss(String flow) {
+    }
+
+    /**
+     * How long a token served from the token store remained valid.
+     */
+    default void timeToExpiry(String flow, long seconds) {
+    }
+
+    /**
+     * A token operation completed, successfully or not.
+     */
+    default void latency(TokenOperation operation, String flow, long nanos) {
+    }
+
+    /**
+     * A token operation failed.
+     *
+     * @param cause A short, low-cardinality reason such as {@code http_400} or an exception class name
+     */
+    default void failure(TokenOperation operation, String flow, String cause) {
+    }
+
+    /**
+     * A refresh failed and the flow fell back to a new interactive login.
+     */
+    default void refreshFallback(String flow) {
+    }
+}
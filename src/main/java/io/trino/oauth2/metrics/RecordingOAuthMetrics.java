@@ -0,0 +1,116 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package io.trino.oauth2.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps counters and {@link Histogram histograms} of all measurements in
+ * memory, for exposing through a custom endpoint or for tests. Latencies are
+ * in nanoseconds and times to expiry in seconds.
+ */
+public final class RecordingOAuthMetrics implements OAuthMetrics {
+    private static final String NO_FLOW = "";
+
+    private final Map<String, LongAdder> cacheHits = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> cacheMisses = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> refreshFallbacks = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> timesToExpiry = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> latencies = new ConcurrentHashMap<>();
+
+    @Override
+    public void cacheHit(String flow) {
+        counter(cacheHits, key(flow)).increment();
+    }
+
+    @Override
+    public void cacheMiss(String flow) {
+        counter(cacheMisses, key(flow)).increment();
+    }
+
+    @Override
+    public void timeToExpiry(String flow, long seconds) {
+        histogram(timesToExpiry, key(flow)).record(seconds);
+    }
+
+    @Override
+    public void latency(TokenOperation operation, String flow, long nanos) {
+        histogram(latencies, key(operation, flow)).record(nanos);
+    }
+
+    @Override
+    public void failure(TokenOperation operation, String flow, String cause) {
+        counter(failures, key(operation, flow) + '/' + cause).increment();
+    }
+
+    @Override
+    public void refreshFallback(String flow) {
+        counter(refreshFallbacks, key(flow)).increment();
+    }
+
+    public long getCacheHits(String flow) {
+        return sum(cacheHits.get(key(flow)));
+    }
+
+    public long getCacheMisses(String flow) {
+        return sum(cacheMisses.get(key(flow)));
+    }
+
+    public long getRefreshFallbacks(String flow) {
+        return sum(refreshFallbacks.get(key(flow)));
+    }
+
+    public long getFailures(TokenOperation operation, String flow, String cause) {
+        return sum(failures.get(key(operation, flow) + '/' + cause));
+    }
+
+    /**
+     * Returns the times to expiry of tokens served from the store, in seconds.
+     */
+    public Histogram getTimeToExpiry(String flow) {
+        return histogram(timesToExpiry, key(flow));
+    }
+
+    /**
+     * Returns the latencies of an operation, in nanoseconds.
+     */
+    public Histogram getLatency(TokenOperation operation, String flow) {
+        return histogram(latencies, key(operation, flow));
+    }
+
+    private static String key(String flow) {
+        return flow == null ? NO_FLOW : flow;
+    }
+
+    private static String key(TokenOperation operation, String flow) {
+        return operation.name() + '/' + key(flow);
+    }
+
+    private static LongAdder counter(Map<String, LongAdder> counters, String key) {
+        LongAdder counter = counters.get(key);
+        return counter != null ? counter : counters.computeIfAbsent(key, k -> new LongAdder());
+    }
+
+    private static Histogram histogram(Map<String, Histogram> histograms, String key) {
+        Histogram histogram = histograms.get(key);
+        return histogram != null ? histogram : histograms.computeIfAbsent(key, k -> new Histogram());
+    }
+
+    private static long sum(LongAdder counter) {
+        return counter == null ? 0 : counter.sum();
+    }
+}
@@ -0,0 +1,35 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package io.trino.oauth2.metrics;
+
+/**
+ * The token operations whose latency and failures are recorded.
+ */
+public enum TokenOperation {
+    /**
+     * Getting a token that was not cached: a client credentials request,
+     * a refresh or an interactive login, as seen by the caller.
+     */
+    ACQUIRE,
+
+    /**
+     * One refresh token request.
+     */
+    REFRESH,
+
+    /**
+     * Fetching an OIDC discovery document.
+     */
+    DISCOVERY
+}
@@ -27,6 +27,9 @@ public class AuthorizationCodeConfig implements OAuth2Config {
     private final UrlConfig urlConfig;
     private final String redirectUri;
     private final String clientSecret;
+    private final PrivateKeyJwtConfig privateKeyJwt;
+    private final boolean dpop;
+    private final MutualTlsConfig mutualTls;
     private final String scope;
     private final List<String> audience;
     private final String state;
@@ -48,6 +51,9 @@ public class AuthorizationCodeConfig implements OAuth2Config {
         this.urlConfig = builder.urlConfig;
         this.redirectUri = builder.redirectUri;
         this.clientSecret = builder.clientSecret;
+        this.privateKeyJwt = builder.privateKeyJwt;
+        this.dpop = builder.dpop;
+        this.mutualTls = builder.mutualTls;
         this.scope = builder.scope;
         this.audience = builder.audience;
         this.state = builder.state;
@@ -83,6 +89,30 @@ public class AuthorizationCodeConfig implements OAuth2Config {
         return clientSecret;
     }
 
+    /**
+     * Settings for authenticating with a signed JWT instead of the client
+     * secret, or null to use the secret.
+     */
+    public PrivateKeyJwtConfig getPrivateKeyJwt() {
+        return privateKeyJwt;
+    }
+
+    /**
+     * If true, tokens are bound to a DPoP key (RFC 9449) and every token and
+     * refresh request carries a proof of possession.
+     */
+    public boolean isDpop() {
+        return dpop;
+    }
+
+    /**
+     * Settings for presenting a client certificate (RFC 8705), or null to
+     * connect without one.
+     */
+    public MutualTlsConfig getMutualTls() {
+        return mutualTls;
+    }
+
     /**
      * A space-delimited string defining the permissions the application is
      * requesting. Examples: "openid profile email offline_access".
@@ -143,6 +173,9 @@ public class AuthorizationCodeConfig implements OAuth2Config {
         private UrlConfig urlConfig;
         private String redirectUri;
         private String clientSecret;
+        private PrivateKeyJwtConfig privateKeyJwt;
+        private boolean dpop;
+        private MutualTlsConfig mutualTls;
         private String scope;
         private List<String> audience;
         private String state;
@@ -169,6 +202,21 @@ public class AuthorizationCodeConfig implements OAuth2Config {
             return this;
         }
 
+        public Builder privateKeyJwt(PrivateKeyJwtConfig privateKeyJwt) {
+            this.privateKeyJwt = privateKeyJwt;
+            return this;
+        }
+
+        public Builder dpop(boolean dpop) {
+            this.dpop = dpop;
+            return this;
+        }
+
+        public Builder mutualTls(MutualTlsConfig mutualTls) {
+            this.mutualTls = mutualTls;
+            return this;
+        }
+
         public Builder scope(String scope) {
             this.scope = scope;
             return this;
@@ -12,6 +12,7 @@
 
 package io.trino.oauth2.models;
 
+import java.time.Duration;
 import java.util.List;
 
 /**
@@ -28,10 +29,29 @@ public class ClientCredentialsConfig implements OAuth2Config {
 
     /**
      * The secret credential for the application. Since Client Credentials flow
-     * implies a confidential client, this is required.
+     * implies a confidential client, this is required unless the client
+     * authenticates with {@link #privateKeyJwt} or {@link #mutualTls}.
      */
     private final String clientSecret;
 
+    /**
+     * Settings for authenticating with a signed JWT (RFC 7523) instead of the
+     * client secret, or null to use the secret.
+     */
+    private final PrivateKeyJwtConfig privateKeyJwt;
+
+    /**
+     * If true, tokens are bound to a DPoP key (RFC 9449) and every token
+     * request carries a proof of possession.
+     */
+    private final boolean dpop;
+
+    /**
+     * Settings for presenting a client certificate (RFC 8705), or null to
+     * connect without one.
+     */
+    private final MutualTlsConfig mutualTls;
+
     /**
      * Configuration for finding the necessary OAuth endpoints.
      */
@@ -49,22 +69,69 @@ public class ClientCredentialsConfig implements OAuth2Config {
      */
     private final List<String> audience;
 
+    /**
+     * If true, a separate token is acquired and cached for each audience
+     * instead of one token for all of them.
+     */
+    private final boolean tokenPerAudience;
+
+    /**
+     * If true, a live token granted a superset of {@link #scope}, acquired by
+     * any config of the same client, issuer and audiences, is used instead of
+     * requesting a token for exactly these scopes.
+     */
+    private final boolean reuseBroaderScopes;
+
+    /**
+     * How long a token request waits for concurrent requests of other configs
+     * of the same client, issuer and audiences, so that all of them are served
+     * by one token for the union of their scopes. Null to send each request
+     * at once. Requires {@link #reuseBroaderScopes}.
+     */
+    private final Duration scopeBatchWindow;
+
     private ClientCredentialsConfig(Builder builder) {
         if (builder.clientId == null || builder.clientId.trim().isEmpty()) {
             throw new IllegalArgumentException("clientId is required");
         }
-        if (builder.clientSecret == null || builder.clientSecret.trim().isEmpty()) {
+        if (builder.privateKeyJwt == null && builder.mutualTls == null &&
+                (builder.clientSecret == null || builder.clientSecret.trim().isEmpty())) {
             throw new IllegalArgumentException("clientSecret is required");
         }
         if (builder.urlConfig == null) {
             throw new IllegalArgumentException("urlConfig is required");
         }
+        if (builder.tokenPerAudience && (builder.audience == null || builder.audience.isEmpty())) {
+            throw new IllegalArgumentException("audience is required when tokenPerAudience is set");
+        }
+        if (builder.reuseBroaderScopes) {
+            if (builder.scope == null || builder.scope.trim().isEmpty()) {
+                throw new IllegalArgumentException("scope is required when reuseBroaderScopes is set");
+            }
+            if (builder.dpop || builder.tokenPerAudience) {
+                throw new IllegalArgumentException("reuseBroaderScopes cannot be combined with dpop or tokenPerAudience");
+            }
+        }
+        if (builder.scopeBatchWindow != null) {
+            if (builder.scopeBatchWindow.isNegative() || builder.scopeBatchWindow.isZero()) {
+                throw new IllegalArgumentException("scopeBatchWindow must be positive");
+            }
+            if (!builder.reuseBroaderScopes) {
+                throw new IllegalArgumentException("scopeBatchWindow requires reuseBroaderScopes");
+            }
+        }
 
         this.clientId = builder.clientId;
         this.clientSecret = builder.clientSecret;
+        this.privateKeyJwt = builder.privateKeyJwt;
+        this.dpop = builder.dpop;
+        this.mutualTls = builder.mutualTls;
         this.urlConfig = builder.urlConfig;
         this.scope = builder.scope;
         this.audience = builder.audience;
+        this.tokenPerAudience = builder.tokenPerAudience;
+        this.reuseBroaderScopes = builder.reuseBroaderScopes;
+        this.scopeBatchWindow = builder.scopeBatchWindow;
     }
 
     @Override
@@ -76,6 +143,18 @@ public class ClientCredentialsConfig implements OAuth2Config {
         return clientSecret;
     }
 
+    public PrivateKeyJwtConfig getPrivateKeyJwt() {
+        return privateKeyJwt;
+    }
+
+    public boolean isDpop() {
+        return dpop;
+    }
+
+    public MutualTlsConfig getMutualTls() {
+        return mutualTls;
+    }
+
     @Override
     public UrlConfig getUrlConfig() {
         return urlConfig;
@@ -89,6 +168,18 @@ public class ClientCredentialsConfig implements OAuth2Config {
         return audience;
     }
 
+    public boolean isTokenPerAudience() {
+        return tokenPerAudience;
+    }
+
+    public boolean isReuseBroaderScopes() {
+        return reuseBroaderScopes;
+    }
+
+    public Duration getScopeBatchWindow() {
+        return scopeBatchWindow;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -96,9 +187,15 @@ public class ClientCredentialsConfig implements OAuth2Config {
     public static class Builder {
         private String clientId;
         private String clientSecret;
+        private PrivateKeyJwtConfig privateKeyJwt;
+        private boolean dpop;
+        private MutualTlsConfig mutualTls;
         private UrlConfig urlConfig;
         private String scope;
         private List<String> audience;
+        private boolean tokenPerAudience;
+        private boolean reuseBroaderScopes;
+        private Duration scopeBatchWindow;
 
         public Builder clientId(String clientId) {
             this.clientId = clientId;
@@ -110,6 +207,21 @@ public class ClientCredentialsConfig implements OAuth2Config {
             return this;
         }
 
+        public Builder privateKeyJwt(PrivateKeyJwtConfig privateKeyJwt) {
+            this.privateKeyJwt = privateKeyJwt;
+            return this;
+        }
+
+        public Builder dpop(boolean dpop) {
+            this.dpop = dpop;
+            return this;
+        }
+
+        public Builder mutualTls(MutualTlsConfig mutualTls) {
+            this.mutualTls = mutualTls;
+            return this;
+        }
+
         public Builder urlConfig(UrlConfig urlConfig) {
             this.urlConfig = urlConfig;
             return this;
@@ -125,6 +237,21 @@ public class ClientCredentialsConfig implements OAuth2Config {
             return this;
         }
 
+        public Builder tokenPerAudience(boolean tokenPerAudience) {
+            this.tokenPerAudience = tokenPerAudience;
+            return this;
+        }
+
+        public Builder reuseBroaderScopes(boolean reuseBroaderScopes) {
+            this.reuseBroaderScopes = reuseBroaderScopes;
+            return this;
+        }
+
+        public Builder scopeBatchWindow(Duration scopeBatchWindow) {
+            this.scopeBatchWindow = scopeBatchWindow;
+            return this;
+        }
+
         public ClientCredentialsConfig build() {
             return new ClientCredentialsConfig(this);
         }
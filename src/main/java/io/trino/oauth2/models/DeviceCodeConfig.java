@@ -25,6 +25,9 @@ public class DeviceCodeConfig implements OAuth2Config {
     private final String clientId;
     private final UrlConfig urlConfig;
     private final String clientSecret;
+    private final PrivateKeyJwtConfig privateKeyJwt;
+    private final boolean dpop;
+    private final MutualTlsConfig mutualTls;
     private final String scope;
     private final List<String> audience;
     private final boolean pollForToken;
@@ -41,6 +44,9 @@ public class DeviceCodeConfig implements OAuth2Config {
         this.clientId = builder.clientId;
         this.urlConfig = builder.urlConfig;
         this.clientSecret = builder.clientSecret;
+        this.privateKeyJwt = builder.privateKeyJwt;
+        this.dpop = builder.dpop;
+        this.mutualTls = builder.mutualTls;
         this.scope = builder.scope;
         this.audience = builder.audience;
         this.pollForToken = builder.pollForToken;
@@ -61,6 +67,30 @@ public class DeviceCodeConfig implements OAuth2Config {
         return clientSecret;
     }
 
+    /**
+     * Settings for authenticating with a signed JWT instead of the client
+     * secret, or null to use the secret.
+     */
+    public PrivateKeyJwtConfig getPrivateKeyJwt() {
+        return privateKeyJwt;
+    }
+
+    /**
+     * If true, tokens are bound to a DPoP key (RFC 9449) and every token and
+     * refresh request carries a proof of possession.
+     */
+    public boolean isDpop() {
+        return dpop;
+    }
+
+    /**
+     * Settings for presenting a client certificate (RFC 8705), or null to
+     * connect without one.
+     */
+    public MutualTlsConfig getMutualTls() {
+        return mutualTls;
+    }
+
     public String getScope() {
         return scope;
     }
@@ -101,6 +131,9 @@ public class DeviceCodeConfig implements OAuth2Config {
         private String clientId;
         private UrlConfig urlConfig;
         private String clientSecret;
+        private PrivateKeyJwtConfig privateKeyJwt;
+        private boolean dpop;
+        private MutualTlsConfig mutualTls;
         private String scope;
         private List<String> audience;
         private boolean pollForToken = true;
@@ -121,6 +154,21 @@ public class DeviceCodeConfig implements OAuth2Config {
             return this;
         }
 
+        public Builder privateKeyJwt(PrivateKeyJwtConfig privateKeyJwt) {
+            this.privateKeyJwt = privateKeyJwt;
+            return this;
+        }
+
+        public Builder dpop(boolean dpop) {
+            this.dpop = dpop;
+            return this;
+        }
+
+        public Builder mutualTls(MutualTlsConfig mutualTls) {
+            this.mutualTls = mutualTls;
+            return this;
+        }
+
         public Builder scope(String scope) {
             this.scope = scope;
             return this;
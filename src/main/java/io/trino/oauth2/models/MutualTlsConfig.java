@@ -0,0 +1,90 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.models;
+
+import java.security.KeyStore;
+
+/**
+ * Configuration for mutual TLS client authentication (RFC 8705).
+ *
+ * The client presents a certificate from its key store when connecting to
+ * the authorization server. Clients sharing one instance share a TLS
+ * session cache and connection pool, so repeat token requests resume the
+ * session or reuse the connection instead of a full mutual handshake.
+ */
+public class MutualTlsConfig {
+    /**
+     * The key store holding the client's private key and certificate chain.
+     */
+    private final KeyStore keyStore;
+
+    /**
+     * The password protecting the client's private key.
+     */
+    private final char[] keyPassword;
+
+    /**
+     * The certificates trusted for the server, or null for the JVM's default trust store.
+     */
+    private final KeyStore trustStore;
+
+    private MutualTlsConfig(Builder builder) {
+        if (builder.keyStore == null) {
+            throw new IllegalArgumentException("keyStore is required");
+        }
+        if (builder.keyPassword == null) {
+            throw new IllegalArgumentException("keyPassword is required");
+        }
+
+        this.keyStore = builder.keyStore;
+        this.keyPassword = builder.keyPassword.clone();
+        this.trustStore = builder.trustStore;
+    }
+
+    public KeyStore getKeyStore() {
+        return keyStore;
+    }
+
+    public char[] getKeyPassword() {
+        return keyPassword.clone();
+    }
+
+    public KeyStore getTrustStore() {
+        return trustStore;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private KeyStore keyStore;
+        private char[] keyPassword;
+        private KeyStore trustStore;
+
+        public Builder keyStore(KeyStore keyStore, char[] keyPassword) {
+            this.keyStore = keyStore;
+            this.keyPassword = keyPassword;
+            return this;
+        }
+
+        public Builder trustStore(KeyStore trustStore) {
+            this.trustStore = trustStore;
+            return this;
+        }
+
+        public MutualTlsConfig build() {
+            return new MutualTlsConfig(this);
+        }
+    }
+}
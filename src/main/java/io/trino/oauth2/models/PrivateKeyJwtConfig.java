@@ -0,0 +1,128 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.models;
+
+import io.trino.oauth2.configs.Constants;
+
+import java.security.PrivateKey;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.time.Duration;
+
+/**
+ * Configuration for {@code private_key_jwt} client authentication (RFC 7523).
+ *
+ * Instead of sending a client secret, the client proves its identity with a
+ * short-lived JWT signed by its private key. Signing is comparatively
+ * expensive, so a signed assertion is reused for {@code reuseWindow} and its
+ * successor is signed in the background before the window ends.
+ */
+public class PrivateKeyJwtConfig {
+    /**
+     * The key assertions are signed with: RSA for RS256, or EC on P-256,
+     * P-384 or P-521 for ES256, ES384 or ES512.
+     */
+    private final PrivateKey privateKey;
+
+    /**
+     * The {@code kid} header identifying the key to the server, if it needs one.
+     */
+    private final String keyId;
+
+    /**
+     * How long each assertion is valid for, from the time it is signed.
+     */
+    private final Duration assertionLifetime;
+
+    /**
+     * How long after signing an assertion is still sent. Zero signs a new
+     * assertion for every request, for servers that reject a reused
+     * {@code jti}; the next one is still signed ahead of time.
+     */
+    private final Duration reuseWindow;
+
+    private PrivateKeyJwtConfig(Builder builder) {
+        if (builder.privateKey == null) {
+            throw new IllegalArgumentException("privateKey is required");
+        }
+        if (!(builder.privateKey instanceof RSAPrivateKey) && !(builder.privateKey instanceof ECPrivateKey)) {
+            throw new IllegalArgumentException("privateKey must be an RSA or EC key");
+        }
+        if (builder.assertionLifetime == null || builder.assertionLifetime.isNegative() ||
+                builder.assertionLifetime.isZero()) {
+            throw new IllegalArgumentException("assertionLifetime must be positive");
+        }
+        if (builder.reuseWindow == null || builder.reuseWindow.isNegative()) {
+            throw new IllegalArgumentException("reuseWindow must not be negative");
+        }
+        if (builder.reuseWindow.compareTo(builder.assertionLifetime) >= 0) {
+            throw new IllegalArgumentException("reuseWindow must be shorter than assertionLifetime");
+        }
+
+        this.privateKey = builder.privateKey;
+        this.keyId = builder.keyId;
+        this.assertionLifetime = builder.assertionLifetime;
+        this.reuseWindow = builder.reuseWindow;
+    }
+
+    public PrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    public String getKeyId() {
+        return keyId;
+    }
+
+    public Duration getAssertionLifetime() {
+        return assertionLifetime;
+    }
+
+    public Duration getReuseWindow() {
+        return reuseWindow;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private PrivateKey privateKey;
+        private String keyId;
+        private Duration assertionLifetime = Duration.ofSeconds(Constants.CLIENT_ASSERTION_LIFETIME);
+        private Duration reuseWindow = Duration.ofSeconds(Constants.CLIENT_ASSERTION_REUSE_WINDOW);
+
+        public Builder privateKey(PrivateKey privateKey) {
+            this.privateKey = privateKey;
+            return this;
+        }
+
+        public Builder keyId(String keyId) {
+            this.keyId = keyId;
+            return this;
+        }
+
+        public Builder assertionLifetime(Duration assertionLifetime) {
+            this.assertionLifetime = assertionLifetime;
+            return this;
+        }
+
+        public Builder reuseWindow(Duration reuseWindow) {
+            this.reuseWindow = reuseWindow;
+            return this;
+        }
+
+        public PrivateKeyJwtConfig build() {
+            return new PrivateKeyJwtConfig(this);
+        }
+    }
+}
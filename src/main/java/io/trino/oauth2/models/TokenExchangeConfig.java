@@ -0,0 +1,182 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.models;
+
+import io.trino.oauth2.configs.Constants;
+
+/**
+ * Configuration for the OAuth 2.0 Token Exchange grant (RFC 8693).
+ *
+ * A service such as a gateway exchanges a token it received from a caller
+ * (the subject token) for a token it can present to a downstream service on
+ * the caller's behalf. Exchanged tokens are cached in memory per subject
+ * token, audience and scope.
+ */
+public class TokenExchangeConfig implements OAuth2Config {
+    /**
+     * The public identifier of the exchanging client.
+     */
+    private final String clientId;
+
+    /**
+     * The client's secret, if it is a confidential client.
+     */
+    private final String clientSecret;
+
+    /**
+     * Configuration for finding the token endpoint.
+     */
+    private final UrlConfig urlConfig;
+
+    /**
+     * The default audience of exchanged tokens, if any.
+     */
+    private final String audience;
+
+    /**
+     * The default space-delimited scope of exchanged tokens, if any.
+     */
+    private final String scope;
+
+    /**
+     * The type of the subject tokens, an RFC 8693 token type identifier.
+     */
+    private final String subjectTokenType;
+
+    /**
+     * The type of token to request, or null to let the server decide.
+     */
+    private final String requestedTokenType;
+
+    /**
+     * The maximum number of exchanged tokens kept; the least recently used are evicted.
+     */
+    private final int cacheSize;
+
+    private TokenExchangeConfig(Builder builder) {
+        if (builder.clientId == null || builder.clientId.trim().isEmpty()) {
+            throw new IllegalArgumentException("clientId is required");
+        }
+        if (builder.urlConfig == null) {
+            throw new IllegalArgumentException("urlConfig is required");
+        }
+        if (builder.subjectTokenType == null || builder.subjectTokenType.trim().isEmpty()) {
+            throw new IllegalArgumentException("subjectTokenType is required");
+        }
+        if (builder.cacheSize < 0) {
+            throw new IllegalArgumentException("cacheSize must not be negative");
+        }
+
+        this.clientId = builder.clientId;
+        this.clientSecret = builder.clientSecret;
+        this.urlConfig = builder.urlConfig;
+        this.audience = builder.audience;
+        this.scope = builder.scope;
+        this.subjectTokenType = builder.subjectTokenType;
+        this.requestedTokenType = builder.requestedTokenType;
+        this.cacheSize = builder.cacheSize;
+    }
+
+    @Override
+    public String getClientId() {
+        return clientId;
+    }
+
+    public String getClientSecret() {
+        return clientSecret;
+    }
+
+    @Override
+    public UrlConfig getUrlConfig() {
+        return urlConfig;
+    }
+
+    public String getAudience() {
+        return audience;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public String getSubjectTokenType() {
+        return subjectTokenType;
+    }
+
+    public String getRequestedTokenType() {
+        return requestedTokenType;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private String clientId;
+        private String clientSecret;
+        private UrlConfig urlConfig;
+        private String audience;
+        private String scope;
+        private String subjectTokenType = Constants.ACCESS_TOKEN_TYPE;
+        private String requestedTokenType;
+        private int cacheSize = Constants.TOKEN_EXCHANGE_CACHE_SIZE;
+
+        public Builder clientId(String clientId) {
+            this.clientId = clientId;
+            return this;
+        }
+
+        public Builder clientSecret(String clientSecret) {
+            this.clientSecret = clientSecret;
+            return this;
+        }
+
+        public Builder urlConfig(UrlConfig urlConfig) {
+            this.urlConfig = urlConfig;
+            return this;
+        }
+
+        public Builder audience(String audience) {
+            this.audience = audience;
+            return this;
+        }
+
+        public Builder scope(String scope) {
+            this.scope = scope;
+            return this;
+        }
+
+        public Builder subjectTokenType(String subjectTokenType) {
+            this.subjectTokenType = subjectTokenType;
+            return this;
+        }
+
+        public Builder requestedTokenType(String requestedTokenType) {
+            this.requestedTokenType = requestedTokenType;
+            return this;
+        }
+
+        public Builder cacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        public TokenExchangeConfig build() {
+            return new TokenExchangeConfig(this);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTCreator;
+import com.auth0.jwt.algorithms.Algorithm;
+import io.trino.oauth2.models.PrivateKeyJwtConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.PrivateKey;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Signs and caches {@code private_key_jwt} client assertions (RFC 7523).
+ * <p>
+ * One provider is kept per {@link PrivateKeyJwtConfig}, holding the latest
+ * assertion for each client and audience. An assertion is handed out until
+ * its reuse window ends; once three quarters of the window have passed, the
+ * next request schedules its successor to be signed on a background thread,
+ * so steady traffic never waits on a signature. With a zero reuse window
+ * every request takes a fresh assertion signed ahead of time and schedules
+ * the next one. A request signs inline only when no usable assertion is
+ * ready, such as the first request or one after a long idle period.
+ */
+public final class ClientAssertionProvider {
+    private static final Logger logger = LoggerFactory.getLogger(ClientAssertionProvider.class);
+
+    private static final Map<PrivateKeyJwtConfig, ClientAssertionProvider> providers =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static final ExecutorService signer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "oauth2-client-assertion-signer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Algorithm algorithm;
+    private final String keyId;
+    private final Duration lifetime;
+    private final long reuseWindowNanos;
+    private final long signAheadNanos;
+    private final long spareMaxAgeNanos;
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+
+    private ClientAssertionProvider(PrivateKeyJwtConfig config) {
+        // Copy what is needed rather than keeping the config, which is the weak map key
+        this.algorithm = getAlgorithm(config.getPrivateKey());
+        this.keyId = config.getKeyId();
+        this.lifetime = config.getAssertionLifetime();
+        this.reuseWindowNanos = config.getReuseWindow().toNanos();
+        this.signAheadNanos = reuseWindowNanos / 4 * 3;
+        // A spare signed ahead of time is sent at most this long after signing
+        this.spareMaxAgeNanos = lifetime.toNanos() / 2;
+    }
+
+    /**
+     * Returns the shared provider for the given settings.
+     */
+    public static ClientAssertionProvider forConfig(PrivateKeyJwtConfig config) {
+        return providers.computeIfAbsent(config, ClientAssertionProvider::new);
+    }
+
+    /**
+     * Returns a signed assertion identifying the client to the server.
+     *
+     * @param clientId The client ID, used as issuer and subject
+     * @param audience The URL of the endpoint the assertion is sent to
+     * @return The compact serialized JWT
+     */
+    public String getAssertion(String clientId, String audience) {
+        Slot slot = slots.computeIfAbsent(clientId + '\n' + audience, key -> new Slot(clientId, audience));
+        return reuseWindowNanos > 0 ? slot.reuse() : slot.takeSpare();
+    }
+
+    private static Algorithm getAlgorithm(PrivateKey privateKey) {
+        if (privateKey instanceof RSAPrivateKey) {
+            return Algorithm.RSA256((RSAPublicKey) null, (RSAPrivateKey) privateKey);
+        }
+        if (privateKey instanceof ECPrivateKey) {
+            ECPrivateKey ecKey = (ECPrivateKey) privateKey;
+            switch (ecKey.getParams().getCurve().getField().getFieldSize()) {
+                case 256:
+                    return Algorithm.ECDSA256((ECPublicKey) null, ecKey);
+                case 384:
+                    return Algorithm.ECDSA384((ECPublicKey) null, ecKey);
+                case 521:
+                    return Algorithm.ECDSA512((ECPublicKey) null, ecKey);
+                default:
+                    throw new IllegalArgumentException("Unsupported EC curve for client assertions");
+            }
+        }
+        throw new IllegalArgumentException("privateKey must be an RSA or EC key");
+    }
+
+    private static final class Assertion {
+        private final String value;
+        private final long signedAtNanos;
+
+        private Assertion(String value, long signedAtNanos) {
+            this.value = value;
+            this.signedAtNanos = signedAtNanos;
+        }
+    }
+
+    private final class Slot {
+        private final String clientId;
+        private final String audience;
+        private final AtomicBoolean signing = new AtomicBoolean();
+
+        /**
+         * The assertion being reused, when the reuse window is positive.
+         */
+        private volatile Assertion current;
+
+        /**
+         * The assertion signed for the next request, when the reuse window is zero.
+         */
+        private final AtomicReference<Assertion> spare = new AtomicReference<>();
+
+        private Slot(String clientId, String audience) {
+            this.clientId = clientId;
+            this.audience = audience;
+        }
+
+        private String reuse() {
+            Assertion assertion = current;
+            if (assertion != null) {
+                long age = OAuthTokenStore.getTimeSource().nanoTime() - assertion.signedAtNanos;
+                if (age < reuseWindowNanos) {
+                    if (age >= signAheadNanos) {
+                        signAhead();
+                    }
+                    return assertion.value;
+                }
+            }
+            assertion = sign();
+            current = assertion;
+            return assertion.value;
+        }
+
+        private String takeSpare() {
+            Assertion assertion = spare.getAndSet(null);
+            signAhead();
+            if (assertion == null ||
+                    OAuthTokenStore.getTimeSource().nanoTime() - assertion.signedAtNanos >= spareMaxAgeNanos) {
+                assertion = sign();
+            }
+            return assertion.value;
+        }
+
+        private void signAhead() {
+            if (!signing.compareAndSet(false, true)) {
+                return;
+            }
+            signer.execute(() -> {
+                try {
+                    Assertion assertion = sign();
+                    if (reuseWindowNanos > 0) {
+                        current = assertion;
+                    } else {
+                        spare.set(assertion);
+                    }
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to sign client assertion ahead of time", e);
+                } finally {
+                    signing.set(false);
+                }
+            });
+        }
+
+        private Assertion sign() {
+            TimeSource timeSource = OAuthTokenStore.getTimeSource();
+            long signedAtNanos = timeSource.nanoTime();
+            // Date the assertion on the server's clock so that skew cannot make it look expired
+            Instant issuedAt = OAuthTokenStore.toServerTime(UrlHelpers.getHost(audience), timeSource.now());
+
+            JWTCreator.Builder jwt = JWT.create()
+                    .withIssuer(clientId)
+                    .withSubject(clientId)
+                    .withAudience(audience)
+                    .withJWTId(UUID.randomUUID().toString())
+                    .withIssuedAt(issuedAt)
+                    .withExpiresAt(issuedAt.plus(lifetime));
+            if (keyId != null) {
+                jwt.withKeyId(keyId);
+            }
+            return new Assertion(jwt.sign(algorithm), signedAtNanos);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Estimates how far the identity provider's clock is ahead of the local one
+ * from the {@code Date} headers of its responses.
+ * <p>
+ * Each response gives one sample: the header time, plus half a second since
+ * the header has whole-second resolution, minus the local midpoint of the
+ * request. The estimate starts from the median of the first few samples,
+ * so that one odd {@code Date} header cannot set it, and is then smoothed
+ * with an exponentially weighted moving average. Responses that took too
+ * long to say much are ignored.
+ */
+public final class ClockSkewEstimator {
+    private static final double DEFAULT_SMOOTHING = 0.2;
+    private static final Duration MAX_ROUND_TRIP = Duration.ofSeconds(5);
+    private static final int SEED_SAMPLES = 3;
+
+    private final double smoothing;
+    private final long[] seedSamples = new long[SEED_SAMPLES];
+    private double offsetMillis;
+    private int samples;
+    private volatile Duration offset = Duration.ZERO;
+
+    public ClockSkewEstimator() {
+        this(DEFAULT_SMOOTHING);
+    }
+
+    /**
+     * @param smoothing Weight of each new sample, between 0 (exclusive) and 1
+     */
+    public ClockSkewEstimator(double smoothing) {
+        if (!(smoothing > 0 && smoothing <= 1)) {
+            throw new IllegalArgumentException("smoothing must be in (0, 1]");
+        }
+        this.smoothing = smoothing;
+    }
+
+    /**
+     * Records one response.
+     *
+     * @param serverDate    The response's {@code Date} header
+     * @param requestSentAt Local time when the request was sent
+     * @param responseAt    Local time when the response arrived
+     */
+    public synchronized void observe(Instant serverDate, Instant requestSentAt, Instant responseAt) {
+        Duration roundTrip = Duration.between(requestSentAt, responseAt);
+        if (roundTrip.isNegative() || roundTrip.compareTo(MAX_ROUND_TRIP) > 0) {
+            return;
+        }
+
+        Instant localMidpoint = requestSentAt.plus(roundTrip.dividedBy(2));
+        long sample = Duration.between(localMidpoint, serverDate.plusMillis(500)).toMillis();
+        if (samples < SEED_SAMPLES) {
+            seedSamples[samples] = sample;
+            offsetMillis = seedEstimate(samples + 1);
+        } else {
+            offsetMillis += smoothing * (sample - offsetMillis);
+        }
+        samples++;
+        offset = Duration.ofMillis(Math.round(offsetMillis));
+    }
+
+    /**
+     * The median of the first samples, or their mean while there are only two.
+     */
+    private double seedEstimate(int count) {
+        long[] sorted = Arrays.copyOf(seedSamples, count);
+        Arrays.sort(sorted);
+        return count % 2 == 1 ? sorted[count / 2] : (sorted[count / 2 - 1] + sorted[count / 2]) / 2.0;
+    }
+
+    /**
+     * How far the server clock is ahead of the local clock; negative if it is behind.
+     */
+    public Duration getOffset() {
+        return offset;
+    }
+
+    public synchronized int getSampleCount() {
+        return samples;
+    }
+
+    public synchronized void reset() {
+        offsetMillis = 0;
+        samples = 0;
+        offset = Duration.ZERO;
+    }
+}
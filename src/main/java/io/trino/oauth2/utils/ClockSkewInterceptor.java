@@ -0,0 +1,48 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Date;
+
+/**
+ * Feeds the {@code Date} header of every identity provider response to the
+ * clock skew estimator {@link OAuthTokenStore} keeps for the provider's host.
+ */
+public final class ClockSkewInterceptor implements Interceptor {
+    public static final ClockSkewInterceptor INSTANCE = new ClockSkewInterceptor();
+
+    private ClockSkewInterceptor() {
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        TimeSource timeSource = OAuthTokenStore.getTimeSource();
+        Instant requestSentAt = timeSource.now();
+        Response response = chain.proceed(chain.request());
+        Instant responseAt = timeSource.now();
+
+        // Responses served from a cache carry the date they were first sent
+        if (response.networkResponse() != null && response.cacheResponse() == null) {
+            Date serverDate = response.headers().getDate("Date");
+            if (serverDate != null) {
+                OAuthTokenStore.getClockSkewEstimator(chain.request().url().host()).observe(serverDate.toInstant(), requestSentAt, responseAt);
+            }
+        }
+        return response;
+    }
+}
@@ -0,0 +1,91 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+/**
+ * Adds a DPoP proof to every request and keeps the server's nonces.
+ * <p>
+ * Requests that carry a {@code DPoP} authorization header get a proof bound
+ * to that access token. When the server rejects a proof because it needs a
+ * new nonce ({@code use_dpop_nonce}), the request is retried once with it.
+ * <p>
+ * The client's proof generator is looked up in {@link OAuthTokenStore} for
+ * every request rather than kept, so that once purged tokens take their key
+ * with them, the next login binds its tokens to the same new key that
+ * resource requests and refreshes sign with.
+ */
+public final class DpopInterceptor implements Interceptor {
+    private static final String NONCE_ERROR = "use_dpop_nonce";
+    private static final String DPOP_AUTHORIZATION_PREFIX = "DPoP ";
+    private static final long MAX_ERROR_BODY = 4096;
+
+    private final String clientId;
+    private final String mode;
+
+    /**
+     * @param clientId The storage client ID the DPoP key is kept under
+     * @param mode     The authentication mode the key is kept under
+     */
+    public DpopInterceptor(String clientId, String mode) {
+        this.clientId = clientId;
+        this.mode = mode;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        DpopProofGenerator generator = OAuthTokenStore.getDpopProofGenerator(clientId, mode);
+        String url = request.url().toString();
+        String previousNonce = generator.getNonce(url);
+
+        Response response = chain.proceed(withProof(generator, request, url));
+        String nonce = response.header("DPoP-Nonce");
+        if (nonce == null) {
+            return response;
+        }
+        generator.setNonce(url, nonce);
+        if (nonce.equals(previousNonce) || !isNonceChallenge(response)) {
+            return response;
+        }
+
+        response.close();
+        return chain.proceed(withProof(generator, request, url));
+    }
+
+    private static Request withProof(DpopProofGenerator generator, Request request, String url) {
+        String accessToken = null;
+        String authorization = request.header("Authorization");
+        if (authorization != null && authorization.regionMatches(
+                true, 0, DPOP_AUTHORIZATION_PREFIX, 0, DPOP_AUTHORIZATION_PREFIX.length())) {
+            accessToken = authorization.substring(DPOP_AUTHORIZATION_PREFIX.length()).trim();
+        }
+        return request.newBuilder()
+                .header("DPoP", generator.createProof(request.method(), url, accessToken))
+                .build();
+    }
+
+    private static boolean isNonceChallenge(Response response) throws IOException {
+        if (response.code() == 401) {
+            String challenge = response.header("WWW-Authenticate");
+            return challenge != null && challenge.contains(NONCE_ERROR);
+        }
+        // Authorization servers report the error in the token error response
+        return response.code() == 400 && response.peekBody(MAX_ERROR_BODY).string().contains(NONCE_ERROR);
+    }
+}
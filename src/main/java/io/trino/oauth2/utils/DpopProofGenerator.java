@@ -0,0 +1,240 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates DPoP proofs (RFC 9449) with a P-256 key pair.
+ * <p>
+ * Everything that does not change between proofs is prepared once: the
+ * encoded header with the public key, and a signature instance per thread
+ * initialized with the private key. A proof then only encodes a small
+ * payload of {@code jti}, {@code htm}, {@code htu} and {@code iat}, plus the
+ * server's nonce and the access token hash when they apply, and signs it.
+ * The {@code jti} is a random per-generator prefix and a counter, so unique
+ * identifiers do not draw on the secure random generator per proof.
+ * <p>
+ * Nonces the server issues in {@code DPoP-Nonce} headers are remembered per
+ * endpoint and included in later proofs for it.
+ */
+public final class DpopProofGenerator {
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+    private static final int COORDINATE_LENGTH = 32;
+
+    private final KeyPair keyPair;
+    private final String headerPrefix;
+    private final String jtiPrefix;
+    private final AtomicLong jtiCounter = new AtomicLong();
+    private final Map<String, String> nonces = new ConcurrentHashMap<>();
+    private final ThreadLocal<Signature> signatures;
+
+    public DpopProofGenerator(KeyPair keyPair) {
+        if (!(keyPair.getPublic() instanceof ECPublicKey) ||
+                ((ECPublicKey) keyPair.getPublic()).getParams().getCurve().getField().getFieldSize() != 256) {
+            throw new IllegalArgumentException("DPoP key must be an EC key on P-256");
+        }
+        this.keyPair = keyPair;
+
+        ECPoint point = ((ECPublicKey) keyPair.getPublic()).getW();
+        String header = "{\"typ\":\"dpop+jwt\",\"alg\":\"ES256\",\"jwk\":{\"kty\":\"EC\",\"crv\":\"P-256\"," +
+                "\"x\":\"" + BASE64URL.encodeToString(toCoordinate(point.getAffineX())) + "\"," +
+                "\"y\":\"" + BASE64URL.encodeToString(toCoordinate(point.getAffineY())) + "\"}}";
+        this.headerPrefix = BASE64URL.encodeToString(header.getBytes(StandardCharsets.UTF_8)) + ".";
+
+        byte[] random = new byte[12];
+        new SecureRandom().nextBytes(random);
+        this.jtiPrefix = BASE64URL.encodeToString(random) + "-";
+
+        this.signatures = ThreadLocal.withInitial(() -> {
+            try {
+                // P1363 output is the JWS form of an ECDSA signature, so no DER conversion is needed
+                Signature signature = Signature.getInstance("SHA256withECDSAinP1363Format");
+                signature.initSign(keyPair.getPrivate());
+                return signature;
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException("Failed to initialize DPoP signing", e);
+            }
+        });
+    }
+
+    /**
+     * Generates a new P-256 key pair.
+     */
+    public static KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Failed to generate DPoP key pair", e);
+        }
+    }
+
+    public KeyPair getKeyPair() {
+        return keyPair;
+    }
+
+    /**
+     * Creates a proof for a request that does not carry an access token,
+     * such as a token request.
+     */
+    public String createProof(String method, String url) {
+        return createProof(method, url, null);
+    }
+
+    /**
+     * Creates a proof for a request.
+     *
+     * @param method      The HTTP method of the request
+     * @param url         The request URL; query and fragment are not part of the proof
+     * @param accessToken The DPoP-bound access token sent with the request, or null
+     * @return The compact serialized proof JWT
+     */
+    public String createProof(String method, String url, String accessToken) {
+        String targetUri = getTargetUri(url);
+        StringBuilder payload = new StringBuilder(192)
+                .append("{\"jti\":\"").append(jtiPrefix).append(jtiCounter.incrementAndGet())
+                .append("\",\"htm\":\"").append(method)
+                .append("\",\"htu\":\"");
+        appendEscaped(payload, targetUri);
+        // Date the proof on the server's clock, which checks iat against a narrow window
+        Instant issuedAt = OAuthTokenStore.toServerTime(UrlHelpers.getHost(url), OAuthTokenStore.getTimeSource().now());
+        payload.append("\",\"iat\":").append(issuedAt.getEpochSecond());
+
+        String nonce = nonces.get(targetUri);
+        if (nonce != null) {
+            payload.append(",\"nonce\":\"");
+            appendEscaped(payload, nonce);
+            payload.append('"');
+        }
+        if (accessToken != null) {
+            payload.append(",\"ath\":\"").append(hashAccessToken(accessToken)).append('"');
+        }
+        payload.append('}');
+
+        String signingInput = headerPrefix + BASE64URL.encodeToString(payload.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            Signature signature = signatures.get();
+            signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+            return signingInput + "." + BASE64URL.encodeToString(signature.sign());
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Failed to sign DPoP proof", e);
+        }
+    }
+
+    /**
+     * Remembers a nonce issued by the server for the endpoint at the given URL.
+     */
+    public void setNonce(String url, String nonce) {
+        nonces.put(getTargetUri(url), nonce);
+    }
+
+    /**
+     * Returns the nonce last issued for the endpoint at the given URL, or null.
+     */
+    public String getNonce(String url) {
+        return nonces.get(getTargetUri(url));
+    }
+
+    /**
+     * Serializes a key pair for storage, as base64 PKCS#8 and X.509 encodings.
+     */
+    static String encodeKeyPair(KeyPair keyPair) {
+        Base64.Encoder encoder = Base64.getEncoder();
+        return encoder.encodeToString(keyPair.getPrivate().getEncoded()) + "\n" +
+                encoder.encodeToString(keyPair.getPublic().getEncoded());
+    }
+
+    /**
+     * Reads a key pair written by {@link #encodeKeyPair(KeyPair)}.
+     */
+    static KeyPair decodeKeyPair(String encoded) throws GeneralSecurityException {
+        String[] parts = encoded.split("\n");
+        if (parts.length != 2) {
+            throw new GeneralSecurityException("Malformed DPoP key record");
+        }
+        Base64.Decoder decoder = Base64.getDecoder();
+        KeyFactory keyFactory = KeyFactory.getInstance("EC");
+        try {
+            return new KeyPair(
+                    keyFactory.generatePublic(new X509EncodedKeySpec(decoder.decode(parts[1]))),
+                    keyFactory.generatePrivate(new PKCS8EncodedKeySpec(decoder.decode(parts[0])))
+            );
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException("Malformed DPoP key record", e);
+        }
+    }
+
+    private static String getTargetUri(String url) {
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        return url.substring(0, end);
+    }
+
+    private static String hashAccessToken(String accessToken) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(accessToken.getBytes(StandardCharsets.US_ASCII));
+            return BASE64URL.encodeToString(hash);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("SHA-256 algorithm not available", e);
+        }
+    }
+
+    private static byte[] toCoordinate(BigInteger value) {
+        // Fixed-length big-endian, without the sign byte BigInteger may add
+        byte[] bytes = value.toByteArray();
+        byte[] coordinate = new byte[COORDINATE_LENGTH];
+        int length = Math.min(bytes.length, COORDINATE_LENGTH);
+        System.arraycopy(bytes, bytes.length - length, coordinate, COORDINATE_LENGTH - length, length);
+        return coordinate;
+    }
+
+    private static void appendEscaped(StringBuilder builder, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+    }
+}
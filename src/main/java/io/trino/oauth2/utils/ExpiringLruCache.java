@@ -0,0 +1,112 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded in-memory cache whose entries also expire at a deadline on
+ * the monotonic clock of {@link OAuthTokenStore#getTimeSource()}. When full,
+ * the least recently used entry is evicted.
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public final class ExpiringLruCache<K, V> {
+    private final int maxSize;
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+
+    public ExpiringLruCache(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must not be negative");
+        }
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                return size() > ExpiringLruCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the value if it stays valid for at least {@code minRemainingNanos}.
+     *
+     * @return The value, or null if absent or expiring too soon
+     */
+    public synchronized V get(K key, long minRemainingNanos) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long remaining = entry.deadlineNanos - OAuthTokenStore.getTimeSource().nanoTime();
+        if (remaining < minRemainingNanos) {
+            if (remaining <= 0) {
+                entries.remove(key);
+            }
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Stores a value until the given monotonic deadline.
+     */
+    public synchronized void put(K key, V value, long deadlineNanos) {
+        if (maxSize == 0) {
+            return;
+        }
+        entries.put(key, new CacheEntry<>(value, deadlineNanos));
+    }
+
+    /**
+     * Removes and returns the value, whether or not it has expired.
+     */
+    public synchronized V remove(K key) {
+        CacheEntry<V> entry = entries.remove(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Drops expired entries.
+     */
+    public synchronized void removeExpired() {
+        long now = OAuthTokenStore.getTimeSource().nanoTime();
+        Iterator<CacheEntry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().deadlineNanos - now <= 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static final class CacheEntry<V> {
+        final V value;
+        final long deadlineNanos;
+
+        CacheEntry(V value, long deadlineNanos) {
+            this.value = value;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+}
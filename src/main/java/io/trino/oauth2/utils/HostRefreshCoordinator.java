@@ -0,0 +1,182 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coordinates token acquisition between threads and processes on the same host.
+ * <p>
+ * Each token key maps to a lock file in a shared directory. The holder of the
+ * lock acquires or refreshes the token while other processes wait, then
+ * re-read the token the holder wrote to the store. File locks are held by the
+ * whole JVM, so threads of one process are serialized with an in-process lock
+ * before taking the file lock.
+ */
+public class HostRefreshCoordinator {
+    private static final Logger logger = LoggerFactory.getLogger(HostRefreshCoordinator.class);
+    private static final long POLL_INTERVAL_MILLIS = 50;
+
+    private final Path lockDirectory;
+    private final Duration maxWait;
+    private final Map<String, ReentrantLock> localLocks = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a coordinator.
+     *
+     * @param lockDirectory Directory holding the per-key lock files, shared by all processes
+     * @param maxWait       How long to wait for another process before acquiring without the lock
+     */
+    public HostRefreshCoordinator(Path lockDirectory, Duration maxWait) {
+        if (lockDirectory == null) {
+            throw new IllegalArgumentException("lockDirectory is required");
+        }
+        if (maxWait == null || maxWait.isNegative()) {
+            throw new IllegalArgumentException("maxWait must not be negative");
+        }
+        this.lockDirectory = lockDirectory;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Acquires the host-wide lock for the key, waiting up to the configured maximum.
+     * The returned handle must be closed. If the wait times out, the handle
+     * reports {@link Lock#isHeld()} as false and the caller proceeds uncoordinated.
+     *
+     * @param key The token key to coordinate on
+     * @return The lock handle
+     * @throws IOException If the lock file cannot be opened
+     */
+    public Lock lock(String key) throws IOException {
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        ReentrantLock localLock = localLocks.computeIfAbsent(key, k -> new ReentrantLock());
+
+        try {
+            if (!localLock.tryLock(maxWait.toNanos(), TimeUnit.NANOSECONDS)) {
+                logger.debug("Timed out waiting for in-process token lock on {}", key);
+                return new Lock(null, null, null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for token lock", e);
+        }
+
+        FileChannel channel = null;
+        try {
+            Files.createDirectories(lockDirectory);
+            channel = FileChannel.open(
+                    lockDirectory.resolve(lockFileName(key)),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE
+            );
+
+            FileLock fileLock = channel.tryLock();
+            while (fileLock == null && System.nanoTime() < deadline) {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+                fileLock = channel.tryLock();
+            }
+
+            if (fileLock == null) {
+                logger.debug("Timed out waiting for host token lock on {}", key);
+                channel.close();
+                localLock.unlock();
+                return new Lock(null, null, null);
+            }
+            return new Lock(localLock, channel, fileLock);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(channel);
+            localLock.unlock();
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closeQuietly(channel);
+            localLock.unlock();
+            throw new IOException("Interrupted while waiting for token lock", e);
+        }
+    }
+
+    private static String lockFileName(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(hash.length * 2 + 5);
+            for (byte b : hash) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16));
+                name.append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.append(".lock").toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not available", e);
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close token lock file", e);
+            }
+        }
+    }
+
+    /**
+     * Handle for a held (or timed out) host-wide token lock.
+     */
+    public static final class Lock implements AutoCloseable {
+        private final ReentrantLock localLock;
+        private final FileChannel channel;
+        private final FileLock fileLock;
+
+        private Lock(ReentrantLock localLock, FileChannel channel, FileLock fileLock) {
+            this.localLock = localLock;
+            this.channel = channel;
+            this.fileLock = fileLock;
+        }
+
+        public boolean isHeld() {
+            return fileLock != null;
+        }
+
+        @Override
+        public void close() {
+            if (fileLock == null) {
+                return;
+            }
+            try {
+                fileLock.release();
+            } catch (IOException e) {
+                logger.debug("Failed to release token lock", e);
+            } finally {
+                closeQuietly(channel);
+                localLock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,540 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Token storage backed by an append-only journal file.
+ * <p>
+ * Every change is appended as a checksummed binary record, so a write costs
+ * the same regardless of how many keys are stored. All live values are kept
+ * in an in-memory index that is rebuilt from the journal on startup; a torn
+ * record at the end of the file, left by a crash, is discarded, and a
+ * corrupt record elsewhere is skipped without losing the records after it.
+ * The journal is periodically compacted into a new file holding only live
+ * values once superseded records make up most of it.
+ * <p>
+ * Journal files are created readable only by their owner where the file
+ * system supports POSIX permissions, as they hold refresh tokens and keys.
+ * <p>
+ * The journal is owned by a single process. Use {@link HostRefreshCoordinator}
+ * or a {@code TokenBroker} to share tokens between processes.
+ */
+public class JournalTokenBackend implements TokenStoreBackend, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(JournalTokenBackend.class);
+
+    private static final int MAGIC = 0x544f4b4a;
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 5;
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_REMOVE = 2;
+    private static final int MAX_FIELD_BYTES = 1 << 20;
+    private static final Set<PosixFilePermission> OWNER_ONLY_FILE = EnumSet.of(
+            PosixFilePermission.OWNER_READ,
+            PosixFilePermission.OWNER_WRITE
+    );
+
+    /**
+     * When the journal's records are written to stable storage.
+     */
+    public enum FsyncPolicy {
+        /**
+         * Every write is forced to disk before it returns.
+         */
+        ALWAYS,
+        /**
+         * Writes are forced to disk on the fsync interval and on {@link #flush()}.
+         */
+        PERIODIC,
+        /**
+         * Writes are left to the operating system, except on {@link #flush()} and close.
+         */
+        NEVER
+    }
+
+    private final Path path;
+    private final FsyncPolicy fsyncPolicy;
+    private final int compactionMinRecords;
+    private final double compactionGarbageRatio;
+    private final Map<String, String> index = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final CRC32 crc = new CRC32();
+
+    private FileChannel channel;
+    private long recordCount;
+    private boolean dirty;
+
+    private JournalTokenBackend(Builder builder) throws IOException {
+        if (builder.path == null) {
+            throw new IllegalArgumentException("path is required");
+        }
+        if (builder.fsyncInterval.isNegative() || builder.fsyncInterval.isZero()) {
+            throw new IllegalArgumentException("fsyncInterval must be positive");
+        }
+        if (builder.compactionInterval.isNegative() || builder.compactionInterval.isZero()) {
+            throw new IllegalArgumentException("compactionInterval must be positive");
+        }
+
+        this.path = builder.path;
+        this.fsyncPolicy = builder.fsyncPolicy;
+        this.compactionMinRecords = builder.compactionMinRecords;
+        this.compactionGarbageRatio = builder.compactionGarbageRatio;
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null && !Files.isDirectory(parent)) {
+            Set<PosixFilePermission> ownerOnlyDirectory = EnumSet.copyOf(OWNER_ONLY_FILE);
+            ownerOnlyDirectory.add(PosixFilePermission.OWNER_EXECUTE);
+            Files.createDirectories(parent, ownerOnly(parent, ownerOnlyDirectory));
+        }
+        this.channel = FileChannel.open(
+                path,
+                EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE),
+                ownerOnly(path, OWNER_ONLY_FILE)
+        );
+        boolean corrupt;
+        try {
+            restrictPermissions();
+            corrupt = replay();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (corrupt) {
+            // Rewrite the journal without the corrupt records
+            compact();
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oauth2-token-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (fsyncPolicy == FsyncPolicy.PERIODIC) {
+            long fsyncMillis = builder.fsyncInterval.toMillis();
+            scheduler.scheduleWithFixedDelay(this::forceQuietly, fsyncMillis, fsyncMillis, TimeUnit.MILLISECONDS);
+        }
+        long compactionMillis = builder.compactionInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::compactQuietly, compactionMillis, compactionMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String get(String key) {
+        return index.get(key);
+    }
+
+    @Override
+    public synchronized void put(String key, String value) {
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        append(RECORD_PUT, key, value);
+        index.put(key, value);
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        if (!index.containsKey(key)) {
+            return;
+        }
+        append(RECORD_REMOVE, key, null);
+        index.remove(key);
+    }
+
+    @Override
+    public synchronized void flush() {
+        force();
+    }
+
+    /**
+     * Returns the number of live keys.
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns the number of records in the journal, including superseded ones.
+     */
+    public synchronized long recordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Rewrites the journal so that it holds one record per live key.
+     */
+    public synchronized void compact() {
+        Path compactPath = path.resolveSibling(path.getFileName() + ".compact");
+        try {
+            // A leftover file would keep its permissions, so always create a new one
+            Files.deleteIfExists(compactPath);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact token journal " + path, e);
+        }
+        try (FileChannel compacted = FileChannel.open(
+                compactPath,
+                EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE),
+                ownerOnly(compactPath, OWNER_ONLY_FILE))) {
+            writeFully(compacted, header());
+            for (Map.Entry<String, String> entry : index.entrySet()) {
+                writeFully(compacted, encode(RECORD_PUT, entry.getKey(), entry.getValue()));
+            }
+            compacted.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact token journal " + path, e);
+        }
+
+        try {
+            channel.close();
+            try {
+                Files.move(compactPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                // Reopen whichever journal is now in place so writes can continue
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel.position(channel.size());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to replace token journal " + path, e);
+        }
+        logger.debug("Compacted token journal {} from {} to {} records", path, recordCount, index.size());
+        recordCount = index.size();
+        dirty = false;
+    }
+
+    @Override
+    public synchronized void close() {
+        scheduler.shutdown();
+        try {
+            force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close token journal " + path, e);
+        }
+    }
+
+    /**
+     * Rebuilds the index from the journal.
+     *
+     * @return Whether corrupt records were skipped
+     */
+    private boolean replay() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            writeFully(channel, header());
+            channel.force(true);
+            return false;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, Integer.MAX_VALUE));
+        channel.position(0);
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // Read the whole journal
+        }
+        buffer.flip();
+
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+            throw new IOException("Not a token journal: " + path);
+        }
+
+        long validEnd = buffer.position();
+        boolean corrupt = false;
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            if (readRecord(buffer, true)) {
+                validEnd = buffer.position();
+                recordCount++;
+                continue;
+            }
+
+            int next = findNextRecord(buffer, start + 1);
+            if (next < 0) {
+                // Nothing valid follows, so this is a record torn by a crash
+                logger.warn("Discarding incomplete record at offset {} of token journal {}", start, path);
+                break;
+            }
+            logger.warn("Skipping {} corrupt bytes at offset {} of token journal {}", next - start, start, path);
+            corrupt = true;
+            buffer.position(next);
+        }
+
+        channel.truncate(validEnd);
+        channel.position(validEnd);
+        return corrupt;
+    }
+
+    /**
+     * Finds the offset of the next record with a valid checksum.
+     *
+     * @return The offset, or -1 if no valid record follows
+     */
+    private int findNextRecord(ByteBuffer buffer, int from) {
+        ByteBuffer probe = buffer.duplicate();
+        for (int offset = from; offset < buffer.limit(); offset++) {
+            probe.position(offset);
+            if (readRecord(probe, false)) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads one record, applying it to the index if requested.
+     *
+     * @return Whether a complete record with a valid checksum was read
+     */
+    private boolean readRecord(ByteBuffer buffer, boolean apply) {
+        int start = buffer.position();
+        if (buffer.remaining() < 5) {
+            return false;
+        }
+        byte type = buffer.get();
+        String key = readField(buffer);
+        if (key == null) {
+            return false;
+        }
+        String value = null;
+        if (type == RECORD_PUT) {
+            value = readField(buffer);
+            if (value == null) {
+                return false;
+            }
+        } else if (type != RECORD_REMOVE) {
+            return false;
+        }
+        if (buffer.remaining() < 4) {
+            return false;
+        }
+
+        int end = buffer.position();
+        int checksum = buffer.getInt();
+        crc.reset();
+        crc.update(buffer.array(), start, end - start);
+        if ((int) crc.getValue() != checksum) {
+            return false;
+        }
+
+        if (!apply) {
+            return true;
+        }
+        if (type == RECORD_PUT) {
+            index.put(key, value);
+        } else {
+            index.remove(key);
+        }
+        return true;
+    }
+
+    private static String readField(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+        int length = buffer.getInt();
+        if (length < 0 || length > MAX_FIELD_BYTES || buffer.remaining() < length) {
+            return null;
+        }
+        String field = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return field;
+    }
+
+    private void append(byte type, String key, String value) {
+        try {
+            writeFully(channel, encode(type, key, value));
+            recordCount++;
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                channel.force(false);
+            } else {
+                dirty = true;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to token journal " + path, e);
+        }
+    }
+
+    private ByteBuffer encode(byte type, String key, String value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 4 + keyBytes.length + (valueBytes == null ? 0 : 4 + valueBytes.length) + 4;
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(type);
+        buffer.putInt(keyBytes.length);
+        buffer.put(keyBytes);
+        if (valueBytes != null) {
+            buffer.putInt(valueBytes.length);
+            buffer.put(valueBytes);
+        }
+        crc.reset();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Removes access by other users from a journal created before files were
+     * created owner-only.
+     */
+    private void restrictPermissions() throws IOException {
+        if (supportsPosix(path) && !Files.getPosixFilePermissions(path).equals(OWNER_ONLY_FILE)) {
+            logger.info("Restricting token journal {} to its owner", path);
+            Files.setPosixFilePermissions(path, OWNER_ONLY_FILE);
+        }
+    }
+
+    private static FileAttribute<?>[] ownerOnly(Path target, Set<PosixFilePermission> permissions) {
+        if (!supportsPosix(target)) {
+            return new FileAttribute<?>[0];
+        }
+        return new FileAttribute<?>[] {PosixFilePermissions.asFileAttribute(permissions)};
+    }
+
+    private static boolean supportsPosix(Path target) {
+        return target.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC);
+        header.put(VERSION);
+        header.flip();
+        return header;
+    }
+
+    private static void writeFully(FileChannel target, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    private void force() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            channel.force(false);
+            dirty = false;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to sync token journal " + path, e);
+        }
+    }
+
+    private synchronized void forceQuietly() {
+        try {
+            force();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to sync token journal {}", path, e);
+        }
+    }
+
+    private synchronized void compactQuietly() {
+        long garbage = recordCount - index.size();
+        if (recordCount < compactionMinRecords || garbage < recordCount * compactionGarbageRatio) {
+            return;
+        }
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to compact token journal {}", path, e);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private Path path;
+        private FsyncPolicy fsyncPolicy = FsyncPolicy.PERIODIC;
+        private Duration fsyncInterval = Duration.ofSeconds(1);
+        private Duration compactionInterval = Duration.ofMinutes(5);
+        private int compactionMinRecords = 1024;
+        private double compactionGarbageRatio = 0.5;
+
+        public Builder path(Path path) {
+            this.path = path;
+            return this;
+        }
+
+        public Builder fsyncPolicy(FsyncPolicy fsyncPolicy) {
+            this.fsyncPolicy = fsyncPolicy;
+            return this;
+        }
+
+        /**
+         * How often writes are forced to disk with {@link FsyncPolicy#PERIODIC}.
+         */
+        public Builder fsyncInterval(Duration fsyncInterval) {
+            this.fsyncInterval = fsyncInterval;
+            return this;
+        }
+
+        /**
+         * How often the journal is checked for compaction.
+         */
+        public Builder compactionInterval(Duration compactionInterval) {
+            this.compactionInterval = compactionInterval;
+            return this;
+        }
+
+        /**
+         * The journal is only compacted once it holds at least this many records.
+         */
+        public Builder compactionMinRecords(int compactionMinRecords) {
+            this.compactionMinRecords = compactionMinRecords;
+            return this;
+        }
+
+        /**
+         * The share of superseded records (0 to 1) above which the journal is compacted.
+         */
+        public Builder compactionGarbageRatio(double compactionGarbageRatio) {
+            this.compactionGarbageRatio = compactionGarbageRatio;
+            return this;
+        }
+
+        /**
+         * Opens the journal, creating it if needed, and rebuilds the index.
+         *
+         * @throws IOException If the journal cannot be opened or is not a token journal
+         */
+        public JournalTokenBackend build() throws IOException {
+            return new JournalTokenBackend(this);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.interfaces.DecodedJWT;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Reads numeric date claims from a JWT without decoding it.
+ * <p>
+ * The payload segment is base64url-decoded a few bytes at a time and fed
+ * through a small JSON state machine that looks for one top-level claim, so
+ * no strings, byte arrays or trees are allocated. Payloads the scanner does
+ * not handle (fractional or exponent numbers, escaped claim names, standard
+ * base64) fall back to a full decode with java-jwt.
+ */
+public final class JwtClaimScanner {
+    /**
+     * Returned when the token has no such claim or is not a JWT.
+     */
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    /**
+     * Internal result asking for a full decode.
+     */
+    private static final long FALLBACK = Long.MIN_VALUE + 1;
+
+    private static final byte[] EXP = {'e', 'x', 'p'};
+    private static final byte[] IAT = {'i', 'a', 't'};
+    private static final byte[] NBF = {'n', 'b', 'f'};
+
+    private static final int OUTSIDE = 0;
+    private static final int IN_KEY = 1;
+    private static final int IN_STRING = 2;
+    private static final int AFTER_KEY = 3;
+    private static final int BEFORE_VALUE = 4;
+    private static final int IN_NUMBER = 5;
+
+    private static final int[] BASE64URL = new int[128];
+
+    static {
+        Arrays.fill(BASE64URL, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64URL[alphabet.charAt(i)] = i;
+        }
+    }
+
+    private JwtClaimScanner() {
+        // Utility class
+    }
+
+    /**
+     * Returns the {@code exp} claim in epoch seconds, or {@link #NO_VALUE}.
+     */
+    public static long getExpiresAt(String token) {
+        long value = scan(token, EXP);
+        return value == FALLBACK ? decodeDate(token, EXP) : value;
+    }
+
+    /**
+     * Returns the {@code iat} claim in epoch seconds, or {@link #NO_VALUE}.
+     */
+    public static long getIssuedAt(String token) {
+        long value = scan(token, IAT);
+        return value == FALLBACK ? decodeDate(token, IAT) : value;
+    }
+
+    /**
+     * Returns the {@code nbf} claim in epoch seconds, or {@link #NO_VALUE}.
+     */
+    public static long getNotBefore(String token) {
+        long value = scan(token, NBF);
+        return value == FALLBACK ? decodeDate(token, NBF) : value;
+    }
+
+    private static long decodeDate(String token, byte[] claim) {
+        try {
+            DecodedJWT jwt = JWT.decode(token);
+            Date date;
+            if (claim == EXP) {
+                date = jwt.getExpiresAt();
+            } else if (claim == IAT) {
+                date = jwt.getIssuedAt();
+            } else {
+                date = jwt.getNotBefore();
+            }
+            return date == null ? NO_VALUE : date.getTime() / 1000;
+        } catch (Exception e) {
+            return NO_VALUE;
+        }
+    }
+
+    private static long scan(String token, byte[] claim) {
+        if (token == null) {
+            return NO_VALUE;
+        }
+        int payloadStart = token.indexOf('.') + 1;
+        if (payloadStart == 0) {
+            return NO_VALUE;
+        }
+        int payloadEnd = token.indexOf('.', payloadStart);
+        if (payloadEnd < 0) {
+            return NO_VALUE;
+        }
+
+        // All scanner state lives in locals so that nothing is allocated per call
+        int state = OUTSIDE;
+        int depth = 0;
+        boolean expectKey = false;
+        boolean escaped = false;
+        boolean sawEscapedKey = false;
+        int keyLength = 0;
+        boolean keyMatches = false;
+        boolean negative = false;
+        int digits = 0;
+        long value = 0;
+
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = payloadStart; i <= payloadEnd; i++) {
+            int b;
+            if (i == payloadEnd) {
+                // End of payload: terminate a number that runs to the end
+                b = -1;
+            } else {
+                char c = token.charAt(i);
+                int sextet = c < 128 ? BASE64URL[c] : -1;
+                if (sextet < 0) {
+                    if (c != '=') {
+                        return FALLBACK;
+                    }
+                    b = -1;
+                    i = payloadEnd;
+                } else {
+                    bits = (bits << 6) | sextet;
+                    bitCount += 6;
+                    if (bitCount < 8) {
+                        continue;
+                    }
+                    bitCount -= 8;
+                    b = (bits >> bitCount) & 0xff;
+                }
+            }
+
+            switch (state) {
+                case IN_KEY:
+                    if (b == '\\') {
+                        sawEscapedKey = true;
+                        escaped = true;
+                        state = IN_STRING;
+                    } else if (b == '"') {
+                        state = keyMatches && keyLength == claim.length ? AFTER_KEY : OUTSIDE;
+                    } else {
+                        keyMatches = keyMatches && keyLength < claim.length && claim[keyLength] == b;
+                        keyLength++;
+                    }
+                    break;
+                case IN_STRING:
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == '"') {
+                        state = OUTSIDE;
+                    }
+                    break;
+                case AFTER_KEY:
+                    if (b == ':') {
+                        state = BEFORE_VALUE;
+                    } else if (!isWhitespace(b)) {
+                        return FALLBACK;
+                    }
+                    break;
+                case BEFORE_VALUE:
+                    if (b == '-') {
+                        negative = true;
+                        state = IN_NUMBER;
+                    } else if (b >= '0' && b <= '9') {
+                        value = b - '0';
+                        digits = 1;
+                        state = IN_NUMBER;
+                    } else if (!isWhitespace(b)) {
+                        // Not an integer, let the full decoder decide
+                        return FALLBACK;
+                    }
+                    break;
+                case IN_NUMBER:
+                    if (b >= '0' && b <= '9') {
+                        if (++digits > 18) {
+                            return FALLBACK;
+                        }
+                        value = value * 10 + (b - '0');
+                        break;
+                    }
+                    if (digits == 0 || b == '.' || b == 'e' || b == 'E') {
+                        return FALLBACK;
+                    }
+                    return negative ? -value : value;
+                default:
+                    if (b == '"') {
+                        if (depth == 1 && expectKey) {
+                            expectKey = false;
+                            keyLength = 0;
+                            keyMatches = true;
+                            state = IN_KEY;
+                        } else {
+                            state = IN_STRING;
+                        }
+                    } else if (b == '{' || b == '[') {
+                        depth++;
+                        expectKey = depth == 1 && b == '{';
+                    } else if (b == '}' || b == ']') {
+                        depth--;
+                    } else if (b == ',' && depth == 1) {
+                        expectKey = true;
+                    }
+                    break;
+            }
+        }
+
+        // The claim was not found; an escaped key might still have spelled it
+        return state == OUTSIDE && !sawEscapedKey ? NO_VALUE : FALLBACK;
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
@@ -0,0 +1,108 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import io.trino.oauth2.models.MutualTlsConfig;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Utility class for configuring mutual TLS client authentication.
+ * <p>
+ * TLS state is built once per {@link MutualTlsConfig} and shared by every
+ * HTTP client configured with it: the {@link SSLContext}, whose client
+ * session cache lets a new connection resume an earlier session (by session
+ * ID, or by TLS 1.3 session ticket) instead of repeating the full mutual
+ * handshake, and the connection pool, so requests within the keep-alive
+ * period reuse an open connection without any handshake. Short-lived clients
+ * such as those used for refreshes therefore do not start from scratch.
+ */
+public final class MutualTlsHelper {
+    private static final Map<MutualTlsConfig, TlsSettings> settings =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private MutualTlsHelper() {
+        // Utility class
+    }
+
+    /**
+     * Configures an OkHttpClient.Builder to authenticate with the client
+     * certificate of the given config.
+     *
+     * @param builder the OkHttpClient builder to configure
+     * @param config  the mutual TLS settings, or null to leave the builder unchanged
+     * @return the configured builder
+     */
+    public static OkHttpClient.Builder configureMutualTls(OkHttpClient.Builder builder, MutualTlsConfig config) {
+        if (config == null) {
+            return builder;
+        }
+        TlsSettings tls = settings.computeIfAbsent(config, MutualTlsHelper::createSettings);
+        return builder
+                .sslSocketFactory(tls.socketFactory, tls.trustManager)
+                .connectionPool(tls.connectionPool);
+    }
+
+    private static TlsSettings createSettings(MutualTlsConfig config) {
+        char[] keyPassword = config.getKeyPassword();
+        try {
+            KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagers.init(config.getKeyStore(), keyPassword);
+
+            TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagers.init(config.getTrustStore());
+            X509TrustManager trustManager = getX509TrustManager(trustManagers.getTrustManagers());
+
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(keyManagers.getKeyManagers(), new TrustManager[] {trustManager}, null);
+            return new TlsSettings(sslContext.getSocketFactory(), trustManager, new ConnectionPool());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Invalid mutual TLS key material", e);
+        } finally {
+            Arrays.fill(keyPassword, '\0');
+        }
+    }
+
+    private static X509TrustManager getX509TrustManager(TrustManager[] trustManagers) {
+        for (TrustManager trustManager : trustManagers) {
+            if (trustManager instanceof X509TrustManager) {
+                return (X509TrustManager) trustManager;
+            }
+        }
+        throw new IllegalStateException("No X509TrustManager available");
+    }
+
+    private static final class TlsSettings {
+        private final SSLSocketFactory socketFactory;
+        private final X509TrustManager trustManager;
+        private final ConnectionPool connectionPool;
+
+        private TlsSettings(SSLSocketFactory socketFactory, X509TrustManager trustManager, ConnectionPool connectionPool) {
+            this.socketFactory = socketFactory;
+            this.trustManager = trustManager;
+            this.connectionPool = connectionPool;
+        }
+    }
+}
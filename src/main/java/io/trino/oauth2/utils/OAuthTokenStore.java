@@ -12,29 +12,343 @@
 
 package io.trino.oauth2.utils;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.interfaces.DecodedJWT;
 import io.trino.oauth2.configs.Constants;
+import io.trino.oauth2.jfr.TokenStoreReadEvent;
+import io.trino.oauth2.jfr.TokenStoreWriteEvent;
+import io.trino.oauth2.metrics.Metrics;
+import io.trino.oauth2.models.AuthorizationCodeConfig;
+import io.trino.oauth2.models.ClientCredentialsConfig;
+import io.trino.oauth2.models.DeviceCodeConfig;
+import io.trino.oauth2.models.ManualUrlsConfig;
+import io.trino.oauth2.models.OAuth2Config;
+import io.trino.oauth2.models.OidcConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.Instant;
-import java.util.prefs.Preferences;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Functions for storing OAuth tokens in local cache.
- * Uses Java Preferences API for cross-platform persistent storage.
+ * Uses Java Preferences API for cross-platform persistent storage by default.
+ * The storage backend can be replaced with {@link #setBackend(TokenStoreBackend)}.
  */
 public final class OAuthTokenStore {
     private static final Logger logger = LoggerFactory.getLogger(OAuthTokenStore.class);
     private static final String SERVICE_NAME = "trino-java-client";
     private static final String ACCESS_TOKEN_SUFFIX = "access_token";
     private static final String REFRESH_TOKEN_SUFFIX = "refresh_token";
+    private static final String TOKENS_SUFFIX = "tokens";
+    private static final String DPOP_KEY_SUFFIX = "dpop_key";
+    static final long MAX_DEADLINE_SECONDS = TimeUnit.DAYS.toSeconds(365 * 100);
+
+    /**
+     * Decoded token records by storage key, validated against the stored value on every read.
+     */
+    private static final Map<String, TokenPairCell> cells = new ConcurrentHashMap<>();
+
+    /**
+     * DPoP proof generators by storage key of their key pair.
+     */
+    private static final Map<String, DpopProofGenerator> dpopGenerators = new ConcurrentHashMap<>();
+
+    private static volatile TokenStoreBackend backend = new PreferencesTokenBackend(SERVICE_NAME);
+    private static volatile TimeSource timeSource = TimeSource.SYSTEM;
+    /**
+     * Clock offset estimators by identity provider host, since providers do not share a clock.
+     */
+    private static final Map<String, ClockSkewEstimator> clockSkewEstimators = new ConcurrentHashMap<>();
+    private static final ScopeTokenIndex scopeTokenIndex = new ScopeTokenIndex();
+    private static volatile HostRefreshCoordinator hostCoordinator;
 
     private OAuthTokenStore() {
         // Utility class
     }
 
+    /**
+     * Replaces the backend used to persist tokens.
+     *
+     * @param tokenStoreBackend The new backend
+     */
+    public static void setBackend(TokenStoreBackend tokenStoreBackend) {
+        if (tokenStoreBackend == null) {
+            throw new IllegalArgumentException("tokenStoreBackend is required");
+        }
+        backend = tokenStoreBackend;
+    }
+
+    public static TokenStoreBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Replaces the clock used for expiry decisions, mainly for tests.
+     *
+     * @param newTimeSource The new time source
+     */
+    public static void setTimeSource(TimeSource newTimeSource) {
+        if (newTimeSource == null) {
+            throw new IllegalArgumentException("timeSource is required");
+        }
+        timeSource = newTimeSource;
+        // Samples taken against the previous source no longer apply
+        clockSkewEstimators.clear();
+    }
+
+    public static TimeSource getTimeSource() {
+        return timeSource;
+    }
+
+    /**
+     * Returns the estimator of the clock offset of an identity provider, which
+     * is applied to every expiry decision for tokens it issued.
+     *
+     * @param host The host of the provider's endpoints
+     */
+    public static ClockSkewEstimator getClockSkewEstimator(String host) {
+        if (host == null) {
+            throw new IllegalArgumentException("host is required");
+        }
+        return clockSkewEstimators.computeIfAbsent(host, ignored -> new ClockSkewEstimator());
+    }
+
+    /**
+     * Returns the index of stored tokens by granted scopes, used by configs
+     * that accept a token of broader scope than they ask for.
+     */
+    public static ScopeTokenIndex getScopeTokenIndex() {
+        return scopeTokenIndex;
+    }
+
+    /**
+     * Converts a local time to an identity provider's clock, which the expiry
+     * times of its tokens are expressed in.
+     *
+     * @param host The host of the provider's endpoints; the local time is
+     *             returned unchanged if it is null or has not been observed
+     */
+    public static Instant toServerTime(String host, Instant localTime) {
+        ClockSkewEstimator estimator = host == null ? null : clockSkewEstimators.get(host);
+        return estimator == null ? localTime : localTime.plus(estimator.getOffset());
+    }
+
+    /**
+     * Switches the current backend to write-behind mode. Token writes land in
+     * memory immediately and are flushed to the current backend in coalesced
+     * batches on the given interval and at JVM shutdown.
+     *
+     * @param flushInterval How often pending writes are flushed
+     * @return The write-behind backend; closing it is equivalent to {@link #disableWriteBehind()}
+     */
+    public static synchronized WriteBehindTokenBackend enableWriteBehind(Duration flushInterval) {
+        if (backend instanceof WriteBehindTokenBackend) {
+            throw new IllegalStateException("Write-behind mode is already enabled");
+        }
+        WriteBehindTokenBackend writeBehind = new WriteBehindTokenBackend(backend, flushInterval);
+        backend = writeBehind;
+        return writeBehind;
+    }
+
+    /**
+     * Flushes pending writes and restores synchronous writes to the backend
+     * that write-behind mode wrapped. Does nothing if it is not enabled.
+     */
+    public static void disableWriteBehind() {
+        TokenStoreBackend current = backend;
+        if (current instanceof WriteBehindTokenBackend) {
+            ((WriteBehindTokenBackend) current).close();
+        }
+    }
+
+    /**
+     * Installs the delegate of a closed write-behind backend if that backend
+     * is still installed.
+     */
+    static synchronized void restoreBackend(WriteBehindTokenBackend writeBehind, TokenStoreBackend delegate) {
+        if (backend == writeBehind) {
+            backend = delegate;
+        }
+    }
+
+    /**
+     * Forces all pending token writes to the backing store.
+     */
+    public static void flush() {
+        backend.flush();
+    }
+
+    /**
+     * Makes subsequent reads reflect tokens written by other processes.
+     */
+    public static void sync() {
+        backend.sync();
+    }
+
+    /**
+     * Enables host-level coordination of token acquisition. When a token is
+     * missing or expired, only one process on the host acquires it while the
+     * others wait up to {@code maxWait} and then re-read it from the store.
+     * All cooperating processes must use the same lock directory and a shared
+     * on-disk backend.
+     *
+     * @param lockDirectory Directory holding the per-key lock files
+     * @param maxWait       How long to wait for another process before acquiring without the lock
+     */
+    public static void enableHostCoordination(Path lockDirectory, Duration maxWait) {
+        hostCoordinator = new HostRefreshCoordinator(lockDirectory, maxWait);
+    }
+
+    public static void disableHostCoordination() {
+        hostCoordinator = null;
+    }
+
+    /**
+     * Returns the host coordinator, or null if host coordination is disabled.
+     */
+    public static HostRefreshCoordinator getHostCoordinator() {
+        return hostCoordinator;
+    }
+
+    /**
+     * Returns the key used to coordinate acquisition of the client's tokens.
+     */
+    public static String getLockKey(String clientId, String mode) {
+        validateMode(mode);
+        return clientId + ":" + mode;
+    }
+
+    /**
+     * Returns the storage key of the client's token record.
+     */
+    public static String getTokenKey(String clientId, String mode) {
+        return getKeyringUsername(clientId, mode, TOKENS_SUFFIX);
+    }
+
+    /**
+     * Returns the client ID under which the client's token for one audience is
+     * stored, for configs that acquire a token per audience. The audience is
+     * hashed because audiences are often URLs, too long for some backends' keys.
+     *
+     * @param clientId The config's storage client ID, see {@link #getStorageClientId(OAuth2Config)}
+     */
+    public static String getAudienceClientId(String clientId, String audience) {
+        return clientId + '#' + shortHash(audience);
+    }
+
+    /**
+     * Returns the client ID under which a config's tokens are stored. Configs
+     * with the same client ID that ask for differently shaped tokens, from
+     * another issuer or with other scopes or audiences, get a record each,
+     * so they neither overwrite each other's tokens nor read a token of the
+     * wrong scope. Scopes and audiences are sorted and deduplicated before
+     * hashing, so configs that differ only in their order share tokens.
+     * Configs acquiring a token per audience leave their audiences out, as
+     * each token's audience is part of its {@link #getAudienceClientId(String, String) own ID}.
+     */
+    public static String getStorageClientId(OAuth2Config config) {
+        return config.getClientId() + '#' + shortHash(getTokenShape(config, true));
+    }
+
+    /**
+     * Returns the ID shared by configs whose tokens differ at most in scope:
+     * same client, flow, issuer and audiences. Tokens of one family can stand
+     * in for each other when one's scopes cover another's, see {@link ScopeTokenIndex}.
+     */
+    public static String getScopeFamilyId(OAuth2Config config) {
+        return config.getClientId() + '#' + shortHash(getTokenShape(config, false));
+    }
+
+    private static String getTokenShape(OAuth2Config config, boolean includeScope) {
+        String scope = null;
+        List<String> audiences = null;
+        if (config instanceof ClientCredentialsConfig) {
+            ClientCredentialsConfig clientCredentials = (ClientCredentialsConfig) config;
+            scope = clientCredentials.getScope();
+            audiences = clientCredentials.isTokenPerAudience() ? null : clientCredentials.getAudience();
+        } else if (config instanceof DeviceCodeConfig) {
+            scope = ((DeviceCodeConfig) config).getScope();
+            audiences = ((DeviceCodeConfig) config).getAudience();
+        } else if (config instanceof AuthorizationCodeConfig) {
+            scope = ((AuthorizationCodeConfig) config).getScope();
+            audiences = ((AuthorizationCodeConfig) config).getAudience();
+        }
+
+        // Identify the issuer without a discovery request
+        String issuer = null;
+        if (config.getUrlConfig() instanceof OidcConfig) {
+            issuer = ((OidcConfig) config.getUrlConfig()).getOidcDiscoveryUrl();
+        } else if (config.getUrlConfig() instanceof ManualUrlsConfig) {
+            issuer = ((ManualUrlsConfig) config.getUrlConfig()).getTokenEndpoint();
+        }
+
+        StringBuilder shape = new StringBuilder(256)
+                .append(config.getClass().getSimpleName()).append('\n')
+                .append(issuer).append('\n');
+        if (includeScope && scope != null) {
+            shape.append(String.join(" ", ScopeTokenIndex.parseScopes(scope)));
+        }
+        shape.append('\n');
+        if (audiences != null) {
+            for (String audience : new TreeSet<>(audiences)) {
+                shape.append(audience).append('\n');
+            }
+        }
+        return shape.toString();
+    }
+
+    /**
+     * The first 64 bits of the value's SHA-256 hash, in hex.
+     */
+    private static String shortHash(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) {
+                hex.append(Character.forDigit((hash[i] >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(hash[i] & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not available", e);
+        }
+    }
+
+    /**
+     * Returns the DPoP proof generator for the client. Its key pair is
+     * generated on first use and kept in the token store next to the tokens
+     * bound to it, so that stored tokens stay usable in later processes.
+     */
+    public static DpopProofGenerator getDpopProofGenerator(String clientId, String mode) {
+        String key = getKeyringUsername(clientId, mode, DPOP_KEY_SUFFIX);
+        return dpopGenerators.computeIfAbsent(key, k -> new DpopProofGenerator(loadOrCreateDpopKey(k)));
+    }
+
+    private static KeyPair loadOrCreateDpopKey(String key) {
+        TokenStoreBackend target = backend;
+        String stored = target.get(key);
+        if (stored != null) {
+            try {
+                return DpopProofGenerator.decodeKeyPair(stored);
+            } catch (GeneralSecurityException e) {
+                logger.warn("Replacing unreadable DPoP key {}", key, e);
+            }
+        }
+        KeyPair keyPair = DpopProofGenerator.generateKeyPair();
+        target.put(key, DpopProofGenerator.encodeKeyPair(keyPair));
+        return keyPair;
+    }
+
     private static void validateMode(String modeName) {
         if (!"ClientCredentialsConfig".equals(modeName) &&
                 !"DeviceCodeConfig".equals(modeName) &&
@@ -51,20 +365,218 @@ public final class OAuthTokenStore {
         return clientId + ":" + mode + ":" + tokenType;
     }
 
-    private static boolean hasActiveAccessToken(String accessToken, int validMinDurationThreshold) {
+    private static boolean hasActiveAccessToken(TokenPair pair, long deadlineNanos, int validMinDurationThreshold) {
+        String accessToken = pair == null ? null : pair.getAccessToken();
         if (accessToken == null || accessToken.isEmpty()) {
             return false;
         }
 
+        if (deadlineNanos != TokenPairCell.NO_DEADLINE) {
+            long nanosUntilExpiration = deadlineNanos - timeSource.nanoTime();
+            return nanosUntilExpiration >= TimeUnit.SECONDS.toNanos(validMinDurationThreshold);
+        }
+
+        Instant expiresAt = getExpiresAt(pair);
+        if (expiresAt == null) {
+            logger.debug("Access token has no recorded expiry");
+            return false;
+        }
+        Instant serverNow = toServerTime(pair.getMetadata().getServerHost(), timeSource.now());
+        long secondsUntilExpiration = expiresAt.getEpochSecond() - serverNow.getEpochSecond();
+        return secondsUntilExpiration >= validMinDurationThreshold;
+    }
+
+    private static Instant getExpiresAt(TokenPair pair) {
+        if (pair.getMetadata().getExpiresAt() != null) {
+            return pair.getMetadata().getExpiresAt();
+        }
+        // Records written before expiry was stored
+        long expiresAt = pair.getAccessToken() == null ?
+                JwtClaimScanner.NO_VALUE : JwtClaimScanner.getExpiresAt(pair.getAccessToken());
+        return expiresAt == JwtClaimScanner.NO_VALUE ? null : Instant.ofEpochSecond(expiresAt);
+    }
+
+    /**
+     * Converts the access token's expiry, on the identity provider's clock,
+     * to a deadline on the local monotonic clock.
+     */
+    private static long getDeadlineNanos(TokenPair pair) {
+        Instant expiresAt = getExpiresAt(pair);
+        if (expiresAt == null) {
+            return TokenPairCell.NO_DEADLINE;
+        }
+        return toDeadlineNanos(pair.getMetadata().getServerHost(), expiresAt);
+    }
+
+    /**
+     * Converts an expiry on an identity provider's clock to a deadline on the
+     * local monotonic clock, saturating instead of overflowing for far-future
+     * or long-past expiries.
+     *
+     * @param serverHost The host of the provider that issued the token, or null if unknown
+     * @param expiresAt  The expiry, on the provider's clock
+     */
+    public static long toDeadlineNanos(String serverHost, Instant expiresAt) {
+        long nanoTime = timeSource.nanoTime();
+        Duration remaining = Duration.between(toServerTime(serverHost, timeSource.now()), expiresAt);
+        long remainingSeconds = Math.max(-MAX_DEADLINE_SECONDS, Math.min(remaining.getSeconds(), MAX_DEADLINE_SECONDS));
+        return nanoTime + TimeUnit.SECONDS.toNanos(remainingSeconds);
+    }
+
+    /**
+     * Reads the client's token record. Never waits for a concurrent writer's I/O and
+     * never returns an access token and refresh token from different writes.
+     *
+     * @return The stored pair, or null if no tokens are stored
+     */
+    public static TokenPair getTokenPair(String clientId, String mode) {
+        TokenStoreBackend source = backend;
+        TokenStoreReadEvent event = new TokenStoreReadEvent();
+        event.begin();
+        TokenPair pair = readTokenPair(source, clientId, mode);
+        if (event.finish()) {
+            event.commit(clientId, mode, source.getClass().getSimpleName(), pair != null ? "found" : "absent");
+        }
+        return pair;
+    }
+
+    private static TokenPair readTokenPair(TokenStoreBackend source, String clientId, String mode) {
+        String key = getTokenKey(clientId, mode);
+        String encoded = source.get(key);
+        if (encoded == null) {
+            TokenPair legacy = readLegacyPair(source, clientId, mode);
+            return legacy != null ? legacy : migrateTokenPair(source, clientId, mode);
+        }
+
+        TokenPairCell cell = cells.computeIfAbsent(key, k -> new TokenPairCell());
+        TokenPair pair = cell.getIfCurrent(encoded);
+        if (pair != null) {
+            return pair;
+        }
+
+        pair = TokenPair.decode(encoded);
+        if (pair == null) {
+            logger.warn("Ignoring malformed token record {}", key);
+            return null;
+        }
+        // Cache the decoded record unless a writer holds the cell
+        if (cell.tryLockForWrite()) {
+            try {
+                cell.set(encoded, pair, getDeadlineNanos(pair));
+            } finally {
+                cell.unlockWrite();
+            }
+        }
+        return pair;
+    }
+
+    /**
+     * Moves the tokens that versions keying records by bare client ID stored for
+     * the client to its storage ID, together with their DPoP key, so that upgrading
+     * keeps users logged in. The first storage ID of the client to miss takes them.
+     *
+     * @return The moved pair, or null if nothing was stored under the previous ID
+     */
+    private static TokenPair migrateTokenPair(TokenStoreBackend source, String clientId, String mode) {
+        String previousClientId = getPreviousClientId(clientId);
+        if (previousClientId == null) {
+            return null;
+        }
+        String previousKey = getTokenKey(previousClientId, mode);
+        String previousEncoded = source.get(previousKey);
+        TokenPair pair = previousEncoded != null ?
+                TokenPair.decode(previousEncoded) : readLegacyPair(source, previousClientId, mode);
+        if (pair == null) {
+            return null;
+        }
+
+        String key = getTokenKey(clientId, mode);
+        TokenPairCell cell = cells.computeIfAbsent(key, k -> new TokenPairCell());
+        cell.lockForWrite();
         try {
-            DecodedJWT jwt = JWT.decode(accessToken);
-            Instant expiresAt = jwt.getExpiresAt().toInstant();
-            long secondsUntilExpiration = expiresAt.getEpochSecond() - Instant.now().getEpochSecond();
-            return secondsUntilExpiration >= validMinDurationThreshold;
-        } catch (Exception e) {
-            logger.debug("Failed to decode JWT token", e);
+            // A concurrent reader may have moved the record already
+            String encoded = source.get(key);
+            if (encoded != null) {
+                return TokenPair.decode(encoded);
+            }
+            String dpopKey = getKeyringUsername(clientId, mode, DPOP_KEY_SUFFIX);
+            String previousDpopKey = getKeyringUsername(previousClientId, mode, DPOP_KEY_SUFFIX);
+            String dpopKeyPair = source.get(previousDpopKey);
+            if (dpopKeyPair != null && source.get(dpopKey) == null) {
+                source.put(dpopKey, dpopKeyPair);
+                dpopGenerators.remove(dpopKey);
+            }
+            encoded = pair.encode();
+            source.put(key, encoded);
+            cell.set(encoded, pair, getDeadlineNanos(pair));
+
+            source.remove(previousKey);
+            source.remove(getKeyringUsername(previousClientId, mode, ACCESS_TOKEN_SUFFIX));
+            source.remove(getKeyringUsername(previousClientId, mode, REFRESH_TOKEN_SUFFIX));
+            source.remove(previousDpopKey);
+        } finally {
+            cell.unlockWrite();
+        }
+        logger.info("Moved token record {} to {}", previousKey, key);
+        return pair;
+    }
+
+    /**
+     * Returns the ID under which versions keying records by bare client ID stored
+     * the tokens now stored under the given storage or audience client ID: the
+     * ID without its token shape hash.
+     *
+     * @return The previous ID, or null if the ID is not a storage or audience client ID
+     */
+    private static String getPreviousClientId(String clientId) {
+        int separator = clientId.lastIndexOf('#');
+        if (separator <= 0 || !isShortHash(clientId, separator + 1, clientId.length())) {
+            return null;
+        }
+        int shapeSeparator = clientId.lastIndexOf('#', separator - 1);
+        if (shapeSeparator > 0 && isShortHash(clientId, shapeSeparator + 1, separator)) {
+            // An audience client ID, whose audience hash follows the shape hash
+            return clientId.substring(0, shapeSeparator) + clientId.substring(separator);
+        }
+        return clientId.substring(0, separator);
+    }
+
+    private static boolean isShortHash(String value, int start, int end) {
+        if (end - start != 16) {
             return false;
         }
+        for (int i = start; i < end; i++) {
+            if (Character.digit(value.charAt(i), 16) < 0 || Character.isUpperCase(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads tokens stored under the per-token keys used before token records.
+     */
+    private static TokenPair readLegacyPair(TokenStoreBackend source, String clientId, String mode) {
+        String accessToken = source.get(getKeyringUsername(clientId, mode, ACCESS_TOKEN_SUFFIX));
+        String refreshToken = source.get(getKeyringUsername(clientId, mode, REFRESH_TOKEN_SUFFIX));
+        if (accessToken == null && refreshToken == null) {
+            return null;
+        }
+        return new TokenPair(accessToken, refreshToken, 0);
+    }
+
+    /**
+     * Returns the client's stored record without its refresh token, for
+     * handing the access token to another process.
+     *
+     * @return The encoded record, or null if no tokens are stored
+     */
+    public static String getAccessTokenRecord(String clientId, String mode) {
+        TokenPair pair = getTokenPair(clientId, mode);
+        if (pair == null) {
+            return null;
+        }
+        return new TokenPair(pair.getAccessToken(), null, pair.getMetadata(), pair.getVersion()).encode();
     }
 
     public static String getActiveAccessToken(
@@ -72,27 +584,86 @@ public final class OAuthTokenStore {
             String mode,
             int validMinDurationThreshold
     ) {
-        String username = getKeyringUsername(clientId, mode, ACCESS_TOKEN_SUFFIX);
-        Preferences prefs = Preferences.userRoot().node(SERVICE_NAME);
-        String accessToken = prefs.get(username, null);
+        TokenPair pair = getTokenPair(clientId, mode);
+        if (pair == null) {
+            return null;
+        }
+        TokenPairCell cell = cells.get(getTokenKey(clientId, mode));
+        long deadlineNanos = cell == null ? TokenPairCell.NO_DEADLINE : cell.getDeadlineNanos(pair);
 
-        return hasActiveAccessToken(accessToken, validMinDurationThreshold) ? accessToken : null;
+        return hasActiveAccessToken(pair, deadlineNanos, validMinDurationThreshold) ? pair.getAccessToken() : null;
     }
 
     public static String getActiveAccessToken(String clientId, String mode) {
         return getActiveAccessToken(clientId, mode, Constants.VALID_MIN_DURATION_THRESHOLD);
     }
 
+    /**
+     * Returns how long the client's stored access token remains valid, or null
+     * if none is stored or its expiry is unknown.
+     */
+    public static Duration getRemainingLifetime(String clientId, String mode) {
+        TokenPair pair = getTokenPair(clientId, mode);
+        return pair == null ? null : getRemainingLifetime(clientId, mode, pair);
+    }
+
+    /**
+     * Returns how long the stored access token remains valid.
+     *
+     * @param pair The client's record, as read with {@link #getTokenPair(String, String)}
+     * @return The remaining lifetime, negative once expired, or null if the
+     * record has no access token or its expiry is unknown
+     */
+    static Duration getRemainingLifetime(String clientId, String mode, TokenPair pair) {
+        if (pair.getAccessToken() == null || pair.getAccessToken().isEmpty()) {
+            return null;
+        }
+        TokenPairCell cell = cells.get(getTokenKey(clientId, mode));
+        long deadlineNanos = cell == null ? TokenPairCell.NO_DEADLINE : cell.getDeadlineNanos(pair);
+        if (deadlineNanos != TokenPairCell.NO_DEADLINE) {
+            return Duration.ofNanos(deadlineNanos - timeSource.nanoTime());
+        }
+        Instant expiresAt = getExpiresAt(pair);
+        return expiresAt == null ? null : Duration.between(toServerTime(pair.getMetadata().getServerHost(), timeSource.now()), expiresAt);
+    }
+
     public static void setAccessToken(String clientId, String mode, String accessToken) {
-        String username = getKeyringUsername(clientId, mode, ACCESS_TOKEN_SUFFIX);
-        Preferences prefs = Preferences.userRoot().node(SERVICE_NAME);
-        prefs.put(username, accessToken);
+        setAccessToken(clientId, mode, accessToken, false);
+    }
+
+    public static void setAccessToken(String clientId, String mode, String accessToken, boolean durable) {
+        setAccessToken(clientId, mode, accessToken, TokenMetadata.EMPTY, durable);
+    }
+
+    /**
+     * Stores the access token, keeping any stored refresh token.
+     *
+     * @param metadata What the token response said about the token
+     * @param durable  If true, the write is flushed to the backing store before returning
+     */
+    public static void setAccessToken(
+            String clientId,
+            String mode,
+            String accessToken,
+            TokenMetadata metadata,
+            boolean durable
+    ) {
+        writeTokenPair(clientId, mode, accessToken, null, metadata, true, durable);
+    }
+
+    /**
+     * Discards the stored access token, keeping any refresh token, so the next
+     * token request acquires a new one. Does nothing if no tokens are stored.
+     */
+    public static void discardAccessToken(String clientId, String mode) {
+        if (getTokenPair(clientId, mode) != null) {
+            writeTokenPair(clientId, mode, null, null, TokenMetadata.EMPTY, true, false);
+        }
     }
 
     public static String getRefreshToken(String clientId, String mode) {
-        String username = getKeyringUsername(clientId, mode, REFRESH_TOKEN_SUFFIX);
-        Preferences prefs = Preferences.userRoot().node(SERVICE_NAME);
-        return prefs.get(username, null);
+        TokenPair pair = getTokenPair(clientId, mode);
+        return pair == null ? null : pair.getRefreshToken();
     }
 
     public static void setAccessAndRefreshTokens(
@@ -101,10 +672,108 @@ public final class OAuthTokenStore {
             String accessToken,
             String refreshToken
     ) {
-        setAccessToken(clientId, mode, accessToken);
-        String refreshUsername = getKeyringUsername(clientId, mode, REFRESH_TOKEN_SUFFIX);
-        Preferences prefs = Preferences.userRoot().node(SERVICE_NAME);
-        prefs.put(refreshUsername, refreshToken);
+        setAccessAndRefreshTokens(clientId, mode, accessToken, refreshToken, false);
+    }
+
+    public static void setAccessAndRefreshTokens(
+            String clientId,
+            String mode,
+            String accessToken,
+            String refreshToken,
+            boolean durable
+    ) {
+        setAccessAndRefreshTokens(clientId, mode, accessToken, refreshToken, TokenMetadata.EMPTY, durable);
+    }
+
+    /**
+     * Stores the access and refresh tokens as one record. A null refresh token
+     * removes any stored one.
+     *
+     * @param metadata What the token response said about the tokens
+     * @param durable  If true, the write is flushed to the backing store before returning
+     */
+    public static void setAccessAndRefreshTokens(
+            String clientId,
+            String mode,
+            String accessToken,
+            String refreshToken,
+            TokenMetadata metadata,
+            boolean durable
+    ) {
+        writeTokenPair(clientId, mode, accessToken, refreshToken, metadata, false, durable);
+    }
+
+    private static void writeTokenPair(
+            String clientId,
+            String mode,
+            String accessToken,
+            String refreshToken,
+            TokenMetadata metadata,
+            boolean keepRefreshToken,
+            boolean durable
+    ) {
+        String key = getTokenKey(clientId, mode);
+        TokenStoreBackend target = backend;
+        TokenPairCell cell = cells.computeIfAbsent(key, k -> new TokenPairCell());
+        TokenStoreWriteEvent event = new TokenStoreWriteEvent();
+        event.begin();
+        String outcome = "success";
+        try {
+            cell.lockForWrite();
+            try {
+                String currentEncoded = target.get(key);
+                TokenPair current = currentEncoded != null ?
+                        TokenPair.decode(currentEncoded) : readLegacyPair(target, clientId, mode);
+                long version = current == null ? 1 : current.getVersion() + 1;
+                if (keepRefreshToken && current != null) {
+                    refreshToken = current.getRefreshToken();
+                }
+                TokenMetadata previous = current != null && refreshToken != null &&
+                        refreshToken.equals(current.getRefreshToken()) ? current.getMetadata() : null;
+                TokenMetadata completed = completeMetadata(accessToken, metadata, previous);
+
+                TokenPair pair = new TokenPair(accessToken, refreshToken, completed, version);
+                String encoded = pair.encode();
+                target.put(key, encoded);
+                cell.set(encoded, pair, getDeadlineNanos(pair));
+            } finally {
+                cell.unlockWrite();
+            }
+
+            if (durable) {
+                target.flush();
+            }
+        } catch (RuntimeException e) {
+            outcome = Metrics.causeOf(e);
+            throw e;
+        } finally {
+            if (event.finish()) {
+                event.commit(clientId, mode, target.getClass().getSimpleName(), outcome);
+            }
+        }
+    }
+
+    /**
+     * Fills in the record from the access token's own claims, which take
+     * precedence over the token response, and keeps the refresh token expiry
+     * when the refresh token did not change.
+     */
+    private static TokenMetadata completeMetadata(String accessToken, TokenMetadata metadata, TokenMetadata previous) {
+        TokenMetadata.Builder builder = (metadata == null ? TokenMetadata.EMPTY : metadata).toBuilder();
+        if (accessToken != null) {
+            long expiresAt = JwtClaimScanner.getExpiresAt(accessToken);
+            if (expiresAt != JwtClaimScanner.NO_VALUE) {
+                builder.expiresAt(Instant.ofEpochSecond(expiresAt));
+            }
+            long issuedAt = JwtClaimScanner.getIssuedAt(accessToken);
+            if (issuedAt != JwtClaimScanner.NO_VALUE) {
+                builder.issuedAt(Instant.ofEpochSecond(issuedAt));
+            }
+        }
+        if (previous != null && (metadata == null || metadata.getRefreshExpiresAt() == null)) {
+            builder.refreshExpiresAt(previous.getRefreshExpiresAt());
+        }
+        return builder.build();
     }
 
     /**
@@ -121,13 +790,23 @@ public final class OAuthTokenStore {
             modesToPurge = new String[]{"ClientCredentialsConfig", "DeviceCodeConfig", "AuthorizationCodeConfig"};
         }
 
-        Preferences prefs = Preferences.userRoot().node(SERVICE_NAME);
+        TokenStoreBackend target = backend;
         for (String modeName : modesToPurge) {
-            String accessUsername = getKeyringUsername(clientId, modeName, ACCESS_TOKEN_SUFFIX);
-            String refreshUsername = getKeyringUsername(clientId, modeName, REFRESH_TOKEN_SUFFIX);
-
-            prefs.remove(accessUsername);
-            prefs.remove(refreshUsername);
+            String key = getTokenKey(clientId, modeName);
+            TokenPairCell cell = cells.computeIfAbsent(key, k -> new TokenPairCell());
+            cell.lockForWrite();
+            try {
+                target.remove(key);
+                target.remove(getKeyringUsername(clientId, modeName, ACCESS_TOKEN_SUFFIX));
+                target.remove(getKeyringUsername(clientId, modeName, REFRESH_TOKEN_SUFFIX));
+                // Purged tokens no longer need their DPoP key
+                String dpopKey = getKeyringUsername(clientId, modeName, DPOP_KEY_SUFFIX);
+                target.remove(dpopKey);
+                dpopGenerators.remove(dpopKey);
+                cell.set(null, null, TokenPairCell.NO_DEADLINE);
+            } finally {
+                cell.unlockWrite();
+            }
         }
     }
 }
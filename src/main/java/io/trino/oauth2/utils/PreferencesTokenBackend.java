@@ -0,0 +1,70 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+/**
+ * Token storage backed by the Java Preferences API.
+ * The preferences node is resolved once and reused for every operation.
+ */
+public class PreferencesTokenBackend implements TokenStoreBackend {
+    private static final Logger logger = LoggerFactory.getLogger(PreferencesTokenBackend.class);
+
+    private final Preferences prefs;
+
+    public PreferencesTokenBackend(String nodeName) {
+        this.prefs = Preferences.userRoot().node(nodeName);
+    }
+
+    @Override
+    public String get(String key) {
+        return prefs.get(key, null);
+    }
+
+    @Override
+    public void put(String key, String value) {
+        if (value == null) {
+            prefs.remove(key);
+        } else {
+            prefs.put(key, value);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        prefs.remove(key);
+    }
+
+    @Override
+    public void flush() {
+        try {
+            prefs.flush();
+        } catch (BackingStoreException e) {
+            logger.warn("Failed to flush token preferences", e);
+        }
+    }
+
+    @Override
+    public void sync() {
+        try {
+            prefs.sync();
+        } catch (BackingStoreException e) {
+            logger.warn("Failed to sync token preferences", e);
+        }
+    }
+}
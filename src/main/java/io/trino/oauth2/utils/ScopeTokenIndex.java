@@ -0,0 +1,105 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Indexes stored tokens by the scopes they were granted, so that a request
+ * for some scopes can be served by a live token of broader scope.
+ * <p>
+ * Tokens are grouped by scope family (see
+ * {@link OAuthTokenStore#getScopeFamilyId}): only tokens of the same client,
+ * flow, issuer and audiences stand in for each other. The index only points
+ * at token records; tokens are always read from the token store, and entries
+ * whose record no longer holds a live token are dropped when looked up.
+ */
+public final class ScopeTokenIndex {
+    /**
+     * Granted scopes of indexed records, by scope family and then storage client ID.
+     */
+    private final Map<String, Map<String, Set<String>>> families = new ConcurrentHashMap<>();
+
+    ScopeTokenIndex() {
+    }
+
+    /**
+     * Splits a space-delimited scope string into its sorted, deduplicated scopes.
+     */
+    public static SortedSet<String> parseScopes(String scope) {
+        SortedSet<String> scopes = new TreeSet<>();
+        if (scope != null) {
+            for (String token : scope.trim().split("\\s+")) {
+                if (!token.isEmpty()) {
+                    scopes.add(token);
+                }
+            }
+        }
+        return scopes;
+    }
+
+    /**
+     * Records the scopes granted with the token stored under a client ID.
+     *
+     * @param familyId        The scope family of the config that acquired the token
+     * @param storageClientId The client ID the token is stored under
+     * @param grantedScope    The space-delimited granted scopes
+     */
+    public void add(String familyId, String storageClientId, String grantedScope) {
+        families.computeIfAbsent(familyId, id -> new ConcurrentHashMap<>())
+                .put(storageClientId, Collections.unmodifiableSet(parseScopes(grantedScope)));
+    }
+
+    /**
+     * Finds a live token of the family whose granted scopes include all
+     * requested ones, preferring the token with the longest remaining lifetime.
+     *
+     * @param validMinDurationThreshold Minimum remaining lifetime in seconds
+     * @return The access token, or null if no indexed token qualifies
+     */
+    public String find(String familyId, String mode, String requestedScope, int validMinDurationThreshold) {
+        Map<String, Set<String>> records = families.get(familyId);
+        if (records == null) {
+            return null;
+        }
+
+        Set<String> requested = parseScopes(requestedScope);
+        Duration minRemaining = Duration.ofSeconds(validMinDurationThreshold);
+        String bestToken = null;
+        Duration bestRemaining = null;
+        for (Map.Entry<String, Set<String>> record : records.entrySet()) {
+            if (!record.getValue().containsAll(requested)) {
+                continue;
+            }
+            TokenPair pair = OAuthTokenStore.getTokenPair(record.getKey(), mode);
+            Duration remaining = pair == null ? null : OAuthTokenStore.getRemainingLifetime(record.getKey(), mode, pair);
+            if (remaining == null || remaining.isNegative()) {
+                // Gone or expired; a config that refreshes it indexes it again
+                records.remove(record.getKey(), record.getValue());
+                continue;
+            }
+            if (remaining.compareTo(minRemaining) >= 0 &&
+                    (bestRemaining == null || remaining.compareTo(bestRemaining) > 0)) {
+                bestToken = pair.getAccessToken();
+                bestRemaining = remaining;
+            }
+        }
+        return bestToken;
+    }
+}
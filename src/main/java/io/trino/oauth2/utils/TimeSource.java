@@ -0,0 +1,47 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import java.time.Instant;
+
+/**
+ * Wall-clock and monotonic time used for token expiry decisions.
+ * Install a different source with {@link OAuthTokenStore#setTimeSource(TimeSource)}.
+ */
+public interface TimeSource {
+    /**
+     * The system clock and {@link System#nanoTime()}.
+     */
+    TimeSource SYSTEM = new TimeSource() {
+        @Override
+        public Instant now() {
+            return Instant.now();
+        }
+
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * The current wall-clock time, which may jump.
+     */
+    Instant now();
+
+    /**
+     * A monotonic reading in nanoseconds, only meaningful as a difference
+     * from another reading of the same source.
+     */
+    long nanoTime();
+}
@@ -0,0 +1,143 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import java.time.Instant;
+
+/**
+ * What is known about a stored token besides the token strings themselves.
+ * Every field is optional and null when unknown.
+ */
+public final class TokenMetadata {
+    public static final TokenMetadata EMPTY = builder().build();
+
+    /**
+     * When the access token expires.
+     */
+    private final Instant expiresAt;
+
+    /**
+     * When the access token was issued, or requested if the token does not say.
+     */
+    private final Instant issuedAt;
+
+    /**
+     * The space-delimited scopes granted with the access token.
+     */
+    private final String scope;
+
+    /**
+     * The token type, usually {@code Bearer} or {@code DPoP}.
+     */
+    private final String tokenType;
+
+    /**
+     * When the refresh token expires, if the provider reports it.
+     */
+    private final Instant refreshExpiresAt;
+
+    /**
+     * The host of the token endpoint that issued the token, whose clock the expiry times are on.
+     */
+    private final String serverHost;
+
+    private TokenMetadata(Builder builder) {
+        this.expiresAt = builder.expiresAt;
+        this.issuedAt = builder.issuedAt;
+        this.scope = builder.scope;
+        this.tokenType = builder.tokenType;
+        this.refreshExpiresAt = builder.refreshExpiresAt;
+        this.serverHost = builder.serverHost;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public Instant getIssuedAt() {
+        return issuedAt;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public String getTokenType() {
+        return tokenType;
+    }
+
+    public Instant getRefreshExpiresAt() {
+        return refreshExpiresAt;
+    }
+
+    public String getServerHost() {
+        return serverHost;
+    }
+
+    public Builder toBuilder() {
+        return builder()
+                .expiresAt(expiresAt)
+                .issuedAt(issuedAt)
+                .scope(scope)
+                .tokenType(tokenType)
+                .refreshExpiresAt(refreshExpiresAt)
+                .serverHost(serverHost);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private Instant expiresAt;
+        private Instant issuedAt;
+        private String scope;
+        private String tokenType;
+        private Instant refreshExpiresAt;
+        private String serverHost;
+
+        public Builder expiresAt(Instant expiresAt) {
+            this.expiresAt = expiresAt;
+            return this;
+        }
+
+        public Builder issuedAt(Instant issuedAt) {
+            this.issuedAt = issuedAt;
+            return this;
+        }
+
+        public Builder scope(String scope) {
+            this.scope = scope;
+            return this;
+        }
+
+        public Builder tokenType(String tokenType) {
+            this.tokenType = tokenType;
+            return this;
+        }
+
+        public Builder refreshExpiresAt(Instant refreshExpiresAt) {
+            this.refreshExpiresAt = refreshExpiresAt;
+            return this;
+        }
+
+        public Builder serverHost(String serverHost) {
+            this.serverHost = serverHost;
+            return this;
+        }
+
+        public TokenMetadata build() {
+            return new TokenMetadata(this);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import java.time.Instant;
+
+/**
+ * An access token and the refresh token issued with it, as stored together
+ * in one versioned record along with their {@link TokenMetadata}.
+ */
+public final class TokenPair {
+    private final String accessToken;
+    private final String refreshToken;
+    private final TokenMetadata metadata;
+    private final long version;
+
+    public TokenPair(String accessToken, String refreshToken, long version) {
+        this(accessToken, refreshToken, TokenMetadata.EMPTY, version);
+    }
+
+    public TokenPair(String accessToken, String refreshToken, TokenMetadata metadata, long version) {
+        this.accessToken = accessToken;
+        this.refreshToken = refreshToken;
+        this.metadata = metadata == null ? TokenMetadata.EMPTY : metadata;
+        this.version = version;
+    }
+
+    public String getAccessToken() {
+        return accessToken;
+    }
+
+    /**
+     * The refresh token, or null if none was issued.
+     */
+    public String getRefreshToken() {
+        return refreshToken;
+    }
+
+    /**
+     * Never null; fields the record does not carry are null.
+     */
+    public TokenMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Incremented on every write of the record.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Encodes the pair as a single store value, one field per line. Fields
+     * are only ever appended so older readers ignore what they do not know.
+     *
+     * @throws IllegalArgumentException If a field contains a line break
+     */
+    String encode() {
+        StringBuilder builder = new StringBuilder(256);
+        builder.append(version).append('\n');
+        appendField(builder, accessToken);
+        appendField(builder, refreshToken);
+        appendField(builder, metadata.getExpiresAt());
+        appendField(builder, metadata.getIssuedAt());
+        appendField(builder, metadata.getScope());
+        appendField(builder, metadata.getTokenType());
+        appendField(builder, metadata.getRefreshExpiresAt());
+        appendField(builder, metadata.getServerHost());
+        builder.setLength(builder.length() - 1);
+        return builder.toString();
+    }
+
+    private static void appendField(StringBuilder builder, String value) {
+        if (value != null) {
+            // Tokens and RFC 6749 scope strings never contain line breaks
+            if (value.indexOf('\n') >= 0) {
+                throw new IllegalArgumentException("Token record fields must not contain line breaks");
+            }
+            builder.append(value);
+        }
+        builder.append('\n');
+    }
+
+    private static void appendField(StringBuilder builder, Instant value) {
+        if (value != null) {
+            builder.append(value.getEpochSecond());
+        }
+        builder.append('\n');
+    }
+
+    /**
+     * Decodes a store value written by {@link #encode()}, including records
+     * written before metadata was stored.
+     *
+     * @return The pair, or null if the value is null or malformed
+     */
+    static TokenPair decode(String encoded) {
+        if (encoded == null) {
+            return null;
+        }
+        String[] fields = encoded.split("\n", -1);
+        if (fields.length < 3) {
+            return null;
+        }
+
+        try {
+            long version = Long.parseLong(fields[0]);
+            TokenMetadata metadata = TokenMetadata.builder()
+                    .expiresAt(instantField(fields, 3))
+                    .issuedAt(instantField(fields, 4))
+                    .scope(stringField(fields, 5))
+                    .tokenType(stringField(fields, 6))
+                    .refreshExpiresAt(instantField(fields, 7))
+                    .serverHost(stringField(fields, 8))
+                    .build();
+            return new TokenPair(stringField(fields, 1), stringField(fields, 2), metadata, version);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String stringField(String[] fields, int index) {
+        return index < fields.length && !fields[index].isEmpty() ? fields[index] : null;
+    }
+
+    private static Instant instantField(String[] fields, int index) {
+        String value = stringField(fields, index);
+        return value == null ? null : Instant.ofEpochSecond(Long.parseLong(value));
+    }
+}
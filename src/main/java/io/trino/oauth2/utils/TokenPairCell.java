@@ -0,0 +1,113 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Holds the decoded form of one stored token record.
+ * <p>
+ * Readers use optimistic stamps, so they never observe an access token from
+ * one record with a refresh token from another. The stamp lock is only held
+ * while the fields are replaced; a reader that overlaps that falls back to
+ * a read lock, which waits for the few field writes, never for I/O.
+ * Writers are serialized by a separate writer lock, which guards the
+ * read-modify-write of the stored record including its backend I/O.
+ * <p>
+ * The cell also holds the access token's expiry as a monotonic deadline,
+ * anchored to the wall clock once when the record is first seen, so later
+ * wall-clock steps do not change how long the token is considered valid.
+ */
+final class TokenPairCell {
+    static final long NO_DEADLINE = Long.MIN_VALUE;
+
+    private final StampedLock lock = new StampedLock();
+    private final ReentrantLock writerLock = new ReentrantLock();
+    private String encoded;
+    private TokenPair pair;
+    private long deadlineNanos = NO_DEADLINE;
+
+    /**
+     * Returns the decoded pair if the cell holds the given encoded record,
+     * or null if it holds a different one.
+     */
+    TokenPair getIfCurrent(String expectedEncoded) {
+        long stamp = lock.tryOptimisticRead();
+        String currentEncoded = encoded;
+        TokenPair currentPair = pair;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                currentEncoded = encoded;
+                currentPair = pair;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return currentEncoded != null && currentEncoded.equals(expectedEncoded) ? currentPair : null;
+    }
+
+    /**
+     * Returns the monotonic expiry deadline of the access token if the cell
+     * still holds the given pair, or {@link #NO_DEADLINE}.
+     */
+    long getDeadlineNanos(TokenPair expectedPair) {
+        long stamp = lock.tryOptimisticRead();
+        TokenPair currentPair = pair;
+        long currentDeadline = deadlineNanos;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                currentPair = pair;
+                currentDeadline = deadlineNanos;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return currentPair == expectedPair ? currentDeadline : NO_DEADLINE;
+    }
+
+    /**
+     * Replaces the cached record. The caller must hold the writer lock.
+     *
+     * @param newDeadlineNanos The access token's monotonic expiry deadline, or {@link #NO_DEADLINE}
+     */
+    void set(String newEncoded, TokenPair newPair, long newDeadlineNanos) {
+        long stamp = lock.writeLock();
+        try {
+            this.encoded = newEncoded;
+            this.pair = newPair;
+            this.deadlineNanos = newDeadlineNanos;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void lockForWrite() {
+        writerLock.lock();
+    }
+
+    /**
+     * Takes the writer lock if no other writer holds it.
+     *
+     * @return Whether the lock was taken
+     */
+    boolean tryLockForWrite() {
+        return writerLock.tryLock();
+    }
+
+    void unlockWrite() {
+        writerLock.unlock();
+    }
+}
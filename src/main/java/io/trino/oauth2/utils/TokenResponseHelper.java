@@ -0,0 +1,104 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.Instant;
+
+/**
+ * Utility class for reading token endpoint responses.
+ */
+public final class TokenResponseHelper {
+    private TokenResponseHelper() {
+        // Utility class
+    }
+
+    /**
+     * Builds the metadata record for a successful token response, with its
+     * times on the clock of the token endpoint that sent it.
+     *
+     * @param response       The token endpoint response
+     * @param serverHost     The host of the token endpoint, or null if unknown
+     * @param requestSentAt  When the token request was sent, on the local clock
+     * @param requestedScope The scope granted when the response omits {@code scope}
+     */
+    public static TokenMetadata getMetadata(JsonNode response, String serverHost, Instant requestSentAt, String requestedScope) {
+        long serverRequestSentAt = OAuthTokenStore.toServerTime(serverHost, requestSentAt).toEpochMilli();
+        return getMetadata(response, serverRequestSentAt, requestedScope).toBuilder()
+                .serverHost(serverHost)
+                .build();
+    }
+
+    /**
+     * Builds the metadata record for a successful token response.
+     *
+     * @param response       The token endpoint response
+     * @param requestSentAt  When the token request was sent, in epoch milliseconds
+     * @param requestedScope The scope granted when the response omits {@code scope}, as RFC 6749 specifies
+     */
+    public static TokenMetadata getMetadata(JsonNode response, long requestSentAt, String requestedScope) {
+        JsonNode scope = response.get("scope");
+        JsonNode tokenType = response.get("token_type");
+        return TokenMetadata.builder()
+                .expiresAt(getExpiresAt(response, requestSentAt))
+                .issuedAt(Instant.ofEpochMilli(requestSentAt))
+                .scope(scope != null && scope.isTextual() ? scope.asText() : requestedScope)
+                .tokenType(tokenType != null && tokenType.isTextual() ? tokenType.asText() : null)
+                // Not part of RFC 6749, but reported by Keycloak and others
+                .refreshExpiresAt(getLifetimeEnd(response, "refresh_expires_in", requestSentAt))
+                .build();
+    }
+
+    /**
+     * Converts the response's {@code expires_in} to an absolute expiry.
+     * <p>
+     * The lifetime is counted from when the request was sent rather than when
+     * the response arrived, so network latency can only make the recorded
+     * expiry early, never late.
+     *
+     * @param response      The token endpoint response
+     * @param requestSentAt When the token request was sent, in epoch milliseconds
+     * @return The expiry, or null if the response has no usable {@code expires_in}
+     */
+    public static Instant getExpiresAt(JsonNode response, long requestSentAt) {
+        return getLifetimeEnd(response, "expires_in", requestSentAt);
+    }
+
+    private static Instant getLifetimeEnd(JsonNode response, String field, long requestSentAt) {
+        JsonNode lifetime = response.get(field);
+        if (lifetime == null) {
+            return null;
+        }
+
+        long seconds;
+        if (lifetime.isNumber()) {
+            seconds = lifetime.asLong();
+        } else if (lifetime.isTextual()) {
+            // Some providers send it as a string
+            try {
+                seconds = Long.parseLong(lifetime.asText().trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+
+        if (seconds <= 0) {
+            return null;
+        }
+        // Clamped like deadlines, as huge lifetimes overflow Instant
+        return Instant.ofEpochMilli(requestSentAt).plusSeconds(Math.min(seconds, OAuthTokenStore.MAX_DEADLINE_SECONDS));
+    }
+}
@@ -0,0 +1,59 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import java.io.IOException;
+
+/**
+ * Key/value storage used by {@link OAuthTokenStore} to persist tokens.
+ */
+public interface TokenStoreBackend {
+    /**
+     * Returns the value stored under the key, or null if there is none.
+     */
+    String get(String key);
+
+    /**
+     * Stores the value under the key. A null value removes the key.
+     */
+    void put(String key, String value);
+
+    void remove(String key);
+
+    /**
+     * Forces any buffered changes to the backing store.
+     */
+    void flush();
+
+    /**
+     * Flushes buffered changes and makes subsequent reads reflect changes
+     * written to the backing store by other processes.
+     */
+    default void sync() {
+        flush();
+    }
+
+    /**
+     * Has the token record under the key acquired by whoever owns it, for
+     * backends whose tokens are acquired outside this process. Afterwards the
+     * record holds an access token valid for at least {@code minValidSeconds},
+     * unless the identity provider issues shorter-lived tokens.
+     *
+     * @param force Whether to replace the access token even if it is still valid
+     * @return false if tokens are acquired in this process, which is the default
+     * @throws IOException If the owner failed to acquire the token
+     */
+    default boolean acquire(String key, int minValidSeconds, boolean force) throws IOException {
+        return false;
+    }
+}
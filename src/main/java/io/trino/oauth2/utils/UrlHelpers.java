@@ -14,6 +14,11 @@ package io.trino.oauth2.utils;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.trino.oauth2.jfr.OidcDiscoveryEvent;
+import io.trino.oauth2.metrics.Metrics;
+import io.trino.oauth2.metrics.OAuthMetrics;
+import io.trino.oauth2.metrics.TokenOperation;
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -29,7 +34,9 @@ import java.util.concurrent.ConcurrentHashMap;
 public final class UrlHelpers {
     private static final Map<String, JsonNode> oidcDocumentCache = new ConcurrentHashMap<>();
     private static final ObjectMapper objectMapper = new ObjectMapper();
-    private static final OkHttpClient httpClient = new OkHttpClient();
+    private static final OkHttpClient httpClient = new OkHttpClient.Builder()
+            .addInterceptor(ClockSkewInterceptor.INSTANCE)
+            .build();
 
     private UrlHelpers() {
         // Utility class
@@ -37,6 +44,11 @@ public final class UrlHelpers {
 
     private static JsonNode getOidcDocument(String oidcDiscoveryUrl) throws IOException {
         return oidcDocumentCache.computeIfAbsent(oidcDiscoveryUrl, url -> {
+            OAuthMetrics metrics = Metrics.getMetrics();
+            long start = Metrics.startTimer(metrics);
+            OidcDiscoveryEvent event = new OidcDiscoveryEvent();
+            event.begin();
+            String outcome = "success";
             try {
                 Request request = new Request.Builder()
                         .url(url)
@@ -51,11 +63,33 @@ public final class UrlHelpers {
                     return objectMapper.readTree(responseBody);
                 }
             } catch (IOException e) {
+                outcome = Metrics.causeOf(e);
+                metrics.failure(TokenOperation.DISCOVERY, null, outcome);
                 throw new RuntimeException("Failed to fetch OIDC discovery document from " + url, e);
+            } catch (RuntimeException e) {
+                outcome = Metrics.causeOf(e);
+                metrics.failure(TokenOperation.DISCOVERY, null, outcome);
+                throw e;
+            } finally {
+                Metrics.recordLatency(metrics, TokenOperation.DISCOVERY, null, start);
+                if (event.finish()) {
+                    event.commit(null, null, url, outcome);
+                }
             }
         });
     }
 
+    /**
+     * Returns the host of a URL, which identifies the identity provider
+     * whose clock a token's expiry is on.
+     *
+     * @return The host, or null if the URL cannot be parsed
+     */
+    public static String getHost(String url) {
+        HttpUrl parsed = url == null ? null : HttpUrl.parse(url);
+        return parsed == null ? null : parsed.host();
+    }
+
     public static String getTokenEndpointFromOidc(String oidcDiscoveryUrl) throws IOException {
         JsonNode doc = getOidcDocument(oidcDiscoveryUrl);
         JsonNode tokenEndpoint = doc.get("token_endpoint");
@@ -0,0 +1,173 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token storage that buffers writes in memory and applies them to a delegate
+ * backend in coalesced batches.
+ * <p>
+ * Writes are visible to readers immediately. Pending changes are written to
+ * the delegate on a fixed interval, on {@link #flush()}, on {@link #close()}
+ * and at JVM shutdown. Only the latest value of each key is written, so a key
+ * updated many times between flushes costs a single write. Once closed, the
+ * backend writes through to the delegate, so writers still holding it do not
+ * lose tokens.
+ */
+public class WriteBehindTokenBackend implements TokenStoreBackend, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindTokenBackend.class);
+
+    private static final PendingWrite REMOVED = new PendingWrite(null);
+
+    private final TokenStoreBackend delegate;
+    private final Map<String, PendingWrite> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final Thread shutdownHook;
+    private volatile boolean closed;
+
+    /**
+     * Creates a write-behind backend.
+     *
+     * @param delegate      The backend that pending writes are flushed to
+     * @param flushInterval How often pending writes are flushed
+     */
+    public WriteBehindTokenBackend(TokenStoreBackend delegate, Duration flushInterval) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate is required");
+        }
+        if (flushInterval == null || flushInterval.isNegative() || flushInterval.isZero()) {
+            throw new IllegalArgumentException("flushInterval must be positive");
+        }
+        this.delegate = delegate;
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oauth2-token-store-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = flushInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+
+        this.shutdownHook = new Thread(this::flushQuietly, "oauth2-token-store-shutdown-flush");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    @Override
+    public String get(String key) {
+        PendingWrite write = pending.get(key);
+        if (write == null) {
+            return delegate.get(key);
+        }
+        return write.value;
+    }
+
+    @Override
+    public void put(String key, String value) {
+        pending.put(key, value == null ? REMOVED : new PendingWrite(value));
+        if (closed) {
+            flush();
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        pending.put(key, REMOVED);
+        if (closed) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes all pending changes to the delegate and flushes it.
+     */
+    @Override
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        for (Map.Entry<String, PendingWrite> entry : pending.entrySet()) {
+            String key = entry.getKey();
+            PendingWrite write = entry.getValue();
+            if (write.value == null) {
+                delegate.remove(key);
+            } else {
+                delegate.put(key, write.value);
+            }
+            // A newer write made during the flush stays pending for the next batch
+            pending.remove(key, write);
+        }
+
+        delegate.flush();
+    }
+
+    @Override
+    public synchronized void sync() {
+        flush();
+        delegate.sync();
+    }
+
+    /**
+     * Returns the number of keys with changes not yet written to the delegate.
+     */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Stops the periodic flush and writes any pending changes. If this is the
+     * installed token store backend, the delegate is installed in its place.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        OAuthTokenStore.restoreBackend(this, delegate);
+        scheduler.shutdown();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // JVM is already shutting down, the hook performs the final flush
+        }
+        flush();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to flush pending token writes", e);
+        }
+    }
+
+    /**
+     * A pending change of one key, or a removal if the value is null. Compared
+     * by identity, so each write is told apart from every other, even of an
+     * equal value.
+     */
+    private static final class PendingWrite {
+        final String value;
+
+        PendingWrite(String value) {
+            this.value = value;
+        }
+    }
+}
@@ -12,10 +12,45 @@
 
 package io.trino.oauth2;
 
+import com.sun.net.httpserver.HttpServer;
+import io.trino.oauth2.configs.Constants;
+import io.trino.oauth2.flows.AuthorizationRequest;
+import io.trino.oauth2.models.AuthorizationCodeConfig;
+import io.trino.oauth2.models.ClientCredentialsConfig;
 import io.trino.oauth2.models.DeviceCodeConfig;
 import io.trino.oauth2.models.ManualUrlsConfig;
+import io.trino.oauth2.models.TokenExchangeConfig;
+import io.trino.oauth2.utils.InMemoryTokenBackend;
+import io.trino.oauth2.utils.OAuthTokenStore;
+import io.trino.oauth2.utils.SimulatedTimeSource;
+import io.trino.oauth2.utils.TimeSource;
+import io.trino.oauth2.utils.TokenPair;
+import io.trino.oauth2.utils.TokenStoreBackend;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class OAuth2ClientTest {
@@ -50,4 +85,275 @@ class OAuth2ClientTest {
             }
         });
     }
+
+    @Test
+    void testTokenPerAudience() throws Exception {
+        List<String> audiences = Arrays.asList("https://api.example.com/a", "https://api.example.com/b", "trino");
+        AtomicInteger tokenRequests = new AtomicInteger();
+        // Every request waits for the others, so a sequential client would time out here
+        CountDownLatch allRequestsArrived = new CountDownLatch(audiences.size());
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ExecutorService serverExecutor = Executors.newFixedThreadPool(audiences.size());
+        server.setExecutor(serverExecutor);
+        server.createContext("/token", exchange -> {
+            tokenRequests.incrementAndGet();
+            ByteArrayOutputStream form = new ByteArrayOutputStream();
+            exchange.getRequestBody().transferTo(form);
+            String audience = null;
+            for (String pair : form.toString(StandardCharsets.UTF_8).split("&")) {
+                if (pair.startsWith("audience=")) {
+                    audience = URLDecoder.decode(pair.substring("audience=".length()), StandardCharsets.UTF_8);
+                }
+            }
+            allRequestsArrived.countDown();
+            try {
+                allRequestsArrived.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            byte[] body = ("{\"access_token\":\"token-for-" + audience + "\",\"expires_in\":3600}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        TokenStoreBackend previousBackend = OAuthTokenStore.getBackend();
+        OAuthTokenStore.setBackend(new InMemoryTokenBackend());
+        try {
+            OAuth2Client client = new OAuth2Client(ClientCredentialsConfig.builder()
+                    .clientId(CLIENT_ID)
+                    .clientSecret(CLIENT_SECRET)
+                    .audience(audiences)
+                    .tokenPerAudience(true)
+                    .urlConfig(ManualUrlsConfig.builder()
+                            .tokenEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/token")
+                            .build())
+                    .build());
+
+            long start = System.nanoTime();
+            Map<String, String> tokens = client.tokens();
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10), "audiences were not fetched concurrently");
+
+            assertEquals(audiences, List.copyOf(tokens.keySet()));
+            for (String audience : audiences) {
+                assertEquals("token-for-" + audience, tokens.get(audience));
+                assertEquals("token-for-" + audience, client.token(audience));
+            }
+            assertEquals(tokens, client.tokens());
+            assertEquals(audiences.size(), tokenRequests.get());
+
+            assertThrows(IllegalArgumentException.class, () -> client.token("unknown"));
+            assertThrows(IllegalStateException.class, client::token);
+        } finally {
+            OAuthTokenStore.setBackend(previousBackend);
+            server.stop(0);
+            serverExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testTokenExchange() throws Exception {
+        AtomicInteger tokenRequests = new AtomicInteger();
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ExecutorService serverExecutor = Executors.newFixedThreadPool(4);
+        server.setExecutor(serverExecutor);
+        server.createContext("/token", exchange -> {
+            tokenRequests.incrementAndGet();
+            ByteArrayOutputStream form = new ByteArrayOutputStream();
+            exchange.getRequestBody().transferTo(form);
+            Map<String, String> params = new HashMap<>();
+            for (String pair : form.toString(StandardCharsets.UTF_8).split("&")) {
+                int separator = pair.indexOf('=');
+                params.put(pair.substring(0, separator),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+            try {
+                // Give concurrent callers time to pile up behind this request
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            byte[] body = ("{\"access_token\":\"" + params.get("subject_token") + "@" + params.get("audience") +
+                    "\",\"issued_token_type\":\"" + Constants.ACCESS_TOKEN_TYPE + "\",\"expires_in\":600}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        TimeSource previousTimeSource = OAuthTokenStore.getTimeSource();
+        SimulatedTimeSource timeSource = new SimulatedTimeSource(Instant.now());
+        OAuthTokenStore.setTimeSource(timeSource);
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            OAuth2Client client = new OAuth2Client(TokenExchangeConfig.builder()
+                    .clientId(CLIENT_ID)
+                    .clientSecret(CLIENT_SECRET)
+                    .audience("trino")
+                    .cacheSize(2)
+                    .urlConfig(ManualUrlsConfig.builder()
+                            .tokenEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/token")
+                            .build())
+                    .build());
+
+            // Concurrent exchanges of one subject share a request
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(callers.submit(() -> client.exchange("alice")));
+            }
+            for (Future<String> result : results) {
+                assertEquals("alice@trino", result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, tokenRequests.get());
+
+            // Cached per subject and audience
+            assertEquals("alice@trino", client.exchange("alice"));
+            assertEquals("alice@other", client.exchange("alice", "other", null));
+            assertEquals(2, tokenRequests.get());
+
+            // The least recently used token is evicted beyond the cache size
+            assertEquals("bob@trino", client.exchange("bob"));
+            assertEquals("alice@other", client.exchange("alice", "other", null));
+            assertEquals(3, tokenRequests.get());
+            assertEquals("alice@trino", client.exchange("alice"));
+            assertEquals(4, tokenRequests.get());
+
+            // Tokens are exchanged again once they near expiry
+            timeSource.advance(Duration.ofSeconds(600 - Constants.VALID_MIN_DURATION_THRESHOLD + 1));
+            assertEquals("alice@trino", client.exchange("alice"));
+            assertEquals(5, tokenRequests.get());
+
+            assertThrows(IllegalArgumentException.class, () -> client.exchange(""));
+            assertThrows(IllegalStateException.class, client::token);
+        } finally {
+            OAuthTokenStore.setTimeSource(previousTimeSource);
+            callers.shutdownNow();
+            server.stop(0);
+            serverExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testServerSideLogins() throws Exception {
+        // The authorization server's record of the PKCE challenge each issued code was granted for
+        Map<String, String> codeChallenges = new ConcurrentHashMap<>();
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ExecutorService serverExecutor = Executors.newFixedThreadPool(8);
+        server.setExecutor(serverExecutor);
+        server.createContext("/token", exchange -> {
+            ByteArrayOutputStream form = new ByteArrayOutputStream();
+            exchange.getRequestBody().transferTo(form);
+            Map<String, String> params = new HashMap<>();
+            for (String pair : form.toString(StandardCharsets.UTF_8).split("&")) {
+                int separator = pair.indexOf('=');
+                params.put(pair.substring(0, separator),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+
+            String challenge = codeChallenges.remove(params.get("code"));
+            boolean valid = challenge != null && challenge.equals(s256(params.get("code_verifier")));
+            byte[] body = (valid ?
+                    "{\"access_token\":\"token-for-" + params.get("code") + "\",\"refresh_token\":\"refresh\",\"expires_in\":3600}" :
+                    "{\"error\":\"invalid_grant\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(valid ? 200 : 400, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        TimeSource previousTimeSource = OAuthTokenStore.getTimeSource();
+        SimulatedTimeSource timeSource = new SimulatedTimeSource(Instant.now());
+        OAuthTokenStore.setTimeSource(timeSource);
+        ExecutorService users = Executors.newFixedThreadPool(16);
+        try {
+            OAuth2Client client = new OAuth2Client(AuthorizationCodeConfig.builder()
+                    .clientId(CLIENT_ID)
+                    .clientSecret(CLIENT_SECRET)
+                    .redirectUri("https://app.example.com/callback")
+                    .urlConfig(ManualUrlsConfig.builder()
+                            .authorizationEndpoint("https://auth.example.com/authorize")
+                            .tokenEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/token")
+                            .build())
+                    .build());
+
+            // Many users log in at once through the same client
+            int logins = 500;
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < logins; i++) {
+                String code = "code-" + i;
+                results.add(users.submit(() -> {
+                    AuthorizationRequest login = client.beginLogin();
+                    Map<String, String> query = parseQuery(login.getAuthorizationUrl());
+                    assertEquals(login.getState(), query.get("state"));
+                    assertEquals("S256", query.get("code_challenge_method"));
+                    codeChallenges.put(code, query.get("code_challenge"));
+                    return client.completeLogin(login.getState(), code).getAccessToken();
+                }));
+            }
+            for (int i = 0; i < logins; i++) {
+                assertEquals("token-for-code-" + i, results.get(i).get(30, TimeUnit.SECONDS));
+            }
+            assertTrue(codeChallenges.isEmpty());
+
+            // Each state completes once, and only while the login is pending
+            AuthorizationRequest login = client.beginLogin();
+            AuthorizationRequest other = client.beginLogin();
+            assertNotEquals(login.getState(), other.getState());
+            codeChallenges.put("code", parseQuery(login.getAuthorizationUrl()).get("code_challenge"));
+            TokenPair tokens = client.completeLogin(login.getState(), "code");
+            assertEquals("token-for-code", tokens.getAccessToken());
+            assertEquals("refresh", tokens.getRefreshToken());
+            assertNotNull(tokens.getMetadata().getExpiresAt());
+            assertThrows(IllegalArgumentException.class, () -> client.completeLogin(login.getState(), "code"));
+            assertThrows(IllegalArgumentException.class, () -> client.completeLogin("unknown", "code"));
+
+            timeSource.advance(Duration.ofSeconds(Constants.PENDING_LOGIN_TIMEOUT + 1));
+            assertThrows(IllegalArgumentException.class, () -> client.completeLogin(other.getState(), "code"));
+
+            assertThrows(IllegalStateException.class, () -> new OAuth2Client(ClientCredentialsConfig.builder()
+                    .clientId(CLIENT_ID)
+                    .clientSecret(CLIENT_SECRET)
+                    .urlConfig(ManualUrlsConfig.builder().tokenEndpoint("https://auth.example.com/token").build())
+                    .build()).beginLogin());
+        } finally {
+            OAuthTokenStore.setTimeSource(previousTimeSource);
+            users.shutdownNow();
+            server.stop(0);
+            serverExecutor.shutdownNow();
+        }
+    }
+
+    private static Map<String, String> parseQuery(String url) {
+        Map<String, String> params = new HashMap<>();
+        for (String pair : URI.create(url).getRawQuery().split("&")) {
+            int separator = pair.indexOf('=');
+            params.put(pair.substring(0, separator),
+                    URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String s256(String verifier) {
+        if (verifier == null) {
+            return null;
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(verifier.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
 }
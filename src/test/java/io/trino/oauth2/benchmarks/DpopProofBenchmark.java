@@ -0,0 +1,103 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.benchmarks;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import io.trino.oauth2.utils.DpopProofGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures DPoP proofs per second from {@link DpopProofGenerator} against
+ * building each proof from scratch with java-jwt, which serializes the
+ * header and public key and draws a random {@code jti} every time. Run with
+ * {@code make benchmark BENCHMARK=DpopProof}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class DpopProofBenchmark {
+    private static final String URL = "https://auth.example.com/oauth/token";
+
+    private DpopProofGenerator generator;
+    private KeyPair keyPair;
+    private Algorithm algorithm;
+
+    @Setup
+    public void setUp() {
+        keyPair = DpopProofGenerator.generateKeyPair();
+        generator = new DpopProofGenerator(keyPair);
+        generator.setNonce(URL, "eyJ7S_zG.eyJH0-Z.HX4w-7v");
+        algorithm = Algorithm.ECDSA256((ECPublicKey) keyPair.getPublic(), (ECPrivateKey) keyPair.getPrivate());
+    }
+
+    @Benchmark
+    public String generator() {
+        return generator.createProof("POST", URL);
+    }
+
+    @Benchmark
+    public String javaJwt() {
+        ECPublicKey publicKey = (ECPublicKey) keyPair.getPublic();
+        Map<String, Object> jwk = new HashMap<>();
+        jwk.put("kty", "EC");
+        jwk.put("crv", "P-256");
+        jwk.put("x", coordinate(publicKey.getW().getAffineX()));
+        jwk.put("y", coordinate(publicKey.getW().getAffineY()));
+        Map<String, Object> header = new HashMap<>();
+        header.put("typ", "dpop+jwt");
+        header.put("jwk", jwk);
+
+        return JWT.create()
+                .withHeader(header)
+                .withJWTId(UUID.randomUUID().toString())
+                .withClaim("htm", "POST")
+                .withClaim("htu", URL)
+                .withClaim("nonce", "eyJ7S_zG.eyJH0-Z.HX4w-7v")
+                .withIssuedAt(Instant.now())
+                .sign(algorithm);
+    }
+
+    private static String coordinate(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        byte[] coordinate = new byte[32];
+        int length = Math.min(bytes.length, 32);
+        System.arraycopy(bytes, bytes.length - length, coordinate, 32 - length, length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(coordinate);
+    }
+}
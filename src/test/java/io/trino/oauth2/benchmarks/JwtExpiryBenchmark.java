@@ -0,0 +1,58 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.benchmarks;
+
+import com.auth0.jwt.JWT;
+import io.trino.oauth2.utils.JwtClaimScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading the {@code exp} claim with {@link JwtClaimScanner} against
+ * a full java-jwt decode. Run with {@code make benchmark BENCHMARK=JwtExpiry}
+ * and add {@code -prof gc} to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtExpiryBenchmark {
+    // Typical IdP access token payload with audiences, scopes and custom claims
+    private static final String TOKEN = "eyJhbGciOiJSUzI1NiIsImtpZCI6InB1YmxpYzo5ZjJkIiwidHlwIjoiSldUIn0." +
+            "eyJhdWQiOlsidHJpbm8iXSwiY2xpZW50X2lkIjoidHJpbm8tY2xpZW50IiwiZXh0Ijp7fSwiaWF0IjoxNzAwMDAwMDAw" +
+            "LCJpc3MiOiJodHRwczovL2F1dGguZXhhbXBsZS5jb20vIiwianRpIjoiNmQ1YjI4YjMtNGQ4Zi00ZTk1LWFjNGQtYWY0" +
+            "ZDk4YzQ1ZTFhIiwibmJmIjoxNzAwMDAwMDAwLCJzY3AiOlsib3BlbmlkIiwib2ZmbGluZSIsInRyaW5vIl0sInN1YiI6" +
+            "InRyaW5vLWNsaWVudCIsImV4cCI6OTk5OTk5OTk5OX0." +
+            "c2lnbmF0dXJlLXBsYWNlaG9sZGVyLW5vdC12ZXJpZmllZC1ieS10aGUtYmVuY2htYXJr";
+
+    @Benchmark
+    public long scanner() {
+        return JwtClaimScanner.getExpiresAt(TOKEN);
+    }
+
+    @Benchmark
+    public long fullDecode() {
+        return JWT.decode(TOKEN).getExpiresAt().toInstant().getEpochSecond();
+    }
+}
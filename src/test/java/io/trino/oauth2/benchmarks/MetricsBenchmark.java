@@ -0,0 +1,89 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package io.trino.oauth2.benchmarks;
+
+import io.trino.oauth2.OAuth2Client;
+import io.trino.oauth2.metrics.Metrics;
+import io.trino.oauth2.metrics.RecordingOAuthMetrics;
+import io.trino.oauth2.models.ClientCredentialsConfig;
+import io.trino.oauth2.models.ManualUrlsConfig;
+import io.trino.oauth2.utils.InMemoryTokenBackend;
+import io.trino.oauth2.utils.OAuthTokenStore;
+import io.trino.oauth2.utils.TokenStoreBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures cached {@code token()} calls with the no-op metrics default
+ * against in-memory recording, to check that instrumentation stays off the
+ * hot path when unused. Run with {@code make benchmark BENCHMARK=Metrics}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class MetricsBenchmark {
+    // Expires in 2286
+    private static final String VALID_JWT = "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9." +
+            "eyJzdWIiOiIxMjM0NTY3ODkwIiwibmFtZSI6IkpvaG4gRG9lIiwiaWF0IjoxNTE2MjM5MDIyLCJleHAiOjk5OTk5OTk5OTl9." +
+            "Ks7KcdjrlUWcOseM3hKK9fLYqo1FQl9Dl2S5f-caNyQ";
+
+    @Param({"noop", "recording"})
+    public String metrics;
+
+    private TokenStoreBackend previousBackend;
+    private OAuth2Client client;
+
+    @Setup
+    public void setUp() {
+        previousBackend = OAuthTokenStore.getBackend();
+        OAuthTokenStore.setBackend(new InMemoryTokenBackend());
+        Metrics.setMetrics("recording".equals(metrics) ? new RecordingOAuthMetrics() : null);
+
+        client = new OAuth2Client(ClientCredentialsConfig.builder()
+                .clientId("benchmark-client")
+                .clientSecret("secret")
+                .urlConfig(ManualUrlsConfig.builder().tokenEndpoint("https://auth.example.com/token").build())
+                .build());
+        OAuthTokenStore.setAccessToken(client.getStorageClientId(), ClientCredentialsConfig.class.getSimpleName(), VALID_JWT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Metrics.setMetrics(null);
+        OAuthTokenStore.setBackend(previousBackend);
+    }
+
+    @Benchmark
+    public String cachedToken() throws IOException {
+        return client.token();
+    }
+}
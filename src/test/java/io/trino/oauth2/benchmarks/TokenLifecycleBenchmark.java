@@ -0,0 +1,71 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.benchmarks;
+
+import io.trino.oauth2.utils.TokenLifecycleSimulation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs one simulated hour of token lifecycles per operation, ticking every
+ * five seconds, to measure the cost of expiry checks and refreshes through
+ * {@code OAuthTokenStore} without waiting on a real clock.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenLifecycleBenchmark {
+    @Param({"100", "1000"})
+    public int clients;
+
+    private TokenLifecycleSimulation simulation;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        simulation = new TokenLifecycleSimulation(
+                "benchmark-client-",
+                clients,
+                Duration.ofMinutes(5),
+                Duration.ofMinutes(15),
+                Duration.ofHours(1)
+        );
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        simulation.close();
+    }
+
+    @Benchmark
+    public long simulatedHour() {
+        simulation.run(Duration.ofHours(1), Duration.ofSeconds(5));
+        return simulation.getTotalAcquisitions();
+    }
+}
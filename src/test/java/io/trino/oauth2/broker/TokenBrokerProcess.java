@@ -0,0 +1,53 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.broker;
+
+import io.trino.oauth2.OAuth2Client;
+import io.trino.oauth2.models.ClientCredentialsConfig;
+import io.trino.oauth2.models.ManualUrlsConfig;
+import io.trino.oauth2.utils.InMemoryTokenBackend;
+import io.trino.oauth2.utils.OAuthTokenStore;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Runs a {@link TokenBroker} in a process of its own, since the token store
+ * is per process: {@code TokenBrokerProcess <socket path> <token endpoint>}.
+ * Stops when its standard input closes.
+ */
+public final class TokenBrokerProcess {
+    static final String CLIENT_ID = "broker-process-client";
+
+    private TokenBrokerProcess() {
+    }
+
+    static ClientCredentialsConfig config(String tokenEndpoint) {
+        return ClientCredentialsConfig.builder()
+                .clientId(CLIENT_ID)
+                .clientSecret("secret")
+                .urlConfig(ManualUrlsConfig.builder().tokenEndpoint(tokenEndpoint).build())
+                .build();
+    }
+
+    public static void main(String[] args) throws IOException {
+        OAuthTokenStore.setBackend(new InMemoryTokenBackend());
+        try (TokenBroker broker = new TokenBroker(Paths.get(args[0]))) {
+            broker.register(new OAuth2Client(config(args[1])));
+            broker.start();
+            while (System.in.read() != -1) {
+                // Runs until the parent closes standard input
+            }
+        }
+    }
+}
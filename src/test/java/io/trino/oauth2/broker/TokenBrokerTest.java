@@ -0,0 +1,282 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.broker;
+
+import com.sun.net.httpserver.HttpServer;
+import io.trino.oauth2.OAuth2Client;
+import io.trino.oauth2.models.ClientCredentialsConfig;
+import io.trino.oauth2.models.ManualUrlsConfig;
+import io.trino.oauth2.utils.OAuthTokenStore;
+import io.trino.oauth2.utils.PreferencesTokenBackend;
+import io.trino.oauth2.utils.TokenStoreBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class TokenBrokerTest {
+
+    private static final String CLIENT_ID = "broker-test-client";
+    private static final String MODE = "ClientCredentialsConfig";
+
+    // Sample JWT token with far future expiration
+    private static final String VALID_JWT = "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9." +
+            "eyJzdWIiOiIxMjM0NTY3ODkwIiwibmFtZSI6IkpvaG4gRG9lIiwiaWF0IjoxNTE2MjM5MDIyLCJleHAiOjk5OTk5OTk5OTl9." +
+            "Ks7KcdjrlUWcOseM3hKK9fLYqo1FQl9Dl2S5f-caNyQ";
+
+    @TempDir
+    Path tempDir;
+
+    private TokenStoreBackend previousBackend;
+    private HttpServer tokenServer;
+    private AtomicInteger tokenRequests;
+    private TokenBroker broker;
+    private BrokerTokenBackend backend;
+    private String storageClientId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        assumeTrue(UnixSockets.isSupported(), "Unix domain sockets not supported");
+
+        previousBackend = OAuthTokenStore.getBackend();
+        OAuthTokenStore.setBackend(new PreferencesTokenBackend("trino-java-client-broker-test"));
+        OAuthTokenStore.purgeTokens(CLIENT_ID, null);
+
+        tokenRequests = new AtomicInteger();
+        tokenServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        tokenServer.createContext("/token", exchange -> {
+            tokenRequests.incrementAndGet();
+            byte[] body = ("{\"access_token\":\"" + VALID_JWT + "\",\"token_type\":\"Bearer\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        tokenServer.start();
+
+        broker = new TokenBroker(tempDir.resolve("broker.sock"));
+        broker.start();
+        backend = new BrokerTokenBackend(broker.getSocketPath());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (previousBackend == null) {
+            return;
+        }
+        backend.close();
+        broker.close();
+        tokenServer.stop(0);
+        OAuthTokenStore.purgeTokens(CLIENT_ID, null);
+        if (storageClientId != null) {
+            OAuthTokenStore.purgeTokens(storageClientId, null);
+        }
+        OAuthTokenStore.setBackend(previousBackend);
+    }
+
+    @Test
+    void testOnlyRegisteredAccessTokensAreServed() {
+        OAuth2Client client = registerClient();
+        OAuthTokenStore.setAccessAndRefreshTokens(storageClientId, MODE, VALID_JWT, "refresh-token");
+        OAuthTokenStore.getBackend().put("other-key", "value");
+
+        String[] record = fields(backend.get(OAuthTokenStore.getTokenKey(client.getStorageClientId(), MODE)));
+        assertEquals(VALID_JWT, record[1]);
+        assertEquals("", record[2], "refresh tokens must not leave the broker");
+        assertEquals(0, tokenRequests.get());
+
+        assertNull(backend.get("other-key"));
+        assertNull(backend.get(storageClientId + ":" + MODE + ":dpop_key"));
+        assertThrows(IllegalStateException.class, () -> backend.acquire("other-key", 0, false));
+        assertThrows(UnsupportedOperationException.class, () -> backend.put("other-key", "injected"));
+        assertThrows(UnsupportedOperationException.class, () -> backend.remove("other-key"));
+        assertEquals("value", OAuthTokenStore.getBackend().get("other-key"));
+        OAuthTokenStore.getBackend().remove("other-key");
+
+        backend.flush();
+        backend.sync();
+    }
+
+    @Test
+    void testClientProcessAcquiresThroughBroker() throws Exception {
+        AtomicInteger issued = new AtomicInteger();
+        AtomicInteger lifetime = new AtomicInteger(600);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/token", exchange -> {
+            byte[] body = ("{\"access_token\":\"token-" + issued.incrementAndGet() + "\"," +
+                    "\"expires_in\":" + lifetime.get() + "}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        String tokenEndpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/token";
+
+        // The token store is per process, so the broker needs a process of its own
+        Path socketPath = tempDir.resolve("process.sock");
+        Process process = new ProcessBuilder(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                TokenBrokerProcess.class.getName(),
+                socketPath.toString(),
+                tokenEndpoint
+        ).redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        try (BrokerTokenBackend processBackend = new BrokerTokenBackend(socketPath)) {
+            awaitSocket(process, socketPath);
+            OAuthTokenStore.setBackend(processBackend);
+
+            OAuth2Client client = new OAuth2Client(TokenBrokerProcess.config(tokenEndpoint));
+            assertEquals("token-1", client.token());
+            assertEquals("token-1", client.token());
+
+            // Wants more than the stored token's lifetime, a miss the broker serves
+            lifetime.set(3600);
+            OAuth2Client demanding = new OAuth2Client(TokenBrokerProcess.config(tokenEndpoint), 900);
+            assertEquals("token-2", demanding.token());
+            assertEquals("token-2", client.token());
+
+            client.forceRefresh();
+            assertEquals("token-3", client.token());
+            assertEquals(3, issued.get());
+
+            UnsupportedOperationException e = assertThrows(UnsupportedOperationException.class, client::purge);
+            assertTrue(e.getMessage().contains("token broker"), e.getMessage());
+        } finally {
+            OAuthTokenStore.setBackend(new PreferencesTokenBackend("trino-java-client-broker-test"));
+            process.getOutputStream().close();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testSocketIsOwnerOnly() throws Exception {
+        assumeTrue(tempDir.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(broker.getSocketPath())));
+        // The directory the socket was bound in is gone
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(List.of(broker.getSocketPath()), files.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void testMalformedRequestClosesConnection() throws Exception {
+        try (SocketChannel channel = UnixSockets.connect(broker.getSocketPath())) {
+            ByteBuffer request = ByteBuffer.allocate(5);
+            request.put(BrokerProtocol.OP_GET).putInt(-5).flip();
+            channel.write(request);
+
+            assertEquals(-1, channel.read(ByteBuffer.allocate(16)));
+        }
+    }
+
+    @Test
+    void testRegisteredClientIsAcquiredOnce() throws Exception {
+        OAuth2Client client = registerClient();
+
+        String key = OAuthTokenStore.getTokenKey(client.getStorageClientId(), MODE);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    try (BrokerTokenBackend connection = new BrokerTokenBackend(broker.getSocketPath())) {
+                        return connection.get(key);
+                    }
+                }));
+            }
+            for (Future<String> future : futures) {
+                assertNotNull(future.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, tokenRequests.get());
+
+        assertEquals(OAuthTokenStore.getBackend().get(key), backend.get(key));
+        assertEquals(VALID_JWT, OAuthTokenStore.getActiveAccessToken(client.getStorageClientId(), MODE));
+    }
+
+    @Test
+    void testReconnectsAfterBrokerRestart() throws Exception {
+        OAuth2Client client = registerClient();
+        String key = OAuthTokenStore.getTokenKey(client.getStorageClientId(), MODE);
+        assertNotNull(backend.get(key));
+
+        broker.close();
+        broker = new TokenBroker(broker.getSocketPath());
+        broker.register(client);
+        broker.start();
+
+        assertEquals(VALID_JWT, fields(backend.get(key))[1]);
+        assertEquals(1, tokenRequests.get());
+    }
+
+    /**
+     * Waits for the broker process to move its listening socket into place.
+     */
+    private static void awaitSocket(Process process, Path socketPath) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!Files.exists(socketPath)) {
+            assertTrue(process.isAlive(), "broker process exited before it was ready");
+            assertTrue(System.nanoTime() - deadline < 0, "broker process did not start");
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * Splits a token record into its version, access token, refresh token and metadata.
+     */
+    private static String[] fields(String record) {
+        return record.split("\n", -1);
+    }
+
+    private OAuth2Client registerClient() {
+        OAuth2Client client = new OAuth2Client(ClientCredentialsConfig.builder()
+                .clientId(CLIENT_ID)
+                .clientSecret("secret")
+                .urlConfig(ManualUrlsConfig.builder()
+                        .tokenEndpoint("http://127.0.0.1:" + tokenServer.getAddress().getPort() + "/token")
+                        .build())
+                .build());
+        broker.register(client);
+        storageClientId = client.getStorageClientId();
+        return client;
+    }
+}
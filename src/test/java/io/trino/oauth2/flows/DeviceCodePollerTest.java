@@ -0,0 +1,197 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.flows;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.Dispatcher;
+import okhttp3.FormBody;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeviceCodePollerTest {
+    private static final String PENDING = "{\"error\":\"authorization_pending\"}";
+    private static final String SLOW_DOWN = "{\"error\":\"slow_down\"}";
+    private static final String DENIED = "{\"error\":\"access_denied\"}";
+
+    private final Map<String, Queue<String>> scripts = new ConcurrentHashMap<>();
+    private final Map<String, List<Long>> requestTimes = new ConcurrentHashMap<>();
+    private OkHttpClient httpClient;
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serverExecutor = Executors.newFixedThreadPool(4);
+        server.setExecutor(serverExecutor);
+        server.createContext("/token", exchange -> {
+            ByteArrayOutputStream form = new ByteArrayOutputStream();
+            exchange.getRequestBody().transferTo(form);
+            String deviceCode = form.toString(StandardCharsets.UTF_8).replaceAll(".*device_code=([^&]*).*", "$1");
+            requestTimes.computeIfAbsent(deviceCode, code -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(System.nanoTime());
+
+            // The last scripted response repeats once the others are used up
+            Queue<String> script = scripts.get(deviceCode);
+            String response = script.size() > 1 ? script.poll() : script.peek();
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(response.contains("access_token") ? 200 : 400, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        // Flows normally have a client each; here they share one, so lift the per-host limit
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(64);
+        httpClient = new OkHttpClient.Builder().dispatcher(dispatcher).build();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void testSlowDownIncreasesInterval() throws Exception {
+        DeviceCodePoller poller = new DeviceCodePoller(Duration.ofMillis(50), Duration.ofMillis(300));
+        script("device-1", PENDING, SLOW_DOWN, PENDING, success("token-1"));
+
+        String token = poll(poller, "device-1", Duration.ofMillis(50), Duration.ofSeconds(10)).get(10, TimeUnit.SECONDS);
+
+        assertEquals("token-1", token);
+        List<Long> times = requestTimes.get("device-1");
+        assertEquals(4, times.size());
+        assertTrue(times.get(1) - times.get(0) < TimeUnit.MILLISECONDS.toNanos(300));
+        // Every poll after slow_down waits the increased interval
+        assertTrue(times.get(2) - times.get(1) >= TimeUnit.MILLISECONDS.toNanos(350));
+        assertTrue(times.get(3) - times.get(2) >= TimeUnit.MILLISECONDS.toNanos(350));
+    }
+
+    @Test
+    void testDeniedAuthorizationFails() {
+        DeviceCodePoller poller = new DeviceCodePoller(Duration.ofMillis(20), Duration.ofMillis(20));
+        script("device-1", PENDING, DENIED);
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> poll(poller, "device-1", null, Duration.ofSeconds(10)).get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause().getMessage().contains("access_denied"));
+        assertEquals(2, requestTimes.get("device-1").size());
+    }
+
+    @Test
+    void testExpiredDeviceCodeStopsPolling() throws Exception {
+        DeviceCodePoller poller = new DeviceCodePoller(Duration.ofMillis(20), Duration.ofMillis(20));
+        script("device-1", PENDING);
+
+        CompletableFuture<String> token = poll(poller, "device-1", Duration.ofMillis(50), Duration.ofMillis(300));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> token.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause().getMessage().contains("expired"));
+        int polls = requestTimes.get("device-1").size();
+        assertTrue(polls >= 1 && polls <= 6, "unexpected number of polls: " + polls);
+        Thread.sleep(200);
+        assertEquals(polls, requestTimes.get("device-1").size());
+    }
+
+    @Test
+    void testCancelStopsPolling() throws Exception {
+        DeviceCodePoller poller = new DeviceCodePoller(Duration.ofMillis(20), Duration.ofMillis(20));
+        script("device-1", PENDING);
+
+        CompletableFuture<String> token = poll(poller, "device-1", Duration.ofMillis(50), Duration.ofSeconds(10));
+        Thread.sleep(200);
+        token.cancel(true);
+        Thread.sleep(100);
+        int polls = requestTimes.get("device-1").size();
+        Thread.sleep(200);
+        assertEquals(polls, requestTimes.get("device-1").size());
+    }
+
+    @Test
+    void testManyConcurrentFlows() throws Exception {
+        DeviceCodePoller poller = new DeviceCodePoller(Duration.ofMillis(20), Duration.ofMillis(20));
+        int flows = 200;
+        List<CompletableFuture<String>> tokens = new ArrayList<>();
+        for (int i = 0; i < flows; i++) {
+            script("device-" + i, PENDING, SLOW_DOWN, PENDING, success("token-" + i));
+        }
+        for (int i = 0; i < flows; i++) {
+            tokens.add(poll(poller, "device-" + i, null, Duration.ofSeconds(30)));
+        }
+
+        for (int i = 0; i < flows; i++) {
+            assertEquals("token-" + i, tokens.get(i).get(30, TimeUnit.SECONDS));
+            assertEquals(4, requestTimes.get("device-" + i).size());
+        }
+    }
+
+    @Test
+    void testRejectsInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new DeviceCodePoller(Duration.ZERO, Duration.ofSeconds(5)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new DeviceCodePoller(Duration.ofSeconds(5), Duration.ofSeconds(-1)));
+    }
+
+    private CompletableFuture<String> poll(
+            DeviceCodePoller poller,
+            String deviceCode,
+            Duration interval,
+            Duration expiresIn
+    ) {
+        String tokenUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/token";
+        return poller.poll(
+                httpClient,
+                () -> new Request.Builder()
+                        .url(tokenUrl)
+                        .post(new FormBody.Builder().add("device_code", deviceCode).build())
+                        .build(),
+                (response, requestSentAt) -> response.get("access_token").asText(),
+                interval,
+                expiresIn
+        );
+    }
+
+    private void script(String deviceCode, String... responses) {
+        scripts.put(deviceCode, new ConcurrentLinkedQueue<>(Arrays.asList(responses)));
+    }
+
+    private static String success(String accessToken) {
+        return "{\"access_token\":\"" + accessToken + "\",\"expires_in\":3600}";
+    }
+}
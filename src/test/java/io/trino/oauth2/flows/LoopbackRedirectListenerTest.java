@@ -0,0 +1,101 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.flows;
+
+import io.trino.oauth2.configs.Constants;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoopbackRedirectListenerTest {
+    private static final String STATE = "expected-state";
+    private static final String REDIRECT_URI = "http://127.0.0.1:0/auth/token.callback";
+
+    private final OkHttpClient httpClient = new OkHttpClient();
+
+    @Test
+    void testIsLoopback() {
+        assertTrue(LoopbackRedirectListener.isLoopback(Constants.LOCALHOST_REDIRECT_URI));
+        assertTrue(LoopbackRedirectListener.isLoopback("http://127.0.0.1:8080/callback"));
+        assertTrue(LoopbackRedirectListener.isLoopback("http://[::1]:8080/callback"));
+        assertFalse(LoopbackRedirectListener.isLoopback("https://localhost:8080/callback"));
+        assertFalse(LoopbackRedirectListener.isLoopback("http://localhost/callback"));
+        assertFalse(LoopbackRedirectListener.isLoopback("http://example.com:8080/callback"));
+        assertFalse(LoopbackRedirectListener.isLoopback("com.example.app:/callback"));
+    }
+
+    @Test
+    void testReceivesCode() throws Exception {
+        try (LoopbackRedirectListener listener = LoopbackRedirectListener.start(REDIRECT_URI, STATE)) {
+            assertEquals(200, redirect(listener, "/auth/token.callback?code=abc%2F123&state=" + STATE));
+            assertEquals("abc/123", listener.awaitCode(Duration.ofSeconds(5)));
+        }
+    }
+
+    @Test
+    void testIgnoresRedirectWithWrongState() throws Exception {
+        try (LoopbackRedirectListener listener = LoopbackRedirectListener.start(REDIRECT_URI, STATE)) {
+            assertEquals(400, redirect(listener, "/auth/token.callback?code=forged&state=other"));
+            assertEquals(400, redirect(listener, "/auth/token.callback?code=forged"));
+            assertEquals(404, redirect(listener, "/other?code=forged&state=" + STATE));
+            assertNull(listener.awaitCode(Duration.ofMillis(100)));
+
+            assertEquals(200, redirect(listener, "/auth/token.callback?code=real&state=" + STATE));
+            assertEquals("real", listener.awaitCode(Duration.ofSeconds(5)));
+        }
+    }
+
+    @Test
+    void testTimeoutReturnsNoCode() throws Exception {
+        try (LoopbackRedirectListener listener = LoopbackRedirectListener.start(REDIRECT_URI, STATE)) {
+            assertNull(listener.awaitCode(Duration.ofMillis(100)));
+        }
+    }
+
+    @Test
+    void testAuthorizationError() throws Exception {
+        try (LoopbackRedirectListener listener = LoopbackRedirectListener.start(REDIRECT_URI, STATE)) {
+            redirect(listener, "/auth/token.callback?error=access_denied&error_description=User+cancelled&state=" + STATE);
+            RuntimeException e = assertThrows(RuntimeException.class, () -> listener.awaitCode(Duration.ofSeconds(5)));
+            assertEquals("Authorization failed: access_denied - User cancelled", e.getMessage());
+        }
+    }
+
+    @Test
+    void testReleasesPortOnClose() throws Exception {
+        int port;
+        try (LoopbackRedirectListener listener = LoopbackRedirectListener.start(REDIRECT_URI, STATE)) {
+            port = listener.getPort();
+        }
+        try (ServerSocket socket = new ServerSocket(port, 1, InetAddress.getByName("127.0.0.1"))) {
+            assertEquals(port, socket.getLocalPort());
+        }
+    }
+
+    private int redirect(LoopbackRedirectListener listener, String pathAndQuery) throws IOException {
+        Request request = new Request.Builder()
+                .url("http://127.0.0.1:" + listener.getPort() + pathAndQuery)
+                .build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            return response.code();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.flows;
+
+import com.sun.net.httpserver.HttpServer;
+import io.trino.oauth2.OAuth2Client;
+import io.trino.oauth2.models.ClientCredentialsConfig;
+import io.trino.oauth2.models.ManualUrlsConfig;
+import io.trino.oauth2.utils.InMemoryTokenBackend;
+import io.trino.oauth2.utils.OAuthTokenStore;
+import io.trino.oauth2.utils.ScopeTokenIndex;
+import io.trino.oauth2.utils.TokenStoreBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScopeRequestBatcherTest {
+    private static final String CLIENT_ID = "scope-batch-client";
+
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    private final List<String> requestedScopes = new CopyOnWriteArrayList<>();
+    // Scopes the client may have; null to grant everything
+    private volatile Set<String> allowedScopes;
+    // Whether disallowed scopes are left out of the grant instead of failing the request
+    private volatile boolean grantAllowedSubset;
+    // Whether the server hangs up instead of answering
+    private volatile boolean dropConnections;
+    private HttpServer server;
+    private TokenStoreBackend previousBackend;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/token", exchange -> {
+            ByteArrayOutputStream form = new ByteArrayOutputStream();
+            exchange.getRequestBody().transferTo(form);
+            String scope = URLDecoder.decode(
+                    form.toString(StandardCharsets.UTF_8).replaceAll(".*scope=([^&]*).*", "$1"),
+                    StandardCharsets.UTF_8
+            );
+            requestedScopes.add(scope);
+            int request = tokenRequests.incrementAndGet();
+            if (dropConnections) {
+                exchange.close();
+                return;
+            }
+
+            SortedSet<String> granted = ScopeTokenIndex.parseScopes(scope);
+            int status = 200;
+            String response;
+            if (allowedScopes != null && !allowedScopes.containsAll(granted) && !grantAllowedSubset) {
+                status = 400;
+                response = "{\"error\":\"invalid_scope\"}";
+            } else {
+                if (allowedScopes != null) {
+                    granted.retainAll(allowedScopes);
+                }
+                response = "{\"access_token\":\"token-" + request + "\",\"expires_in\":600," +
+                        "\"scope\":\"" + String.join(" ", granted) + "\"}";
+            }
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        previousBackend = OAuthTokenStore.getBackend();
+        OAuthTokenStore.setBackend(new InMemoryTokenBackend());
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        OAuthTokenStore.setBackend(previousBackend);
+        server.stop(0);
+    }
+
+    @Test
+    void testConcurrentRequestsShareOneUnionToken() throws Exception {
+        List<String> tokens = tokensConcurrently("read", "write", "read product1", "write read");
+
+        assertEquals(Arrays.asList("token-1", "token-1", "token-1", "token-1"), tokens);
+        assertEquals(Arrays.asList("product1 read write"), requestedScopes);
+
+        // Each config now has a record of its own
+        assertEquals("token-1", client("read product1").token());
+        assertEquals(1, tokenRequests.get());
+    }
+
+    @Test
+    void testRejectedUnionFallsBackToSeparateRequests() throws Exception {
+        allowedScopes = Set.of("read", "write");
+        List<Future<String>> tokens = submitConcurrently("read", "write", "admin");
+
+        assertTrue(tokens.get(0).get(10, TimeUnit.SECONDS).startsWith("token-"));
+        assertTrue(tokens.get(1).get(10, TimeUnit.SECONDS).startsWith("token-"));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> tokens.get(2).get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause().getMessage().contains("invalid_scope"));
+        assertEquals(4, tokenRequests.get());
+        assertEquals("admin read write", requestedScopes.get(0));
+    }
+
+    @Test
+    void testTransportFailureFailsWholeBatch() {
+        dropConnections = true;
+        List<Future<String>> tokens = submitConcurrently("read", "write", "admin");
+
+        for (Future<String> token : tokens) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> token.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, e.getCause());
+        }
+        // One union request, which the HTTP client may retry once, and no request per config
+        assertTrue(tokenRequests.get() <= 2, "token requests " + tokenRequests.get());
+    }
+
+    @Test
+    void testNarrowerGrantServesCoveredRequests() throws Exception {
+        allowedScopes = Set.of("read", "write");
+        grantAllowedSubset = true;
+        List<String> tokens = tokensConcurrently("read", "write", "admin write");
+
+        assertEquals("token-1", tokens.get(0));
+        assertEquals("token-1", tokens.get(1));
+        assertEquals("token-2", tokens.get(2));
+        assertEquals(Arrays.asList("admin read write", "admin write"), requestedScopes);
+    }
+
+    @Test
+    void testForceRefreshSkipsBroaderToken() throws Exception {
+        assertEquals("token-1", client("read write").token());
+        OAuth2Client narrow = client("read");
+        assertEquals("token-1", narrow.token());
+        assertEquals(1, tokenRequests.get());
+
+        narrow.forceRefresh();
+        assertEquals(2, tokenRequests.get());
+        assertEquals("read", requestedScopes.get(1));
+        assertEquals("token-2", narrow.token());
+
+        narrow.forceRefresh();
+        assertEquals(3, tokenRequests.get());
+    }
+
+    @Test
+    void testRejectsInvalidWindow() {
+        assertThrows(IllegalArgumentException.class, () -> config("read").scopeBatchWindow(Duration.ZERO).build());
+        assertThrows(IllegalArgumentException.class, () -> config("read").reuseBroaderScopes(false).build());
+    }
+
+    private List<String> tokensConcurrently(String... scopes) throws Exception {
+        List<String> tokens = new ArrayList<>();
+        for (Future<String> token : submitConcurrently(scopes)) {
+            tokens.add(token.get(10, TimeUnit.SECONDS));
+        }
+        return tokens;
+    }
+
+    private List<Future<String>> submitConcurrently(String... scopes) {
+        List<Future<String>> tokens = new ArrayList<>();
+        for (String scope : scopes) {
+            OAuth2Client client = client(scope);
+            tokens.add(executor.submit(() -> client.token()));
+        }
+        return tokens;
+    }
+
+    private OAuth2Client client(String scope) {
+        return new OAuth2Client(config(scope).build());
+    }
+
+    private ClientCredentialsConfig.Builder config(String scope) {
+        return ClientCredentialsConfig.builder()
+                .clientId(CLIENT_ID)
+                .clientSecret("secret")
+                .scope(scope)
+                .reuseBroaderScopes(true)
+                .scopeBatchWindow(Duration.ofMillis(300))
+                .urlConfig(ManualUrlsConfig.builder()
+                        .tokenEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/token")
+                        .build());
+    }
+}
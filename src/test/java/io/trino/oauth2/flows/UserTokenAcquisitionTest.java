@@ -0,0 +1,220 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.flows;
+
+import com.sun.net.httpserver.HttpServer;
+import io.trino.oauth2.configs.Constants;
+import io.trino.oauth2.metrics.Metrics;
+import io.trino.oauth2.metrics.RecordingOAuthMetrics;
+import io.trino.oauth2.metrics.TokenOperation;
+import io.trino.oauth2.models.AuthorizationCodeConfig;
+import io.trino.oauth2.models.ManualUrlsConfig;
+import io.trino.oauth2.utils.InMemoryTokenBackend;
+import io.trino.oauth2.utils.OAuthTokenStore;
+import io.trino.oauth2.utils.SimulatedTimeSource;
+import io.trino.oauth2.utils.TimeSource;
+import io.trino.oauth2.utils.TokenStoreBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Desktop;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+public class UserTokenAcquisitionTest {
+    private static final String CLIENT_ID = "state-machine-client";
+    private static final String MODE = AuthorizationCodeConfig.class.getSimpleName();
+    private static final int THRESHOLD = 30;
+
+    private final AtomicInteger logins = new AtomicInteger();
+    private final AtomicInteger refreshes = new AtomicInteger();
+    private final AtomicReference<String> acceptedRefreshToken = new AtomicReference<>("refresh-1");
+    private final AtomicReference<String> lastTokenRequest = new AtomicReference<>();
+    private HttpServer server;
+    private TokenStoreBackend previousBackend;
+    private TimeSource previousTimeSource;
+    private SimulatedTimeSource timeSource;
+    private AuthorizationCodeOauth flow;
+    private String storageClientId;
+
+    @BeforeAll
+    static void enableTestAutomation() {
+        System.setProperty("io.trino.oauth2.test.automation", "true");
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/token", exchange -> {
+            ByteArrayOutputStream form = new ByteArrayOutputStream();
+            exchange.getRequestBody().transferTo(form);
+            String body = form.toString(StandardCharsets.UTF_8);
+            lastTokenRequest.set(body);
+
+            String response;
+            int status = 200;
+            if (body.contains("grant_type=refresh_token")) {
+                refreshes.incrementAndGet();
+                if (body.contains("refresh_token=" + acceptedRefreshToken.get())) {
+                    response = "{\"access_token\":\"refreshed\",\"expires_in\":600}";
+                } else {
+                    status = 400;
+                    response = "{\"error\":\"invalid_grant\"}";
+                }
+            } else {
+                response = "{\"access_token\":\"login-" + logins.get() + "\"," +
+                        "\"refresh_token\":\"refresh-" + logins.get() + "\",\"expires_in\":600}";
+            }
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        server.start();
+
+        previousBackend = OAuthTokenStore.getBackend();
+        OAuthTokenStore.setBackend(new InMemoryTokenBackend());
+        previousTimeSource = OAuthTokenStore.getTimeSource();
+        timeSource = new SimulatedTimeSource(Instant.now());
+        OAuthTokenStore.setTimeSource(timeSource);
+
+        AuthorizationCodeConfig config = AuthorizationCodeConfig.builder()
+                .clientId(CLIENT_ID)
+                .clientSecret("secret")
+                .redirectUri("https://app.example.com/callback")
+                .urlConfig(ManualUrlsConfig.builder()
+                        .authorizationEndpoint("https://auth.example.com/authorize")
+                        .tokenEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/token")
+                        .build())
+                // Logs in without a browser by returning the redirect the server would send
+                .automationCallback(url -> {
+                    logins.incrementAndGet();
+                    return "https://app.example.com/callback?code=code";
+                })
+                .build();
+        flow = new AuthorizationCodeOauth(config, null);
+        storageClientId = OAuthTokenStore.getStorageClientId(config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        OAuthTokenStore.setBackend(previousBackend);
+        OAuthTokenStore.setTimeSource(previousTimeSource);
+        server.stop(0);
+    }
+
+    @Test
+    void testNeedsInteractiveWithoutTokens() throws Exception {
+        assertEquals(TokenState.NEEDS_INTERACTIVE, TokenState.of(storageClientId, MODE, THRESHOLD));
+
+        assertEquals("login-1", flow.generateOrRefreshToken(THRESHOLD));
+        assertEquals(1, logins.get());
+        assertEquals(0, refreshes.get());
+        assertEquals(TokenState.CACHED, TokenState.of(storageClientId, MODE, THRESHOLD));
+    }
+
+    @Test
+    void testCachedTokenIsReturned() throws Exception {
+        flow.generateOrRefreshToken(THRESHOLD);
+
+        assertEquals("login-1", flow.generateOrRefreshToken(THRESHOLD));
+        assertEquals(1, logins.get());
+        assertEquals(0, refreshes.get());
+    }
+
+    @Test
+    void testRefreshableTokenIsRefreshed() throws Exception {
+        flow.generateOrRefreshToken(THRESHOLD);
+        timeSource.advance(Duration.ofSeconds(600 - THRESHOLD + 1));
+        assertEquals(TokenState.REFRESHABLE, TokenState.of(storageClientId, MODE, THRESHOLD));
+
+        assertEquals("refreshed", flow.generateOrRefreshToken(THRESHOLD));
+        assertEquals(1, logins.get());
+        assertEquals(1, refreshes.get());
+        // The refresh token is kept when the response does not rotate it
+        assertEquals("refresh-1", OAuthTokenStore.getRefreshToken(storageClientId, MODE));
+    }
+
+    @Test
+    void testRejectedRefreshLogsInAgain() throws Exception {
+        flow.generateOrRefreshToken(THRESHOLD);
+        acceptedRefreshToken.set("revoked");
+        timeSource.advance(Duration.ofSeconds(600));
+
+        RecordingOAuthMetrics metrics = new RecordingOAuthMetrics();
+        Metrics.setMetrics(metrics);
+        try {
+            assertEquals("login-2", flow.generateOrRefreshToken(THRESHOLD));
+        } finally {
+            Metrics.setMetrics(null);
+        }
+        assertEquals(2, logins.get());
+        assertEquals(1, refreshes.get());
+        assertEquals("refresh-2", OAuthTokenStore.getRefreshToken(storageClientId, MODE));
+        assertEquals(1, metrics.getFailures(TokenOperation.REFRESH, MODE, "http_400"));
+        assertEquals(1, metrics.getLatency(TokenOperation.REFRESH, MODE).getCount());
+        assertEquals(1, metrics.getRefreshFallbacks(MODE));
+    }
+
+    @Test
+    void testLoopbackRedirectFallsBackToPastedCode() throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        assumeFalse(Desktop.isDesktopSupported(), "needs a session without a desktop browser");
+
+        AuthorizationCodeConfig config = AuthorizationCodeConfig.builder()
+                .clientId(CLIENT_ID)
+                .clientSecret("secret")
+                .redirectUri(Constants.LOCALHOST_REDIRECT_URI)
+                .urlConfig(ManualUrlsConfig.builder()
+                        .authorizationEndpoint("https://auth.example.com/authorize")
+                        .tokenEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/token")
+                        .build())
+                .build();
+        // What a user on a remote session copies from the browser's address bar
+        String pasted = Constants.LOCALHOST_REDIRECT_URI + "?code=pasted-code&state=any\n";
+
+        InputStream previousIn = System.in;
+        System.setIn(new ByteArrayInputStream(pasted.getBytes(StandardCharsets.UTF_8)));
+        try {
+            assertEquals("login-0", new AuthorizationCodeOauth(config, null).generateOrRefreshToken(THRESHOLD));
+        } finally {
+            System.setIn(previousIn);
+        }
+        assertTrue(lastTokenRequest.get().contains("code=pasted-code"), lastTokenRequest.get());
+    }
+
+    @Test
+    void testUnreachableTokenEndpointLogsInAgain() throws Exception {
+        flow.generateOrRefreshToken(THRESHOLD);
+        timeSource.advance(Duration.ofSeconds(600));
+        server.stop(0);
+
+        // The login itself then fails on the unreachable endpoint
+        assertThrows(Exception.class, () -> flow.generateOrRefreshToken(THRESHOLD));
+        assertEquals(2, logins.get());
+        assertNull(OAuthTokenStore.getTokenPair(storageClientId, MODE));
+    }
+}
@@ -0,0 +1,169 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package io.trino.oauth2.jfr;
+
+import com.sun.net.httpserver.HttpServer;
+import io.trino.oauth2.OAuth2Client;
+import io.trino.oauth2.models.ClientCredentialsConfig;
+import io.trino.oauth2.models.ManualUrlsConfig;
+import io.trino.oauth2.models.OidcConfig;
+import io.trino.oauth2.utils.InMemoryTokenBackend;
+import io.trino.oauth2.utils.OAuthTokenStore;
+import io.trino.oauth2.utils.TokenStoreBackend;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenEventTest {
+    private static final String CLIENT_ID = "jfr-client";
+    private static final String MODE = ClientCredentialsConfig.class.getSimpleName();
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private TokenStoreBackend previousBackend;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/token", exchange -> {
+            byte[] body = "{\"access_token\":\"token\",\"expires_in\":600}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        previousBackend = OAuthTokenStore.getBackend();
+        OAuthTokenStore.setBackend(new InMemoryTokenBackend());
+    }
+
+    @AfterEach
+    void tearDown() {
+        OAuthTokenStore.setBackend(previousBackend);
+        server.stop(0);
+    }
+
+    @Test
+    void testTokenAcquisitionEvents() throws Exception {
+        OAuth2Client client = new OAuth2Client(ClientCredentialsConfig.builder()
+                .clientId(CLIENT_ID)
+                .clientSecret("secret")
+                .urlConfig(ManualUrlsConfig.builder().tokenEndpoint(baseUrl() + "/token?tenant=a").build())
+                .build());
+
+        List<RecordedEvent> events = record(() -> {
+            client.token();
+            client.token();
+        });
+
+        RecordedEvent miss = single(events, "io.trino.oauth2.TokenCacheMiss");
+        assertEquals(MODE, miss.getString("mode"));
+        assertEquals("success", miss.getString("outcome"));
+        assertEquals(16, miss.getString("clientIdHash").length());
+        assertFalse(miss.getString("clientIdHash").contains(CLIENT_ID));
+
+        RecordedEvent request = single(events, "io.trino.oauth2.TokenRequest");
+        assertEquals(baseUrl() + "/token", request.getString("endpoint"));
+        assertEquals("success", request.getString("outcome"));
+        assertEquals(miss.getString("clientIdHash"), request.getString("clientIdHash"));
+        assertTrue(miss.getDuration().compareTo(request.getDuration()) >= 0);
+
+        RecordedEvent write = single(events, "io.trino.oauth2.TokenStoreWrite");
+        assertEquals("InMemoryTokenBackend", write.getString("endpoint"));
+        assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("io.trino.oauth2.TokenStoreRead") &&
+                "found".equals(event.getString("outcome"))));
+    }
+
+    @Test
+    void testDiscoveryFailureEvent() throws Exception {
+        String discoveryUrl = baseUrl() + "/missing/.well-known/openid-configuration";
+        OAuth2Client client = new OAuth2Client(ClientCredentialsConfig.builder()
+                .clientId(CLIENT_ID)
+                .clientSecret("secret")
+                .urlConfig(new OidcConfig(discoveryUrl))
+                .build());
+
+        List<RecordedEvent> events = record(() -> assertThrows(RuntimeException.class, client::token));
+
+        RecordedEvent discovery = single(events, "io.trino.oauth2.OidcDiscovery");
+        assertEquals(discoveryUrl, discovery.getString("endpoint"));
+        assertEquals("IOException", discovery.getString("outcome"));
+        assertEquals("RuntimeException", single(events, "io.trino.oauth2.TokenCacheMiss").getString("outcome"));
+    }
+
+    @Test
+    void testFailedStoreWriteEvent() throws Exception {
+        OAuthTokenStore.setBackend(new InMemoryTokenBackend() {
+            @Override
+            public void put(String key, String value) {
+                throw new IllegalStateException("store is read-only");
+            }
+        });
+
+        List<RecordedEvent> events = record(() -> assertThrows(IllegalStateException.class,
+                () -> OAuthTokenStore.setAccessToken(CLIENT_ID, MODE, "token")));
+
+        RecordedEvent write = single(events, "io.trino.oauth2.TokenStoreWrite");
+        assertEquals("IllegalStateException", write.getString("outcome"));
+    }
+
+    private List<RecordedEvent> record(ThrowingRunnable action) throws Exception {
+        Path file = tempDir.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : new String[] {"TokenCacheMiss", "TokenRequest", "TokenRefresh", "OidcDiscovery",
+                    "TokenStoreRead", "TokenStoreWrite"}) {
+                recording.enable("io.trino.oauth2." + name).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().startsWith("io.trino.oauth2."))
+                .collect(Collectors.toList());
+    }
+
+    private static RecordedEvent single(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+        assertEquals(1, matching.size(), "events named " + name);
+        return matching.get(0);
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,160 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package io.trino.oauth2.jmx;
+
+import com.sun.net.httpserver.HttpServer;
+import io.trino.oauth2.OAuth2Client;
+import io.trino.oauth2.models.ClientCredentialsConfig;
+import io.trino.oauth2.models.ManualUrlsConfig;
+import io.trino.oauth2.utils.InMemoryTokenBackend;
+import io.trino.oauth2.utils.OAuthTokenStore;
+import io.trino.oauth2.utils.TokenStoreBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.RuntimeMBeanException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OAuth2ClientManagementTest {
+    private final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicBoolean failing = new AtomicBoolean();
+
+    private HttpServer server;
+    private TokenStoreBackend previousBackend;
+    private OAuth2Client client;
+    private ObjectName name;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/token", exchange -> {
+            int request = requests.incrementAndGet();
+            byte[] body = (failing.get() ? "{\"error\":\"server_error\"}" :
+                    "{\"access_token\":\"token-" + request + "\",\"expires_in\":600}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(failing.get() ? 500 : 200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        previousBackend = OAuthTokenStore.getBackend();
+        OAuthTokenStore.setBackend(new InMemoryTokenBackend());
+
+        client = new OAuth2Client(ClientCredentialsConfig.builder()
+                .clientId("jmx-client")
+                .clientSecret("secret")
+                .urlConfig(ManualUrlsConfig.builder()
+                        .tokenEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/token")
+                        .build())
+                .build());
+        name = OAuth2ClientManagement.register(client);
+    }
+
+    @AfterEach
+    void tearDown() {
+        OAuth2ClientManagement.unregister(name);
+        OAuthTokenStore.setBackend(previousBackend);
+        server.stop(0);
+    }
+
+    @Test
+    void testAttributes() throws Exception {
+        assertEquals(-1L, attribute("RemainingLifetimeSeconds"));
+        assertEquals(0, attribute("ActiveTokenCount"));
+
+        client.token();
+        client.token();
+
+        assertEquals("ClientCredentialsConfig", attribute("Mode"));
+        assertEquals("jmx-client", attribute("ClientId"));
+        assertEquals(client.getStorageClientId(), attribute("StorageClientId"));
+        assertEquals(1, attribute("ActiveTokenCount"));
+        long remaining = (Long) attribute("RemainingLifetimeSeconds");
+        assertTrue(remaining > 590 && remaining <= 600, "remaining lifetime " + remaining);
+        assertEquals(1L, attribute("CacheHits"));
+        assertEquals(1L, attribute("CacheMisses"));
+        assertEquals(1L, attribute("AcquisitionCount"));
+        assertTrue((Double) attribute("AcquisitionLatencyP99Millis") > 0);
+        assertTrue((Double) attribute("AcquisitionLatencyMaxMillis") >= (Double) attribute("AcquisitionLatencyP50Millis"));
+
+        mbeanServer.invoke(name, "resetStatistics", null, null);
+        assertEquals(0L, attribute("CacheMisses"));
+        assertEquals(0L, attribute("AcquisitionCount"));
+    }
+
+    @Test
+    void testForceRefreshReplacesToken() throws Exception {
+        assertEquals("token-1", client.token());
+
+        mbeanServer.invoke(name, "forceRefresh", null, null);
+
+        assertEquals(2, requests.get());
+        assertEquals("token-2", client.token());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void testPurgeRemovesTokens() throws Exception {
+        client.token();
+
+        mbeanServer.invoke(name, "purge", null, null);
+
+        assertEquals(0, attribute("ActiveTokenCount"));
+        assertNull(OAuthTokenStore.getTokenPair(client.getStorageClientId(), "ClientCredentialsConfig"));
+        assertEquals("token-2", client.token());
+    }
+
+    @Test
+    void testFailures() throws Exception {
+        failing.set(true);
+        assertThrows(RuntimeException.class, client::token);
+        assertThrows(RuntimeMBeanException.class, () -> mbeanServer.invoke(name, "forceRefresh", null, null));
+
+        assertEquals(2L, attribute("AcquisitionFailures"));
+        assertEquals("RuntimeException", attribute("LastFailureCause"));
+        assertNotNull(attribute("LastFailureTime"));
+    }
+
+    @Test
+    void testRegistration() {
+        assertTrue(mbeanServer.isRegistered(name));
+        assertEquals(OAuth2ClientManagement.DOMAIN, name.getDomain());
+        assertThrows(IllegalStateException.class, () -> OAuth2ClientManagement.register(client));
+
+        ObjectName other = OAuth2ClientManagement.register(client, "other");
+        try {
+            assertTrue(mbeanServer.isRegistered(other));
+        } finally {
+            OAuth2ClientManagement.unregister(other);
+        }
+        assertFalse(mbeanServer.isRegistered(other));
+        OAuth2ClientManagement.unregister(other);
+    }
+
+    private Object attribute(String attribute) throws Exception {
+        return mbeanServer.getAttribute(name, attribute);
+    }
+}
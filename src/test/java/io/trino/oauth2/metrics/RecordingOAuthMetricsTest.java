@@ -0,0 +1,144 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package io.trino.oauth2.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import io.trino.oauth2.OAuth2Client;
+import io.trino.oauth2.models.ClientCredentialsConfig;
+import io.trino.oauth2.models.ManualUrlsConfig;
+import io.trino.oauth2.models.OidcConfig;
+import io.trino.oauth2.utils.InMemoryTokenBackend;
+import io.trino.oauth2.utils.OAuthTokenStore;
+import io.trino.oauth2.utils.TokenStoreBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecordingOAuthMetricsTest {
+    private static final String MODE = ClientCredentialsConfig.class.getSimpleName();
+
+    private final RecordingOAuthMetrics metrics = new RecordingOAuthMetrics();
+    private final AtomicInteger tokenStatus = new AtomicInteger(200);
+    private HttpServer server;
+    private TokenStoreBackend previousBackend;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/token", exchange -> {
+            int status = tokenStatus.get();
+            String response = status == 200 ?
+                    "{\"access_token\":\"token\",\"expires_in\":600}" :
+                    "{\"error\":\"invalid_client\"}";
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        previousBackend = OAuthTokenStore.getBackend();
+        OAuthTokenStore.setBackend(new InMemoryTokenBackend());
+        Metrics.setMetrics(metrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Metrics.setMetrics(null);
+        OAuthTokenStore.setBackend(previousBackend);
+        server.stop(0);
+    }
+
+    @Test
+    void testCacheHitsAndMisses() throws Exception {
+        OAuth2Client client = client("metrics-client");
+        client.token();
+        client.token();
+        client.token();
+
+        assertEquals(1, metrics.getCacheMisses(MODE));
+        assertEquals(2, metrics.getCacheHits(MODE));
+        assertEquals(1, metrics.getLatency(TokenOperation.ACQUIRE, MODE).getCount());
+        assertTrue(metrics.getLatency(TokenOperation.ACQUIRE, MODE).getMax() > 0);
+
+        Histogram timeToExpiry = metrics.getTimeToExpiry(MODE);
+        assertEquals(2, timeToExpiry.getCount());
+        assertTrue(timeToExpiry.getMax() <= 600 && timeToExpiry.getMax() >= 590);
+    }
+
+    @Test
+    void testFailuresByCause() {
+        tokenStatus.set(401);
+        assertThrows(RuntimeException.class, () -> client("failing-client").token());
+
+        assertEquals(1, metrics.getFailures(TokenOperation.ACQUIRE, MODE, "RuntimeException"));
+        assertEquals(1, metrics.getLatency(TokenOperation.ACQUIRE, MODE).getCount());
+    }
+
+    @Test
+    void testDiscoveryFailure() {
+        OAuth2Client client = new OAuth2Client(ClientCredentialsConfig.builder()
+                .clientId("discovery-client")
+                .clientSecret("secret")
+                .urlConfig(new OidcConfig("http://127.0.0.1:" + server.getAddress().getPort() + "/missing"))
+                .build());
+        assertThrows(RuntimeException.class, client::token);
+
+        assertEquals(1, metrics.getFailures(TokenOperation.DISCOVERY, null, "IOException"));
+        assertEquals(1, metrics.getLatency(TokenOperation.DISCOVERY, null).getCount());
+    }
+
+    @Test
+    void testHistogramQuantiles() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getValueAtQuantile(0.5));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(-5);
+
+        assertEquals(101, histogram.getCount());
+        assertEquals(5050, histogram.getSum());
+        assertEquals(100, histogram.getMax());
+        // Bounds are the top of the power-of-two bucket holding the quantile
+        assertEquals(63, histogram.getValueAtQuantile(0.5));
+        assertEquals(100, histogram.getValueAtQuantile(0.99));
+        assertEquals(0, histogram.getValueAtQuantile(0));
+        assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtQuantile(1.5));
+    }
+
+    @Test
+    void testNoopIsDefault() {
+        Metrics.setMetrics(null);
+        assertSame(OAuthMetrics.NOOP, Metrics.getMetrics());
+        assertEquals(0, Metrics.startTimer(OAuthMetrics.NOOP));
+    }
+
+    private OAuth2Client client(String clientId) {
+        return new OAuth2Client(ClientCredentialsConfig.builder()
+                .clientId(clientId)
+                .clientSecret("secret")
+                .urlConfig(ManualUrlsConfig.builder()
+                        .tokenEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/token")
+                        .build())
+                .build());
+    }
+}
@@ -14,6 +14,8 @@ package io.trino.oauth2.models;
 
 import org.junit.jupiter.api.Test;
 
+import java.security.KeyPairGenerator;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 
@@ -116,4 +118,54 @@ class ClientCredentialsConfigTest {
                     .build();
         });
     }
+
+    @Test
+    void testTokenPerAudienceRequiresAudience() {
+        OidcConfig urlConfig = new OidcConfig(
+                "https://auth.example.com/.well-known/openid-configuration"
+        );
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            ClientCredentialsConfig.builder()
+                    .clientId(CLIENT_ID)
+                    .clientSecret(CLIENT_SECRET)
+                    .urlConfig(urlConfig)
+                    .tokenPerAudience(true)
+                    .build();
+        });
+    }
+
+    @Test
+    void testPrivateKeyJwtReplacesClientSecret() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        PrivateKeyJwtConfig privateKeyJwt = PrivateKeyJwtConfig.builder()
+                .privateKey(generator.generateKeyPair().getPrivate())
+                .build();
+
+        ClientCredentialsConfig config = ClientCredentialsConfig.builder()
+                .clientId(CLIENT_ID)
+                .privateKeyJwt(privateKeyJwt)
+                .urlConfig(new OidcConfig("https://auth.example.com/.well-known/openid-configuration"))
+                .build();
+
+        assertNull(config.getClientSecret());
+        assertSame(privateKeyJwt, config.getPrivateKeyJwt());
+        assertEquals(Duration.ofSeconds(300), privateKeyJwt.getAssertionLifetime());
+    }
+
+    @Test
+    void testPrivateKeyJwtValidation() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+
+        assertThrows(IllegalArgumentException.class, () -> PrivateKeyJwtConfig.builder().build());
+        assertThrows(IllegalArgumentException.class, () -> {
+            PrivateKeyJwtConfig.builder()
+                    .privateKey(generator.generateKeyPair().getPrivate())
+                    .assertionLifetime(Duration.ofSeconds(60))
+                    .reuseWindow(Duration.ofSeconds(60))
+                    .build();
+        });
+    }
 }
@@ -0,0 +1,75 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.models;
+
+import io.trino.oauth2.configs.Constants;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenExchangeConfigTest {
+
+    private static final String CLIENT_ID = "test_client_id";
+    private static final String CLIENT_SECRET = "test_client_secret";
+
+    private static final ManualUrlsConfig URL_CONFIG = ManualUrlsConfig.builder()
+            .tokenEndpoint("https://auth.example.com/oauth/token")
+            .build();
+
+    @Test
+    void testTokenExchangeDefaults() {
+        TokenExchangeConfig config = TokenExchangeConfig.builder()
+                .clientId(CLIENT_ID)
+                .clientSecret(CLIENT_SECRET)
+                .audience("trino")
+                .urlConfig(URL_CONFIG)
+                .build();
+
+        assertEquals(CLIENT_ID, config.getClientId());
+        assertEquals(CLIENT_SECRET, config.getClientSecret());
+        assertEquals("trino", config.getAudience());
+        assertNull(config.getScope());
+        assertEquals(Constants.ACCESS_TOKEN_TYPE, config.getSubjectTokenType());
+        assertNull(config.getRequestedTokenType());
+        assertEquals(Constants.TOKEN_EXCHANGE_CACHE_SIZE, config.getCacheSize());
+    }
+
+    @Test
+    void testTokenExchangeRequiresClientId() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            TokenExchangeConfig.builder()
+                    .urlConfig(URL_CONFIG)
+                    .build();
+        });
+    }
+
+    @Test
+    void testTokenExchangeRequiresUrlConfig() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            TokenExchangeConfig.builder()
+                    .clientId(CLIENT_ID)
+                    .build();
+        });
+    }
+
+    @Test
+    void testTokenExchangeRejectsNegativeCacheSize() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            TokenExchangeConfig.builder()
+                    .clientId(CLIENT_ID)
+                    .urlConfig(URL_CONFIG)
+                    .cacheSize(-1)
+                    .build();
+        });
+    }
+}
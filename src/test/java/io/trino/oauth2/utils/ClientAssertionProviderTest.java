@@ -0,0 +1,151 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import io.trino.oauth2.models.PrivateKeyJwtConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientAssertionProviderTest {
+    private static final String CLIENT_ID = "assertion-test-client";
+    private static final String TOKEN_ENDPOINT = "https://auth.example.com/oauth/token";
+
+    private SimulatedTimeSource clock;
+    private TimeSource previousTimeSource;
+
+    @BeforeEach
+    void setUp() {
+        previousTimeSource = OAuthTokenStore.getTimeSource();
+        // Near real time so that the verifier, which reads the system clock, accepts the assertions
+        clock = new SimulatedTimeSource(Instant.now().truncatedTo(ChronoUnit.SECONDS));
+        OAuthTokenStore.setTimeSource(clock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        OAuthTokenStore.setTimeSource(previousTimeSource);
+    }
+
+    @Test
+    void testRsaAssertionClaims() throws Exception {
+        KeyPair keyPair = generateKeyPair("RSA", 2048);
+        ClientAssertionProvider provider = ClientAssertionProvider.forConfig(PrivateKeyJwtConfig.builder()
+                .privateKey(keyPair.getPrivate())
+                .keyId("key-1")
+                .build());
+
+        DecodedJWT assertion = JWT.require(Algorithm.RSA256((RSAPublicKey) keyPair.getPublic(), (RSAPrivateKey) null))
+                .build()
+                .verify(provider.getAssertion(CLIENT_ID, TOKEN_ENDPOINT));
+
+        assertEquals("RS256", assertion.getAlgorithm());
+        assertEquals("key-1", assertion.getKeyId());
+        assertEquals(CLIENT_ID, assertion.getIssuer());
+        assertEquals(CLIENT_ID, assertion.getSubject());
+        assertEquals(TOKEN_ENDPOINT, assertion.getAudience().get(0));
+        assertNotNull(assertion.getId());
+        assertEquals(clock.now(), assertion.getIssuedAtAsInstant());
+        assertEquals(clock.now().plusSeconds(300), assertion.getExpiresAtAsInstant());
+    }
+
+    @Test
+    void testEcAssertionIsVerifiable() throws Exception {
+        KeyPair keyPair = generateKeyPair("EC", 256);
+        ClientAssertionProvider provider = ClientAssertionProvider.forConfig(PrivateKeyJwtConfig.builder()
+                .privateKey(keyPair.getPrivate())
+                .build());
+
+        DecodedJWT assertion = JWT.require(Algorithm.ECDSA256((ECPublicKey) keyPair.getPublic(), (ECPrivateKey) null))
+                .build()
+                .verify(provider.getAssertion(CLIENT_ID, TOKEN_ENDPOINT));
+
+        assertEquals("ES256", assertion.getAlgorithm());
+        assertNull(assertion.getKeyId());
+    }
+
+    @Test
+    void testAssertionReusedAndSignedAhead() throws Exception {
+        ClientAssertionProvider provider = ClientAssertionProvider.forConfig(PrivateKeyJwtConfig.builder()
+                .privateKey(generateKeyPair("EC", 256).getPrivate())
+                .reuseWindow(Duration.ofSeconds(60))
+                .build());
+
+        String first = provider.getAssertion(CLIENT_ID, TOKEN_ENDPOINT);
+        clock.advance(Duration.ofSeconds(30));
+        assertEquals(first, provider.getAssertion(CLIENT_ID, TOKEN_ENDPOINT));
+        assertNotEquals(first, provider.getAssertion(CLIENT_ID, "https://auth.example.com/oauth/device"));
+
+        // Late in the window the current assertion is still returned while its successor is signed
+        clock.advance(Duration.ofSeconds(20));
+        assertEquals(first, provider.getAssertion(CLIENT_ID, TOKEN_ENDPOINT));
+        String next = awaitChange(provider, first);
+        assertEquals(clock.now(), JWT.decode(next).getIssuedAtAsInstant());
+
+        clock.advance(Duration.ofSeconds(20));
+        assertEquals(next, provider.getAssertion(CLIENT_ID, TOKEN_ENDPOINT));
+    }
+
+    @Test
+    void testZeroReuseWindowSignsEveryRequest() throws Exception {
+        ClientAssertionProvider provider = ClientAssertionProvider.forConfig(PrivateKeyJwtConfig.builder()
+                .privateKey(generateKeyPair("EC", 256).getPrivate())
+                .reuseWindow(Duration.ZERO)
+                .build());
+
+        String first = provider.getAssertion(CLIENT_ID, TOKEN_ENDPOINT);
+        String second = provider.getAssertion(CLIENT_ID, TOKEN_ENDPOINT);
+        assertNotEquals(JWT.decode(first).getId(), JWT.decode(second).getId());
+    }
+
+    @Test
+    void testSameConfigSharesProvider() throws Exception {
+        PrivateKeyJwtConfig config = PrivateKeyJwtConfig.builder()
+                .privateKey(generateKeyPair("EC", 256).getPrivate())
+                .build();
+
+        assertSame(ClientAssertionProvider.forConfig(config), ClientAssertionProvider.forConfig(config));
+    }
+
+    private static String awaitChange(ClientAssertionProvider provider, String previous) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            String assertion = provider.getAssertion(CLIENT_ID, TOKEN_ENDPOINT);
+            if (!assertion.equals(previous)) {
+                return assertion;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Assertion was not signed ahead of time");
+    }
+
+    private static KeyPair generateKeyPair(String algorithm, int size) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+        generator.initialize(size);
+        return generator.generateKeyPair();
+    }
+}
@@ -0,0 +1,159 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import io.trino.oauth2.flows.ClientCredentialsOauth;
+import io.trino.oauth2.models.ClientCredentialsConfig;
+import io.trino.oauth2.models.ManualUrlsConfig;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClockSkewEstimatorTest {
+    private static final Instant LOCAL = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Test
+    void testFirstSampleSetsOffset() {
+        ClockSkewEstimator estimator = new ClockSkewEstimator();
+        // Server clock 30 seconds ahead, 200ms round trip
+        estimator.observe(LOCAL.plusSeconds(30), LOCAL.minusMillis(100), LOCAL.plusMillis(100));
+
+        assertEquals(Duration.ofMillis(30_500), estimator.getOffset());
+        assertEquals(1, estimator.getSampleCount());
+    }
+
+    @Test
+    void testSamplesAreSmoothed() {
+        ClockSkewEstimator estimator = new ClockSkewEstimator(0.5);
+        estimator.observe(LOCAL.minusMillis(10_500), LOCAL, LOCAL);
+        estimator.observe(LOCAL.minusMillis(20_500), LOCAL, LOCAL);
+
+        assertEquals(Duration.ofSeconds(-15), estimator.getOffset());
+    }
+
+    @Test
+    void testOutlierFirstSampleIsOutvoted() {
+        ClockSkewEstimator estimator = new ClockSkewEstimator(0.5);
+        // A cached or proxied Date header an hour off, then two honest ones
+        estimator.observe(LOCAL.minusMillis(3_600_500), LOCAL, LOCAL);
+        estimator.observe(LOCAL.plusMillis(9_500), LOCAL, LOCAL);
+        estimator.observe(LOCAL.plusMillis(10_500), LOCAL, LOCAL);
+        assertEquals(Duration.ofSeconds(10), estimator.getOffset());
+
+        // Later samples are smoothed into the seeded estimate
+        estimator.observe(LOCAL.plusMillis(11_500), LOCAL, LOCAL);
+        assertEquals(Duration.ofSeconds(11), estimator.getOffset());
+        assertEquals(4, estimator.getSampleCount());
+    }
+
+    @Test
+    void testOffsetsAreKeptPerHost() {
+        TimeSource previousTimeSource = OAuthTokenStore.getTimeSource();
+        // Also clears the estimators of earlier tests
+        OAuthTokenStore.setTimeSource(new SimulatedTimeSource(LOCAL));
+        try {
+            OAuthTokenStore.getClockSkewEstimator("ahead.example.com")
+                    .observe(LOCAL.plusMillis(59_500), LOCAL, LOCAL);
+            OAuthTokenStore.getClockSkewEstimator("behind.example.com")
+                    .observe(LOCAL.minusMillis(30_500), LOCAL, LOCAL);
+
+            assertEquals(LOCAL.plusSeconds(60), OAuthTokenStore.toServerTime("ahead.example.com", LOCAL));
+            assertEquals(LOCAL.minusSeconds(30), OAuthTokenStore.toServerTime("behind.example.com", LOCAL));
+            assertEquals(LOCAL, OAuthTokenStore.toServerTime("unseen.example.com", LOCAL));
+            assertEquals(LOCAL, OAuthTokenStore.toServerTime(null, LOCAL));
+        } finally {
+            OAuthTokenStore.setTimeSource(previousTimeSource);
+        }
+    }
+
+    @Test
+    void testSlowResponsesAreIgnored() {
+        ClockSkewEstimator estimator = new ClockSkewEstimator();
+        estimator.observe(LOCAL.plusSeconds(60), LOCAL, LOCAL.plusSeconds(30));
+
+        assertEquals(Duration.ZERO, estimator.getOffset());
+        assertEquals(0, estimator.getSampleCount());
+    }
+
+    @Test
+    void testInvalidSmoothing() {
+        assertThrows(IllegalArgumentException.class, () -> new ClockSkewEstimator(0));
+        assertThrows(IllegalArgumentException.class, () -> new ClockSkewEstimator(1.5));
+    }
+
+    @Test
+    void testSkewAppliedToJwtExpiry() throws Exception {
+        // The local clock runs two minutes behind the token server, which stamps real time
+        SimulatedTimeSource clock = new SimulatedTimeSource(Instant.now().minusSeconds(120));
+        String clientId = "clock-skew-test-client";
+        String mode = "ClientCredentialsConfig";
+        String accessToken = jwtExpiringAt(Instant.now().plusSeconds(100));
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/token", exchange -> {
+            byte[] body = ("{\"access_token\":\"" + accessToken + "\",\"token_type\":\"Bearer\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        TokenStoreBackend previousBackend = OAuthTokenStore.getBackend();
+        TimeSource previousTimeSource = OAuthTokenStore.getTimeSource();
+        OAuthTokenStore.setBackend(new InMemoryTokenBackend());
+        OAuthTokenStore.setTimeSource(clock);
+        String storageClientId = null;
+        try {
+            ClientCredentialsConfig config = ClientCredentialsConfig.builder()
+                    .clientId(clientId)
+                    .clientSecret("secret")
+                    .urlConfig(ManualUrlsConfig.builder()
+                            .tokenEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/token")
+                            .build())
+                    .build();
+            assertEquals(accessToken, new ClientCredentialsOauth(config, null).generateOrRefreshToken());
+            storageClientId = OAuthTokenStore.getStorageClientId(config);
+
+            long offset = OAuthTokenStore.getClockSkewEstimator("127.0.0.1").getOffset().getSeconds();
+            assertTrue(offset >= 118 && offset <= 122, "offset " + offset);
+            assertEquals(accessToken, OAuthTokenStore.getActiveAccessToken(storageClientId, mode));
+
+            // 25 seconds left on the server clock, 145 on the local one
+            clock.advance(Duration.ofSeconds(75));
+            assertNull(OAuthTokenStore.getActiveAccessToken(storageClientId, mode));
+        } finally {
+            if (storageClientId != null) {
+                OAuthTokenStore.purgeTokens(storageClientId, mode);
+            }
+            OAuthTokenStore.setBackend(previousBackend);
+            OAuthTokenStore.setTimeSource(previousTimeSource);
+            server.stop(0);
+        }
+    }
+
+    private static String jwtExpiringAt(Instant expiresAt) {
+        String payload = "{\"sub\":\"clock-skew\",\"exp\":" + expiresAt.getEpochSecond() + "}";
+        return "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9." +
+                Base64.getUrlEncoder().withoutPadding().encodeToString(payload.getBytes(StandardCharsets.UTF_8)) +
+                ".c2lnbmF0dXJl";
+    }
+}
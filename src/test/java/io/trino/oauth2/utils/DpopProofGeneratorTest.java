@@ -0,0 +1,236 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.sun.net.httpserver.HttpServer;
+import io.trino.oauth2.OAuth2Client;
+import io.trino.oauth2.flows.ClientCredentialsOauth;
+import io.trino.oauth2.models.ClientCredentialsConfig;
+import io.trino.oauth2.models.ManualUrlsConfig;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DpopProofGeneratorTest {
+    private static final String TOKEN_ENDPOINT = "https://auth.example.com/oauth/token";
+
+    @Test
+    void testProofIsVerifiable() throws Exception {
+        KeyPair keyPair = DpopProofGenerator.generateKeyPair();
+        DpopProofGenerator generator = new DpopProofGenerator(keyPair);
+
+        DecodedJWT proof = verify(keyPair, generator.createProof("POST", TOKEN_ENDPOINT + "?tenant=a#top"));
+
+        assertEquals("dpop+jwt", proof.getType());
+        assertEquals("ES256", proof.getAlgorithm());
+        Map<String, Object> jwk = proof.getHeaderClaim("jwk").asMap();
+        assertEquals("EC", jwk.get("kty"));
+        assertEquals("P-256", jwk.get("crv"));
+        assertFalse(jwk.containsKey("d"), "private key must not be disclosed");
+        assertEquals("POST", proof.getClaim("htm").asString());
+        assertEquals(TOKEN_ENDPOINT, proof.getClaim("htu").asString());
+        assertNotNull(proof.getIssuedAt());
+        assertTrue(proof.getClaim("nonce").isMissing());
+        assertTrue(proof.getClaim("ath").isMissing());
+    }
+
+    @Test
+    void testProofsAreUnique() {
+        DpopProofGenerator generator = new DpopProofGenerator(DpopProofGenerator.generateKeyPair());
+
+        String first = JWT.decode(generator.createProof("GET", TOKEN_ENDPOINT)).getId();
+        String second = JWT.decode(generator.createProof("GET", TOKEN_ENDPOINT)).getId();
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void testNonceAndAccessTokenHash() throws Exception {
+        KeyPair keyPair = DpopProofGenerator.generateKeyPair();
+        DpopProofGenerator generator = new DpopProofGenerator(keyPair);
+        generator.setNonce(TOKEN_ENDPOINT, "server-nonce");
+
+        DecodedJWT proof = verify(keyPair, generator.createProof("POST", TOKEN_ENDPOINT, "access-token"));
+        assertEquals("server-nonce", proof.getClaim("nonce").asString());
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest("access-token".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(Base64.getUrlEncoder().withoutPadding().encodeToString(hash), proof.getClaim("ath").asString());
+
+        // Nonces are kept per endpoint
+        assertTrue(JWT.decode(generator.createProof("POST", "https://trino.example.com/v1/statement"))
+                .getClaim("nonce").isMissing());
+    }
+
+    @Test
+    void testRejectsOtherKeys() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(384);
+        assertThrows(IllegalArgumentException.class, () -> new DpopProofGenerator(generator.generateKeyPair()));
+    }
+
+    @Test
+    void testKeyPairKeptInTokenStore() throws Exception {
+        String clientId = "dpop-store-test-client";
+        String mode = "ClientCredentialsConfig";
+        InMemoryTokenBackend backend = new InMemoryTokenBackend();
+        TokenStoreBackend previousBackend = OAuthTokenStore.getBackend();
+        OAuthTokenStore.setBackend(backend);
+        try {
+            DpopProofGenerator generator = OAuthTokenStore.getDpopProofGenerator(clientId, mode);
+            assertSame(generator, OAuthTokenStore.getDpopProofGenerator(clientId, mode));
+
+            String stored = backend.get(clientId + ":" + mode + ":dpop_key");
+            assertNotNull(stored);
+            KeyPair decoded = DpopProofGenerator.decodeKeyPair(stored);
+            assertEquals(generator.getKeyPair().getPublic(), decoded.getPublic());
+
+            OAuthTokenStore.purgeTokens(clientId, mode);
+            assertNull(backend.get(clientId + ":" + mode + ":dpop_key"));
+        } finally {
+            OAuthTokenStore.purgeTokens(clientId, mode);
+            OAuthTokenStore.setBackend(previousBackend);
+        }
+    }
+
+    @Test
+    void testTokenRequestRetriedWithServerNonce() throws Exception {
+        String clientId = "dpop-nonce-test-client";
+        String mode = "ClientCredentialsConfig";
+        List<String> proofs = new ArrayList<>();
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/token", exchange -> {
+            String proof = exchange.getRequestHeaders().getFirst("DPoP");
+            proofs.add(proof);
+            boolean hasNonce = proof != null && !JWT.decode(proof).getClaim("nonce").isMissing();
+
+            byte[] body = (hasNonce ?
+                    "{\"access_token\":\"bound-token\",\"token_type\":\"DPoP\",\"expires_in\":3600}" :
+                    "{\"error\":\"use_dpop_nonce\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("DPoP-Nonce", "nonce-1");
+            exchange.sendResponseHeaders(hasNonce ? 200 : 400, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        TokenStoreBackend previousBackend = OAuthTokenStore.getBackend();
+        OAuthTokenStore.setBackend(new InMemoryTokenBackend());
+        String storageClientId = null;
+        try {
+            ClientCredentialsConfig config = ClientCredentialsConfig.builder()
+                    .clientId(clientId)
+                    .clientSecret("secret")
+                    .dpop(true)
+                    .urlConfig(ManualUrlsConfig.builder()
+                            .tokenEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/token")
+                            .build())
+                    .build();
+            storageClientId = OAuthTokenStore.getStorageClientId(config);
+            assertEquals("bound-token", new ClientCredentialsOauth(config, null).generateOrRefreshToken());
+
+            assertEquals(2, proofs.size());
+            KeyPair keyPair = OAuthTokenStore.getDpopProofGenerator(storageClientId, mode).getKeyPair();
+            assertEquals("nonce-1", verify(keyPair, proofs.get(1)).getClaim("nonce").asString());
+            assertEquals("DPoP", OAuthTokenStore.getTokenPair(storageClientId, mode).getMetadata().getTokenType());
+        } finally {
+            if (storageClientId != null) {
+                OAuthTokenStore.purgeTokens(storageClientId, mode);
+            }
+            OAuthTokenStore.setBackend(previousBackend);
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testLoginAfterPurgeBindsTokenToProofKey() throws Exception {
+        List<String> boundThumbprints = new ArrayList<>();
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/token", exchange -> {
+            // The server binds the token to the key of the token request's proof
+            String thumbprint = thumbprint(JWT.decode(exchange.getRequestHeaders().getFirst("DPoP")));
+            boundThumbprints.add(thumbprint);
+            byte[] body = ("{\"access_token\":\"token-" + boundThumbprints.size() +
+                    "\",\"token_type\":\"DPoP\",\"expires_in\":3600}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        TokenStoreBackend previousBackend = OAuthTokenStore.getBackend();
+        OAuthTokenStore.setBackend(new InMemoryTokenBackend());
+        OAuth2Client client = new OAuth2Client(ClientCredentialsConfig.builder()
+                .clientId("dpop-purge-test-client")
+                .clientSecret("secret")
+                .dpop(true)
+                .urlConfig(ManualUrlsConfig.builder()
+                        .tokenEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/token")
+                        .build())
+                .build());
+        try {
+            client.token();
+            client.purge();
+            String accessToken = client.token();
+
+            assertEquals(2, boundThumbprints.size());
+            assertNotEquals(boundThumbprints.get(0), boundThumbprints.get(1), "purge should rotate the key");
+            String proof = client.dpopProof("GET", "https://trino.example.com/v1/statement", accessToken);
+            assertEquals(boundThumbprints.get(1), thumbprint(JWT.decode(proof)));
+        } finally {
+            client.purge();
+            OAuthTokenStore.setBackend(previousBackend);
+            server.stop(0);
+        }
+    }
+
+    /**
+     * The RFC 7638 thumbprint of a proof's key, as carried in {@code cnf.jkt} of bound tokens.
+     */
+    private static String thumbprint(DecodedJWT proof) {
+        Map<String, Object> jwk = proof.getHeaderClaim("jwk").asMap();
+        String canonical = "{\"crv\":\"" + jwk.get("crv") + "\",\"kty\":\"" + jwk.get("kty") +
+                "\",\"x\":\"" + jwk.get("x") + "\",\"y\":\"" + jwk.get("y") + "\"}";
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static DecodedJWT verify(KeyPair keyPair, String proof) {
+        // Proofs are dated on the estimated server clock, which may be a second ahead
+        return JWT.require(Algorithm.ECDSA256((ECPublicKey) keyPair.getPublic(), (ECPrivateKey) null))
+                .acceptLeeway(5)
+                .build()
+                .verify(proof);
+    }
+}
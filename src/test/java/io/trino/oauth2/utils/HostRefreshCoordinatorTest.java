@@ -0,0 +1,109 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HostRefreshCoordinatorTest {
+
+    @TempDir
+    Path lockDirectory;
+
+    @Test
+    void testLockIsExclusive() throws Exception {
+        HostRefreshCoordinator coordinator = new HostRefreshCoordinator(lockDirectory, Duration.ofSeconds(10));
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    try (HostRefreshCoordinator.Lock lock = coordinator.lock("client:DeviceCodeConfig")) {
+                        assertTrue(lock.isHeld());
+                        maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                        Thread.sleep(5);
+                        active.decrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, maxActive.get());
+        try (var files = Files.list(lockDirectory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void testLockTimesOutWhenHeld() throws Exception {
+        HostRefreshCoordinator coordinator = new HostRefreshCoordinator(lockDirectory, Duration.ofMillis(100));
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread holder = new Thread(() -> {
+            try (HostRefreshCoordinator.Lock lock = coordinator.lock("key")) {
+                held.countDown();
+                release.await();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        holder.start();
+        assertTrue(held.await(10, TimeUnit.SECONDS));
+
+        try (HostRefreshCoordinator.Lock lock = coordinator.lock("key")) {
+            assertFalse(lock.isHeld());
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+
+        try (HostRefreshCoordinator.Lock lock = coordinator.lock("key")) {
+            assertTrue(lock.isHeld());
+        }
+    }
+
+    @Test
+    void testDifferentKeysDoNotContend() throws Exception {
+        HostRefreshCoordinator coordinator = new HostRefreshCoordinator(lockDirectory, Duration.ZERO);
+
+        try (HostRefreshCoordinator.Lock first = coordinator.lock("client-a:DeviceCodeConfig");
+             HostRefreshCoordinator.Lock second = coordinator.lock("client-b:DeviceCodeConfig")) {
+            assertTrue(first.isHeld());
+            assertTrue(second.isHeld());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Map-backed token storage that counts writes and flushes, for tests.
+ */
+public class InMemoryTokenBackend implements TokenStoreBackend {
+    final Map<String, String> values = new ConcurrentHashMap<>();
+    final AtomicInteger writes = new AtomicInteger();
+    final AtomicInteger flushes = new AtomicInteger();
+
+    @Override
+    public String get(String key) {
+        return values.get(key);
+    }
+
+    @Override
+    public void put(String key, String value) {
+        writes.incrementAndGet();
+        if (value == null) {
+            values.remove(key);
+        } else {
+            values.put(key, value);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        writes.incrementAndGet();
+        values.remove(key);
+    }
+
+    @Override
+    public void flush() {
+        flushes.incrementAndGet();
+    }
+}
@@ -0,0 +1,182 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalTokenBackendTest {
+
+    @TempDir
+    Path tempDir;
+
+    private JournalTokenBackend open(Path path) throws IOException {
+        return JournalTokenBackend.builder()
+                .path(path)
+                .fsyncPolicy(JournalTokenBackend.FsyncPolicy.ALWAYS)
+                .build();
+    }
+
+    @Test
+    void testIndexIsRebuiltOnStartup() throws IOException {
+        Path path = tempDir.resolve("tokens.journal");
+        try (JournalTokenBackend journal = open(path)) {
+            journal.put("client-a:ClientCredentialsConfig:access_token", "token-a1");
+            journal.put("client-b:ClientCredentialsConfig:access_token", "token-b");
+            journal.put("client-a:ClientCredentialsConfig:access_token", "token-a2");
+            journal.put("client-c:ClientCredentialsConfig:access_token", "token-c");
+            journal.remove("client-c:ClientCredentialsConfig:access_token");
+        }
+
+        try (JournalTokenBackend journal = open(path)) {
+            assertEquals("token-a2", journal.get("client-a:ClientCredentialsConfig:access_token"));
+            assertEquals("token-b", journal.get("client-b:ClientCredentialsConfig:access_token"));
+            assertNull(journal.get("client-c:ClientCredentialsConfig:access_token"));
+            assertEquals(2, journal.size());
+            assertEquals(5, journal.recordCount());
+        }
+    }
+
+    @Test
+    void testTornRecordIsDiscarded() throws IOException {
+        Path path = tempDir.resolve("tokens.journal");
+        try (JournalTokenBackend journal = open(path)) {
+            journal.put("key1", "value1");
+            journal.put("key2", "value2");
+        }
+
+        // Simulate a crash in the middle of appending the last record
+        long size = Files.size(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        try (JournalTokenBackend journal = open(path)) {
+            assertEquals("value1", journal.get("key1"));
+            assertNull(journal.get("key2"));
+
+            journal.put("key3", "value3");
+        }
+
+        try (JournalTokenBackend journal = open(path)) {
+            assertEquals("value1", journal.get("key1"));
+            assertEquals("value3", journal.get("key3"));
+        }
+    }
+
+    @Test
+    void testCorruptRecordIsSkipped() throws IOException {
+        Path path = tempDir.resolve("tokens.journal");
+        try (JournalTokenBackend journal = open(path)) {
+            journal.put("key1", "value1");
+            journal.put("key2", "value2");
+            journal.put("key3", "value3");
+        }
+
+        // Flip a byte in the middle record's value so its checksum no longer matches
+        byte[] bytes = Files.readAllBytes(path);
+        int offset = new String(bytes, StandardCharsets.ISO_8859_1).indexOf("value2");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {'X'}), offset);
+        }
+
+        try (JournalTokenBackend journal = open(path)) {
+            assertEquals("value1", journal.get("key1"));
+            assertNull(journal.get("key2"));
+            assertEquals("value3", journal.get("key3"));
+            assertEquals(2, journal.recordCount());
+
+            journal.put("key4", "value4");
+        }
+
+        try (JournalTokenBackend journal = open(path)) {
+            assertEquals("value3", journal.get("key3"));
+            assertEquals("value4", journal.get("key4"));
+            assertEquals(3, journal.recordCount());
+        }
+    }
+
+    @Test
+    void testFilesAreOwnerOnly() throws IOException {
+        Assumptions.assumeTrue(tempDir.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        Path path = tempDir.resolve("journals").resolve("tokens.journal");
+        try (JournalTokenBackend journal = open(path)) {
+            journal.put("key", "value");
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(path)));
+            assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(path.getParent())));
+
+            journal.compact();
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(path)));
+        }
+
+        // Journals created with broader permissions are restricted when opened
+        Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-r--r--"));
+        try (JournalTokenBackend journal = open(path)) {
+            assertEquals("value", journal.get("key"));
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(path)));
+        }
+    }
+
+    @Test
+    void testCompactionKeepsLiveValues() throws IOException {
+        Path path = tempDir.resolve("tokens.journal");
+        try (JournalTokenBackend journal = open(path)) {
+            for (int i = 0; i < 100; i++) {
+                journal.put("key" + (i % 10), "value" + i);
+            }
+            journal.remove("key0");
+            long sizeBefore = Files.size(path);
+
+            journal.compact();
+
+            assertEquals(9, journal.recordCount());
+            assertTrue(Files.size(path) < sizeBefore);
+            journal.put("key0", "after-compaction");
+        }
+
+        try (JournalTokenBackend journal = open(path)) {
+            assertEquals(10, journal.size());
+            assertEquals("value99", journal.get("key9"));
+            assertEquals("after-compaction", journal.get("key0"));
+        }
+    }
+
+    @Test
+    void testRejectsForeignFile() throws IOException {
+        Path path = tempDir.resolve("not-a-journal");
+        Files.writeString(path, "hello world");
+
+        assertThrows(IOException.class, () -> open(path));
+    }
+
+    @Test
+    void testNullValueRemovesKey() throws IOException {
+        try (JournalTokenBackend journal = open(tempDir.resolve("tokens.journal"))) {
+            journal.put("key", "value");
+            journal.put("key", null);
+            assertNull(journal.get("key"));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import com.auth0.jwt.JWT;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtClaimScannerTest {
+
+    private static final String HEADER = "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9";
+
+    private static String jwt(String payload) {
+        return HEADER + "." +
+                Base64.getUrlEncoder().withoutPadding().encodeToString(payload.getBytes(StandardCharsets.UTF_8)) +
+                ".c2lnbmF0dXJl";
+    }
+
+    @Test
+    void testExtractsDateClaims() {
+        String token = jwt("{\"sub\":\"user\",\"iat\":1516239022,\"nbf\":1516239000,\"exp\":1516242622}");
+
+        assertEquals(1516242622L, JwtClaimScanner.getExpiresAt(token));
+        assertEquals(1516239022L, JwtClaimScanner.getIssuedAt(token));
+        assertEquals(1516239000L, JwtClaimScanner.getNotBefore(token));
+    }
+
+    @Test
+    void testClaimAtEndOfPayloadAndWhitespace() {
+        assertEquals(42L, JwtClaimScanner.getExpiresAt(jwt("{ \"exp\" :\t42 }")));
+        assertEquals(42L, JwtClaimScanner.getExpiresAt(jwt("{\"exp\":42}")));
+    }
+
+    @Test
+    void testIgnoresNestedAndQuotedLookalikes() {
+        String token = jwt("{\"note\":\"\\\"exp\\\":1\",\"ctx\":{\"exp\":2},\"list\":[{\"exp\":3}]," +
+                "\"expires\":4,\"ex\":5,\"exp\":6}");
+
+        assertEquals(6L, JwtClaimScanner.getExpiresAt(token));
+    }
+
+    @Test
+    void testMissingClaim() {
+        assertEquals(JwtClaimScanner.NO_VALUE, JwtClaimScanner.getExpiresAt(jwt("{\"sub\":\"user\"}")));
+    }
+
+    @Test
+    void testNotAJwt() {
+        assertEquals(JwtClaimScanner.NO_VALUE, JwtClaimScanner.getExpiresAt(null));
+        assertEquals(JwtClaimScanner.NO_VALUE, JwtClaimScanner.getExpiresAt("opaque-access-token"));
+        assertEquals(JwtClaimScanner.NO_VALUE, JwtClaimScanner.getExpiresAt("a.!!!!.c"));
+    }
+
+    @Test
+    void testUnusualEncodingsFallBackToFullDecode() {
+        String fractional = jwt("{\"exp\":1516242622.75}");
+        String escapedKey = jwt("{\"\\u0065xp\":1516242622}");
+        String padded = HEADER + "." + Base64.getUrlEncoder()
+                .encodeToString("{\"exp\":1}".getBytes(StandardCharsets.UTF_8)) + ".c2ln";
+
+        assertEquals(JWT.decode(fractional).getExpiresAt().getTime() / 1000, JwtClaimScanner.getExpiresAt(fractional));
+        assertEquals(1516242622L, JwtClaimScanner.getExpiresAt(escapedKey));
+        assertEquals(1L, JwtClaimScanner.getExpiresAt(padded));
+    }
+
+    @Test
+    void testMatchesFullDecodeForSampleTokens() {
+        String[] payloads = {
+                "{\"sub\":\"1234567890\",\"name\":\"John Doe\",\"iat\":1516239022,\"exp\":9999999999}",
+                "{\"aud\":[\"trino\",\"api\"],\"scp\":[\"read\",\"write\"],\"exp\":1700000000,\"iss\":\"https://idp\"}",
+                "{\"ext\":{\"name\":\"\u00e9l\u00e8ve\"},\"exp\":1700000123}",
+        };
+        for (String payload : payloads) {
+            String token = jwt(payload);
+            assertEquals(JWT.decode(token).getExpiresAt().getTime() / 1000, JwtClaimScanner.getExpiresAt(token), payload);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import io.trino.oauth2.flows.ClientCredentialsOauth;
+import io.trino.oauth2.models.ClientCredentialsConfig;
+import io.trino.oauth2.models.ManualUrlsConfig;
+import io.trino.oauth2.models.MutualTlsConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs token requests against a local TLS server that requires a client
+ * certificate, closes every connection after one response, and counts full
+ * handshakes by the client certificate checks they perform. Resumed
+ * sessions skip that check.
+ */
+class MutualTlsHelperTest {
+    private static final char[] PASSWORD = "changeit".toCharArray();
+    private static final String CLIENT_ID = "mtls-test-client";
+    private static final String MODE = "ClientCredentialsConfig";
+
+    private final AtomicInteger fullHandshakes = new AtomicInteger();
+    private final List<String> requestBodies = new CopyOnWriteArrayList<>();
+    private SSLServerSocket serverSocket;
+    private TokenStoreBackend previousBackend;
+    private String storageClientId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(loadKeyStore("server.p12"), PASSWORD);
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(loadKeyStore("server-truststore.p12"));
+        X509TrustManager trust = (X509TrustManager) trustManagers.getTrustManagers()[0];
+
+        X509TrustManager countingTrust = new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+                fullHandshakes.incrementAndGet();
+                trust.checkClientTrusted(chain, authType);
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+                trust.checkServerTrusted(chain, authType);
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return trust.getAcceptedIssuers();
+            }
+        };
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagers.getKeyManagers(), new TrustManager[] {countingTrust}, null);
+        serverSocket = (SSLServerSocket) sslContext.getServerSocketFactory()
+                .createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        serverSocket.setNeedClientAuth(true);
+        storageClientId = OAuthTokenStore.getStorageClientId(config(clientMutualTls()));
+
+        Thread acceptThread = new Thread(this::serve, "mtls-test-server");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        previousBackend = OAuthTokenStore.getBackend();
+        OAuthTokenStore.setBackend(new InMemoryTokenBackend());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        OAuthTokenStore.purgeTokens(storageClientId, MODE);
+        OAuthTokenStore.setBackend(previousBackend);
+        serverSocket.close();
+    }
+
+    @Test
+    void testRepeatAcquisitionsResumeSession() throws Exception {
+        MutualTlsConfig mutualTls = clientMutualTls();
+        for (int i = 0; i < 3; i++) {
+            // A new flow client each time, as after a restart of the caller's client
+            assertEquals("mtls-token", new ClientCredentialsOauth(config(mutualTls), null).generateOrRefreshToken());
+            OAuthTokenStore.purgeTokens(storageClientId, MODE);
+        }
+
+        assertEquals(3, requestBodies.size());
+        assertEquals(1, fullHandshakes.get(), "repeat acquisitions should resume the TLS session");
+        for (String body : requestBodies) {
+            assertTrue(body.contains("client_id=" + CLIENT_ID));
+            assertFalse(body.contains("client_secret"));
+        }
+    }
+
+    @Test
+    void testSeparateConfigsHandshakeSeparately() throws Exception {
+        new ClientCredentialsOauth(config(clientMutualTls()), null).generateOrRefreshToken();
+        OAuthTokenStore.purgeTokens(storageClientId, MODE);
+        new ClientCredentialsOauth(config(clientMutualTls()), null).generateOrRefreshToken();
+
+        assertEquals(2, requestBodies.size());
+        assertEquals(2, fullHandshakes.get());
+    }
+
+    private ClientCredentialsConfig config(MutualTlsConfig mutualTls) {
+        return ClientCredentialsConfig.builder()
+                .clientId(CLIENT_ID)
+                .mutualTls(mutualTls)
+                .urlConfig(ManualUrlsConfig.builder()
+                        .tokenEndpoint("https://localhost:" + serverSocket.getLocalPort() + "/token")
+                        .build())
+                .build();
+    }
+
+    private static MutualTlsConfig clientMutualTls() throws Exception {
+        return MutualTlsConfig.builder()
+                .keyStore(loadKeyStore("client.p12"), PASSWORD)
+                .trustStore(loadKeyStore("client-truststore.p12"))
+                .build();
+    }
+
+    private static KeyStore loadKeyStore(String name) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = MutualTlsHelperTest.class.getResourceAsStream("/tls/" + name)) {
+            keyStore.load(in, PASSWORD);
+        }
+        return keyStore;
+    }
+
+    private void serve() {
+        while (!serverSocket.isClosed()) {
+            try (SSLSocket socket = (SSLSocket) serverSocket.accept()) {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                int contentLength = 0;
+                String line;
+                while (!(line = readLine(in)).isEmpty()) {
+                    if (line.toLowerCase().startsWith("content-length:")) {
+                        contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+                    }
+                }
+                requestBodies.add(new String(in.readNBytes(contentLength), StandardCharsets.UTF_8));
+
+                byte[] body = "{\"access_token\":\"mtls-token\",\"expires_in\":3600}".getBytes(StandardCharsets.UTF_8);
+                OutputStream out = socket.getOutputStream();
+                out.write(("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: " + body.length +
+                        "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(body);
+                out.flush();
+            } catch (IOException e) {
+                // Closing the server socket ends the loop; a failed handshake fails the client's request
+            }
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+}
@@ -12,9 +12,23 @@
 
 package io.trino.oauth2.utils;
 
+import io.trino.oauth2.models.ClientCredentialsConfig;
+import io.trino.oauth2.models.DeviceCodeConfig;
+import io.trino.oauth2.models.ManualUrlsConfig;
+import io.trino.oauth2.models.OidcConfig;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class OAuthTokenStoreTest {
@@ -101,6 +115,315 @@ class OAuthTokenStoreTest {
         assertNull(OAuthTokenStore.getActiveAccessToken(TEST_CLIENT_ID, "DeviceCodeConfig"));
     }
 
+    @Test
+    void testTokenPairVersionIncrements() {
+        OAuthTokenStore.setAccessAndRefreshTokens(TEST_CLIENT_ID, MODE, VALID_JWT, "refresh1");
+        long firstVersion = OAuthTokenStore.getTokenPair(TEST_CLIENT_ID, MODE).getVersion();
+
+        OAuthTokenStore.setAccessAndRefreshTokens(TEST_CLIENT_ID, MODE, VALID_JWT, "refresh2");
+        TokenPair pair = OAuthTokenStore.getTokenPair(TEST_CLIENT_ID, MODE);
+
+        assertEquals(firstVersion + 1, pair.getVersion());
+        assertEquals("refresh2", pair.getRefreshToken());
+    }
+
+    private static TokenMetadata expiringAt(Instant expiresAt) {
+        return TokenMetadata.builder().expiresAt(expiresAt).build();
+    }
+
+    @Test
+    void testOpaqueTokenUsesRecordedExpiry() {
+        OAuthTokenStore.setAccessToken(TEST_CLIENT_ID, MODE, "opaque", expiringAt(Instant.now().plusSeconds(300)), false);
+        assertEquals("opaque", OAuthTokenStore.getActiveAccessToken(TEST_CLIENT_ID, MODE));
+
+        // Inside the minimum validity threshold
+        OAuthTokenStore.setAccessToken(TEST_CLIENT_ID, MODE, "opaque", expiringAt(Instant.now().plusSeconds(10)), false);
+        assertNull(OAuthTokenStore.getActiveAccessToken(TEST_CLIENT_ID, MODE));
+
+        OAuthTokenStore.setAccessToken(TEST_CLIENT_ID, MODE, "opaque", TokenMetadata.EMPTY, false);
+        assertNull(OAuthTokenStore.getActiveAccessToken(TEST_CLIENT_ID, MODE));
+    }
+
+    @Test
+    void testDeadlineSaturatesForExtremeExpiries() {
+        long now = OAuthTokenStore.getTimeSource().nanoTime();
+        // Duration.toNanos() overflows for both
+        long farFuture = OAuthTokenStore.toDeadlineNanos(null, Instant.MAX);
+        long longPast = OAuthTokenStore.toDeadlineNanos(null, Instant.MIN);
+
+        assertTrue(farFuture - now > TimeUnit.DAYS.toNanos(365 * 50));
+        assertTrue(longPast - now < -TimeUnit.DAYS.toNanos(365 * 50));
+    }
+
+    @Test
+    void testJwtClaimsTakePrecedenceOverTokenResponse() {
+        OAuthTokenStore.setAccessToken(TEST_CLIENT_ID, MODE, EXPIRED_JWT, expiringAt(Instant.now().plusSeconds(300)), false);
+        assertNull(OAuthTokenStore.getActiveAccessToken(TEST_CLIENT_ID, MODE));
+
+        TokenMetadata metadata = OAuthTokenStore.getTokenPair(TEST_CLIENT_ID, MODE).getMetadata();
+        assertEquals(Instant.ofEpochSecond(1516239022L), metadata.getExpiresAt());
+        assertEquals(Instant.ofEpochSecond(1516239022L), metadata.getIssuedAt());
+    }
+
+    @Test
+    void testMetadataRoundTrips() {
+        TokenMetadata metadata = TokenMetadata.builder()
+                .expiresAt(Instant.ofEpochSecond(1_900_000_000L))
+                .issuedAt(Instant.ofEpochSecond(1_899_996_400L))
+                .scope("openid offline")
+                .tokenType("Bearer")
+                .refreshExpiresAt(Instant.ofEpochSecond(1_900_086_400L))
+                .serverHost("idp.example.com")
+                .build();
+        OAuthTokenStore.setAccessAndRefreshTokens(TEST_CLIENT_ID, MODE, "opaque", "refresh", metadata, false);
+
+        String encoded = OAuthTokenStore.getBackend().get(OAuthTokenStore.getTokenKey(TEST_CLIENT_ID, MODE));
+        TokenMetadata decoded = TokenPair.decode(encoded).getMetadata();
+        assertEquals(metadata.getExpiresAt(), decoded.getExpiresAt());
+        assertEquals(metadata.getIssuedAt(), decoded.getIssuedAt());
+        assertEquals("openid offline", decoded.getScope());
+        assertEquals("Bearer", decoded.getTokenType());
+        assertEquals(metadata.getRefreshExpiresAt(), decoded.getRefreshExpiresAt());
+        assertEquals("idp.example.com", decoded.getServerHost());
+
+        // Records written before metadata was stored
+        TokenPair legacy = TokenPair.decode("3\naccess\nrefresh");
+        assertEquals("refresh", legacy.getRefreshToken());
+        assertNull(legacy.getMetadata().getExpiresAt());
+    }
+
+    @Test
+    void testRefreshExpiryKeptWhileRefreshTokenUnchanged() {
+        Instant refreshExpiresAt = Instant.ofEpochSecond(1_900_086_400L);
+        TokenMetadata first = TokenMetadata.builder().refreshExpiresAt(refreshExpiresAt).build();
+        OAuthTokenStore.setAccessAndRefreshTokens(TEST_CLIENT_ID, MODE, VALID_JWT, "refresh", first, false);
+
+        OAuthTokenStore.setAccessAndRefreshTokens(TEST_CLIENT_ID, MODE, VALID_JWT, "refresh", TokenMetadata.EMPTY, false);
+        assertEquals(refreshExpiresAt, OAuthTokenStore.getTokenPair(TEST_CLIENT_ID, MODE).getMetadata().getRefreshExpiresAt());
+
+        OAuthTokenStore.setAccessAndRefreshTokens(TEST_CLIENT_ID, MODE, VALID_JWT, "rotated", TokenMetadata.EMPTY, false);
+        assertNull(OAuthTokenStore.getTokenPair(TEST_CLIENT_ID, MODE).getMetadata().getRefreshExpiresAt());
+    }
+
+    @Test
+    void testSetAccessTokenKeepsRefreshToken() {
+        OAuthTokenStore.setAccessAndRefreshTokens(TEST_CLIENT_ID, MODE, EXPIRED_JWT, "refresh_token_value");
+        OAuthTokenStore.setAccessToken(TEST_CLIENT_ID, MODE, VALID_JWT);
+
+        assertEquals(VALID_JWT, OAuthTokenStore.getActiveAccessToken(TEST_CLIENT_ID, MODE));
+        assertEquals("refresh_token_value", OAuthTokenStore.getRefreshToken(TEST_CLIENT_ID, MODE));
+    }
+
+    @Test
+    void testReadsLegacyTokenKeys() {
+        TokenStoreBackend previous = OAuthTokenStore.getBackend();
+        InMemoryTokenBackend backend = new InMemoryTokenBackend();
+        OAuthTokenStore.setBackend(backend);
+        try {
+            backend.put(TEST_CLIENT_ID + ":" + MODE + ":access_token", VALID_JWT);
+            backend.put(TEST_CLIENT_ID + ":" + MODE + ":refresh_token", "legacy_refresh");
+
+            assertEquals(VALID_JWT, OAuthTokenStore.getActiveAccessToken(TEST_CLIENT_ID, MODE));
+            assertEquals("legacy_refresh", OAuthTokenStore.getRefreshToken(TEST_CLIENT_ID, MODE));
+
+            OAuthTokenStore.purgeTokens(TEST_CLIENT_ID, MODE);
+            assertTrue(backend.values.isEmpty());
+        } finally {
+            OAuthTokenStore.setBackend(previous);
+        }
+    }
+
+    @Test
+    void testRejectsFieldsWithLineBreaks() {
+        TokenStoreBackend previous = OAuthTokenStore.getBackend();
+        InMemoryTokenBackend backend = new InMemoryTokenBackend();
+        OAuthTokenStore.setBackend(backend);
+        try {
+            assertThrows(IllegalArgumentException.class, () ->
+                    OAuthTokenStore.setAccessAndRefreshTokens(TEST_CLIENT_ID, MODE, VALID_JWT, "refresh\ninjected"));
+            assertThrows(IllegalArgumentException.class, () -> OAuthTokenStore.setAccessAndRefreshTokens(
+                    TEST_CLIENT_ID,
+                    MODE,
+                    VALID_JWT,
+                    null,
+                    TokenMetadata.builder().scope("read\nwrite").build(),
+                    false
+            ));
+            assertTrue(backend.values.isEmpty());
+        } finally {
+            OAuthTokenStore.setBackend(previous);
+        }
+    }
+
+    @Test
+    void testConcurrentReadersNeverSeeTornPair() throws InterruptedException {
+        TokenStoreBackend previous = OAuthTokenStore.getBackend();
+        OAuthTokenStore.setBackend(new InMemoryTokenBackend());
+        try {
+            OAuthTokenStore.setAccessAndRefreshTokens(TEST_CLIENT_ID, MODE, "access-0", "refresh-0");
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicInteger tornReads = new AtomicInteger();
+
+            List<Thread> readers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                Thread reader = new Thread(() -> {
+                    while (!done.get()) {
+                        TokenPair pair = OAuthTokenStore.getTokenPair(TEST_CLIENT_ID, MODE);
+                        String accessSuffix = pair.getAccessToken().substring("access-".length());
+                        String refreshSuffix = pair.getRefreshToken().substring("refresh-".length());
+                        if (!accessSuffix.equals(refreshSuffix)) {
+                            tornReads.incrementAndGet();
+                        }
+                    }
+                });
+                reader.start();
+                readers.add(reader);
+            }
+
+            for (int i = 1; i <= 10_000; i++) {
+                OAuthTokenStore.setAccessAndRefreshTokens(TEST_CLIENT_ID, MODE, "access-" + i, "refresh-" + i);
+            }
+            done.set(true);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+
+            assertEquals(0, tornReads.get());
+            assertEquals(10_001, OAuthTokenStore.getTokenPair(TEST_CLIENT_ID, MODE).getVersion());
+        } finally {
+            OAuthTokenStore.setBackend(previous);
+        }
+    }
+
+    @Test
+    void testReadersDoNotWaitForWriterIo() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean block = new AtomicBoolean();
+        TokenStoreBackend previous = OAuthTokenStore.getBackend();
+        OAuthTokenStore.setBackend(new InMemoryTokenBackend() {
+            @Override
+            public void put(String key, String value) {
+                if (block.get()) {
+                    writing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.put(key, value);
+            }
+        });
+        try {
+            OAuthTokenStore.setAccessAndRefreshTokens(TEST_CLIENT_ID, MODE, VALID_JWT, "refresh-0");
+            block.set(true);
+            Thread writer = new Thread(() ->
+                    OAuthTokenStore.setAccessAndRefreshTokens(TEST_CLIENT_ID, MODE, "access-1", "refresh-1"));
+            writer.start();
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+            // The writer is stuck in backend I/O; readers still get the current record
+            assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+                assertEquals(VALID_JWT, OAuthTokenStore.getActiveAccessToken(TEST_CLIENT_ID, MODE));
+                assertEquals("refresh-0", OAuthTokenStore.getRefreshToken(TEST_CLIENT_ID, MODE));
+            });
+
+            release.countDown();
+            writer.join();
+            assertEquals("refresh-1", OAuthTokenStore.getRefreshToken(TEST_CLIENT_ID, MODE));
+        } finally {
+            release.countDown();
+            OAuthTokenStore.setBackend(previous);
+        }
+    }
+
+    @Test
+    void testStorageClientIdDependsOnTokenShape() {
+        String base = OAuthTokenStore.getStorageClientId(clientCredentials("read write", "trino", "other"));
+
+        assertTrue(base.startsWith(TEST_CLIENT_ID + "#"));
+        assertEquals(base, OAuthTokenStore.getStorageClientId(clientCredentials("write  read read", "other", "trino")));
+        assertNotEquals(base, OAuthTokenStore.getStorageClientId(clientCredentials("read", "trino", "other")));
+        assertNotEquals(base, OAuthTokenStore.getStorageClientId(clientCredentials("read write", "trino")));
+        assertNotEquals(base, OAuthTokenStore.getStorageClientId(ClientCredentialsConfig.builder()
+                .clientId(TEST_CLIENT_ID)
+                .clientSecret("secret")
+                .scope("read write")
+                .audience(Arrays.asList("trino", "other"))
+                .urlConfig(new OidcConfig("https://other.example.com"))
+                .build()));
+        assertNotEquals(base, OAuthTokenStore.getStorageClientId(DeviceCodeConfig.builder()
+                .clientId(TEST_CLIENT_ID)
+                .scope("read write")
+                .audience(Arrays.asList("trino", "other"))
+                .urlConfig(ManualUrlsConfig.builder()
+                        .tokenEndpoint("https://auth.example.com/token")
+                        .deviceAuthorizationEndpoint("https://auth.example.com/device")
+                        .build())
+                .build()));
+    }
+
+    @Test
+    void testMovesRecordStoredUnderBareClientId() {
+        TokenStoreBackend previous = OAuthTokenStore.getBackend();
+        InMemoryTokenBackend backend = new InMemoryTokenBackend();
+        OAuthTokenStore.setBackend(backend);
+        try {
+            OAuthTokenStore.setAccessAndRefreshTokens(TEST_CLIENT_ID, MODE, VALID_JWT, "bare_refresh");
+            String storageClientId = OAuthTokenStore.getStorageClientId(clientCredentials("read", "trino"));
+
+            TokenPair moved = OAuthTokenStore.getTokenPair(storageClientId, MODE);
+            assertNotNull(moved);
+            assertEquals(VALID_JWT, moved.getAccessToken());
+            assertEquals("bare_refresh", moved.getRefreshToken());
+            assertNull(backend.get(OAuthTokenStore.getTokenKey(TEST_CLIENT_ID, MODE)));
+            assertNotNull(backend.get(OAuthTokenStore.getTokenKey(storageClientId, MODE)));
+
+            // The bare record moves once; other shapes of the client start empty
+            String otherClientId = OAuthTokenStore.getStorageClientId(clientCredentials("write", "trino"));
+            assertNull(OAuthTokenStore.getTokenPair(otherClientId, MODE));
+            assertEquals("bare_refresh", OAuthTokenStore.getRefreshToken(storageClientId, MODE));
+
+            OAuthTokenStore.purgeTokens(storageClientId, MODE);
+            assertTrue(backend.values.isEmpty());
+        } finally {
+            OAuthTokenStore.setBackend(previous);
+        }
+    }
+
+    @Test
+    void testMovesAudienceRecordStoredUnderBareClientId() {
+        TokenStoreBackend previous = OAuthTokenStore.getBackend();
+        InMemoryTokenBackend backend = new InMemoryTokenBackend();
+        OAuthTokenStore.setBackend(backend);
+        try {
+            String bareAudienceClientId = OAuthTokenStore.getAudienceClientId(TEST_CLIENT_ID, "trino");
+            OAuthTokenStore.setAccessToken(bareAudienceClientId, MODE, VALID_JWT);
+            String storageClientId = OAuthTokenStore.getStorageClientId(clientCredentials("read"));
+            String audienceClientId = OAuthTokenStore.getAudienceClientId(storageClientId, "trino");
+
+            assertEquals(VALID_JWT, OAuthTokenStore.getActiveAccessToken(audienceClientId, MODE));
+            assertNull(backend.get(OAuthTokenStore.getTokenKey(bareAudienceClientId, MODE)));
+            assertNull(OAuthTokenStore.getTokenPair(storageClientId, MODE));
+
+            OAuthTokenStore.purgeTokens(audienceClientId, MODE);
+            assertTrue(backend.values.isEmpty());
+        } finally {
+            OAuthTokenStore.setBackend(previous);
+        }
+    }
+
+    private static ClientCredentialsConfig clientCredentials(String scope, String... audiences) {
+        return ClientCredentialsConfig.builder()
+                .clientId(TEST_CLIENT_ID)
+                .clientSecret("secret")
+                .scope(scope)
+                .audience(Arrays.asList(audiences))
+                .urlConfig(ManualUrlsConfig.builder().tokenEndpoint("https://auth.example.com/token").build())
+                .build();
+    }
+
     @Test
     void testInvalidModeThrowsException() {
         assertThrows(IllegalArgumentException.class, () -> {
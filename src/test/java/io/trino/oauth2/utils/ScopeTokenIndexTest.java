@@ -0,0 +1,161 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import io.trino.oauth2.OAuth2Client;
+import io.trino.oauth2.models.ClientCredentialsConfig;
+import io.trino.oauth2.models.ManualUrlsConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScopeTokenIndexTest {
+    private static final String CLIENT_ID = "scope-index-client";
+
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    // Scopes the server grants, when narrower than those requested
+    private final Map<String, String> grantedScopes = new ConcurrentHashMap<>();
+    // Lifetimes of issued tokens by requested scope, 600 seconds by default
+    private final Map<String, Integer> lifetimes = new ConcurrentHashMap<>();
+    private HttpServer server;
+    private TokenStoreBackend previousBackend;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/token", exchange -> {
+            ByteArrayOutputStream form = new ByteArrayOutputStream();
+            exchange.getRequestBody().transferTo(form);
+            String scope = URLDecoder.decode(
+                    form.toString(StandardCharsets.UTF_8).replaceAll(".*scope=([^&]*).*", "$1"),
+                    StandardCharsets.UTF_8
+            );
+            int request = tokenRequests.incrementAndGet();
+            String response = "{\"access_token\":\"token-" + request + "\"," +
+                    "\"expires_in\":" + lifetimes.getOrDefault(scope, 600) + "," +
+                    "\"scope\":\"" + grantedScopes.getOrDefault(scope, scope) + "\"}";
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        previousBackend = OAuthTokenStore.getBackend();
+        OAuthTokenStore.setBackend(new InMemoryTokenBackend());
+    }
+
+    @AfterEach
+    void tearDown() {
+        OAuthTokenStore.setBackend(previousBackend);
+        server.stop(0);
+    }
+
+    @Test
+    void testBroadTokenServesNarrowerScopes() throws Exception {
+        assertEquals("token-1", client("read write product1", true).token());
+
+        assertEquals("token-1", client("read", true).token());
+        assertEquals("token-1", client("write read", true).token());
+        assertEquals(1, tokenRequests.get());
+
+        assertEquals("token-2", client("read admin", true).token());
+        assertEquals(2, tokenRequests.get());
+    }
+
+    @Test
+    void testLongestRemainingLifetimeIsPreferred() throws Exception {
+        lifetimes.put("read write", 300);
+        assertEquals("token-1", client("read write", true).token());
+        assertEquals("token-2", client("read write product1", true).token());
+
+        assertEquals("token-2", client("read", true).token());
+        assertEquals("token-2", client("read write", true).token());
+        assertEquals(2, tokenRequests.get());
+    }
+
+    @Test
+    void testGrantedScopesAreIndexed() throws Exception {
+        grantedScopes.put("read write", "read");
+        assertEquals("token-1", client("read write", true).token());
+
+        assertEquals("token-1", client("read", true).token());
+        assertEquals("token-2", client("write", true).token());
+        assertEquals(2, tokenRequests.get());
+    }
+
+    @Test
+    void testReuseIsOptIn() throws Exception {
+        assertEquals("token-1", client("read write", false).token());
+        assertEquals("token-2", client("read", true).token());
+
+        // Only tokens of configs that opted in are indexed
+        assertEquals("token-2", client("read", false).token());
+        assertEquals(2, tokenRequests.get());
+    }
+
+    @Test
+    void testFamiliesAreSeparate() throws Exception {
+        client("read write", true).token();
+
+        OAuth2Client otherAudience = new OAuth2Client(config("read", true)
+                .audience(Arrays.asList("other"))
+                .build());
+        assertEquals("token-2", otherAudience.token());
+    }
+
+    @Test
+    void testParseScopes() {
+        assertEquals(Arrays.asList("a", "b", "c"), Arrays.asList(ScopeTokenIndex.parseScopes(" c  a b a ").toArray()));
+        assertTrue(ScopeTokenIndex.parseScopes(null).isEmpty());
+        assertTrue(ScopeTokenIndex.parseScopes("  ").isEmpty());
+    }
+
+    @Test
+    void testRejectsInvalidConfigs() {
+        assertThrows(IllegalArgumentException.class, () -> config(null, true).build());
+        assertThrows(IllegalArgumentException.class, () -> config("read", true).dpop(true).build());
+        assertThrows(IllegalArgumentException.class, () -> config("read", true)
+                .audience(Arrays.asList("a", "b"))
+                .tokenPerAudience(true)
+                .build());
+    }
+
+    private OAuth2Client client(String scope, boolean reuseBroaderScopes) {
+        return new OAuth2Client(config(scope, reuseBroaderScopes).build());
+    }
+
+    private ClientCredentialsConfig.Builder config(String scope, boolean reuseBroaderScopes) {
+        return ClientCredentialsConfig.builder()
+                .clientId(CLIENT_ID)
+                .clientSecret("secret")
+                .scope(scope)
+                .reuseBroaderScopes(reuseBroaderScopes)
+                .urlConfig(ManualUrlsConfig.builder()
+                        .tokenEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/token")
+                        .build());
+    }
+}
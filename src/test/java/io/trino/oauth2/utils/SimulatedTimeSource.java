@@ -0,0 +1,56 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * A time source that only moves when told to, for tests. The wall clock can
+ * be stepped on its own to simulate NTP corrections or VM resume.
+ */
+public class SimulatedTimeSource implements TimeSource {
+    private Instant wallClock;
+    private long nanoTime;
+
+    public SimulatedTimeSource(Instant start) {
+        this.wallClock = start;
+        // Arbitrary origin, monotonic readings are only compared with each other
+        this.nanoTime = 42_000_000_000L;
+    }
+
+    @Override
+    public synchronized Instant now() {
+        return wallClock;
+    }
+
+    @Override
+    public synchronized long nanoTime() {
+        return nanoTime;
+    }
+
+    /**
+     * Lets time pass on both clocks.
+     */
+    public synchronized void advance(Duration duration) {
+        wallClock = wallClock.plus(duration);
+        nanoTime += duration.toNanos();
+    }
+
+    /**
+     * Moves only the wall clock, forwards or backwards.
+     */
+    public synchronized void stepWallClock(Duration duration) {
+        wallClock = wallClock.plus(duration);
+    }
+}
@@ -0,0 +1,131 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import io.trino.oauth2.configs.Constants;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Drives token lifecycles for many clients through {@link OAuthTokenStore}
+ * on a {@link SimulatedTimeSource}. Every client reads its token on each
+ * tick and "acquires" a new opaque token whenever the store reports none
+ * active, so hours of refresh behaviour run in milliseconds.
+ * <p>
+ * Installs an in-memory backend and the simulated clock; call
+ * {@link #close()} to restore the previous ones.
+ */
+public class TokenLifecycleSimulation implements AutoCloseable {
+    public static final String MODE = "ClientCredentialsConfig";
+
+    private final SimulatedTimeSource clock = new SimulatedTimeSource(Instant.parse("2026-01-01T00:00:00Z"));
+    private final TokenStoreBackend previousBackend;
+    private final TimeSource previousTimeSource;
+    private final String[] clientIds;
+    private final Duration[] lifetimes;
+    private final long[] trueDeadlines;
+    private final int[] acquisitions;
+    private long reads;
+    private long staleReads;
+
+    /**
+     * @param clients   Number of simulated clients
+     * @param lifetimes Token lifetimes, assigned to clients round-robin
+     */
+    public TokenLifecycleSimulation(String clientIdPrefix, int clients, Duration... lifetimes) {
+        this.clientIds = new String[clients];
+        this.lifetimes = new Duration[clients];
+        this.trueDeadlines = new long[clients];
+        this.acquisitions = new int[clients];
+        for (int i = 0; i < clients; i++) {
+            clientIds[i] = clientIdPrefix + i;
+            this.lifetimes[i] = lifetimes[i % lifetimes.length];
+        }
+
+        previousBackend = OAuthTokenStore.getBackend();
+        previousTimeSource = OAuthTokenStore.getTimeSource();
+        OAuthTokenStore.setBackend(new InMemoryTokenBackend());
+        OAuthTokenStore.setTimeSource(clock);
+    }
+
+    public SimulatedTimeSource getClock() {
+        return clock;
+    }
+
+    /**
+     * Reads every client's token once, acquiring those that are not active.
+     */
+    public void tick() {
+        long thresholdNanos = Duration.ofSeconds(Constants.VALID_MIN_DURATION_THRESHOLD).toNanos();
+        for (int i = 0; i < clientIds.length; i++) {
+            reads++;
+            String token = OAuthTokenStore.getActiveAccessToken(clientIds[i], MODE);
+            if (token == null) {
+                acquire(i);
+            } else if (trueDeadlines[i] - clock.nanoTime() < thresholdNanos) {
+                // Served a token that has less real lifetime left than required
+                staleReads++;
+            }
+        }
+    }
+
+    /**
+     * Advances time in fixed steps, ticking after each one.
+     */
+    public void run(Duration duration, Duration step) {
+        for (long elapsed = 0; elapsed < duration.toNanos(); elapsed += step.toNanos()) {
+            clock.advance(step);
+            tick();
+        }
+    }
+
+    private void acquire(int client) {
+        acquisitions[client]++;
+        trueDeadlines[client] = clock.nanoTime() + lifetimes[client].toNanos();
+        TokenMetadata metadata = TokenMetadata.builder()
+                .issuedAt(clock.now())
+                .expiresAt(clock.now().plus(lifetimes[client]))
+                .build();
+        OAuthTokenStore.setAccessToken(clientIds[client], MODE, "token-" + acquisitions[client], metadata, false);
+    }
+
+    public int getAcquisitions(int client) {
+        return acquisitions[client];
+    }
+
+    public long getTotalAcquisitions() {
+        long total = 0;
+        for (int count : acquisitions) {
+            total += count;
+        }
+        return total;
+    }
+
+    public long getReads() {
+        return reads;
+    }
+
+    public long getStaleReads() {
+        return staleReads;
+    }
+
+    @Override
+    public void close() {
+        for (String clientId : clientIds) {
+            OAuthTokenStore.purgeTokens(clientId, MODE);
+        }
+        OAuthTokenStore.setBackend(previousBackend);
+        OAuthTokenStore.setTimeSource(previousTimeSource);
+    }
+}
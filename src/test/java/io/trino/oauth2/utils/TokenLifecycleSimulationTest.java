@@ -0,0 +1,116 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import io.trino.oauth2.configs.Constants;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenLifecycleSimulationTest {
+    private static final Duration[] LIFETIMES = {
+            Duration.ofMinutes(5),
+            Duration.ofSeconds(900),
+            Duration.ofSeconds(1234),
+            Duration.ofHours(1),
+    };
+
+    @Test
+    void testHoursOfLifecyclesAcrossClients() {
+        Duration duration = Duration.ofHours(12);
+        Duration step = Duration.ofSeconds(5);
+
+        try (TokenLifecycleSimulation simulation = new TokenLifecycleSimulation("sim-hours-", 200, LIFETIMES)) {
+            simulation.tick();
+            simulation.run(duration, step);
+
+            assertEquals(0, simulation.getStaleReads());
+            for (int client = 0; client < 200; client++) {
+                Duration lifetime = LIFETIMES[client % LIFETIMES.length];
+                assertEquals(expectedAcquisitions(lifetime, duration, step), simulation.getAcquisitions(client),
+                        "client " + client);
+            }
+        }
+    }
+
+    @Test
+    void testWallClockStepForwardDoesNotRefresh() {
+        try (TokenLifecycleSimulation simulation = new TokenLifecycleSimulation("sim-forward-", 50, LIFETIMES)) {
+            simulation.tick();
+            assertEquals(50, simulation.getTotalAcquisitions());
+
+            // An NTP step or VM resume moves the wall clock past every expiry
+            simulation.getClock().stepWallClock(Duration.ofHours(2));
+            simulation.tick();
+
+            assertEquals(50, simulation.getTotalAcquisitions());
+        }
+    }
+
+    @Test
+    void testWallClockStepBackwardDoesNotServeExpiredToken() {
+        try (TokenLifecycleSimulation simulation = new TokenLifecycleSimulation("sim-backward-", 1, Duration.ofMinutes(5))) {
+            simulation.tick();
+            simulation.getClock().stepWallClock(Duration.ofHours(-1));
+
+            simulation.getClock().advance(Duration.ofSeconds(260));
+            simulation.tick();
+            assertEquals(1, simulation.getAcquisitions(0));
+
+            simulation.getClock().advance(Duration.ofSeconds(20));
+            simulation.tick();
+            assertEquals(2, simulation.getAcquisitions(0));
+            assertEquals(0, simulation.getStaleReads());
+        }
+    }
+
+    @Test
+    void testRecordWrittenElsewhereIsAnchoredOnFirstRead() {
+        try (TokenLifecycleSimulation simulation = new TokenLifecycleSimulation("sim-external-", 0)) {
+            SimulatedTimeSource clock = simulation.getClock();
+            String clientId = "sim-external-client";
+            Instant expiresAt = clock.now().plusSeconds(300);
+            TokenPair pair = new TokenPair("opaque", null, TokenMetadata.builder().expiresAt(expiresAt).build(), 1);
+            OAuthTokenStore.getBackend().put(
+                    OAuthTokenStore.getTokenKey(clientId, TokenLifecycleSimulation.MODE),
+                    pair.encode()
+            );
+
+            assertEquals("opaque", OAuthTokenStore.getActiveAccessToken(clientId, TokenLifecycleSimulation.MODE));
+            clock.stepWallClock(Duration.ofHours(1));
+            assertEquals("opaque", OAuthTokenStore.getActiveAccessToken(clientId, TokenLifecycleSimulation.MODE));
+            clock.advance(Duration.ofSeconds(271));
+            assertNull(OAuthTokenStore.getActiveAccessToken(clientId, TokenLifecycleSimulation.MODE));
+
+            OAuthTokenStore.purgeTokens(clientId, TokenLifecycleSimulation.MODE);
+        }
+    }
+
+    /**
+     * Acquisitions for one client ticking at 0, step, ..., duration.
+     */
+    private static int expectedAcquisitions(Duration lifetime, Duration duration, Duration step) {
+        int acquisitions = 0;
+        long acquiredAt = 0;
+        for (long t = 0; t <= duration.getSeconds(); t += step.getSeconds()) {
+            if (acquisitions == 0 || acquiredAt + lifetime.getSeconds() - t < Constants.VALID_MIN_DURATION_THRESHOLD) {
+                acquisitions++;
+                acquiredAt = t;
+            }
+        }
+        return acquisitions;
+    }
+}
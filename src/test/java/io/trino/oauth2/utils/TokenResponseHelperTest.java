@@ -0,0 +1,75 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenResponseHelperTest {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final long SENT_AT = 1_700_000_000_000L;
+
+    private static Instant expiresAt(String json) throws IOException {
+        return TokenResponseHelper.getExpiresAt(objectMapper.readTree(json), SENT_AT);
+    }
+
+    @Test
+    void testExpiresInCountsFromRequestTime() throws IOException {
+        assertEquals(Instant.ofEpochMilli(SENT_AT).plusSeconds(3600), expiresAt("{\"expires_in\":3600}"));
+        assertEquals(Instant.ofEpochMilli(SENT_AT).plusSeconds(3600), expiresAt("{\"expires_in\":\"3600\"}"));
+    }
+
+    @Test
+    void testHugeExpiresInIsClamped() throws IOException {
+        Instant clamped = Instant.ofEpochMilli(SENT_AT).plusSeconds(OAuthTokenStore.MAX_DEADLINE_SECONDS);
+        assertEquals(clamped, expiresAt("{\"expires_in\":" + Long.MAX_VALUE + "}"));
+        assertEquals(clamped, expiresAt("{\"expires_in\":\"" + Long.MAX_VALUE + "\"}"));
+        assertEquals(clamped, TokenResponseHelper.getMetadata(
+                objectMapper.readTree("{\"refresh_expires_in\":1e300}"),
+                SENT_AT,
+                null
+        ).getRefreshExpiresAt());
+    }
+
+    @Test
+    void testMissingOrInvalidExpiresIn() throws IOException {
+        assertNull(expiresAt("{\"access_token\":\"abc\"}"));
+        assertNull(expiresAt("{\"expires_in\":0}"));
+        assertNull(expiresAt("{\"expires_in\":\"soon\"}"));
+        assertNull(expiresAt("{\"expires_in\":null}"));
+    }
+
+    @Test
+    void testMetadata() throws IOException {
+        TokenMetadata metadata = TokenResponseHelper.getMetadata(
+                objectMapper.readTree("{\"expires_in\":300,\"token_type\":\"Bearer\",\"refresh_expires_in\":1800}"),
+                SENT_AT,
+                "openid"
+        );
+
+        assertEquals(Instant.ofEpochMilli(SENT_AT).plusSeconds(300), metadata.getExpiresAt());
+        assertEquals(Instant.ofEpochMilli(SENT_AT), metadata.getIssuedAt());
+        // RFC 6749: an omitted scope means the requested scope was granted
+        assertEquals("openid", metadata.getScope());
+        assertEquals("Bearer", metadata.getTokenType());
+        assertEquals(Instant.ofEpochMilli(SENT_AT).plusSeconds(1800), metadata.getRefreshExpiresAt());
+
+        metadata = TokenResponseHelper.getMetadata(objectMapper.readTree("{\"scope\":\"read\"}"), SENT_AT, "read write");
+        assertEquals("read", metadata.getScope());
+    }
+}
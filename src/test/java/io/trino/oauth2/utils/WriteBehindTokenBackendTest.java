@@ -0,0 +1,179 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.trino.oauth2.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindTokenBackendTest {
+
+    private static final String TEST_CLIENT_ID = "test-client-id";
+    private static final String MODE = "DeviceCodeConfig";
+
+    private InMemoryTokenBackend delegate;
+    private WriteBehindTokenBackend writeBehind;
+
+    @BeforeEach
+    void setUp() {
+        delegate = new InMemoryTokenBackend();
+        writeBehind = new WriteBehindTokenBackend(delegate, Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        writeBehind.close();
+    }
+
+    @Test
+    void testWritesAreVisibleBeforeFlush() {
+        writeBehind.put("key", "value");
+
+        assertEquals("value", writeBehind.get("key"));
+        assertNull(delegate.get("key"));
+        assertEquals(0, delegate.writes.get());
+    }
+
+    @Test
+    void testFlushCoalescesWrites() {
+        for (int i = 0; i < 100; i++) {
+            writeBehind.put("key", "value" + i);
+        }
+        writeBehind.flush();
+
+        assertEquals("value99", delegate.get("key"));
+        assertEquals(1, delegate.writes.get());
+        assertEquals(1, delegate.flushes.get());
+        assertEquals(0, writeBehind.pendingCount());
+    }
+
+    @Test
+    void testRemoveHidesDelegateValue() {
+        delegate.put("key", "value");
+
+        writeBehind.remove("key");
+        assertNull(writeBehind.get("key"));
+        assertEquals("value", delegate.get("key"));
+
+        writeBehind.flush();
+        assertNull(delegate.get("key"));
+    }
+
+    @Test
+    void testWriteDuringFlushOfRemovalStaysPending() {
+        WriteBehindTokenBackend[] backend = new WriteBehindTokenBackend[1];
+        InMemoryTokenBackend writingDelegate = new InMemoryTokenBackend() {
+            @Override
+            public void remove(String key) {
+                super.remove(key);
+                // Any string, even one equal to how removals used to be marked, is a value
+                backend[0].put(key, "<removed>");
+            }
+        };
+        backend[0] = new WriteBehindTokenBackend(writingDelegate, Duration.ofHours(1));
+        try {
+            backend[0].remove("key");
+            backend[0].flush();
+
+            assertEquals("<removed>", backend[0].get("key"));
+            assertEquals(1, backend[0].pendingCount());
+        } finally {
+            backend[0].close();
+        }
+    }
+
+    @Test
+    void testCloseFlushesPendingWrites() {
+        writeBehind.put("key", "value");
+        writeBehind.close();
+
+        assertEquals("value", delegate.get("key"));
+    }
+
+    @Test
+    void testWritesAfterCloseReachDelegate() {
+        writeBehind.put("key", "value");
+        writeBehind.close();
+
+        writeBehind.put("key", "value2");
+        writeBehind.put("other", "value");
+        writeBehind.remove("removed");
+
+        assertEquals("value2", delegate.get("key"));
+        assertEquals("value", delegate.get("other"));
+        assertEquals(0, writeBehind.pendingCount());
+    }
+
+    @Test
+    void testDisableWriteBehindRestoresDelegate() {
+        TokenStoreBackend previous = OAuthTokenStore.getBackend();
+        OAuthTokenStore.setBackend(delegate);
+        try {
+            WriteBehindTokenBackend enabled = OAuthTokenStore.enableWriteBehind(Duration.ofHours(1));
+            OAuthTokenStore.setAccessAndRefreshTokens(TEST_CLIENT_ID, MODE, "access", "refresh");
+            assertEquals(0, delegate.writes.get());
+
+            OAuthTokenStore.disableWriteBehind();
+            assertSame(delegate, OAuthTokenStore.getBackend());
+            assertEquals(0, enabled.pendingCount());
+
+            OAuthTokenStore.setAccessAndRefreshTokens(TEST_CLIENT_ID, MODE, "access2", "refresh2");
+            assertEquals("refresh2", TokenPair.decode(delegate.get(OAuthTokenStore.getTokenKey(TEST_CLIENT_ID, MODE)))
+                    .getRefreshToken());
+
+            // Closing the returned backend restores the delegate as well
+            OAuthTokenStore.enableWriteBehind(Duration.ofHours(1)).close();
+            assertSame(delegate, OAuthTokenStore.getBackend());
+        } finally {
+            OAuthTokenStore.purgeTokens(TEST_CLIENT_ID, MODE);
+            OAuthTokenStore.setBackend(previous);
+        }
+    }
+
+    @Test
+    void testPeriodicFlush() throws InterruptedException {
+        WriteBehindTokenBackend periodic = new WriteBehindTokenBackend(delegate, Duration.ofMillis(10));
+        try {
+            periodic.put("key", "value");
+            for (int i = 0; i < 200 && delegate.get("key") == null; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals("value", delegate.get("key"));
+        } finally {
+            periodic.close();
+        }
+    }
+
+    @Test
+    void testDurableWriteThroughTokenStore() {
+        TokenStoreBackend previous = OAuthTokenStore.getBackend();
+        OAuthTokenStore.setBackend(writeBehind);
+        try {
+            OAuthTokenStore.setAccessAndRefreshTokens(TEST_CLIENT_ID, MODE, "access", "refresh");
+            assertEquals(0, delegate.writes.get());
+            assertEquals("refresh", OAuthTokenStore.getRefreshToken(TEST_CLIENT_ID, MODE));
+
+            OAuthTokenStore.setAccessAndRefreshTokens(TEST_CLIENT_ID, MODE, "access2", "refresh2", true);
+            assertEquals(1, delegate.writes.get());
+            OAuthTokenStore.setBackend(delegate);
+            assertEquals("access2", OAuthTokenStore.getTokenPair(TEST_CLIENT_ID, MODE).getAccessToken());
+            assertEquals("refresh2", OAuthTokenStore.getRefreshToken(TEST_CLIENT_ID, MODE));
+        } finally {
+            OAuthTokenStore.setBackend(previous);
+        }
+    }
+}